@@ -765,6 +765,8 @@ public class AmazonCloudWatchClient extends AmazonWebServiceClient implements Am
         Request<PutMetricDataRequest> request = null;
         Response<Void> response = null;
         try {
+            // PutMetricData accepts a gzip-encoded payload
+            putMetricDataRequest.getRequestClientOptions().addRequestContentEncoding("gzip");
             request = new PutMetricDataRequestMarshaller().marshall(putMetricDataRequest);
             // Binds the request metrics to the current request.
             request.setAWSRequestMetrics(awsRequestMetrics);
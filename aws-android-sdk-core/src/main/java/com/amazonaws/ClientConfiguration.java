@@ -16,7 +16,9 @@
 package com.amazonaws;
 
 import com.amazonaws.http.IdleConnectionReaper;
+import com.amazonaws.retry.CircuitBreaker;
 import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryBudget;
 import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.util.VersionInfoUtils;
 
@@ -65,6 +67,18 @@ public class ClientConfiguration {
      */
     public static final boolean DEFAULT_USE_REAPER = true;
 
+    /**
+     * The default minimum size in bytes of a request payload to compress, when
+     * request compression is enabled.
+     */
+    public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = 10 * 1024;
+
+    /**
+     * The default time in milliseconds after which a trial request is let
+     * through the open circuit of an unhealthy endpoint.
+     */
+    public static final long DEFAULT_CIRCUIT_BREAKER_RESET_TIMEOUT = 5 * 1000;
+
     /** The HTTP user agent header passed with all HTTP requests. */
     private String userAgent = DEFAULT_USER_AGENT;
 
@@ -179,6 +193,35 @@ public class ClientConfiguration {
      */
     private boolean curlLogging = false;
 
+    /**
+     * Optional whether to compress the payload of requests to operations that
+     * accept a gzip-encoded payload.
+     */
+    private boolean requestCompressionEnabled = false;
+
+    /**
+     * The minimum size in bytes of a request payload to compress.
+     */
+    private int requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+
+    /**
+     * The capacity of the retry budget shared by the requests of a client, or
+     * 0 if retries aren't limited by a budget.
+     */
+    private int retryBudgetCapacity = 0;
+
+    /**
+     * The number of consecutive failed requests after which requests to an
+     * endpoint fail fast, or 0 if they never do.
+     */
+    private int circuitBreakerFailureThreshold = 0;
+
+    /**
+     * The time in milliseconds after which a trial request is let through the
+     * open circuit of an unhealthy endpoint.
+     */
+    private long circuitBreakerResetTimeout = DEFAULT_CIRCUIT_BREAKER_RESET_TIMEOUT;
+
     public ClientConfiguration() {
     }
 
@@ -204,6 +247,11 @@ public class ClientConfiguration {
         this.signerOverride = other.signerOverride;
         this.trustManager = other.trustManager;
         this.curlLogging = other.curlLogging;
+        this.requestCompressionEnabled = other.requestCompressionEnabled;
+        this.requestCompressionThreshold = other.requestCompressionThreshold;
+        this.retryBudgetCapacity = other.retryBudgetCapacity;
+        this.circuitBreakerFailureThreshold = other.circuitBreakerFailureThreshold;
+        this.circuitBreakerResetTimeout = other.circuitBreakerResetTimeout;
     }
 
     /**
@@ -1069,4 +1117,214 @@ public class ClientConfiguration {
         return this;
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns whether the payload of requests to operations that accept a
+     * gzip-encoded payload is compressed. Defaults to false.
+     *
+     * @return Whether request payloads are compressed.
+     */
+    public boolean isRequestCompressionEnabled() {
+        return requestCompressionEnabled;
+    }
+
+    /**
+     * Sets whether the payload of requests to operations that accept a
+     * gzip-encoded payload is compressed. Only payloads of at least
+     * {@link #getRequestCompressionThreshold()} bytes are compressed. The
+     * payload is compressed before the request is signed. Defaults to false.
+     *
+     * @param requestCompressionEnabled Whether request payloads are
+     *            compressed.
+     */
+    public void setRequestCompressionEnabled(boolean requestCompressionEnabled) {
+        this.requestCompressionEnabled = requestCompressionEnabled;
+    }
+
+    /**
+     * Sets whether the payload of requests to operations that accept a
+     * gzip-encoded payload is compressed, and returns the updated
+     * ClientConfiguration object so that additional calls may be chained
+     * together.
+     *
+     * @param requestCompressionEnabled Whether request payloads are
+     *            compressed.
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withRequestCompressionEnabled(boolean requestCompressionEnabled) {
+        setRequestCompressionEnabled(requestCompressionEnabled);
+        return this;
+    }
+
+    /**
+     * Returns the minimum size in bytes of a request payload to compress when
+     * request compression is enabled. Smaller payloads are sent as they are.
+     *
+     * @return The minimum size in bytes of a request payload to compress.
+     */
+    public int getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    /**
+     * Sets the minimum size in bytes of a request payload to compress when
+     * request compression is enabled. Defaults to
+     * {@link #DEFAULT_REQUEST_COMPRESSION_THRESHOLD}.
+     *
+     * @param requestCompressionThreshold The minimum size in bytes of a
+     *            request payload to compress.
+     */
+    public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+        if (requestCompressionThreshold < 0) {
+            throw new IllegalArgumentException("requestCompressionThreshold ("
+                    + requestCompressionThreshold + ") must not be negative");
+        }
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    /**
+     * Sets the minimum size in bytes of a request payload to compress when
+     * request compression is enabled, and returns the updated
+     * ClientConfiguration object so that additional calls may be chained
+     * together.
+     *
+     * @param requestCompressionThreshold The minimum size in bytes of a
+     *            request payload to compress.
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withRequestCompressionThreshold(int requestCompressionThreshold) {
+        setRequestCompressionThreshold(requestCompressionThreshold);
+        return this;
+    }
+
+    /**
+     * Returns the capacity of the retry budget shared by the requests of a
+     * client, or 0 if retries aren't limited by a budget.
+     *
+     * @return The capacity of the retry budget.
+     * @see RetryBudget
+     */
+    public int getRetryBudgetCapacity() {
+        return retryBudgetCapacity;
+    }
+
+    /**
+     * Sets the capacity of the retry budget shared by the requests of a
+     * client. Each retry takes {@link RetryBudget#RETRY_COST} tokens from the
+     * budget, and each successful request puts tokens back; failed requests
+     * are no longer retried once the budget is spent, so that a client doesn't
+     * add to the load of a service that is failing most requests. A capacity
+     * of 500 allows 100 retries in a row. Defaults to 0, which disables the
+     * budget.
+     *
+     * @param retryBudgetCapacity The capacity of the retry budget, or 0 to
+     *            disable it.
+     * @see RetryBudget
+     */
+    public void setRetryBudgetCapacity(int retryBudgetCapacity) {
+        if (retryBudgetCapacity < 0) {
+            throw new IllegalArgumentException("retryBudgetCapacity ("
+                    + retryBudgetCapacity + ") must not be negative");
+        }
+        this.retryBudgetCapacity = retryBudgetCapacity;
+    }
+
+    /**
+     * Sets the capacity of the retry budget shared by the requests of a
+     * client, and returns the updated ClientConfiguration object so that
+     * additional calls may be chained together.
+     *
+     * @param retryBudgetCapacity The capacity of the retry budget, or 0 to
+     *            disable it.
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withRetryBudgetCapacity(int retryBudgetCapacity) {
+        setRetryBudgetCapacity(retryBudgetCapacity);
+        return this;
+    }
+
+    /**
+     * Returns the number of consecutive failed requests after which requests
+     * to an endpoint fail fast, or 0 if they never do.
+     *
+     * @return The failure threshold of the circuit breaker.
+     * @see CircuitBreaker
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive failed requests after which requests to
+     * an endpoint fail fast, without being sent, until a trial request
+     * succeeds. Failed requests are those failing with an I/O error, a server
+     * error or throttling. Defaults to 0, which disables the circuit breaker.
+     *
+     * @param circuitBreakerFailureThreshold The failure threshold of the
+     *            circuit breaker, or 0 to disable it.
+     * @see CircuitBreaker
+     */
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        if (circuitBreakerFailureThreshold < 0) {
+            throw new IllegalArgumentException("circuitBreakerFailureThreshold ("
+                    + circuitBreakerFailureThreshold + ") must not be negative");
+        }
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive failed requests after which requests to
+     * an endpoint fail fast, and returns the updated ClientConfiguration object
+     * so that additional calls may be chained together.
+     *
+     * @param circuitBreakerFailureThreshold The failure threshold of the
+     *            circuit breaker, or 0 to disable it.
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withCircuitBreakerFailureThreshold(
+            int circuitBreakerFailureThreshold) {
+        setCircuitBreakerFailureThreshold(circuitBreakerFailureThreshold);
+        return this;
+    }
+
+    /**
+     * Returns the time in milliseconds after which a trial request is let
+     * through the open circuit of an unhealthy endpoint.
+     *
+     * @return The reset timeout of the circuit breaker in milliseconds.
+     */
+    public long getCircuitBreakerResetTimeout() {
+        return circuitBreakerResetTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a trial request is let through
+     * the open circuit of an unhealthy endpoint. Defaults to
+     * {@link #DEFAULT_CIRCUIT_BREAKER_RESET_TIMEOUT}.
+     *
+     * @param circuitBreakerResetTimeout The reset timeout of the circuit
+     *            breaker in milliseconds.
+     */
+    public void setCircuitBreakerResetTimeout(long circuitBreakerResetTimeout) {
+        if (circuitBreakerResetTimeout < 0) {
+            throw new IllegalArgumentException("circuitBreakerResetTimeout ("
+                    + circuitBreakerResetTimeout + ") must not be negative");
+        }
+        this.circuitBreakerResetTimeout = circuitBreakerResetTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a trial request is let through
+     * the open circuit of an unhealthy endpoint, and returns the updated
+     * ClientConfiguration object so that additional calls may be chained
+     * together.
+     *
+     * @param circuitBreakerResetTimeout The reset timeout of the circuit
+     *            breaker in milliseconds.
+     * @return The updated ClientConfiguration object.
+     */
+    public ClientConfiguration withCircuitBreakerResetTimeout(long circuitBreakerResetTimeout) {
+        setCircuitBreakerResetTimeout(circuitBreakerResetTimeout);
+        return this;
+    }
+
+}
@@ -27,7 +27,16 @@ public final class RequestClientOptions {
          * Used to specify the http user_agent value. This marker is intended
          * only for internal use by the AWS SDK.
          */
-        USER_AGENT, ;
+        USER_AGENT,
+        /**
+         * Used to specify the comma-separated content encodings the operation
+         * accepts for the request payload, such as "gzip" or "aws-chunked".
+         * With "gzip" the payload may be compressed when request compression
+         * is enabled in the {@link ClientConfiguration}; with "aws-chunked"
+         * the payload is signed chunk by chunk as it is sent. This marker is
+         * intended only for internal use by the AWS SDK.
+         */
+        REQUEST_CONTENT_ENCODING, ;
     }
 
     private final Map<Marker, String> markers = new EnumMap<Marker, String>(Marker.class);
@@ -81,6 +90,35 @@ public final class RequestClientOptions {
         putClientMarker(Marker.USER_AGENT, marker);
     }
 
+    /**
+     * Adds the given content encoding to the
+     * {@link Marker#REQUEST_CONTENT_ENCODING} marker, if it wasn't already
+     * present. This method is intended only for internal use by the AWS SDK.
+     */
+    public void addRequestContentEncoding(String encoding) {
+        if (acceptsRequestContentEncoding(encoding))
+            return;
+        String marker = markers.get(Marker.REQUEST_CONTENT_ENCODING);
+        putClientMarker(Marker.REQUEST_CONTENT_ENCODING,
+                marker == null ? encoding : marker + "," + encoding);
+    }
+
+    /**
+     * Returns true if the given content encoding is one of the values of the
+     * {@link Marker#REQUEST_CONTENT_ENCODING} marker. This method is intended
+     * only for internal use by the AWS SDK.
+     */
+    public boolean acceptsRequestContentEncoding(String encoding) {
+        String marker = markers.get(Marker.REQUEST_CONTENT_ENCODING);
+        if (marker == null)
+            return false;
+        for (String accepted : marker.split(",")) {
+            if (accepted.trim().equalsIgnoreCase(encoding))
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Appends the given client marker string to the existing one and returns
      * it.
@@ -16,7 +16,9 @@
 package com.amazonaws.auth;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.Request;
+import com.amazonaws.internal.FIFOCache;
 import com.amazonaws.util.AwsHostNameUtils;
 import com.amazonaws.util.BinaryUtils;
 import com.amazonaws.util.DateUtils;
@@ -33,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Signer implementation that signs requests with the AWS4 signing protocol.
@@ -42,11 +45,30 @@ public class AWS4Signer extends AbstractAWSSigner
 
     protected static final String ALGORITHM = "AWS4-HMAC-SHA256";
     protected static final String TERMINATOR = "aws4_request";
+    /**
+     * The content hash signed in place of the hash of a payload that is signed
+     * chunk by chunk as it is sent.
+     */
+    protected static final String STREAMING_CONTENT_SHA_256 =
+            "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+    /** The request content encoding of a payload signed chunk by chunk. */
+    public static final String AWS_CHUNKED_ENCODING = "aws-chunked";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
     private static final String DATE_PATTERN = "yyyyMMdd";
     private static final String TIME_PATTERN = "yyyyMMdd'T'HHmmss'Z'";
 
     /** Seconds in a week, which is the max expiration time Sig-v4 accepts */
     private final static long MAX_EXPIRATION_TIME_IN_SECONDS = 60 * 60 * 24 * 7;
+
+    /** Max number of derived signing keys kept in {@link #SIGNING_KEY_CACHE} */
+    private static final int MAX_SIGNING_KEY_CACHE_SIZE = 300;
+
+    /**
+     * Cache of derived signing keys, keyed by secret key, date stamp, region
+     * and service. Shared by all signer instances.
+     */
+    private static final FIFOCache<byte[]> SIGNING_KEY_CACHE =
+            new FIFOCache<byte[]>(MAX_SIGNING_KEY_CACHE_SIZE);
     /**
      * Service name override for use when the endpoint can't be used to
      * determine the service name.
@@ -292,6 +314,29 @@ public class AWS4Signer extends AbstractAWSSigner
         final String stringToSign = getStringToSign(algorithm, timeStamp, scope,
                 getCanonicalRequest(request, contentSha256));
 
+        final byte[] kSigning = deriveSigningKey(sanitizedCredentials, dateStamp,
+                regionName, serviceName);
+
+        final byte[] signature = sign(stringToSign.getBytes(StringUtils.UTF8), kSigning,
+                SigningAlgorithm.HmacSHA256);
+        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+    }
+
+    /**
+     * Returns the signing key for the given credentials and scope, deriving it
+     * only if it is not already in the signing key cache. The derived key only
+     * changes when the date stamp changes, so consecutive requests to the same
+     * region and service skip the four rounds of HMAC.
+     */
+    private byte[] deriveSigningKey(AWSCredentials sanitizedCredentials,
+            String dateStamp, String regionName, String serviceName) {
+        final String cacheKey = sanitizedCredentials.getAWSSecretKey() + "-"
+                + dateStamp + "-" + regionName + "-" + serviceName;
+        final byte[] cached = SIGNING_KEY_CACHE.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
         // AWS4 uses a series of derived keys, formed by hashing different
         // pieces of data
         final byte[] kSecret = ("AWS4" + sanitizedCredentials.getAWSSecretKey())
@@ -301,9 +346,8 @@ public class AWS4Signer extends AbstractAWSSigner
         final byte[] kService = sign(serviceName, kRegion, SigningAlgorithm.HmacSHA256);
         final byte[] kSigning = sign(TERMINATOR, kService, SigningAlgorithm.HmacSHA256);
 
-        final byte[] signature = sign(stringToSign.getBytes(StringUtils.UTF8), kSigning,
-                SigningAlgorithm.HmacSHA256);
-        return new HeaderSigningResult(timeStamp, scope, kSigning, signature);
+        SIGNING_KEY_CACHE.add(cacheKey, kSigning);
+        return kSigning;
     }
 
     protected final String getTimeStamp(long dateMilli) {
@@ -343,11 +387,14 @@ public class AWS4Signer extends AbstractAWSSigner
     /**
      * Calculate the hash of the request's payload. Subclass could override this
      * method to provide different values for "x-amz-content-sha256" header or
-     * do any other necessary set-ups on the request headers. (e.g. aws-chunked
-     * uses a pre-defined header value, and needs to change some headers
-     * relating to content-encoding and content-length.)
+     * do any other necessary set-ups on the request headers. If the payload is
+     * chunk-encoded, the pre-defined streaming value is returned instead, and
+     * the content length headers are set to those of the encoded payload.
      */
     protected String calculateContentHash(Request<?> request) {
+        if (useChunkEncoding(request)) {
+            return prepareChunkEncoding(request);
+        }
         final InputStream payloadStream = getBinaryRequestPayloadStream(request);
         payloadStream.mark(-1);
         final String contentSha256 = BinaryUtils.toHex(hash(payloadStream));
@@ -363,11 +410,122 @@ public class AWS4Signer extends AbstractAWSSigner
     /**
      * Subclass could override this method to perform any additional procedure
      * on the request payload, with access to the result from signing the
-     * header. (e.g. Signing the payload by chunk-encoding). The default
-     * implementation doesn't need to do anything.
+     * header. The default implementation wraps the payload in a stream that
+     * signs each chunk as it is read if the payload is chunk-encoded.
      */
-    protected void processRequestPayload(Request<?> request, HeaderSigningResult headerSigningResult) {
-        return;
+    protected void processRequestPayload(Request<?> request,
+            HeaderSigningResult headerSigningResult) {
+        if (useChunkEncoding(request)) {
+            request.setContent(new AwsChunkedEncodingInputStream(request.getContent(),
+                    headerSigningResult.getKSigning(), headerSigningResult.getDateTime(),
+                    headerSigningResult.getScope(),
+                    BinaryUtils.toHex(headerSigningResult.getSignature()), this));
+        }
+    }
+
+    /**
+     * Returns whether the payload of the request is signed chunk by chunk as
+     * it is sent, with aws-chunked encoding, rather than hashed as a whole
+     * before it is sent. The payload is then read only once, and needn't be
+     * buffered. By default, it is if the operation accepts the aws-chunked
+     * content encoding, as specified by the
+     * {@link com.amazonaws.RequestClientOptions.Marker#REQUEST_CONTENT_ENCODING}
+     * marker of the original request.
+     */
+    protected boolean useChunkEncoding(Request<?> request) {
+        return request.getContent() != null && acceptsChunkEncoding(request);
+    }
+
+    /**
+     * Returns whether the operation of the request accepts the aws-chunked
+     * content encoding.
+     */
+    private static boolean acceptsChunkEncoding(Request<?> request) {
+        final AmazonWebServiceRequest originalRequest = request.getOriginalRequest();
+        return originalRequest != null
+                && originalRequest.getRequestClientOptions()
+                        .acceptsRequestContentEncoding(AWS_CHUNKED_ENCODING);
+    }
+
+    /**
+     * Declares the aws-chunked content encoding of the payload, ahead of any
+     * encoding it already has, e.g. "aws-chunked,gzip" for a compressed
+     * payload.
+     */
+    private static void addChunkedContentEncoding(Request<?> request) {
+        String header = CONTENT_ENCODING;
+        String encoding = null;
+        for (final Map.Entry<String, String> entry : request.getHeaders().entrySet()) {
+            if (CONTENT_ENCODING.equalsIgnoreCase(entry.getKey())) {
+                header = entry.getKey();
+                encoding = entry.getValue();
+            }
+        }
+        if (encoding == null || encoding.trim().length() == 0) {
+            request.addHeader(header, AWS_CHUNKED_ENCODING);
+        } else if (!encoding.trim().startsWith(AWS_CHUNKED_ENCODING)) {
+            request.addHeader(header, AWS_CHUNKED_ENCODING + "," + encoding.trim());
+        }
+    }
+
+    /**
+     * Sets the headers of a chunk-encoded request: the length of the decoded
+     * payload, the length of the encoded payload, the streaming content hash,
+     * which is returned, and the content encoding.
+     */
+    private String prepareChunkEncoding(Request<?> request) {
+        final String contentLength = request.getHeaders().get("Content-Length");
+        final long originalContentLength;
+        if (contentLength != null) {
+            originalContentLength = Long.parseLong(contentLength);
+        } else {
+            /*
+             * The length of the decoded payload is signed, so a payload of
+             * unknown length has to be measured up front.
+             */
+            try {
+                originalContentLength = measureContentLength(request);
+            } catch (final IOException e) {
+                throw new AmazonClientException(
+                        "Cannot get the content-length of the request content.", e);
+            }
+        }
+        request.addHeader("x-amz-decoded-content-length",
+                Long.toString(originalContentLength));
+        // Make sure "Content-Length" header is not empty so that the http
+        // client won't cache the stream again to recover Content-Length
+        request.addHeader("Content-Length", Long.toString(
+                AwsChunkedEncodingInputStream.calculateStreamContentLength(
+                        originalContentLength)));
+        request.addHeader("x-amz-content-sha256", STREAMING_CONTENT_SHA_256);
+        // S3 takes chunk-signed uploads without the encoding being declared,
+        // other services require it
+        if (acceptsChunkEncoding(request)) {
+            addChunkedContentEncoding(request);
+        }
+        return STREAMING_CONTENT_SHA_256;
+    }
+
+    /**
+     * Read the content of the request to get the length of the stream. The
+     * content must support mark and reset.
+     */
+    protected static long measureContentLength(Request<?> request) throws IOException {
+        final InputStream content = request.getContent();
+        if (!content.markSupported()) {
+            throw new AmazonClientException("Failed to get content length");
+        }
+
+        long contentLength = 0;
+        final byte[] tmp = new byte[4096];
+        int read;
+        content.mark(-1);
+        while ((read = content.read(tmp)) != -1) {
+            contentLength += read;
+        }
+        content.reset();
+
+        return contentLength;
     }
 
     protected static class HeaderSigningResult {
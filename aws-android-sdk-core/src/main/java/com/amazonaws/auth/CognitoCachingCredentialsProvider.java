@@ -80,7 +80,13 @@ public class CognitoCachingCredentialsProvider
     private static final String USER_AGENT = CognitoCachingCredentialsProvider.class.getName()
             + "/" + VersionInfoUtils.getVersion();
     private final SharedPreferences prefs;
-    private String identityId;
+    private volatile String identityId;
+
+    /**
+     * Guards reads and writes of the identity id and credentials cached in
+     * {@link SharedPreferences}. It's never held while talking to the network.
+     */
+    private final Object cacheLock = new Object();
 
     private static final String ID_KEY = "identityId";
     private static final String AK_KEY = "accessKey";
@@ -390,6 +396,34 @@ public class CognitoCachingCredentialsProvider
         initialize();
     }
 
+    /**
+     * Constructs a new {@link CognitoCachingCredentialsProvider}, which will
+     * set up a link to the provider passed in using the enhanced authentication
+     * flow to get short-lived credentials from Amazon Cognito, which can be
+     * retrieved from {@link #getCredentials()}
+     * <p>
+     * This version of the constructor allows you to specify your own Identity
+     * Provider class and the Amazon Cognito client.
+     * </p>
+     *
+     * @param context The Android context to be used for the caching
+     * @param provider a reference to the provider in question, including what's
+     *            needed to interact with it to later connect with Amazon
+     *            Cognito
+     * @param cibClient Preconfigured CognitoIdentity client to make requests
+     *            with
+     */
+    public CognitoCachingCredentialsProvider(Context context, AWSCognitoIdentityProvider provider,
+            AmazonCognitoIdentityClient cibClient) {
+        super(provider, cibClient);
+        if (context == null) {
+            throw new IllegalArgumentException("context can't be null");
+        }
+        this.prefs = context.getSharedPreferences(DEFAULT_SHAREDPREFERENCES_NAME,
+                Context.MODE_PRIVATE);
+        initialize();
+    }
+
     private void initialize() {
         checkUpgrade();
         this.identityId = getCachedIdentityId();
@@ -425,44 +459,63 @@ public class CognitoCachingCredentialsProvider
         return identityId;
     }
 
+    /**
+     * Returns the current credentials, starting a new session if they're
+     * missing or about to expire. Refreshes are single-flight as in
+     * {@link CognitoCredentialsProvider#getCredentials()}. When there are no
+     * credentials in memory, valid ones cached in {@link SharedPreferences}
+     * are used before a new session is started.
+     */
     @Override
-    synchronized public AWSSessionCredentials getCredentials() {
+    public AWSSessionCredentials getCredentials() {
         if (sessionCredentials == null) {
-            loadCachedCredentials();
-        }
-        // return only if the credentials are valid
-        if (!needsNewSession()) {
-            return sessionCredentials;
+            loadCachedCredentialsIfMissing();
         }
-
         try {
             // super will validate loaded credentials
             // and fetch if necessary
-            super.getCredentials();
+            return super.getCredentials();
         } catch (NotAuthorizedException e) {
             Log.e(TAG, "Failure to get credentials", e);
             if (getLogins() != null) {
                 // If the fetch failed then the credentials don't
                 // match the current id, so clear them
                 super.setIdentityId(null);
-                super.getCredentials();
+                return super.getCredentials();
             }
             else {
                 throw e;
             }
         }
+    }
 
-        saveCredentials(sessionCredentials,
-                getSessionCredentitalsExpiration().getTime());
-
-        return sessionCredentials;
+    /**
+     * Loads the credentials cached in {@link SharedPreferences} under the
+     * refresh lock, so they can't overwrite the ones of a concurrent refresh.
+     */
+    private void loadCachedCredentialsIfMissing() {
+        refreshLock.lock();
+        try {
+            if (sessionCredentials == null) {
+                loadCachedCredentials();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
     }
-    
+
+    /**
+     * Starts a new session and saves the new credentials. Called with the
+     * refresh lock held.
+     */
     @Override
-    public void refresh() {
-        super.refresh();
-        saveCredentials(sessionCredentials,
-                getSessionCredentitalsExpiration().getTime());
+    protected void startSession() {
+        super.startSession();
+
+        Date expiration = getSessionCredentitalsExpiration();
+        if (expiration != null) {
+            saveCredentials(sessionCredentials, expiration.getTime());
+        }
     }
 
     @Override
@@ -484,7 +537,9 @@ public class CognitoCachingCredentialsProvider
         super.clear();
 
         // clear cached identity id and credentials
-        prefs.edit().clear().apply();
+        synchronized (cacheLock) {
+            prefs.edit().clear().apply();
+        }
     }
 
     /*
@@ -496,12 +551,14 @@ public class CognitoCachingCredentialsProvider
     public void clearCredentials() {
         super.clearCredentials();
         Log.d(TAG, "Clearing credentials from SharedPreferences");
-        prefs.edit()
-                .remove(namespace(AK_KEY))
-                .remove(namespace(SK_KEY))
-                .remove(namespace(ST_KEY))
-                .remove(namespace(EXP_KEY))
-                .apply();
+        synchronized (cacheLock) {
+            prefs.edit()
+                    .remove(namespace(AK_KEY))
+                    .remove(namespace(SK_KEY))
+                    .remove(namespace(ST_KEY))
+                    .remove(namespace(EXP_KEY))
+                    .apply();
+        }
     }
 
     /**
@@ -510,7 +567,10 @@ public class CognitoCachingCredentialsProvider
      * @return cached identity id, null if it doesn't exist
      */
     public String getCachedIdentityId() {
-        String cachedIdentityId = prefs.getString(namespace(ID_KEY), null);
+        String cachedIdentityId;
+        synchronized (cacheLock) {
+            cachedIdentityId = prefs.getString(namespace(ID_KEY), null);
+        }
         if (cachedIdentityId != null && identityId == null) {
             super.setIdentityId(cachedIdentityId);
         }
@@ -522,21 +582,25 @@ public class CognitoCachingCredentialsProvider
      */
     void loadCachedCredentials() {
         Log.d(TAG, "Loading credentials from SharedPreferences");
-        sessionCredentialsExpiration = new Date(prefs.getLong(namespace(EXP_KEY), 0));
-        // make sure we have valid data in prefs
-        boolean hasAK = prefs.contains(namespace(AK_KEY));
-        boolean hasSK = prefs.contains(namespace(SK_KEY));
-        boolean hasST = prefs.contains(namespace(ST_KEY));
-        if (!hasAK || !hasSK || !hasST) {
-            Log.d(TAG, "No valid credentials found in SharedPreferences");
-            sessionCredentialsExpiration = null;
-            return;
+        synchronized (cacheLock) {
+            // make sure we have valid data in prefs
+            boolean hasAK = prefs.contains(namespace(AK_KEY));
+            boolean hasSK = prefs.contains(namespace(SK_KEY));
+            boolean hasST = prefs.contains(namespace(ST_KEY));
+            if (!hasAK || !hasSK || !hasST) {
+                Log.d(TAG, "No valid credentials found in SharedPreferences");
+                sessionCredentialsExpiration = null;
+                return;
+            }
+            String AK = prefs.getString(namespace(AK_KEY), null);
+            String SK = prefs.getString(namespace(SK_KEY), null);
+            String ST = prefs.getString(namespace(ST_KEY), null);
+
+            // the expiration is set first, so the credentials are never seen
+            // with a stale one
+            sessionCredentialsExpiration = new Date(prefs.getLong(namespace(EXP_KEY), 0));
+            sessionCredentials = new BasicSessionCredentials(AK, SK, ST);
         }
-        String AK = prefs.getString(namespace(AK_KEY), null);
-        String SK = prefs.getString(namespace(SK_KEY), null);
-        String ST = prefs.getString(namespace(ST_KEY), null);
-
-        sessionCredentials = new BasicSessionCredentials(AK, SK, ST);
     }
 
     /**
@@ -546,12 +610,14 @@ public class CognitoCachingCredentialsProvider
             long time) {
         Log.d(TAG, "Saving credentials to SharedPreferences");
         if (sessionCredentials != null) {
-            prefs.edit()
-                    .putString(namespace(AK_KEY), sessionCredentials.getAWSAccessKeyId())
-                    .putString(namespace(SK_KEY), sessionCredentials.getAWSSecretKey())
-                    .putString(namespace(ST_KEY), sessionCredentials.getSessionToken())
-                    .putLong(namespace(EXP_KEY), time)
-                    .apply();
+            synchronized (cacheLock) {
+                prefs.edit()
+                        .putString(namespace(AK_KEY), sessionCredentials.getAWSAccessKeyId())
+                        .putString(namespace(SK_KEY), sessionCredentials.getAWSSecretKey())
+                        .putString(namespace(ST_KEY), sessionCredentials.getSessionToken())
+                        .putLong(namespace(EXP_KEY), time)
+                        .apply();
+            }
         }
     }
 
@@ -561,11 +627,13 @@ public class CognitoCachingCredentialsProvider
      */
     private void saveIdentityId(String identityId) {
         Log.d(TAG, "Saving identity id to SharedPreferences");
-        this.identityId = identityId;
+        synchronized (cacheLock) {
+            this.identityId = identityId;
 
-        prefs.edit()
-                .putString(namespace(ID_KEY), identityId)
-                .apply();
+            prefs.edit()
+                    .putString(namespace(ID_KEY), identityId)
+                    .apply();
+        }
     }
 
     @Override
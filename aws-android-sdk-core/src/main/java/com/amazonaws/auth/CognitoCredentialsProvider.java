@@ -32,9 +32,15 @@ import com.amazonaws.services.securitytoken.model.AssumeRoleWithWebIdentityReque
 import com.amazonaws.services.securitytoken.model.AssumeRoleWithWebIdentityResult;
 import com.amazonaws.services.securitytoken.model.Credentials;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * AWSCredentialsProvider implementation that uses the Amazon Cognito Identity
@@ -55,11 +61,31 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
     /** Default threshold for refreshing session credentials */
     public static final int DEFAULT_THRESHOLD_SECONDS = 500;
 
+    /** Default threshold for refreshing session credentials in the background */
+    public static final int DEFAULT_PREFETCH_THRESHOLD_SECONDS = 900;
+
+    private static final Log LOG = LogFactory.getLog(CognitoCredentialsProvider.class);
+
     /** The current session credentials */
-    protected AWSSessionCredentials sessionCredentials;
+    protected volatile AWSSessionCredentials sessionCredentials;
 
     /** The expiration time for the current session credentials */
-    protected Date sessionCredentialsExpiration;
+    protected volatile Date sessionCredentialsExpiration;
+
+    /**
+     * Guards session refreshes so that only one thread at a time talks to
+     * Amazon Cognito or STS. Package-private so that subclasses in this
+     * package can update the session under the same lock.
+     */
+    final ReentrantLock refreshLock = new ReentrantLock();
+
+    /** Whether a background refresh has been submitted and not yet finished */
+    private final AtomicBoolean prefetchPending = new AtomicBoolean(false);
+
+    /** Executor for background refreshes, null if they are disabled */
+    private volatile Executor prefetchExecutor;
+
+    private volatile int prefetchThreshold = DEFAULT_PREFETCH_THRESHOLD_SECONDS;
 
     /** The current Token */
     protected String token;
@@ -364,13 +390,47 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
      * If the current session has expired/credentials are invalid, a new session
      * is started, establishing the credentials. In either case, those
      * credentials are returned
+     * <p>
+     * Only one thread refreshes the session at a time. While the current
+     * credentials are within the refresh threshold but not yet expired, other
+     * threads keep using them instead of waiting for the refresh; once they
+     * have expired, other threads wait for the refresh in progress and use its
+     * result.
+     * </p>
      */
     @Override
     public AWSSessionCredentials getCredentials() {
-        if (needsNewSession()) {
-            startSession();
+        final AWSSessionCredentials current = sessionCredentials;
+        if (!needsNewSession()) {
+            schedulePrefetchIfNeeded();
+            return current;
+        }
+
+        if (current != null && !isExpired()) {
+            if (refreshLock.tryLock()) {
+                try {
+                    if (needsNewSession()) {
+                        startSession();
+                    }
+                } finally {
+                    refreshLock.unlock();
+                }
+                return sessionCredentials;
+            }
+            // another thread is refreshing, the current credentials are still
+            // good to use
+            return current;
+        }
+
+        refreshLock.lock();
+        try {
+            if (needsNewSession()) {
+                startSession();
+            }
+            return sessionCredentials;
+        } finally {
+            refreshLock.unlock();
         }
-        return sessionCredentials;
     }
 
     /**
@@ -455,6 +515,80 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
         return this.refreshThreshold;
     }
 
+    /**
+     * Set the executor used to refresh the session credentials in the
+     * background. When set, {@link #getCredentials()} submits a refresh to this
+     * executor once the credentials are within the prefetch threshold, and
+     * keeps returning the current credentials meanwhile, so that callers don't
+     * block on Amazon Cognito or STS. Set to null (the default) to disable
+     * background refreshes.
+     *
+     * @param prefetchExecutor The executor to refresh credentials on, or null
+     */
+    public void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Set the executor used to refresh the session credentials in the
+     * background. Returns a reference to the object so methods can be chained.
+     *
+     * @see #setPrefetchExecutor(Executor)
+     * @param prefetchExecutor The executor to refresh credentials on, or null
+     * @return A reference to this updated object so that method calls can be
+     *         chained together.
+     */
+    public CognitoCredentialsProvider withPrefetchExecutor(Executor prefetchExecutor) {
+        this.setPrefetchExecutor(prefetchExecutor);
+        return this;
+    }
+
+    /**
+     * Get the executor used to refresh the session credentials in the
+     * background.
+     *
+     * @return The executor to refresh credentials on, null if background
+     *         refreshes are disabled
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * Set the prefetch threshold for the session credentials in seconds. When
+     * a prefetch executor is set, credentials are refreshed in the background
+     * once their remaining lifetime drops below this value. It should be
+     * greater than the refresh threshold.
+     *
+     * @param prefetchThreshold The new prefetch threshold in seconds
+     */
+    public void setPrefetchThreshold(int prefetchThreshold) {
+        this.prefetchThreshold = prefetchThreshold;
+    }
+
+    /**
+     * Set the prefetch threshold for the session credentials in seconds.
+     * Returns a reference to the object so methods can be chained.
+     *
+     * @see #setPrefetchThreshold(int)
+     * @param prefetchThreshold The new prefetch threshold in seconds
+     * @return A reference to this updated object so that method calls can be
+     *         chained together.
+     */
+    public CognitoCredentialsProvider withPrefetchThreshold(int prefetchThreshold) {
+        this.setPrefetchThreshold(prefetchThreshold);
+        return this;
+    }
+
+    /**
+     * Get the prefetch threshold for the session credentials in seconds.
+     *
+     * @return The prefetch threshold in seconds
+     */
+    public int getPrefetchThreshold() {
+        return prefetchThreshold;
+    }
+
     protected void setIdentityId(String identityId) {
         identityProvider.identityChanged(identityId);
     }
@@ -524,7 +658,12 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
 
     @Override
     public void refresh() {
-        startSession();
+        refreshLock.lock();
+        try {
+            startSession();
+        } finally {
+            refreshLock.unlock();
+        }
     }
 
     /**
@@ -543,8 +682,13 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
      * not the identity Id.
      */
     public void clearCredentials() {
-        sessionCredentials = null;
-        sessionCredentialsExpiration = null;
+        refreshLock.lock();
+        try {
+            sessionCredentials = null;
+            sessionCredentialsExpiration = null;
+        } finally {
+            refreshLock.unlock();
+        }
     }
 
     /**
@@ -714,11 +858,72 @@ public class CognitoCredentialsProvider implements AWSCredentialsProvider {
         if (sessionCredentials == null) {
             return true;
         }
-        long currentTime = System.currentTimeMillis()
-                - SDKGlobalConfiguration.getGlobalTimeOffset() * 1000;
-        long timeRemaining = sessionCredentialsExpiration.getTime()
-                - currentTime;
-        return timeRemaining < (refreshThreshold * 1000);
+        return getTimeRemaining() < (refreshThreshold * 1000L);
+    }
+
+    /**
+     * Returns true if there are no session credentials or they have already
+     * expired, i.e. they can't be used while a new session is being started.
+     */
+    private boolean isExpired() {
+        if (sessionCredentials == null) {
+            return true;
+        }
+        return getTimeRemaining() <= 0;
+    }
+
+    /**
+     * Returns the time in milliseconds until the current session credentials
+     * expire, corrected by the global time offset.
+     */
+    private long getTimeRemaining() {
+        final Date expiration = sessionCredentialsExpiration;
+        if (expiration == null) {
+            return 0;
+        }
+        final long currentTime = System.currentTimeMillis()
+                - SDKGlobalConfiguration.getGlobalTimeOffset() * 1000L;
+        return expiration.getTime() - currentTime;
+    }
+
+    /**
+     * Submits a background refresh to the prefetch executor if one is set,
+     * the current credentials are within the prefetch threshold and no other
+     * refresh is pending or in progress.
+     */
+    void schedulePrefetchIfNeeded() {
+        final Executor executor = prefetchExecutor;
+        if (executor == null || sessionCredentials == null || refreshLock.isLocked()
+                || getTimeRemaining() >= prefetchThreshold * 1000L
+                || !prefetchPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshLock.lock();
+                        try {
+                            if (sessionCredentials != null
+                                    && getTimeRemaining() < prefetchThreshold * 1000L) {
+                                refresh();
+                            }
+                        } finally {
+                            refreshLock.unlock();
+                        }
+                    } catch (final RuntimeException e) {
+                        // the next call to getCredentials() will retry
+                        LOG.warn("Failed to refresh credentials in the background", e);
+                    } finally {
+                        prefetchPending.set(false);
+                    }
+                }
+            });
+        } catch (final RuntimeException e) {
+            prefetchPending.set(false);
+            LOG.warn("Unable to schedule a background credentials refresh", e);
+        }
     }
 
     /**
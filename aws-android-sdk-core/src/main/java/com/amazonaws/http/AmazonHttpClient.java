@@ -34,6 +34,8 @@ import com.amazonaws.handlers.RequestHandler2;
 import com.amazonaws.internal.CRC32MismatchException;
 import com.amazonaws.metrics.AwsSdkMetrics;
 import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.retry.CircuitBreaker;
+import com.amazonaws.retry.RetryBudget;
 import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.util.AWSRequestMetrics;
@@ -91,6 +93,18 @@ public class AmazonHttpClient {
 
     private final HttpRequestFactory requestFactory = new HttpRequestFactory();
 
+    /**
+     * The retry budget shared by the requests of this client, or null if
+     * retries aren't limited by a budget.
+     */
+    private final RetryBudget retryBudget;
+
+    /**
+     * The circuit breaker failing requests to unhealthy endpoints fast, or null
+     * if there is none.
+     */
+    private final CircuitBreaker circuitBreaker;
+
     /**
      * Constructs a new AWS client using the specified client configuration
      * options (ex: max retry attempts, proxy settings, etc).
@@ -129,9 +143,7 @@ public class AmazonHttpClient {
      * @param httpClient client specific HttpClient
      */
     public AmazonHttpClient(ClientConfiguration config, HttpClient httpClient) {
-        this.config = config;
-        this.httpClient = httpClient;
-        this.requestMetricCollector = null;
+        this(config, httpClient, null);
     }
 
     /**
@@ -152,6 +164,13 @@ public class AmazonHttpClient {
         this.config = config;
         this.httpClient = httpClient;
         this.requestMetricCollector = requestMetricCollector;
+        this.retryBudget = config.getRetryBudgetCapacity() > 0
+                ? new RetryBudget(config.getRetryBudgetCapacity())
+                : null;
+        this.circuitBreaker = config.getCircuitBreakerFailureThreshold() > 0
+                ? new CircuitBreaker(config.getCircuitBreakerFailureThreshold(),
+                        config.getCircuitBreakerResetTimeout())
+                : null;
     }
 
     /**
@@ -277,10 +296,14 @@ public class AmazonHttpClient {
         // user-agent.
         setUserAgent(request);
         request.addHeader(HEADER_SDK_TRANSACTION_ID, UUID.randomUUID().toString());
+        // Compress before signing so that the signature covers the compressed
+        // payload, which is also the payload replayed on retries.
+        compressRequest(request, awsRequestMetrics);
         int requestCount = 0;
         long lastBackoffDelay = 0;
         URI redirectedURI = null;
         AmazonClientException retriedException = null;
+        AmazonClientException lastRetriedException = null;
 
         // Make a copy of the original request params and headers so that we can
         // permute it in this loop and start over with the original every time.
@@ -312,7 +335,13 @@ public class AmazonHttpClient {
                 request.setResourcePath(redirectedURI.getPath());
             }
 
+            final String endpoint = request.getEndpoint().toString();
             try {
+                if (circuitBreaker != null && !circuitBreaker.allowRequest(endpoint)) {
+                    throw new AmazonClientException("Unable to execute HTTP request: "
+                            + endpoint + " is failing, not sending requests to it until it "
+                            + "recovers", retriedException);
+                }
                 if (requestCount > 1) { // retry
                     awsRequestMetrics.startEvent(Field.RetryPauseTime);
                     try {
@@ -350,6 +379,7 @@ public class AmazonHttpClient {
                 httpRequest = requestFactory.createHttpRequest(request, config,
                         executionContext);
 
+                lastRetriedException = retriedException;
                 retriedException = null;
                 awsRequestMetrics.startEvent(Field.HttpRequestTime);
                 try {
@@ -360,6 +390,12 @@ public class AmazonHttpClient {
 
                 if (isRequestSuccessful(httpResponse)) {
                     awsRequestMetrics.addProperty(Field.StatusCode, httpResponse.getStatusCode());
+                    if (circuitBreaker != null) {
+                        circuitBreaker.recordSuccess(endpoint);
+                    }
+                    if (retryBudget != null) {
+                        retryBudget.releaseOnSuccess(lastRetriedException);
+                    }
                     /*
                      * If we get back any 2xx status code, then we know we
                      * should treat the service call as successful.
@@ -390,6 +426,7 @@ public class AmazonHttpClient {
                     awsRequestMetrics.addProperty(Field.AWSRequestID, ase.getRequestId());
                     awsRequestMetrics.addProperty(Field.AWSErrorCode, ase.getErrorCode());
                     awsRequestMetrics.addProperty(Field.StatusCode, ase.getStatusCode());
+                    recordOutcome(endpoint, ase);
 
                     if (!shouldRetry(request.getOriginalRequest(),
                             httpRequest.getContent(),
@@ -422,6 +459,7 @@ public class AmazonHttpClient {
 
                 AmazonClientException ace = new AmazonClientException(
                         "Unable to execute HTTP request: " + ioe.getMessage(), ioe);
+                recordOutcome(endpoint, ace);
                 if (!shouldRetry(request.getOriginalRequest(),
                         httpRequest.getContent(),
                         ace,
@@ -497,6 +535,22 @@ public class AmazonHttpClient {
         }
     }
 
+    /**
+     * Compresses the payload of the specified request with gzip if request
+     * compression is enabled and the operation accepts a gzip-encoded payload,
+     * recording the number of bytes saved.
+     */
+    void compressRequest(Request<?> request, AWSRequestMetrics awsRequestMetrics) {
+        if (!config.isRequestCompressionEnabled() || !RequestCompression.acceptsGzip(request)) {
+            return;
+        }
+        long saved = RequestCompression.compress(request,
+                config.getRequestCompressionThreshold());
+        if (saved > 0) {
+            awsRequestMetrics.setCounter(Field.RequestCompressionBytesSaved, saved);
+        }
+    }
+
     /**
      * Sets a User-Agent for the specified request, taking into account any
      * custom data.
@@ -584,9 +638,35 @@ public class AmazonHttpClient {
 
         // Pass all the context information to the RetryCondition and let it
         // decide whether it should be retried.
-        return retryPolicy.getRetryCondition().shouldRetry(originalRequest,
+        if (!retryPolicy.getRetryCondition().shouldRetry(originalRequest,
                 exception,
-                retries);
+                retries)) {
+            return false;
+        }
+
+        // Don't retry once the retries of this client have spent the budget
+        if (retryBudget != null && !retryBudget.acquireRetry(exception)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Retry budget exhausted, not retrying");
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records whether the endpoint of a failed request is healthy with the
+     * circuit breaker, if any.
+     */
+    private void recordOutcome(String endpoint, AmazonClientException exception) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        if (CircuitBreaker.isFailure(exception)) {
+            circuitBreaker.recordFailure(endpoint);
+        } else {
+            circuitBreaker.recordSuccess(endpoint);
+        }
     }
 
     private static boolean isTemporaryRedirect(HttpResponse response) {
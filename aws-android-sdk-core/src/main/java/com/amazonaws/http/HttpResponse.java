@@ -17,9 +17,12 @@ package com.amazonaws.http;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -119,6 +122,7 @@ public class HttpResponse {
         private int statusCode;
         private InputStream content;
         private final Map<String, String> headers = new HashMap<String, String>();
+        private Map<String, List<String>> headerFields;
 
         /**
          * Sets the status text.
@@ -165,14 +169,87 @@ public class HttpResponse {
             return this;
         }
 
+        /**
+         * Sets the header fields as returned by the HTTP connection, such as
+         * {@link java.net.URLConnection#getHeaderFields()}. The response only
+         * exposes the first value of each header, and the header with a null
+         * key is skipped. The header fields are only copied if all the headers
+         * are asked for, and headers added with {@link #header(String, String)}
+         * take precedence.
+         *
+         * @param headerFields header fields with lists of values
+         * @return builder itself
+         */
+        public Builder headerFields(Map<String, List<String>> headerFields) {
+            this.headerFields = headerFields;
+            return this;
+        }
+
         /**
          * Builds an instance of {@link HttpResponse}
          *
          * @return a new instance of {@link HttpResponse}
          */
         public HttpResponse build() {
-            return new HttpResponse(statusText, statusCode,
-                    Collections.unmodifiableMap(headers), content);
+            Map<String, String> responseHeaders;
+            if (headerFields == null) {
+                responseHeaders = Collections.unmodifiableMap(headers);
+            } else if (headers.isEmpty()) {
+                responseHeaders = new HeaderFieldsMap(headerFields);
+            } else {
+                Map<String, String> merged = new HashMap<String, String>(
+                        new HeaderFieldsMap(headerFields));
+                merged.putAll(headers);
+                responseHeaders = Collections.unmodifiableMap(merged);
+            }
+            return new HttpResponse(statusText, statusCode, responseHeaders, content);
+        }
+    }
+
+    /**
+     * An unmodifiable view of header fields with lists of values, which looks
+     * up single headers directly and only copies the first value of every
+     * header when they are all asked for.
+     */
+    private static final class HeaderFieldsMap extends AbstractMap<String, String> {
+        private final Map<String, List<String>> headerFields;
+        private volatile Map<String, String> headers;
+
+        HeaderFieldsMap(Map<String, List<String>> headerFields) {
+            this.headerFields = headerFields;
+        }
+
+        @Override
+        public String get(Object key) {
+            if (key == null) {
+                return null;
+            }
+            List<String> values = headerFields.get(key);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            Map<String, String> copy = headers;
+            if (copy == null) {
+                copy = new HashMap<String, String>();
+                for (Map.Entry<String, List<String>> header : headerFields.entrySet()) {
+                    // skip null field that stores connection status
+                    if (header.getKey() == null || header.getValue() == null
+                            || header.getValue().isEmpty()) {
+                        continue;
+                    }
+                    copy.put(header.getKey(), header.getValue().get(0));
+                }
+                copy = Collections.unmodifiableMap(copy);
+                headers = copy;
+            }
+            return copy.entrySet();
         }
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.RequestClientOptions;
+import com.amazonaws.util.HttpUtils;
+import com.amazonaws.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the payload of requests to operations that accept a gzip-encoded
+ * payload.
+ * <p>
+ * The payload is compressed into a buffer before the request is signed, so
+ * that the signature covers the compressed payload and the same compressed
+ * payload can be replayed on retries. The parameters of a POST request without
+ * content, which would otherwise be sent form-encoded in the body, are
+ * compressed as the body.
+ */
+final class RequestCompression {
+    static final String GZIP = "gzip";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String FORM_URL_ENCODED =
+            "application/x-www-form-urlencoded; charset=utf-8";
+    private static final int BUFFER_SIZE = 8192;
+
+    private RequestCompression() {
+    }
+
+    /**
+     * Returns true if the operation of the specified request accepts a
+     * gzip-encoded payload.
+     */
+    static boolean acceptsGzip(Request<?> request) {
+        AmazonWebServiceRequest awsreq = request.getOriginalRequest();
+        if (awsreq == null) {
+            return false;
+        }
+        RequestClientOptions opts = awsreq.getRequestClientOptions();
+        return opts != null && opts.acceptsRequestContentEncoding(GZIP);
+    }
+
+    /**
+     * Compresses the payload of the specified request with gzip if it's at
+     * least the given number of bytes and compressing makes it smaller.
+     * Requests that already have a content encoding, or whose content can't be
+     * read again or has an unknown length, are left as they are.
+     *
+     * @param request The request to compress.
+     * @param threshold The minimum size in bytes of the payload to compress.
+     * @return The number of bytes saved, or 0 if the request wasn't
+     *         compressed.
+     */
+    static long compress(Request<?> request, int threshold) {
+        if (request.getHeaders().containsKey(HEADER_CONTENT_ENCODING)) {
+            return 0;
+        }
+        final InputStream content = request.getContent();
+        final boolean formEncoded = content == null;
+        byte[] payload;
+        if (formEncoded) {
+            if (!HttpUtils.usePayloadForQueryParameters(request)) {
+                return 0;
+            }
+            String encodedParams = HttpUtils.encodeParameters(request);
+            if (encodedParams == null) {
+                return 0;
+            }
+            payload = encodedParams.getBytes(StringUtils.UTF8);
+        } else {
+            long length = contentLength(request);
+            if (length < threshold || length > Integer.MAX_VALUE || !content.markSupported()) {
+                return 0;
+            }
+            payload = readFully(content, (int) length);
+        }
+        if (payload.length < threshold) {
+            return 0;
+        }
+
+        byte[] compressed = gzip(payload);
+        if (compressed.length >= payload.length) {
+            if (!formEncoded) {
+                reset(content);
+            }
+            return 0;
+        }
+        if (formEncoded) {
+            request.setParameters(new LinkedHashMap<String, String>());
+            if (!request.getHeaders().containsKey(HEADER_CONTENT_TYPE)) {
+                request.addHeader(HEADER_CONTENT_TYPE, FORM_URL_ENCODED);
+            }
+        }
+        request.setContent(new ByteArrayInputStream(compressed));
+        request.addHeader(HEADER_CONTENT_LENGTH, String.valueOf(compressed.length));
+        request.addHeader(HEADER_CONTENT_ENCODING, GZIP);
+        return payload.length - compressed.length;
+    }
+
+    /**
+     * Returns the Content-Length of the specified request, or -1 if it's
+     * unknown.
+     */
+    private static long contentLength(Request<?> request) {
+        String contentLength = request.getHeaders().get(HEADER_CONTENT_LENGTH);
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the given number of bytes of the content, marking it first so that
+     * it can be reset if the compressed payload isn't used.
+     */
+    private static byte[] readFully(InputStream content, int length) {
+        content.mark(length + 1);
+        byte[] payload = new byte[length];
+        int offset = 0;
+        try {
+            while (offset < length) {
+                int read = content.read(payload, offset, length - offset);
+                if (read == -1) {
+                    throw new AmazonClientException("Request content ended after "
+                            + offset + " of " + length + " bytes");
+                }
+                offset += read;
+            }
+        } catch (IOException e) {
+            throw new AmazonClientException("Unable to read request content to compress: "
+                    + e.getMessage(), e);
+        }
+        return payload;
+    }
+
+    private static void reset(InputStream content) {
+        try {
+            content.reset();
+        } catch (IOException e) {
+            throw new AmazonClientException("Unable to reset request content after reading it "
+                    + "to compress: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] gzip(byte[] payload) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(payload.length / 4);
+            GZIPOutputStream gos = new GZIPOutputStream(baos, BUFFER_SIZE);
+            gos.write(payload);
+            gos.close();
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new AmazonClientException("Unable to compress request: " + e.getMessage(), e);
+        }
+    }
+}
@@ -20,8 +20,11 @@ import com.amazonaws.ClientConfiguration;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.amazonaws.internal.SdkFilterInputStream;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
@@ -29,9 +32,14 @@ import java.net.URL;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -46,6 +54,15 @@ import javax.net.ssl.TrustManager;
  * some issue when talking to S3 service. See <a
  * href="http://docs.aws.amazon.com/AmazonS3/latest/API/RESTObjectPUT.html">S3's
  * Put Object API</a> for the requirement of handling 100-continue.
+ * <p>
+ * The connections themselves are kept alive and pooled by the platform's
+ * {@link HttpURLConnection} implementation, which is shared by the whole
+ * process. This client bounds the number of its connections open at once to
+ * {@link ClientConfiguration#getMaxConnections()}, waiting up to the connection
+ * timeout for one to be released. A connection is released when its response
+ * content is fully read or closed, which lets the platform reuse it. A
+ * connection that failed is disconnected instead, so it's never reused, and
+ * {@link #shutdown()} disconnects all the connections still open.
  */
 public class UrlHttpClient implements HttpClient {
 
@@ -53,74 +70,205 @@ public class UrlHttpClient implements HttpClient {
     private static final Log log = LogFactory.getLog(UrlHttpClient.class);
 
     private final ClientConfiguration config;
+    /** Bounds the number of connections open at once. */
+    private final Semaphore connectionPermits;
+    /** The connections open, which are disconnected on shutdown. */
+    private final Set<HttpURLConnection> openConnections = Collections
+            .newSetFromMap(new ConcurrentHashMap<HttpURLConnection, Boolean>());
+    private volatile boolean shutdown = false;
 
     public UrlHttpClient(ClientConfiguration config) {
         this.config = config;
+        this.connectionPermits = new Semaphore(Math.max(1, config.getMaxConnections()), true);
     }
 
     @Override
     public HttpResponse execute(final HttpRequest request) throws IOException {
+        if (shutdown) {
+            throw new IllegalStateException("The HTTP client has been shut down");
+        }
         final URL url = request.getUri().toURL();
-        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        final CurlBuilder curlBuilder = config.isCurlLogging()
-                ? new CurlBuilder(request.getUri().toURL()) : null;
+        acquireConnectionPermit(url);
+        HttpURLConnection urlConnection = null;
+        try {
+            urlConnection = getUrlConnection(url);
+        } finally {
+            if (urlConnection == null) {
+                // the connection couldn't be opened, don't leak its permit
+                connectionPermits.release();
+            }
+        }
+        final Connection connection = new Connection(urlConnection);
+        boolean succeeded = false;
+        try {
+            final CurlBuilder curlBuilder = config.isCurlLogging()
+                    ? new CurlBuilder(request.getUri().toURL()) : null;
 
-        configureConnection(request, connection);
-        applyHeadersAndMethod(request, connection, curlBuilder);
-        writeContentToConnection(request, connection, curlBuilder);
+            configureConnection(request, connection.urlConnection);
+            applyHeadersAndMethod(request, connection.urlConnection, curlBuilder);
+            writeContentToConnection(request, connection.urlConnection, curlBuilder);
 
-        if (curlBuilder != null) {
-            if (curlBuilder.isValid()) {
-                printToLog(curlBuilder.build());
-            } else {
-                printToLog("Failed to create curl, content too long");
+            if (curlBuilder != null) {
+                if (curlBuilder.isValid()) {
+                    printToLog(curlBuilder.build());
+                } else {
+                    printToLog("Failed to create curl, content too long");
+                }
+            }
+
+            final HttpResponse response = createHttpResponse(request,
+                    connection.urlConnection, connection);
+            succeeded = true;
+            return response;
+        } finally {
+            if (!succeeded) {
+                // Never let the platform reuse a connection in an unknown
+                // state.
+                connection.urlConnection.disconnect();
+                connection.release();
             }
         }
+    }
 
-        return createHttpResponse(request, connection);
+    /**
+     * Waits for fewer than the maximum number of connections to be open, up
+     * to the connection timeout.
+     */
+    private void acquireConnectionPermit(URL url) throws IOException {
+        final int timeout = config.getConnectionTimeout();
+        try {
+            if (timeout <= 0) {
+                connectionPermits.acquire();
+            } else if (!connectionPermits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout waiting for a connection to " + url.getHost()
+                        + "; all " + config.getMaxConnections() + " connections are in use");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection to "
+                    + url.getHost());
+        }
     }
 
     HttpResponse createHttpResponse(final HttpRequest request, final HttpURLConnection connection)
             throws IOException {
+        return createHttpResponse(request, connection, null);
+    }
+
+    /**
+     * @param lease the lease of the connection, released once the response
+     *            content is read or closed; or null.
+     */
+    private HttpResponse createHttpResponse(final HttpRequest request,
+            final HttpURLConnection connection, final Connection lease) throws IOException {
         // connection.setDoOutput(true);
         final String statusText = connection.getResponseMessage();
         final int statusCode = connection.getResponseCode();
-        InputStream content = connection.getErrorStream();
-        if (content == null) {
-            // HEAD method doesn't have a body
-            if (!request.getMethod().equals("HEAD")) {
-                try {
-                    content = connection.getInputStream();
-                } catch (final IOException ioe) {
-                    // getInputStream() can throw an exception when there is no
-                    // input stream.
-                }
+        InputStream content = null;
+        // Only an error response has an error stream, and HEAD method doesn't
+        // have a body
+        if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            content = connection.getErrorStream();
+        }
+        if (content == null && !request.getMethod().equals("HEAD")) {
+            try {
+                content = connection.getInputStream();
+            } catch (final IOException ioe) {
+                // getInputStream() can throw an exception when there is no
+                // input stream.
             }
         }
 
-        final HttpResponse.Builder builder = HttpResponse.builder()
-                .statusCode(statusCode)
-                .statusText(statusText)
-                .content(content);
-        for (final Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
-            // skip null field that stores connection status
-            if (header.getKey() == null) {
-                continue;
+        if (lease != null) {
+            if (content == null) {
+                lease.release();
+            } else {
+                content = new ConnectionReleasingInputStream(content, lease);
             }
-            // No AWS service return a list of header values, so it's safe to
-            // take the first one.
-            builder.header(header.getKey(), header.getValue().get(0));
         }
 
-        return builder.build();
+        // No AWS service return a list of header values, so the response
+        // takes the first one, and only when it's asked for.
+        return HttpResponse.builder()
+                .statusCode(statusCode)
+                .statusText(statusText)
+                .content(content)
+                .headerFields(connection.getHeaderFields())
+                .build();
     }
 
     /**
-     * This is no op.
+     * Disconnects all the connections still open, and fails any further
+     * request.
      */
     @Override
     public void shutdown() {
-        // No op
+        shutdown = true;
+        for (final HttpURLConnection connection : openConnections) {
+            connection.disconnect();
+        }
+        openConnections.clear();
+    }
+
+    /**
+     * An open connection, which holds one of the connection permits until it's
+     * released.
+     */
+    private final class Connection {
+        private final HttpURLConnection urlConnection;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        Connection(HttpURLConnection urlConnection) {
+            this.urlConnection = urlConnection;
+            openConnections.add(urlConnection);
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                openConnections.remove(urlConnection);
+                connectionPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Releases the connection once the response content has been read to the
+     * end or closed, at which point the platform can reuse it.
+     */
+    private static final class ConnectionReleasingInputStream extends SdkFilterInputStream {
+        private final Connection connection;
+
+        ConnectionReleasingInputStream(InputStream in, Connection connection) {
+            super(in);
+            this.connection = connection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b == -1) {
+                connection.release();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count == -1) {
+                connection.release();
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                connection.release();
+            }
+        }
     }
 
     /**
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+
+import java.util.Random;
+
+/**
+ * A set of jittered exponential back-off strategies. The delays are randomized
+ * so that clients which failed at the same time don't retry at the same time.
+ * Each thread draws from its own random source, so concurrent retries don't
+ * contend on a shared one.
+ *
+ * @see <a href="https://www.awsarchitectureblog.com/2015/03/backoff.html">
+ *      Exponential Backoff And Jitter</a>
+ */
+public final class BackoffStrategies {
+
+    /** The largest exponent used, so that the exponential delay can't overflow */
+    private static final int MAX_EXPONENT = 30;
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private BackoffStrategies() {
+    }
+
+    /**
+     * Returns the random source of the current thread.
+     */
+    static Random random() {
+        return RANDOM.get();
+    }
+
+    /**
+     * Returns a strategy whose delay is drawn uniformly between zero and the
+     * exponential delay, <code>min(maxDelayMs, baseDelayMs * 2^retries)</code>.
+     * It spreads retries the most, at the cost of occasionally retrying almost
+     * immediately.
+     *
+     * @param baseDelayMs The exponential delay of the first retry.
+     * @param maxDelayMs The maximum delay.
+     */
+    public static RetryPolicy.BackoffStrategy fullJitter(int baseDelayMs, int maxDelayMs) {
+        checkDelays(baseDelayMs, maxDelayMs);
+        return new FullJitterBackoffStrategy(baseDelayMs, maxDelayMs);
+    }
+
+    /**
+     * Returns a strategy whose delay is at least half the exponential delay,
+     * <code>min(maxDelayMs, baseDelayMs * 2^retries)</code>, and drawn
+     * uniformly up to the exponential delay.
+     *
+     * @param baseDelayMs The exponential delay of the first retry.
+     * @param maxDelayMs The maximum delay.
+     */
+    public static RetryPolicy.BackoffStrategy equalJitter(int baseDelayMs, int maxDelayMs) {
+        checkDelays(baseDelayMs, maxDelayMs);
+        return new EqualJitterBackoffStrategy(baseDelayMs, maxDelayMs);
+    }
+
+    /**
+     * Returns a strategy whose delay is drawn uniformly between the base delay
+     * and three times the previous delay of the same request, up to the
+     * maximum delay. The delays of a request aren't tied to its retry count,
+     * which decorrelates the retries of requests that failed together.
+     * <p>
+     * The previous delay is kept per thread; the retries of a request are
+     * always made by the thread that executes it.
+     *
+     * @param baseDelayMs The minimum delay, and the previous delay assumed for
+     *            the first retry.
+     * @param maxDelayMs The maximum delay.
+     */
+    public static RetryPolicy.BackoffStrategy decorrelatedJitter(int baseDelayMs,
+            int maxDelayMs) {
+        checkDelays(baseDelayMs, maxDelayMs);
+        return new DecorrelatedJitterBackoffStrategy(baseDelayMs, maxDelayMs);
+    }
+
+    private static void checkDelays(int baseDelayMs, int maxDelayMs) {
+        if (baseDelayMs <= 0) {
+            throw new IllegalArgumentException("baseDelayMs (" + baseDelayMs
+                    + ") must be positive");
+        }
+        if (maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("maxDelayMs (" + maxDelayMs
+                    + ") must not be less than baseDelayMs (" + baseDelayMs + ")");
+        }
+    }
+
+    /**
+     * Returns <code>min(maxDelayMs, baseDelayMs * 2^retries)</code>.
+     */
+    static int exponentialDelay(int baseDelayMs, int maxDelayMs, int retries) {
+        long delay = (long) baseDelayMs << Math.min(Math.max(retries, 0), MAX_EXPONENT);
+        return (int) Math.min(maxDelayMs, delay);
+    }
+
+    private static final class FullJitterBackoffStrategy implements
+            RetryPolicy.BackoffStrategy {
+        private final int baseDelayMs;
+        private final int maxDelayMs;
+
+        private FullJitterBackoffStrategy(int baseDelayMs, int maxDelayMs) {
+            this.baseDelayMs = baseDelayMs;
+            this.maxDelayMs = maxDelayMs;
+        }
+
+        @Override
+        public long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest,
+                AmazonClientException exception, int retriesAttempted) {
+            return random().nextInt(exponentialDelay(baseDelayMs, maxDelayMs,
+                    retriesAttempted) + 1);
+        }
+    }
+
+    private static final class EqualJitterBackoffStrategy implements
+            RetryPolicy.BackoffStrategy {
+        private final int baseDelayMs;
+        private final int maxDelayMs;
+
+        private EqualJitterBackoffStrategy(int baseDelayMs, int maxDelayMs) {
+            this.baseDelayMs = baseDelayMs;
+            this.maxDelayMs = maxDelayMs;
+        }
+
+        @Override
+        public long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest,
+                AmazonClientException exception, int retriesAttempted) {
+            int delay = exponentialDelay(baseDelayMs, maxDelayMs, retriesAttempted);
+            int half = delay / 2;
+            return half + random().nextInt(delay - half + 1);
+        }
+    }
+
+    private static final class DecorrelatedJitterBackoffStrategy implements
+            RetryPolicy.BackoffStrategy {
+        private final int baseDelayMs;
+        private final int maxDelayMs;
+        /** The previous delay of the request executed by the current thread */
+        private final ThreadLocal<Long> previousDelay = new ThreadLocal<Long>();
+
+        private DecorrelatedJitterBackoffStrategy(int baseDelayMs, int maxDelayMs) {
+            this.baseDelayMs = baseDelayMs;
+            this.maxDelayMs = maxDelayMs;
+        }
+
+        @Override
+        public long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest,
+                AmazonClientException exception, int retriesAttempted) {
+            Long previous = retriesAttempted <= 0 ? null : previousDelay.get();
+            long upper = Math.min(maxDelayMs,
+                    3 * (previous == null ? baseDelayMs : previous.longValue()));
+            long delay = baseDelayMs
+                    + (long) (random().nextDouble() * (upper - baseDelayMs + 1));
+            delay = Math.min(delay, maxDelayMs);
+            previousDelay.set(delay);
+            return delay;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Fails requests to an endpoint fast while it's unhealthy. An endpoint is
+ * considered unhealthy after a number of consecutive failed requests, which
+ * opens the circuit of the endpoint: requests to it are then rejected without
+ * being sent. Once the reset timeout has elapsed, a single trial request is
+ * let through; it closes the circuit if it succeeds, and another trial request
+ * is let through after each further reset timeout otherwise.
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long resetTimeoutMillis;
+    private final ConcurrentMap<String, EndpointState> states =
+            new ConcurrentHashMap<String, EndpointState>();
+
+    /** The health of an endpoint */
+    private static final class EndpointState {
+        private int consecutiveFailures;
+        /** The time the circuit was opened or the last trial was let through */
+        private long openedAt;
+    }
+
+    /**
+     * @param failureThreshold The number of consecutive failed requests after
+     *            which the circuit of an endpoint opens.
+     * @param resetTimeoutMillis The time in milliseconds after which a trial
+     *            request is let through an open circuit.
+     */
+    public CircuitBreaker(int failureThreshold, long resetTimeoutMillis) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold (" + failureThreshold
+                    + ") must be positive");
+        }
+        if (resetTimeoutMillis < 0) {
+            throw new IllegalArgumentException("resetTimeoutMillis (" + resetTimeoutMillis
+                    + ") must not be negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.resetTimeoutMillis = resetTimeoutMillis;
+    }
+
+    /**
+     * Returns true if a request may be sent to the given endpoint: its circuit
+     * is closed, or it's open and a trial request is due.
+     */
+    public boolean allowRequest(String endpoint) {
+        EndpointState state = states.get(endpoint);
+        if (state == null) {
+            return true;
+        }
+        synchronized (state) {
+            if (state.consecutiveFailures < failureThreshold) {
+                return true;
+            }
+            long now = currentTimeMillis();
+            if (now - state.openedAt >= resetTimeoutMillis) {
+                state.openedAt = now;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Records that a request to the given endpoint succeeded, closing its
+     * circuit.
+     */
+    public void recordSuccess(String endpoint) {
+        EndpointState state = states.get(endpoint);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Records that a request to the given endpoint failed, opening its circuit
+     * once the failure threshold is reached.
+     */
+    public void recordFailure(String endpoint) {
+        EndpointState state = states.get(endpoint);
+        if (state == null) {
+            EndpointState newState = new EndpointState();
+            state = states.putIfAbsent(endpoint, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        synchronized (state) {
+            state.consecutiveFailures++;
+            if (state.consecutiveFailures >= failureThreshold) {
+                state.openedAt = currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the circuit of the given endpoint is open.
+     */
+    public boolean isOpen(String endpoint) {
+        EndpointState state = states.get(endpoint);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return state.consecutiveFailures >= failureThreshold;
+        }
+    }
+
+    /**
+     * Returns true if the given exception is a sign of an unhealthy endpoint:
+     * an I/O failure or timeout, a server error or throttling. Other service
+     * errors show the endpoint is answering requests.
+     */
+    public static boolean isFailure(AmazonClientException exception) {
+        Throwable cause = exception.getCause();
+        if (cause instanceof SocketTimeoutException
+                || (cause instanceof IOException && !(cause instanceof InterruptedIOException))) {
+            return true;
+        }
+        if (exception instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) exception;
+            return ase.getStatusCode() >= 500 || RetryUtils.isThrottlingException(ase);
+        }
+        return false;
+    }
+
+    /** Returns the current time in milliseconds; overridden by tests. */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
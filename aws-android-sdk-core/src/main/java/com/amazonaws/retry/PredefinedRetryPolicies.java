@@ -24,7 +24,6 @@ import org.apache.http.HttpStatus;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.util.Random;
 
 /**
  * This class includes a set of pre-defined retry policies, including default
@@ -196,9 +195,6 @@ public class PredefinedRetryPolicies {
     /** A private class that implements the default back-off strategy. **/
     private static class SDKDefaultBackoffStrategy implements RetryPolicy.BackoffStrategy {
 
-        /** For generating a random scale factor **/
-        private final Random random = new Random();
-
         private final int baseDelayMs;
         private final int maxDelayMs;
 
@@ -217,7 +213,8 @@ public class PredefinedRetryPolicies {
 
             // Full jitter
             // https://www.awsarchitectureblog.com/2015/03/backoff.html
-            return random.nextInt(Math.min(maxDelayMs, (1 << retries) * baseDelayMs));
+            return BackoffStrategies.random().nextInt(
+                    BackoffStrategies.exponentialDelay(baseDelayMs, maxDelayMs, retries));
         }
     }
 }
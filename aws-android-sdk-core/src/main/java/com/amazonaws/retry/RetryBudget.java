@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import com.amazonaws.AmazonClientException;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * A token bucket limiting the retries of all the requests of a client. Each
+ * retry takes tokens from the bucket, and requests that succeed put tokens
+ * back. While a service is failing most requests, the bucket runs out and
+ * failed requests are no longer retried, instead of every request retrying and
+ * adding to the load of the service.
+ */
+public class RetryBudget {
+
+    /** The tokens taken by a retry */
+    public static final int RETRY_COST = 5;
+
+    /** The tokens taken by the retry of a request that timed out */
+    public static final int TIMEOUT_RETRY_COST = 10;
+
+    /** The tokens put back by a request that succeeds on its first attempt */
+    public static final int NO_RETRY_INCREMENT = 1;
+
+    private final int capacity;
+    private int tokens;
+
+    /**
+     * @param capacity The maximum number of tokens in the bucket, which starts
+     *            full.
+     */
+    public RetryBudget(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity (" + capacity
+                    + ") must be positive");
+        }
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Takes the tokens needed to retry after the given exception from the
+     * bucket.
+     *
+     * @param exception The exception the request failed with.
+     * @return True if there were enough tokens and the request may be retried;
+     *         false otherwise, in which case no token is taken.
+     */
+    public synchronized boolean acquireRetry(AmazonClientException exception) {
+        int cost = costOf(exception);
+        if (tokens < cost) {
+            return false;
+        }
+        tokens -= cost;
+        return true;
+    }
+
+    /**
+     * Puts tokens back in the bucket once a request succeeded: the cost of the
+     * last retry if it was retried, or {@link #NO_RETRY_INCREMENT} otherwise.
+     *
+     * @param retriedException The exception the attempt before the successful
+     *            one failed with, or null if the first attempt succeeded.
+     */
+    public synchronized void releaseOnSuccess(AmazonClientException retriedException) {
+        int amount = retriedException == null ? NO_RETRY_INCREMENT : costOf(retriedException);
+        tokens = Math.min(capacity, tokens + amount);
+    }
+
+    /**
+     * Returns the number of tokens in the bucket.
+     */
+    public synchronized int getAvailableTokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns the maximum number of tokens in the bucket.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static int costOf(AmazonClientException exception) {
+        return exception.getCause() instanceof SocketTimeoutException
+                ? TIMEOUT_RETRY_COST
+                : RETRY_COST;
+    }
+}
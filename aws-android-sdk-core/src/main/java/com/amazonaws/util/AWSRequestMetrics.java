@@ -64,6 +64,11 @@ public class AWSRequestMetrics {
         HttpRequestTime,
         RedirectLocation,
         RequestMarshallTime,
+        /**
+         * Number of bytes the request payload was reduced by with gzip
+         * compression.
+         */
+        RequestCompressionBytesSaved,
         /**
          * Number of milliseconds taken to sign a request.
          */
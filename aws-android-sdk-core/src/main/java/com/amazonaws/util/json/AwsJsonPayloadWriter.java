@@ -0,0 +1,188 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import com.amazonaws.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * An {@link AwsJsonWriter} that encodes the JSON document as UTF-8 straight
+ * into a growable byte buffer. Once the writer is closed, the encoded bytes
+ * can be exposed as a request payload without any further copies.
+ */
+public class AwsJsonPayloadWriter implements AwsJsonWriter {
+
+    private final PayloadBuffer buffer;
+    private final AwsJsonWriter jsonWriter;
+    private boolean closed;
+
+    /**
+     * Creates a writer with a default initial buffer size.
+     */
+    public AwsJsonPayloadWriter() {
+        this(256);
+    }
+
+    /**
+     * Creates a writer with the specified initial buffer size.
+     *
+     * @param initialSize the initial size of the buffer in bytes
+     */
+    public AwsJsonPayloadWriter(int initialSize) {
+        buffer = new PayloadBuffer(initialSize);
+        jsonWriter = JsonUtils.getJsonWriter(new OutputStreamWriter(buffer, StringUtils.UTF8));
+    }
+
+    @Override
+    public AwsJsonWriter beginArray() throws IOException {
+        jsonWriter.beginArray();
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter endArray() throws IOException {
+        jsonWriter.endArray();
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter beginObject() throws IOException {
+        jsonWriter.beginObject();
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter endObject() throws IOException {
+        jsonWriter.endObject();
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter name(String name) throws IOException {
+        jsonWriter.name(name);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(String value) throws IOException {
+        jsonWriter.value(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(boolean value) throws IOException {
+        jsonWriter.value(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(double value) throws IOException {
+        jsonWriter.value(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(long value) throws IOException {
+        jsonWriter.value(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(Number value) throws IOException {
+        jsonWriter.value(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(Date value) throws IOException {
+        jsonWriter.value(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value(ByteBuffer value) throws IOException {
+        jsonWriter.value(value);
+        return this;
+    }
+
+    @Override
+    public AwsJsonWriter value() throws IOException {
+        jsonWriter.value();
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        jsonWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        jsonWriter.close();
+        closed = true;
+    }
+
+    /**
+     * Returns the length in bytes of the encoded JSON document.
+     *
+     * @return the content length
+     * @throws IllegalStateException if the writer hasn't been closed
+     */
+    public int getContentLength() {
+        checkClosed();
+        return buffer.size();
+    }
+
+    /**
+     * Returns a stream over the encoded JSON document. The stream is backed
+     * by the internal buffer and supports mark and reset, so it can be read
+     * repeatedly, e.g. for signing and retries.
+     *
+     * @return an input stream over the content
+     * @throws IllegalStateException if the writer hasn't been closed
+     */
+    public InputStream getContent() {
+        checkClosed();
+        return buffer.toInputStream();
+    }
+
+    private void checkClosed() {
+        if (!closed) {
+            throw new IllegalStateException("The JSON writer must be closed first.");
+        }
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} that shares its internal buffer with the
+     * input stream it creates instead of copying it.
+     */
+    private static final class PayloadBuffer extends ByteArrayOutputStream {
+        PayloadBuffer(int size) {
+            super(size);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -16,7 +16,9 @@
 package com.amazonaws;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import com.amazonaws.RequestClientOptions.Marker;
 
@@ -44,4 +46,17 @@ public class RequestClientOptionsTest {
         assertEquals(ua, Marker.USER_AGENT.name() + " 2nd-agent 3rd-agent", ua);
         assertEquals(ua, opts.getClientMarker(Marker.USER_AGENT));
     }
+
+    @Test
+    public void testRequestContentEncoding() {
+        RequestClientOptions opts = new RequestClientOptions();
+        assertFalse(opts.acceptsRequestContentEncoding("gzip"));
+        opts.addRequestContentEncoding("gzip");
+        opts.addRequestContentEncoding("aws-chunked");
+        opts.addRequestContentEncoding("gzip");
+        assertEquals("gzip,aws-chunked", opts.getClientMarker(Marker.REQUEST_CONTENT_ENCODING));
+        assertTrue(opts.acceptsRequestContentEncoding("gzip"));
+        assertTrue(opts.acceptsRequestContentEncoding("aws-chunked"));
+        assertFalse(opts.acceptsRequestContentEncoding("deflate"));
+    }
 }
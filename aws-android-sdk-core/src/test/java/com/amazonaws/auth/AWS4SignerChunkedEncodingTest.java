@@ -0,0 +1,377 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Checks aws-chunked requests signed by {@link AWS4Signer} against an
+ * independent implementation of the streaming signature verification done by
+ * the service.
+ */
+public class AWS4SignerChunkedEncodingTest {
+
+    private static final String SECRET_KEY = "secret";
+    private static final AWSCredentials CREDENTIALS = new BasicAWSCredentials("access",
+            SECRET_KEY);
+
+    private final AWS4Signer signer = new AWS4Signer();
+
+    @Before
+    public void setUp() {
+        Calendar c = new GregorianCalendar();
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        c.set(2016, 5, 20, 12, 0, 0);
+        signer.overrideDate(c.getTime());
+        signer.setServiceName("demo");
+        signer.setRegionName("us-east-1");
+    }
+
+    private static AmazonWebServiceRequest acceptingChunkedEncoding() {
+        AmazonWebServiceRequest originalRequest = new AmazonWebServiceRequest() {
+        };
+        originalRequest.getRequestClientOptions().addRequestContentEncoding("aws-chunked");
+        return originalRequest;
+    }
+
+    private static Request<?> request(AmazonWebServiceRequest originalRequest,
+            InputStream content) {
+        Request<?> request = new DefaultRequest<Object>(originalRequest, "demo");
+        request.setHttpMethod(HttpMethodName.POST);
+        request.setEndpoint(URI.create("https://demo.us-east-1.amazonaws.com"));
+        request.setResourcePath("/upload");
+        request.addHeader("x-amz-target", "Demo.Upload");
+        request.setContent(content);
+        return request;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testChunkSignaturesAreVerified() throws Exception {
+        for (int size : new int[] {
+                0, 1, 128 * 1024, 128 * 1024 + 1, 300 * 1024
+        }) {
+            byte[] payload = randomBytes(size);
+            Request<?> request = request(acceptingChunkedEncoding(),
+                    new ByteArrayInputStream(payload));
+            request.addHeader("Content-Length", String.valueOf(size));
+
+            signer.sign(request, CREDENTIALS);
+
+            assertArrayEquals("size " + size, payload, Verifier.verify(request));
+        }
+    }
+
+    @Test
+    public void testPayloadIsNotReadWhileSigning() throws Exception {
+        byte[] payload = randomBytes(200 * 1024);
+        CountingInputStream content = new CountingInputStream(payload);
+        Request<?> request = request(acceptingChunkedEncoding(), content);
+        request.addHeader("Content-Length", String.valueOf(payload.length));
+
+        signer.sign(request, CREDENTIALS);
+
+        assertEquals(0, content.count);
+        assertArrayEquals(payload, Verifier.verify(request));
+        assertEquals(payload.length, content.count);
+    }
+
+    @Test
+    public void testPayloadOfUnknownLengthIsMeasured() throws Exception {
+        byte[] payload = randomBytes(1000);
+        Request<?> request = request(acceptingChunkedEncoding(),
+                new ByteArrayInputStream(payload));
+
+        signer.sign(request, CREDENTIALS);
+
+        assertEquals("1000", request.getHeaders().get("x-amz-decoded-content-length"));
+        assertArrayEquals(payload, Verifier.verify(request));
+    }
+
+    @Test
+    public void testRetriedPayloadIsSignedAgain() throws Exception {
+        byte[] payload = randomBytes(200 * 1024);
+        Request<?> request = request(acceptingChunkedEncoding(),
+                new ByteArrayInputStream(payload));
+        request.addHeader("Content-Length", String.valueOf(payload.length));
+        signer.sign(request, CREDENTIALS);
+        InputStream encoded = request.getContent();
+        encoded.mark(-1);
+        encoded.read(new byte[1024]);
+        encoded.reset();
+
+        assertArrayEquals(payload, Verifier.verify(request));
+    }
+
+    @Test
+    public void testTamperedChunkIsRejected() throws Exception {
+        byte[] payload = randomBytes(1000);
+        Request<?> request = request(acceptingChunkedEncoding(),
+                new ByteArrayInputStream(payload));
+        request.addHeader("Content-Length", String.valueOf(payload.length));
+        signer.sign(request, CREDENTIALS);
+
+        byte[] body = Verifier.readFully(request.getContent());
+        body[body.length / 2] ^= 1;
+        request.setContent(new ByteArrayInputStream(body));
+        try {
+            Verifier.verify(request);
+            throw new IllegalStateException("the tampered chunk should be rejected");
+        } catch (AssertionError expected) {
+        }
+    }
+
+    @Test
+    public void testChunkedContentEncodingIsDeclared() throws Exception {
+        byte[] payload = randomBytes(1000);
+        Request<?> request = request(acceptingChunkedEncoding(),
+                new ByteArrayInputStream(payload));
+        request.addHeader("Content-Length", String.valueOf(payload.length));
+
+        signer.sign(request, CREDENTIALS);
+
+        assertEquals("aws-chunked", request.getHeaders().get("Content-Encoding"));
+        assertArrayEquals(payload, Verifier.verify(request));
+    }
+
+    @Test
+    public void testChunkedContentEncodingPrecedesGzip() throws Exception {
+        byte[] payload = gzip(randomBytes(200 * 1024));
+        AmazonWebServiceRequest originalRequest = acceptingChunkedEncoding();
+        originalRequest.getRequestClientOptions().addRequestContentEncoding("gzip");
+        Request<?> request = request(originalRequest, new ByteArrayInputStream(payload));
+        // as set by the request compression before signing
+        request.addHeader("Content-Length", String.valueOf(payload.length));
+        request.addHeader("Content-Encoding", "gzip");
+
+        signer.sign(request, CREDENTIALS);
+
+        assertEquals("aws-chunked,gzip", request.getHeaders().get("Content-Encoding"));
+        assertEquals(String.valueOf(payload.length),
+                request.getHeaders().get("x-amz-decoded-content-length"));
+        assertArrayEquals(payload, Verifier.verify(request));
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPayloadIsHashedUnlessChunkedEncodingIsAccepted() throws Exception {
+        byte[] payload = randomBytes(1000);
+        Request<?> request = request(new AmazonWebServiceRequest() {
+        }, new ByteArrayInputStream(payload));
+        request.addHeader("Content-Length", String.valueOf(payload.length));
+
+        signer.sign(request, CREDENTIALS);
+
+        assertNull(request.getHeaders().get("x-amz-decoded-content-length"));
+        assertEquals("1000", request.getHeaders().get("Content-Length"));
+        assertNull(request.getHeaders().get("Content-Encoding"));
+        assertFalse(request.getContent() instanceof AwsChunkedEncodingInputStream);
+    }
+
+    /**
+     * Verifies a signed aws-chunked request the way the service does, without
+     * using the signer.
+     */
+    private static final class Verifier {
+
+        private static byte[] verify(Request<?> request) throws Exception {
+            Map<String, String> headers = request.getHeaders();
+            assertEquals("STREAMING-AWS4-HMAC-SHA256-PAYLOAD",
+                    headers.get("x-amz-content-sha256"));
+            String authorization = headers.get("Authorization");
+            String credential = field(authorization, "Credential=");
+            String scope = credential.substring(credential.indexOf('/') + 1);
+            String[] scopeParts = scope.split("/");
+            List<String> signedHeaders = Arrays.asList(field(authorization, "SignedHeaders=")
+                    .split(";"));
+            assertTrue(signedHeaders.contains("x-amz-content-sha256"));
+            assertTrue(signedHeaders.contains("x-amz-decoded-content-length"));
+
+            StringBuilder canonicalRequest = new StringBuilder();
+            canonicalRequest.append(request.getHttpMethod()).append('\n')
+                    .append(request.getResourcePath()).append('\n')
+                    .append('\n');
+            List<String> names = new ArrayList<String>();
+            for (String name : headers.keySet()) {
+                if (signedHeaders.contains(StringUtils.lowerCase(name))) {
+                    names.add(name);
+                }
+            }
+            Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+            assertEquals(signedHeaders.size(), names.size());
+            for (String name : names) {
+                canonicalRequest.append(StringUtils.lowerCase(name)).append(':')
+                        .append(headers.get(name).trim()).append('\n');
+            }
+            canonicalRequest.append('\n').append(field(authorization, "SignedHeaders="))
+                    .append('\n').append("STREAMING-AWS4-HMAC-SHA256-PAYLOAD");
+
+            String dateTime = headers.get("X-Amz-Date");
+            String stringToSign = "AWS4-HMAC-SHA256\n" + dateTime + "\n" + scope + "\n"
+                    + sha256Hex(canonicalRequest.toString().getBytes(StringUtils.UTF8));
+            byte[] key = hmac(("AWS4" + SECRET_KEY).getBytes(StringUtils.UTF8), scopeParts[0]);
+            key = hmac(key, scopeParts[1]);
+            key = hmac(key, scopeParts[2]);
+            key = hmac(key, scopeParts[3]);
+            String seedSignature = BinaryUtils.toHex(hmac(key, stringToSign));
+            assertEquals(seedSignature, field(authorization, "Signature="));
+
+            byte[] body = readFully(request.getContent());
+            assertEquals(Long.parseLong(headers.get("Content-Length")), body.length);
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            String previousSignature = seedSignature;
+            int pos = 0;
+            while (true) {
+                int lineEnd = indexOfCrlf(body, pos);
+                String chunkHeader = new String(body, pos, lineEnd - pos, StringUtils.UTF8);
+                int size = Integer.parseInt(chunkHeader.substring(0, chunkHeader.indexOf(';')),
+                        16);
+                String chunkSignature = chunkHeader.substring(
+                        chunkHeader.indexOf(";chunk-signature=") + 17);
+                byte[] chunk = Arrays.copyOfRange(body, lineEnd + 2, lineEnd + 2 + size);
+                String chunkStringToSign = "AWS4-HMAC-SHA256-PAYLOAD\n" + dateTime + "\n"
+                        + scope + "\n" + previousSignature + "\n" + sha256Hex(new byte[0])
+                        + "\n" + sha256Hex(chunk);
+                assertEquals(BinaryUtils.toHex(hmac(key, chunkStringToSign)), chunkSignature);
+                previousSignature = chunkSignature;
+                decoded.write(chunk);
+                pos = lineEnd + 2 + size;
+                assertEquals('\r', body[pos]);
+                assertEquals('\n', body[pos + 1]);
+                pos += 2;
+                if (size == 0) {
+                    break;
+                }
+            }
+            assertEquals(body.length, pos);
+            assertEquals(Long.parseLong(headers.get("x-amz-decoded-content-length")),
+                    decoded.size());
+            return decoded.toByteArray();
+        }
+
+        private static String field(String authorization, String name) {
+            int start = authorization.indexOf(name) + name.length();
+            int end = authorization.indexOf(',', start);
+            return authorization.substring(start, end == -1 ? authorization.length() : end);
+        }
+
+        private static int indexOfCrlf(byte[] bytes, int from) {
+            for (int i = from; i < bytes.length - 1; i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                    return i;
+                }
+            }
+            throw new AssertionError("missing CRLF after " + from);
+        }
+
+        private static String sha256Hex(byte[] data) throws Exception {
+            return BinaryUtils.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        }
+
+        private static byte[] hmac(byte[] key, String data) throws Exception {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StringUtils.UTF8));
+        }
+
+        private static byte[] readFully(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /** A stream that doesn't support mark, and counts the bytes read. */
+    private static final class CountingInputStream extends InputStream {
+        private final InputStream in;
+        private long count;
+
+        CountingInputStream(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -80,6 +80,31 @@ public class AWS4SignerTest {
                 request.getHeaders().get("Authorization"));
     }
 
+    @Test
+    public void testSigningKeyCacheIsKeyedBySecretKey() throws Exception {
+        final String EXPECTED_AUTHORIZATION_HEADER =
+                "AWS4-HMAC-SHA256 Credential=access/19810216/us-east-1/demo/aws4_request, SignedHeaders=host;x-amz-archive-description;x-amz-date, Signature=77fe7c02927966018667f21d1dc3dfad9057e58401cbb9ed64f1b7868288e35a";
+
+        Calendar c = new GregorianCalendar();
+        c.set(1981, 1, 16, 6, 30, 0);
+        c.setTimeZone(TimeZone.getTimeZone("UTC"));
+        signer.overrideDate(c.getTime());
+
+        // Sign twice so that the second signature uses the cached signing key
+        for (int i = 0; i < 2; i++) {
+            Request<?> request = generateBasicRequest();
+            signer.sign(request, new BasicAWSCredentials("access", "secret"));
+            assertEquals(EXPECTED_AUTHORIZATION_HEADER,
+                    request.getHeaders().get("Authorization"));
+        }
+
+        // A different secret key for the same scope must not hit the cache
+        Request<?> request = generateBasicRequest();
+        signer.sign(request, new BasicAWSCredentials("access", "other-secret"));
+        assertFalse(EXPECTED_AUTHORIZATION_HEADER.equals(
+                request.getHeaders().get("Authorization")));
+    }
+
     @Test
     public void testCorrectHeadersAreSigned() {
         // Make sure neccesary headers are signed
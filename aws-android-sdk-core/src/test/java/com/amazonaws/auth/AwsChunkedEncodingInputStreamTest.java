@@ -18,7 +18,6 @@ package com.amazonaws.auth;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
-import com.amazonaws.services.s3.internal.AWSS3V4Signer;
 import com.amazonaws.util.BinaryUtils;
 
 import org.junit.Before;
@@ -46,7 +45,7 @@ public class AwsChunkedEncodingInputStreamTest {
         String dateTime = "20150513T222354Z";
         aceis = new AwsChunkedEncodingInputStream(fis, 262144, key,
                 dateTime,
-                keyPath, headerSignature, new AWSS3V4Signer());
+                keyPath, headerSignature, new AWS4Signer());
     }
 
     @Test
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.auth.CognitoCredentialsProviderTest.StubCognitoIdentityClient;
+import com.amazonaws.auth.CognitoCredentialsProviderTest.StubIdentityProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CognitoCachingCredentialsProviderTest {
+
+    private static final int THREADS = 16;
+
+    private StubCognitoIdentityClient client;
+    private CognitoCachingCredentialsProvider provider;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        client = new StubCognitoIdentityClient();
+        provider = newProvider();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        provider.clear();
+    }
+
+    @Test
+    public void testConcurrentInitialFetchIsSingleFlight() throws Exception {
+        client.latency = 200;
+        List<Future<AWSSessionCredentials>> results = getCredentialsConcurrently();
+
+        AWSSessionCredentials first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<AWSSessionCredentials> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testValidCredentialsAreUsedDuringRefresh() throws Exception {
+        // within the refresh threshold, but not expired yet
+        AWSSessionCredentials old = setCurrentCredentials(60);
+        client.block = new CountDownLatch(1);
+
+        Future<AWSSessionCredentials> refreshing = executor
+                .submit(new Callable<AWSSessionCredentials>() {
+                    @Override
+                    public AWSSessionCredentials call() {
+                        return provider.getCredentials();
+                    }
+                });
+        assertTrue(client.started.await(5, TimeUnit.SECONDS));
+
+        // the refresh is blocked, other callers get the still valid credentials
+        for (Future<AWSSessionCredentials> result : getCredentialsConcurrently()) {
+            assertSame(old, result.get(5, TimeUnit.SECONDS));
+        }
+
+        client.block.countDown();
+        AWSSessionCredentials refreshed = refreshing.get(5, TimeUnit.SECONDS);
+        assertEquals("AK1", refreshed.getAWSAccessKeyId());
+        assertSame(refreshed, provider.getCredentials());
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testRefreshedCredentialsAreCached() throws Exception {
+        assertEquals("AK1", provider.getCredentials().getAWSAccessKeyId());
+
+        // a new provider loads the saved credentials instead of fetching them
+        assertEquals("AK1", newProvider().getCredentials().getAWSAccessKeyId());
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testMissingCredentialsAreLoadedFromCache() throws Exception {
+        assertEquals("AK1", provider.getCredentials().getAWSAccessKeyId());
+
+        provider.sessionCredentials = null;
+        assertEquals("AK1", provider.getCredentials().getAWSAccessKeyId());
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testRefreshAlwaysFetchesFromService() throws Exception {
+        assertEquals("AK1", provider.getCredentials().getAWSAccessKeyId());
+
+        // valid credentials are cached, but refresh() still gets new ones
+        provider.sessionCredentials = null;
+        provider.refresh();
+        assertEquals("AK2", provider.getCredentials().getAWSAccessKeyId());
+        assertEquals(2, client.calls.get());
+    }
+
+    private CognitoCachingCredentialsProvider newProvider() {
+        return new CognitoCachingCredentialsProvider(Robolectric.application,
+                new StubIdentityProvider(client), client);
+    }
+
+    private AWSSessionCredentials setCurrentCredentials(int secondsRemaining) {
+        AWSSessionCredentials credentials = new BasicSessionCredentials("AK0", "SK0", "ST0");
+        provider.sessionCredentials = credentials;
+        provider.setSessionCredentialsExpiration(new Date(System.currentTimeMillis()
+                + secondsRemaining * 1000L));
+        return credentials;
+    }
+
+    private List<Future<AWSSessionCredentials>> getCredentialsConcurrently() {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<AWSSessionCredentials>> results = new ArrayList<Future<AWSSessionCredentials>>();
+        for (int i = 0; i < THREADS - 1; i++) {
+            results.add(executor.submit(new Callable<AWSSessionCredentials>() {
+                @Override
+                public AWSSessionCredentials call() throws Exception {
+                    start.await();
+                    return provider.getCredentials();
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+}
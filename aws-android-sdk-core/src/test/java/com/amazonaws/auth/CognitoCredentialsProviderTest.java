@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.cognitoidentity.AmazonCognitoIdentityClient;
+import com.amazonaws.services.cognitoidentity.model.Credentials;
+import com.amazonaws.services.cognitoidentity.model.GetCredentialsForIdentityRequest;
+import com.amazonaws.services.cognitoidentity.model.GetCredentialsForIdentityResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CognitoCredentialsProviderTest {
+
+    private static final String IDENTITY_ID = "us-east-1:stub-identity";
+    private static final int THREADS = 16;
+
+    private StubCognitoIdentityClient client;
+    private CognitoCredentialsProvider provider;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        client = new StubCognitoIdentityClient();
+        provider = new CognitoCredentialsProvider(new StubIdentityProvider(client), client);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentInitialFetchIsSingleFlight() throws Exception {
+        client.latency = 200;
+        List<Future<AWSSessionCredentials>> results = getCredentialsConcurrently();
+
+        AWSSessionCredentials first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<AWSSessionCredentials> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testValidCredentialsAreUsedDuringRefresh() throws Exception {
+        // within the refresh threshold, but not expired yet
+        AWSSessionCredentials old = setCurrentCredentials(60);
+        client.block = new CountDownLatch(1);
+
+        Future<AWSSessionCredentials> refreshing = executor
+                .submit(new Callable<AWSSessionCredentials>() {
+                    @Override
+                    public AWSSessionCredentials call() {
+                        return provider.getCredentials();
+                    }
+                });
+        assertTrue(client.started.await(5, TimeUnit.SECONDS));
+
+        // the refresh is blocked, other callers get the still valid credentials
+        for (Future<AWSSessionCredentials> result : getCredentialsConcurrently()) {
+            assertSame(old, result.get(5, TimeUnit.SECONDS));
+        }
+
+        client.block.countDown();
+        AWSSessionCredentials refreshed = refreshing.get(5, TimeUnit.SECONDS);
+        assertEquals("AK1", refreshed.getAWSAccessKeyId());
+        assertSame(refreshed, provider.getCredentials());
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testExpiredCredentialsWaitForRefresh() throws Exception {
+        setCurrentCredentials(-10);
+        client.latency = 200;
+
+        for (Future<AWSSessionCredentials> result : getCredentialsConcurrently()) {
+            assertEquals("AK1", result.get(5, TimeUnit.SECONDS).getAWSAccessKeyId());
+        }
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testBackgroundPrefetch() throws Exception {
+        // outside the refresh threshold, inside the prefetch threshold
+        AWSSessionCredentials old = setCurrentCredentials(700);
+        provider.setPrefetchExecutor(executor);
+        client.block = new CountDownLatch(1);
+
+        // callers are never blocked by the background refresh
+        for (Future<AWSSessionCredentials> result : getCredentialsConcurrently()) {
+            assertSame(old, result.get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(client.started.await(5, TimeUnit.SECONDS));
+        client.block.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (provider.getCredentials() == old && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("AK1", provider.getCredentials().getAWSAccessKeyId());
+        assertEquals(1, client.calls.get());
+    }
+
+    @Test
+    public void testNoPrefetchWithoutExecutor() throws Exception {
+        AWSSessionCredentials old = setCurrentCredentials(700);
+        assertSame(old, provider.getCredentials());
+        assertEquals(0, client.calls.get());
+    }
+
+    private AWSSessionCredentials setCurrentCredentials(int secondsRemaining) {
+        AWSSessionCredentials credentials = new BasicSessionCredentials("AK0", "SK0", "ST0");
+        provider.sessionCredentials = credentials;
+        provider.setSessionCredentialsExpiration(new Date(System.currentTimeMillis()
+                + secondsRemaining * 1000L));
+        return credentials;
+    }
+
+    private List<Future<AWSSessionCredentials>> getCredentialsConcurrently() {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<AWSSessionCredentials>> results = new ArrayList<Future<AWSSessionCredentials>>();
+        for (int i = 0; i < THREADS - 1; i++) {
+            results.add(executor.submit(new Callable<AWSSessionCredentials>() {
+                @Override
+                public AWSSessionCredentials call() throws Exception {
+                    start.await();
+                    return provider.getCredentials();
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    /**
+     * A Cognito Identity client that hands out new credentials locally.
+     */
+    static class StubCognitoIdentityClient extends AmazonCognitoIdentityClient {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch block;
+        volatile long latency;
+
+        StubCognitoIdentityClient() {
+            super(new AnonymousAWSCredentials());
+        }
+
+        @Override
+        public GetCredentialsForIdentityResult getCredentialsForIdentity(
+                GetCredentialsForIdentityRequest request) {
+            int call = calls.incrementAndGet();
+            started.countDown();
+            try {
+                if (block != null) {
+                    block.await();
+                }
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new GetCredentialsForIdentityResult()
+                    .withIdentityId(request.getIdentityId())
+                    .withCredentials(new Credentials()
+                            .withAccessKeyId("AK" + call)
+                            .withSecretKey("SK" + call)
+                            .withSessionToken("ST" + call)
+                            .withExpiration(new Date(System.currentTimeMillis() + 3600 * 1000)));
+        }
+    }
+
+    static class StubIdentityProvider extends AWSAbstractCognitoIdentityProvider {
+        StubIdentityProvider(AmazonCognitoIdentityClient client) {
+            super(null, "us-east-1:stub-pool", client);
+            this.identityId = IDENTITY_ID;
+        }
+
+        @Override
+        public String getProviderName() {
+            return "Stub";
+        }
+
+        @Override
+        public String refresh() {
+            return null;
+        }
+    }
+}
@@ -29,6 +29,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -112,6 +116,42 @@ public class HttpResponseTest {
         assertEquals("unzip correctly", str, result);
     }
 
+    @Test
+    public void testHeaderFields() {
+        Map<String, List<String>> headerFields = new HashMap<String, List<String>>();
+        headerFields.put(null, Arrays.asList("HTTP/1.1 200 OK"));
+        headerFields.put("key1", Arrays.asList("value1", "extra"));
+        headerFields.put("key2", Arrays.asList("value2"));
+        response = HttpResponse.builder()
+                .headerFields(headerFields)
+                .build();
+        assertEquals("first value", "value1", response.getHeaders().get("key1"));
+        assertTrue(response.getHeaders().containsKey("key2"));
+        assertFalse(response.getHeaders().containsKey(null));
+        assertEquals("null key skipped", 2, response.getHeaders().size());
+    }
+
+    @Test
+    public void testHeaderTakesPrecedenceOverHeaderFields() {
+        Map<String, List<String>> headerFields = new HashMap<String, List<String>>();
+        headerFields.put("key1", Arrays.asList("value1"));
+        headerFields.put("key2", Arrays.asList("value2"));
+        response = HttpResponse.builder()
+                .headerFields(headerFields)
+                .header("key2", "override")
+                .build();
+        assertEquals("value1", response.getHeaders().get("key1"));
+        assertEquals("override", response.getHeaders().get("key2"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiableHeaderFields() {
+        response = HttpResponse.builder()
+                .headerFields(new HashMap<String, List<String>>())
+                .build();
+        response.getHeaders().put("key", "value");
+    }
+
     private InputStream getGzippedInputStream(String str) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         GZIPOutputStream gos = new GZIPOutputStream(baos);
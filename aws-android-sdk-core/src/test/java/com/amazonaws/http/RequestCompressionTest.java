@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.RequestClientOptions.Marker;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.AWSRequestMetrics.Field;
+import com.amazonaws.util.AWSRequestMetricsFullSupport;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class RequestCompressionTest {
+
+    private AmazonWebServiceRequest originalRequest;
+
+    @Before
+    public void setUp() {
+        originalRequest = new AmazonWebServiceRequest() {
+        };
+        originalRequest.getRequestClientOptions().putClientMarker(
+                Marker.REQUEST_CONTENT_ENCODING, "gzip");
+    }
+
+    private Request<?> postRequest() {
+        Request<?> request = new DefaultRequest<Object>(originalRequest, "TestService");
+        request.setHttpMethod(HttpMethodName.POST);
+        request.setEndpoint(URI.create("https://test.amazonaws.com"));
+        return request;
+    }
+
+    private Request<?> requestWithContent(byte[] content) {
+        Request<?> request = postRequest();
+        request.setContent(new ByteArrayInputStream(content));
+        request.addHeader("Content-Length", String.valueOf(content.length));
+        return request;
+    }
+
+    private static byte[] compressible(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ('a' + i % 4);
+        }
+        return bytes;
+    }
+
+    private static byte[] gunzip(InputStream content) throws IOException {
+        InputStream in = new GZIPInputStream(content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(RequestCompression.acceptsGzip(postRequest()));
+        Request<?> request = new DefaultRequest<Object>(new AmazonWebServiceRequest() {
+        }, "TestService");
+        assertFalse(RequestCompression.acceptsGzip(request));
+    }
+
+    @Test
+    public void testCompressesContent() throws IOException {
+        byte[] content = compressible(4096);
+        Request<?> request = requestWithContent(content);
+
+        long saved = RequestCompression.compress(request, 1024);
+
+        assertTrue(saved > 0);
+        assertEquals("gzip", request.getHeaders().get("Content-Encoding"));
+        int length = Integer.parseInt(request.getHeaders().get("Content-Length"));
+        assertEquals(content.length - saved, length);
+        assertTrue(request.getContent().markSupported());
+        assertArrayEquals(content, gunzip(request.getContent()));
+    }
+
+    @Test
+    public void testCompressesFormEncodedParameters() throws IOException {
+        Request<?> request = postRequest();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            value.append("metric ");
+        }
+        request.addParameter("Action", "PutMetricData");
+        request.addParameter("Value", value.toString());
+
+        assertTrue(RequestCompression.compress(request, 100) > 0);
+
+        assertTrue(request.getParameters().isEmpty());
+        assertEquals("gzip", request.getHeaders().get("Content-Encoding"));
+        assertTrue(request.getHeaders().get("Content-Type").startsWith(
+                "application/x-www-form-urlencoded"));
+        String body = new String(gunzip(request.getContent()), StringUtils.UTF8);
+        assertTrue(body.startsWith("Action=PutMetricData&Value=metric+metric+"));
+    }
+
+    @Test
+    public void testPayloadBelowThresholdIsNotCompressed() {
+        byte[] content = compressible(1000);
+        Request<?> request = requestWithContent(content);
+        InputStream original = request.getContent();
+
+        assertEquals(0, RequestCompression.compress(request, 1024));
+        assertSame(original, request.getContent());
+        assertNull(request.getHeaders().get("Content-Encoding"));
+    }
+
+    @Test
+    public void testIncompressiblePayloadIsLeftAsItIs() throws IOException {
+        byte[] content = new byte[4096];
+        new Random(1).nextBytes(content);
+        Request<?> request = requestWithContent(content);
+        InputStream original = request.getContent();
+
+        assertEquals(0, RequestCompression.compress(request, 1024));
+        assertSame(original, request.getContent());
+        assertNull(request.getHeaders().get("Content-Encoding"));
+        // the content was reset after being read
+        byte[] read = new byte[content.length];
+        assertEquals(content.length, original.read(read));
+        assertArrayEquals(content, read);
+    }
+
+    @Test
+    public void testEncodedPayloadIsNotCompressedAgain() {
+        Request<?> request = requestWithContent(compressible(4096));
+        request.addHeader("Content-Encoding", "gzip");
+        InputStream original = request.getContent();
+
+        assertEquals(0, RequestCompression.compress(request, 1024));
+        assertSame(original, request.getContent());
+    }
+
+    @Test
+    public void testContentOfUnknownLengthIsNotCompressed() {
+        Request<?> request = postRequest();
+        request.setContent(new ByteArrayInputStream(compressible(4096)));
+
+        assertEquals(0, RequestCompression.compress(request, 1024));
+        assertNull(request.getHeaders().get("Content-Encoding"));
+    }
+
+    @Test
+    public void testClientRecordsBytesSavedOnlyWhenEnabled() {
+        AWSRequestMetrics metrics = new AWSRequestMetricsFullSupport();
+        Request<?> request = requestWithContent(compressible(20 * 1024));
+        new AmazonHttpClient(new ClientConfiguration()).compressRequest(request, metrics);
+        assertNull(request.getHeaders().get("Content-Encoding"));
+
+        AmazonHttpClient client = new AmazonHttpClient(new ClientConfiguration()
+                .withRequestCompressionEnabled(true));
+        client.compressRequest(request, metrics);
+        assertEquals("gzip", request.getHeaders().get("Content-Encoding"));
+        Number saved = metrics.getTimingInfo().getCounter(
+                Field.RequestCompressionBytesSaved.name());
+        assertTrue(saved.longValue() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeThresholdIsRejected() {
+        new ClientConfiguration().setRequestCompressionThreshold(-1);
+    }
+}
@@ -17,12 +17,15 @@ package com.amazonaws.http;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.SDKGlobalConfiguration;
+import com.amazonaws.util.IOUtils;
 import com.amazonaws.util.StringUtils;
 
 import org.junit.Before;
@@ -41,6 +44,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -253,6 +257,164 @@ public class UrlHttpClientTest {
         final ByteArrayOutputStream connOs = (ByteArrayOutputStream) connection.getOutputStream();
         assertEquals(new String(connOs.toByteArray(), StringUtils.UTF8), "Content");
     }
+
+    @Test
+    public void testMaxConnectionsBoundsOpenConnections() throws Exception {
+        conf.setMaxConnections(1);
+        conf.setConnectionTimeout(100);
+        final ContentUrlHttpClient client = new ContentUrlHttpClient(conf);
+
+        final HttpResponse first = client.execute(new HttpRequest("GET",
+                new URI("https://www.test.com")));
+        try {
+            client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+            fail("the only connection is still open");
+        } catch (final IOException expected) {
+        }
+
+        first.getContent().close();
+        client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+    }
+
+    @Test
+    public void testReadingContentToEndReleasesConnection() throws Exception {
+        conf.setMaxConnections(1);
+        conf.setConnectionTimeout(100);
+        final ContentUrlHttpClient client = new ContentUrlHttpClient(conf);
+
+        final HttpResponse first = client.execute(new HttpRequest("GET",
+                new URI("https://www.test.com")));
+        assertEquals("content", IOUtils.toString(first.getContent()));
+        client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+        // the connection was kept for reuse rather than disconnected
+        assertEquals(0, client.connections.get(0).disconnects);
+    }
+
+    @Test
+    public void testFailedRequestDisconnectsAndReleasesConnection() throws Exception {
+        conf.setMaxConnections(1);
+        conf.setConnectionTimeout(100);
+        final ContentUrlHttpClient client = new ContentUrlHttpClient(conf);
+        client.failNext = true;
+
+        try {
+            client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+            fail("the request should fail");
+        } catch (final IllegalStateException expected) {
+        }
+        assertEquals(1, client.connections.get(0).disconnects);
+        client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+    }
+
+    @Test
+    public void testFailedOpenReleasesConnection() throws Exception {
+        conf.setMaxConnections(2);
+        conf.setConnectionTimeout(100);
+        final ContentUrlHttpClient client = new ContentUrlHttpClient(conf);
+        client.failedOpens = conf.getMaxConnections() + 1;
+
+        for (int i = 0; i < conf.getMaxConnections() + 1; i++) {
+            try {
+                client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+                fail("the connection should fail to open");
+            } catch (final IOException expected) {
+                assertEquals("failed to open", expected.getMessage());
+            }
+        }
+        client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+    }
+
+    @Test
+    public void testShutdownDisconnectsOpenConnections() throws Exception {
+        final ContentUrlHttpClient client = new ContentUrlHttpClient(conf);
+        client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+
+        client.shutdown();
+        assertEquals(1, client.connections.get(0).disconnects);
+        try {
+            client.execute(new HttpRequest("GET", new URI("https://www.test.com")));
+            fail("the client has been shut down");
+        } catch (final IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testCreateResponseReadsErrorStreamOnlyForErrors() throws Exception {
+        final HttpRequest request = new HttpRequest("GET", new URI("https://www.test.com"));
+        final MockHttpURLConnection conn = new MockHttpURLConnection(new URL("https://www.test.com"));
+        final Map<String, List<String>> headerFields = new HashMap<String, List<String>>();
+        headerFields.put("key", Collections.singletonList("value"));
+        conn.setHeaderFields(headerFields);
+        final ByteArrayInputStream error = new ByteArrayInputStream(new byte[0]);
+        conn.setErrorStream(error);
+        conn.setInputStream(new ByteArrayInputStream(new byte[0]));
+
+        conn.setResponseCode(404);
+        assertSame(error, client.createHttpResponse(request, conn).getContent());
+        conn.setResponseCode(200);
+        final HttpResponse response = client.createHttpResponse(request, conn);
+        assertNotSame(error, response.getContent());
+        assertEquals("value", response.getHeaders().get("key"));
+    }
+}
+
+/**
+ * Opens connections with some content, failing to open them or to get the
+ * response when asked to, and counts their disconnections.
+ */
+class ContentUrlHttpClient extends UrlHttpClient {
+
+    final List<CountingHttpURLConnection> connections = new ArrayList<CountingHttpURLConnection>();
+    boolean failNext;
+    int failedOpens;
+
+    public ContentUrlHttpClient(ClientConfiguration config) {
+        super(config);
+    }
+
+    @Override
+    protected HttpURLConnection getUrlConnection(URL url) throws IOException {
+        if (failedOpens > 0) {
+            failedOpens--;
+            throw new IOException("failed to open");
+        }
+        final CountingHttpURLConnection connection = new CountingHttpURLConnection(url, failNext);
+        failNext = false;
+        connection.setOutputStream(new ByteArrayOutputStream());
+        connection.setResponseCode(200);
+        connection.setInputStream(new ByteArrayInputStream("content".getBytes(StringUtils.UTF8)));
+        connection.setHeaderFields(new HashMap<String, List<String>>());
+        connections.add(connection);
+        return connection;
+    }
+
+    static class CountingHttpURLConnection extends MockHttpURLConnection {
+        private final boolean fail;
+        int disconnects;
+
+        CountingHttpURLConnection(URL u, boolean fail) {
+            super(u);
+            this.fail = fail;
+        }
+
+        @Override
+        public int getResponseCode() {
+            if (fail) {
+                throw new IllegalStateException("failed");
+            }
+            return super.getResponseCode();
+        }
+
+        @Override
+        public String getResponseMessage() {
+            return "OK";
+        }
+
+        @Override
+        public void disconnect() {
+            disconnects++;
+        }
+    }
 }
 
 class MockHttpURLConnection extends HttpsURLConnection {
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.http.AmazonHttpClient;
+import com.amazonaws.http.ExecutionContext;
+import com.amazonaws.http.HttpRequest;
+import com.amazonaws.http.HttpResponse;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that {@link AmazonHttpClient} limits retries with the retry budget
+ * and fails fast with the circuit breaker configured in the
+ * ClientConfiguration.
+ */
+public class AmazonHttpClientRetryBudgetTest extends RetryPolicyTestBase {
+
+    /** Counts the requests it fails with a 503 error. */
+    private static final class CountingServiceErrorHttpClient extends
+            ReturnServiceErrorHttpClient {
+        private final AtomicInteger requests = new AtomicInteger();
+
+        CountingServiceErrorHttpClient() {
+            super(503, "ServiceUnavailable");
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            requests.incrementAndGet();
+            return super.execute(request);
+        }
+    }
+
+    private static ClientConfiguration noBackoff() {
+        return new ClientConfiguration().withRetryPolicy(new RetryPolicy(null,
+                new RetryPolicy.BackoffStrategy() {
+                    @Override
+                    public long delayBeforeNextRetry(
+                            com.amazonaws.AmazonWebServiceRequest originalRequest,
+                            AmazonClientException exception, int retriesAttempted) {
+                        return 0;
+                    }
+                }, 3, true));
+    }
+
+    private static void execute(AmazonHttpClient client) {
+        try {
+            client.execute(getSampleRequestWithRepeatableContent(originalRequest), null,
+                    errorResponseHandler, new ExecutionContext(false));
+            fail("the request should fail");
+        } catch (AmazonClientException expected) {
+        }
+    }
+
+    @Test
+    public void testRetriesStopOnceBudgetIsSpent() {
+        AmazonHttpClient client = new AmazonHttpClient(noBackoff()
+                .withRetryBudgetCapacity(4 * RetryBudget.RETRY_COST));
+        CountingServiceErrorHttpClient httpClient = new CountingServiceErrorHttpClient();
+        injectMockHttpClient(client, httpClient);
+
+        // 1 attempt and 3 retries
+        execute(client);
+        assertEquals(4, httpClient.requests.get());
+        // 1 attempt and the 1 retry left in the budget
+        execute(client);
+        assertEquals(6, httpClient.requests.get());
+        // no retry left
+        execute(client);
+        assertEquals(7, httpClient.requests.get());
+    }
+
+    @Test
+    public void testCircuitBreakerFailsFast() {
+        AmazonHttpClient client = new AmazonHttpClient(noBackoff()
+                .withCircuitBreakerFailureThreshold(2)
+                .withCircuitBreakerResetTimeout(60 * 1000));
+        CountingServiceErrorHttpClient httpClient = new CountingServiceErrorHttpClient();
+        injectMockHttpClient(client, httpClient);
+
+        // the retry after the second failure fails fast
+        try {
+            client.execute(getSampleRequestWithRepeatableContent(originalRequest), null,
+                    errorResponseHandler, new ExecutionContext(false));
+            fail("the request should fail");
+        } catch (AmazonServiceException e) {
+            fail("the request should fail fast rather than with the service error");
+        } catch (AmazonClientException expected) {
+            assertTrue(expected.getCause() instanceof AmazonServiceException);
+        }
+        assertEquals(2, httpClient.requests.get());
+
+        // later requests aren't sent at all
+        execute(client);
+        assertEquals(2, httpClient.requests.get());
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        AmazonHttpClient client = new AmazonHttpClient(noBackoff());
+        CountingServiceErrorHttpClient httpClient = new CountingServiceErrorHttpClient();
+        injectMockHttpClient(client, httpClient);
+        for (int i = 0; i < 10; i++) {
+            execute(client);
+        }
+        assertEquals(40, httpClient.requests.get());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class BackoffStrategiesTest {
+
+    private static final int BASE = 100;
+    private static final int MAX = 20 * 1000;
+    private static final int SAMPLES = 10000;
+
+    private static long delay(RetryPolicy.BackoffStrategy strategy, int retries) {
+        return strategy.delayBeforeNextRetry(null, null, retries);
+    }
+
+    @Test
+    public void testExponentialDelay() {
+        assertEquals(100, BackoffStrategies.exponentialDelay(BASE, MAX, 0));
+        assertEquals(800, BackoffStrategies.exponentialDelay(BASE, MAX, 3));
+        assertEquals(MAX, BackoffStrategies.exponentialDelay(BASE, MAX, 10));
+        // no overflow for large retry counts
+        assertEquals(MAX, BackoffStrategies.exponentialDelay(BASE, MAX, 100));
+    }
+
+    @Test
+    public void testFullJitterIsWithinExponentialDelay() {
+        RetryPolicy.BackoffStrategy strategy = BackoffStrategies.fullJitter(BASE, MAX);
+        for (int retries = 0; retries < 12; retries++) {
+            int ceiling = BackoffStrategies.exponentialDelay(BASE, MAX, retries);
+            long sum = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                long delay = delay(strategy, retries);
+                assertTrue(delay >= 0 && delay <= ceiling);
+                sum += delay;
+            }
+            // uniform between 0 and the ceiling
+            double mean = (double) sum / SAMPLES;
+            assertEquals(ceiling / 2.0, mean, ceiling * 0.05);
+        }
+    }
+
+    @Test
+    public void testEqualJitterIsAtLeastHalfTheExponentialDelay() {
+        RetryPolicy.BackoffStrategy strategy = BackoffStrategies.equalJitter(BASE, MAX);
+        for (int retries = 0; retries < 12; retries++) {
+            int ceiling = BackoffStrategies.exponentialDelay(BASE, MAX, retries);
+            for (int i = 0; i < SAMPLES; i++) {
+                long delay = delay(strategy, retries);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void testDecorrelatedJitterIsBoundedByPreviousDelay() {
+        RetryPolicy.BackoffStrategy strategy = BackoffStrategies.decorrelatedJitter(BASE, MAX);
+        for (int i = 0; i < SAMPLES / 10; i++) {
+            long previous = BASE;
+            for (int retries = 0; retries < 10; retries++) {
+                long delay = delay(strategy, retries);
+                assertTrue(delay >= BASE);
+                assertTrue(delay <= Math.min(MAX, 3 * previous));
+                previous = delay;
+            }
+        }
+    }
+
+    @Test
+    public void testDecorrelatedJitterStartsOverForEachRequest() {
+        RetryPolicy.BackoffStrategy strategy = BackoffStrategies.decorrelatedJitter(BASE, MAX);
+        for (int retries = 0; retries < 20; retries++) {
+            delay(strategy, retries);
+        }
+        // the first retry of the next request isn't based on the last delay
+        assertTrue(delay(strategy, 0) <= 3 * BASE);
+    }
+
+    @Test
+    public void testEachThreadHasItsOwnRandom() throws Exception {
+        final Random[] other = new Random[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other[0] = BackoffStrategies.random();
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotSame(BackoffStrategies.random(), other[0]);
+        assertTrue(BackoffStrategies.random() == BackoffStrategies.random());
+    }
+
+    /**
+     * Simulates many clients failing at the same time and retrying: with
+     * jitter their retries are spread out instead of arriving together.
+     */
+    @Test
+    public void testJitterSpreadsSimultaneousRetries() {
+        RetryPolicy.BackoffStrategy[] strategies = new RetryPolicy.BackoffStrategy[] {
+                BackoffStrategies.fullJitter(BASE, MAX),
+                BackoffStrategies.equalJitter(BASE, MAX),
+                BackoffStrategies.decorrelatedJitter(BASE, MAX)
+        };
+        int clients = 1000;
+        for (RetryPolicy.BackoffStrategy strategy : strategies) {
+            Map<Long, Integer> retriesPerSlot = new HashMap<Long, Integer>();
+            for (int client = 0; client < clients; client++) {
+                long time = 0;
+                for (int retries = 0; retries < 4; retries++) {
+                    time += delay(strategy, retries);
+                    Long slot = time / 10;
+                    Integer count = retriesPerSlot.get(slot);
+                    retriesPerSlot.put(slot, count == null ? 1 : count + 1);
+                }
+            }
+            int busiest = 0;
+            for (int count : retriesPerSlot.values()) {
+                busiest = Math.max(busiest, count);
+            }
+            // without jitter all the clients would retry in the same slot
+            assertTrue(strategy + ": " + busiest, busiest < clients / 3);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveBaseDelay() {
+        BackoffStrategies.fullJitter(0, MAX);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMaxDelayBelowBaseDelay() {
+        BackoffStrategies.decorrelatedJitter(BASE, BASE - 1);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+public class CircuitBreakerTest {
+
+    private static final String ENDPOINT = "https://service.us-east-1.amazonaws.com";
+    private static final String OTHER_ENDPOINT = "https://service.us-west-2.amazonaws.com";
+
+    private long now;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        now = 1000;
+        breaker = new CircuitBreaker(3, 5000) {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    private void fail(String endpoint, int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.recordFailure(endpoint);
+        }
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        fail(ENDPOINT, 2);
+        assertTrue(breaker.allowRequest(ENDPOINT));
+        breaker.recordSuccess(ENDPOINT);
+        fail(ENDPOINT, 2);
+        assertTrue(breaker.allowRequest(ENDPOINT));
+        breaker.recordFailure(ENDPOINT);
+        assertTrue(breaker.isOpen(ENDPOINT));
+        assertFalse(breaker.allowRequest(ENDPOINT));
+        // other endpoints are unaffected
+        assertTrue(breaker.allowRequest(OTHER_ENDPOINT));
+    }
+
+    @Test
+    public void testLetsOneTrialThroughAfterResetTimeout() {
+        fail(ENDPOINT, 3);
+        now += 4999;
+        assertFalse(breaker.allowRequest(ENDPOINT));
+        now += 1;
+        assertTrue(breaker.allowRequest(ENDPOINT));
+        // only one trial until the next reset timeout
+        assertFalse(breaker.allowRequest(ENDPOINT));
+
+        breaker.recordSuccess(ENDPOINT);
+        assertFalse(breaker.isOpen(ENDPOINT));
+        assertTrue(breaker.allowRequest(ENDPOINT));
+    }
+
+    @Test
+    public void testFailedTrialKeepsCircuitOpen() {
+        fail(ENDPOINT, 3);
+        now += 5000;
+        assertTrue(breaker.allowRequest(ENDPOINT));
+        breaker.recordFailure(ENDPOINT);
+        assertFalse(breaker.allowRequest(ENDPOINT));
+        now += 5000;
+        assertTrue(breaker.allowRequest(ENDPOINT));
+    }
+
+    @Test
+    public void testTrialWithoutOutcomeIsRepeated() {
+        fail(ENDPOINT, 3);
+        now += 5000;
+        assertTrue(breaker.allowRequest(ENDPOINT));
+        // the trial never reports back
+        now += 5000;
+        assertTrue(breaker.allowRequest(ENDPOINT));
+    }
+
+    @Test
+    public void testIsFailure() {
+        assertTrue(CircuitBreaker.isFailure(new AmazonClientException("io",
+                new IOException())));
+        assertTrue(CircuitBreaker.isFailure(new AmazonClientException("timeout",
+                new SocketTimeoutException())));
+        AmazonServiceException ase = new AmazonServiceException("error");
+        ase.setStatusCode(503);
+        assertTrue(CircuitBreaker.isFailure(ase));
+        ase = new AmazonServiceException("throttled");
+        ase.setStatusCode(400);
+        ase.setErrorCode("Throttling");
+        assertTrue(CircuitBreaker.isFailure(ase));
+        ase = new AmazonServiceException("not found");
+        ase.setStatusCode(404);
+        ase.setErrorCode("NotFound");
+        assertFalse(CircuitBreaker.isFailure(ase));
+        assertFalse(CircuitBreaker.isFailure(new AmazonClientException("other")));
+    }
+}
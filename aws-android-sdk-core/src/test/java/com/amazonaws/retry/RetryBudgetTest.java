@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+public class RetryBudgetTest {
+
+    private static AmazonServiceException serverError() {
+        AmazonServiceException ase = new AmazonServiceException("server error");
+        ase.setStatusCode(500);
+        return ase;
+    }
+
+    @Test
+    public void testRetriesTakeTokens() {
+        RetryBudget budget = new RetryBudget(12);
+        assertTrue(budget.acquireRetry(serverError()));
+        assertEquals(7, budget.getAvailableTokens());
+        assertFalse(budget.acquireRetry(new AmazonClientException("timeout",
+                new SocketTimeoutException())));
+        assertEquals(7, budget.getAvailableTokens());
+        assertTrue(budget.acquireRetry(serverError()));
+        assertFalse(budget.acquireRetry(serverError()));
+        assertEquals(2, budget.getAvailableTokens());
+    }
+
+    @Test
+    public void testSuccessesPutTokensBack() {
+        RetryBudget budget = new RetryBudget(20);
+        budget.acquireRetry(serverError());
+        budget.acquireRetry(serverError());
+        assertEquals(10, budget.getAvailableTokens());
+        budget.releaseOnSuccess(null);
+        assertEquals(11, budget.getAvailableTokens());
+        budget.releaseOnSuccess(serverError());
+        assertEquals(16, budget.getAvailableTokens());
+        for (int i = 0; i < 10; i++) {
+            budget.releaseOnSuccess(null);
+        }
+        assertEquals(20, budget.getAvailableTokens());
+    }
+
+    /**
+     * Simulates a brownout: while most requests fail, the retries are limited
+     * to what the budget allows, and they resume once requests succeed again.
+     */
+    @Test
+    public void testBrownoutSimulation() {
+        int capacity = 500;
+        RetryBudget budget = new RetryBudget(capacity);
+        Random random = new Random(42);
+        int maxRetries = 3;
+
+        // 95% of the requests fail during the brownout
+        int requests = 2000;
+        int retries = 0;
+        for (int i = 0; i < requests; i++) {
+            AmazonClientException retried = null;
+            for (int attempt = 0; attempt <= maxRetries; attempt++) {
+                if (random.nextDouble() >= 0.95) {
+                    budget.releaseOnSuccess(retried);
+                    break;
+                }
+                retried = serverError();
+                if (attempt == maxRetries || !budget.acquireRetry(retried)) {
+                    break;
+                }
+                retries++;
+            }
+        }
+        // without a budget, nearly every request would be retried maxRetries
+        // times; with one, retries are bounded by the capacity and the
+        // tokens put back by the few successes
+        assertTrue("retries: " + retries, retries < requests * maxRetries / 5);
+        assertTrue(budget.getAvailableTokens() < RetryBudget.RETRY_COST * 2);
+
+        // once the service recovers, the budget fills up again
+        for (int i = 0; i < capacity; i++) {
+            budget.releaseOnSuccess(null);
+        }
+        assertEquals(capacity, budget.getAvailableTokens());
+        assertTrue(budget.acquireRetry(serverError()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveCapacity() {
+        new RetryBudget(0);
+    }
+}
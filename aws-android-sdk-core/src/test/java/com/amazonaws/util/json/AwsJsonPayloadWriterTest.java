@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.util.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.util.IOUtils;
+import com.amazonaws.util.StringUtils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class AwsJsonPayloadWriterTest {
+
+    @Test
+    public void testContentIsUtf8Encoded() throws IOException {
+        AwsJsonPayloadWriter writer = new AwsJsonPayloadWriter(1);
+        writer.beginObject();
+        writer.name("encoding").value("Chloë");
+        writer.name("long").value(123L);
+        writer.endObject();
+        writer.close();
+
+        String expected = "{\"encoding\":\"Chloë\",\"long\":123}";
+        byte[] expectedBytes = expected.getBytes(StringUtils.UTF8);
+        assertEquals(expectedBytes.length, writer.getContentLength());
+        assertEquals(expected, IOUtils.toString(writer.getContent()));
+    }
+
+    @Test
+    public void testContentIsRepeatable() throws IOException {
+        AwsJsonPayloadWriter writer = new AwsJsonPayloadWriter();
+        writer.beginArray().value("a").value("b").endArray();
+        writer.close();
+
+        InputStream content = writer.getContent();
+        assertTrue(content.markSupported());
+        content.mark(-1);
+        assertEquals("[\"a\",\"b\"]", IOUtils.toString(content));
+        content.reset();
+        assertEquals("[\"a\",\"b\"]", IOUtils.toString(content));
+        assertEquals("[\"a\",\"b\"]", IOUtils.toString(writer.getContent()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testContentRequiresClose() throws IOException {
+        AwsJsonPayloadWriter writer = new AwsJsonPayloadWriter();
+        writer.beginObject();
+        writer.getContent();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Paces requests with additive-increase/multiplicative-decrease (AIMD): the
+ * number of requests allowed in flight and, if a maximum rate is given, the
+ * rate of capacity units they may consume are halved whenever the service
+ * throttles, and grow back step by step with each request that isn't
+ * throttled, up to their maximums.
+ * <p>
+ * The rate is enforced by spacing out requests according to the capacity
+ * units they're expected to consume; the estimate is corrected with the
+ * capacity the service reports them to have consumed.
+ * <p>
+ * This class isn't thread-safe; it's meant to be driven by the thread that
+ * sends the requests.
+ */
+class AimdThrottle {
+
+    /** The fraction of the maximum rate the rate grows by on each success */
+    static final double RATE_INCREASE = 0.05;
+
+    /** The lowest fraction of the maximum rate the rate is cut down to */
+    static final double MIN_RATE = 1.0 / 64;
+
+    private final int maxWindow;
+    private final double maxRate;
+    private int window;
+    private double rate;
+    private boolean started;
+    /** The time the next request may be sent at */
+    private long nextFreeNanos;
+
+    /**
+     * @param maxWindow the max number of requests in flight
+     * @param maxRate the max rate of capacity units per second, or 0 for no
+     *            max rate
+     */
+    AimdThrottle(int maxWindow, double maxRate) {
+        if (maxWindow < 1) {
+            throw new IllegalArgumentException("maxWindow must be at least 1: " + maxWindow);
+        }
+        if (maxRate < 0) {
+            throw new IllegalArgumentException("maxRate must not be negative: " + maxRate);
+        }
+        this.maxWindow = maxWindow;
+        this.maxRate = maxRate;
+        this.window = maxWindow;
+        this.rate = maxRate;
+    }
+
+    /** Returns true if the consumed capacity is paced. */
+    boolean isRateLimited() {
+        return maxRate > 0;
+    }
+
+    /** Returns the number of requests currently allowed in flight. */
+    int getWindow() {
+        return window;
+    }
+
+    /** Returns the current rate of capacity units per second. */
+    double getRate() {
+        return rate;
+    }
+
+    /**
+     * Waits until a request expected to consume the given capacity units may
+     * be sent.
+     */
+    void acquire(double units) {
+        if (!isRateLimited()) {
+            return;
+        }
+        long now = nanoTime();
+        if (!started) {
+            nextFreeNanos = now;
+            started = true;
+        }
+        long wait = nextFreeNanos - now;
+        nextFreeNanos = Math.max(nextFreeNanos, now) + toNanos(units);
+        if (wait > 0) {
+            sleepNanos(wait);
+        }
+    }
+
+    /**
+     * Corrects the pacing with the capacity units a request actually consumed
+     * rather than the units it was expected to consume.
+     */
+    void correct(double expectedUnits, double consumedUnits) {
+        if (isRateLimited()) {
+            nextFreeNanos += toNanos(consumedUnits - expectedUnits);
+        }
+    }
+
+    /** Records that a request wasn't throttled. */
+    void onSuccess() {
+        if (isRateLimited()) {
+            rate = Math.min(maxRate, rate + maxRate * RATE_INCREASE);
+        }
+        window = Math.min(maxWindow, window + 1);
+    }
+
+    /** Records that a request was throttled. */
+    void onThrottle() {
+        rate = Math.max(maxRate * MIN_RATE, rate / 2);
+        window = Math.max(1, window / 2);
+    }
+
+    private long toNanos(double units) {
+        return (long) (units / rate * 1000000000L);
+    }
+
+    /** Returns the current time in nanoseconds; overridden by tests. */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /** Sleeps for the given time in nanoseconds; overridden by tests. */
+    void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException(e.getMessage(), e);
+        }
+    }
+}
@@ -85,6 +85,8 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -99,6 +101,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Pre-defined strategies for mapping between Java types and DynamoDB types.
@@ -198,10 +202,49 @@ public final class ConversionSchemas {
 
     static class StandardItemConverter implements ItemConverter {
 
+        /**
+         * A mapped property of a model class, with its attribute name and
+         * accessors. The setter, marshaller and unmarshaller are resolved the
+         * first time they're needed, since a class that's only ever written
+         * doesn't need setters; racing threads resolve the same values.
+         */
+        private static final class PropertyMapping {
+            private final Method getter;
+            private final String attributeName;
+            private volatile Method setter;
+            private volatile ArgumentMarshaller marshaller;
+            private volatile ArgumentUnmarshaller unmarshaller;
+
+            private PropertyMapping(Method getter, String attributeName) {
+                this.getter = getter;
+                this.attributeName = attributeName;
+            }
+        }
+
+        /**
+         * The mapping of a model class, built once per converter and read
+         * without locking from then on.
+         */
+        private static final class ItemMapping {
+            private final PropertyMapping[] properties;
+            private volatile Constructor<?> constructor;
+
+            private ItemMapping(Class<?> clazz, DynamoDBReflector reflector) {
+                List<PropertyMapping> mappings = new ArrayList<PropertyMapping>();
+                for (Method getter : reflector.getRelevantGetters(clazz)) {
+                    mappings.add(new PropertyMapping(getter,
+                            reflector.getAttributeName(getter)));
+                }
+                properties = mappings.toArray(new PropertyMapping[mappings.size()]);
+            }
+        }
+
         private final MarshallerSet marshallerSet;
         private final UnmarshallerSet unmarshallerSet;
         private final DynamoDBReflector reflector;
         private final S3ClientCache s3cc;
+        private final ConcurrentMap<Class<?>, ItemMapping> itemMappings =
+                new ConcurrentHashMap<Class<?>, ItemMapping>();
 
         public StandardItemConverter(
                 MarshallerSet marshallerSet,
@@ -264,19 +307,19 @@ public final class ConversionSchemas {
                 return null;
             }
 
-            Class<?> clazz = object.getClass();
+            ItemMapping mapping = getItemMapping(object.getClass());
             Map<String, AttributeValue> result =
                     new HashMap<String, AttributeValue>();
 
-            for (Method getter : reflector.getRelevantGetters(clazz)) {
+            for (PropertyMapping property : mapping.properties) {
                 Object getterResult =
-                        ReflectionUtils.safeInvoke(getter, object);
+                        ReflectionUtils.safeInvoke(property.getter, object);
 
                 if (getterResult != null) {
-                    AttributeValue value = convert(getter, getterResult);
+                    AttributeValue value =
+                            getMarshaller(property).marshall(getterResult);
                     if (value != null) {
-                        String name = reflector.getAttributeName(getter);
-                        result.put(name, value);
+                        result.put(property.attributeName, value);
                     }
                 }
             }
@@ -284,6 +327,27 @@ public final class ConversionSchemas {
             return result;
         }
 
+        private ItemMapping getItemMapping(Class<?> clazz) {
+            ItemMapping mapping = itemMappings.get(clazz);
+            if (mapping == null) {
+                mapping = new ItemMapping(clazz, reflector);
+                ItemMapping existing = itemMappings.putIfAbsent(clazz, mapping);
+                if (existing != null) {
+                    mapping = existing;
+                }
+            }
+            return mapping;
+        }
+
+        private ArgumentMarshaller getMarshaller(PropertyMapping property) {
+            ArgumentMarshaller marshaller = property.marshaller;
+            if (marshaller == null) {
+                marshaller = getMarshaller(property.getter);
+                property.marshaller = marshaller;
+            }
+            return marshaller;
+        }
+
         private ArgumentMarshaller getMarshaller(Method getter) {
             ArgumentMarshaller marshaller =
                     marshallerSet.getMarshaller(getter);
@@ -408,16 +472,16 @@ public final class ConversionSchemas {
                 Class<T> clazz,
                 Map<String, AttributeValue> value) {
 
-            T result = createObject(clazz);
+            ItemMapping mapping = getItemMapping(clazz);
+            T result = createObject(clazz, mapping);
             if (value == null || value.isEmpty()) {
                 return result;
             }
 
-            for (Method m : reflector.getRelevantGetters(clazz)) {
-                String attributeName = reflector.getAttributeName(m);
-                AttributeValue av = value.get(attributeName);
+            for (PropertyMapping property : mapping.properties) {
+                AttributeValue av = value.get(property.attributeName);
                 if (av != null) {
-                    setValue(result, m, av);
+                    setValue(result, property, av);
                 }
             }
 
@@ -426,12 +490,19 @@ public final class ConversionSchemas {
 
         private void setValue(
                 Object target,
-                Method getter,
+                PropertyMapping property,
                 AttributeValue value) {
 
-            Method setter = reflector.getSetter(getter);
-            ArgumentUnmarshaller unmarshaller =
-                    getUnmarshaller(getter, setter);
+            // the unmarshaller is published after the setter, so it's read
+            // first
+            ArgumentUnmarshaller unmarshaller = property.unmarshaller;
+            Method setter = property.setter;
+            if (unmarshaller == null) {
+                setter = reflector.getSetter(property.getter);
+                unmarshaller = getUnmarshaller(property.getter, setter);
+                property.setter = setter;
+                property.unmarshaller = unmarshaller;
+            }
 
             Object unmarshalled = unmarshall(unmarshaller, setter, value);
             ReflectionUtils.safeInvoke(setter, target, unmarshalled);
@@ -584,10 +655,24 @@ public final class ConversionSchemas {
             }
         }
 
-        private static <T> T createObject(Class<T> clazz) {
+        private static <T> T createObject(Class<T> clazz, ItemMapping mapping) {
             try {
 
-                return clazz.newInstance();
+                Constructor<?> constructor = mapping.constructor;
+                if (constructor == null) {
+                    constructor = clazz.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    mapping.constructor = constructor;
+                }
+                return clazz.cast(constructor.newInstance());
+
+            } catch (NoSuchMethodException e) {
+                throw new DynamoDBMappingException(
+                        "Failed to instantiate new instance of class", e);
+
+            } catch (SecurityException e) {
+                throw new DynamoDBMappingException(
+                        "Failed to instantiate new instance of class", e);
 
             } catch (InstantiationException e) {
                 throw new DynamoDBMappingException(
@@ -596,6 +681,10 @@ public final class ConversionSchemas {
             } catch (IllegalAccessException e) {
                 throw new DynamoDBMappingException(
                         "Failed to instantiate new instance of class", e);
+
+            } catch (InvocationTargetException e) {
+                throw new DynamoDBMappingException(
+                        "Failed to instantiate new instance of class", e.getCause());
             }
         }
 
@@ -1261,11 +1350,11 @@ public final class ConversionSchemas {
 
     static class CachingMarshallerSet implements MarshallerSet {
 
-        private final Map<Method, ArgumentMarshaller> cache =
-                new HashMap<Method, ArgumentMarshaller>();
+        private final ConcurrentMap<Method, ArgumentMarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentMarshaller>();
 
-        private final Map<Type, ArgumentMarshaller> memberCache =
-                new HashMap<Type, ArgumentMarshaller>();
+        private final ConcurrentMap<Type, ArgumentMarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentMarshaller>();
 
         private final MarshallerSet wrapped;
 
@@ -1275,40 +1364,40 @@ public final class ConversionSchemas {
 
         @Override
         public ArgumentMarshaller getMarshaller(Method getter) {
-            synchronized (cache) {
-                ArgumentMarshaller marshaler = cache.get(getter);
-                if (marshaler != null) {
-                    return marshaler;
-                }
-
-                marshaler = wrapped.getMarshaller(getter);
-                cache.put(getter, marshaler);
+            ArgumentMarshaller marshaler = cache.get(getter);
+            if (marshaler != null) {
                 return marshaler;
             }
+
+            marshaler = wrapped.getMarshaller(getter);
+            if (marshaler != null) {
+                cache.putIfAbsent(getter, marshaler);
+            }
+            return marshaler;
         }
 
         @Override
         public ArgumentMarshaller getMemberMarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentMarshaller marshaller = memberCache.get(memberType);
-                if (marshaller != null) {
-                    return marshaller;
-                }
-
-                marshaller = wrapped.getMemberMarshaller(memberType);
-                memberCache.put(memberType, marshaller);
+            ArgumentMarshaller marshaller = memberCache.get(memberType);
+            if (marshaller != null) {
                 return marshaller;
             }
+
+            marshaller = wrapped.getMemberMarshaller(memberType);
+            if (marshaller != null) {
+                memberCache.putIfAbsent(memberType, marshaller);
+            }
+            return marshaller;
         }
     }
 
     static class CachingUnmarshallerSet implements UnmarshallerSet {
 
-        private final Map<Method, ArgumentUnmarshaller> cache =
-                new HashMap<Method, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Method, ArgumentUnmarshaller> cache =
+                new ConcurrentHashMap<Method, ArgumentUnmarshaller>();
 
-        private final Map<Type, ArgumentUnmarshaller> memberCache =
-                new HashMap<Type, ArgumentUnmarshaller>();
+        private final ConcurrentMap<Type, ArgumentUnmarshaller> memberCache =
+                new ConcurrentHashMap<Type, ArgumentUnmarshaller>();
 
         private final UnmarshallerSet wrapped;
 
@@ -1321,30 +1410,30 @@ public final class ConversionSchemas {
                 Method getter,
                 Method setter) {
 
-            synchronized (cache) {
-                ArgumentUnmarshaller unmarshaler = cache.get(getter);
-                if (unmarshaler != null) {
-                    return unmarshaler;
-                }
-
-                unmarshaler = wrapped.getUnmarshaller(getter, setter);
-                cache.put(getter, unmarshaler);
+            ArgumentUnmarshaller unmarshaler = cache.get(getter);
+            if (unmarshaler != null) {
                 return unmarshaler;
             }
+
+            unmarshaler = wrapped.getUnmarshaller(getter, setter);
+            if (unmarshaler != null) {
+                cache.putIfAbsent(getter, unmarshaler);
+            }
+            return unmarshaler;
         }
 
         @Override
         public ArgumentUnmarshaller getMemberUnmarshaller(Type memberType) {
-            synchronized (memberCache) {
-                ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
-                if (unmarshaller != null) {
-                    return unmarshaller;
-                }
-
-                unmarshaller = wrapped.getMemberUnmarshaller(memberType);
-                memberCache.put(memberType, unmarshaller);
+            ArgumentUnmarshaller unmarshaller = memberCache.get(memberType);
+            if (unmarshaller != null) {
                 return unmarshaller;
             }
+
+            unmarshaller = wrapped.getMemberUnmarshaller(memberType);
+            if (unmarshaller != null) {
+                memberCache.putIfAbsent(memberType, unmarshaller);
+            }
+            return unmarshaller;
         }
     }
 
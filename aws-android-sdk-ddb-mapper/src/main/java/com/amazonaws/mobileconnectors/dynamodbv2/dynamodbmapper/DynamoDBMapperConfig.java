@@ -17,6 +17,8 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import com.amazonaws.metrics.RequestMetricCollector;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * Immutable configuration object for service call behavior. An instance of this
  * configuration is supplied to every {@link DynamoDBMapper} at construction; if
@@ -52,6 +54,11 @@ public class DynamoDBMapperConfig {
         private PaginationLoadingStrategy paginationLoadingStrategy;
         private RequestMetricCollector requestMetricCollector;
         private ConversionSchema conversionSchema;
+        private Integer batchLoadConcurrency;
+        private Integer batchWriteConcurrency;
+        private Integer batchWriteCapacityUnitsPerSecond;
+        private ExecutorService executorService;
+        private Integer paginationPrefetchPages;
 
         /**
          * Creates a new builder initialized with the {@link #DEFAULT} values.
@@ -65,6 +72,11 @@ public class DynamoDBMapperConfig {
             paginationLoadingStrategy = DEFAULT.getPaginationLoadingStrategy();
             requestMetricCollector = DEFAULT.getRequestMetricCollector();
             conversionSchema = DEFAULT.getConversionSchema();
+            batchLoadConcurrency = DEFAULT.getBatchLoadConcurrency();
+            batchWriteConcurrency = DEFAULT.getBatchWriteConcurrency();
+            batchWriteCapacityUnitsPerSecond = DEFAULT.getBatchWriteCapacityUnitsPerSecond();
+            executorService = DEFAULT.getExecutorService();
+            paginationPrefetchPages = DEFAULT.getPaginationPrefetchPages();
         }
 
         /**
@@ -255,6 +267,149 @@ public class DynamoDBMapperConfig {
             return this;
         }
 
+        /**
+         * @return the currently-configured maximum number of concurrent batch
+         *         get requests of a batch load
+         */
+        public Integer getBatchLoadConcurrency() {
+            return batchLoadConcurrency;
+        }
+
+        /**
+         * @param value the new maximum number of concurrent batch get requests
+         *            of a batch load
+         */
+        public void setBatchLoadConcurrency(Integer value) {
+            if (value != null && value < 1) {
+                throw new IllegalArgumentException(
+                        "batchLoadConcurrency must be at least 1: " + value);
+            }
+            batchLoadConcurrency = value;
+        }
+
+        /**
+         * @param value the new maximum number of concurrent batch get requests
+         *            of a batch load
+         * @return this builder
+         */
+        public Builder withBatchLoadConcurrency(Integer value) {
+            setBatchLoadConcurrency(value);
+            return this;
+        }
+
+        /**
+         * @return the currently-configured maximum number of concurrent batch
+         *         write requests of a batch write
+         */
+        public Integer getBatchWriteConcurrency() {
+            return batchWriteConcurrency;
+        }
+
+        /**
+         * @param value the new maximum number of concurrent batch write
+         *            requests of a batch write
+         */
+        public void setBatchWriteConcurrency(Integer value) {
+            if (value != null && value < 1) {
+                throw new IllegalArgumentException(
+                        "batchWriteConcurrency must be at least 1: " + value);
+            }
+            batchWriteConcurrency = value;
+        }
+
+        /**
+         * @param value the new maximum number of concurrent batch write
+         *            requests of a batch write
+         * @return this builder
+         */
+        public Builder withBatchWriteConcurrency(Integer value) {
+            setBatchWriteConcurrency(value);
+            return this;
+        }
+
+        /**
+         * @return the currently-configured write capacity units per second a
+         *         batch write may consume
+         */
+        public Integer getBatchWriteCapacityUnitsPerSecond() {
+            return batchWriteCapacityUnitsPerSecond;
+        }
+
+        /**
+         * @param value the new write capacity units per second a batch write
+         *            may consume
+         */
+        public void setBatchWriteCapacityUnitsPerSecond(Integer value) {
+            if (value != null && value < 1) {
+                throw new IllegalArgumentException(
+                        "batchWriteCapacityUnitsPerSecond must be at least 1: " + value);
+            }
+            batchWriteCapacityUnitsPerSecond = value;
+        }
+
+        /**
+         * @param value the new write capacity units per second a batch write
+         *            may consume
+         * @return this builder
+         */
+        public Builder withBatchWriteCapacityUnitsPerSecond(Integer value) {
+            setBatchWriteCapacityUnitsPerSecond(value);
+            return this;
+        }
+
+        /**
+         * @return the currently-configured executor service
+         */
+        public ExecutorService getExecutorService() {
+            return executorService;
+        }
+
+        /**
+         * @param value the new executor service
+         */
+        public void setExecutorService(ExecutorService value) {
+            executorService = value;
+        }
+
+        /**
+         * @param value the new executor service
+         * @return this builder
+         */
+        public Builder withExecutorService(ExecutorService value) {
+            setExecutorService(value);
+            return this;
+        }
+
+        /**
+         * @return the currently-configured maximum number of pages a streaming
+         *         paginated list fetches ahead of its iterator
+         */
+        public Integer getPaginationPrefetchPages() {
+            return paginationPrefetchPages;
+        }
+
+        /**
+         * @param value the new maximum number of pages a streaming paginated
+         *            list fetches ahead of its iterator
+         */
+        public void setPaginationPrefetchPages(Integer value) {
+            if (value != null && value < 1) {
+                throw new IllegalArgumentException(
+                        "paginationPrefetchPages must be at least 1: " + value);
+            }
+            paginationPrefetchPages = value;
+        }
+
+        /**
+         * @param value the new maximum number of pages a streaming paginated
+         *            list fetches ahead of its iterator
+         * @return this builder
+         */
+        public Builder withPaginationPrefetchPages(Integer value) {
+            setPaginationPrefetchPages(value);
+            return this;
+        }
+
         /**
          * Builds a new {@code DynamoDBMapperConfig} object.
          *
@@ -269,7 +424,12 @@ public class DynamoDBMapperConfig {
                     objectTableNameResolver,
                     paginationLoadingStrategy,
                     requestMetricCollector,
-                    conversionSchema);
+                    conversionSchema,
+                    batchLoadConcurrency,
+                    batchWriteConcurrency,
+                    batchWriteCapacityUnitsPerSecond,
+                    executorService,
+                    paginationPrefetchPages);
         }
     }
 
@@ -356,6 +516,19 @@ public class DynamoDBMapperConfig {
          */
         ITERATION_ONLY,
 
+        /**
+         * Like ITERATION_ONLY, only supports using iterator to read from the
+         * paginated list, and the list could only be iterated once. The next
+         * pages are fetched and unmarshalled in the background while the
+         * current one is iterated, so that the list keeps at most
+         * {@link DynamoDBMapperConfig#getPaginationPrefetchPages()} pages in
+         * memory besides the one being iterated.
+         * <p>
+         * Use this configuration to iterate over large result sets as fast as
+         * they can be fetched.
+         */
+        STREAMING,
+
         /**
          * Paginated list will eagerly load all the paginated results from
          * DynamoDB as soon as the list is initialized.
@@ -511,6 +684,11 @@ public class DynamoDBMapperConfig {
     private final PaginationLoadingStrategy paginationLoadingStrategy;
     private final RequestMetricCollector requestMetricCollector;
     private final ConversionSchema conversionSchema;
+    private final Integer batchLoadConcurrency;
+    private final Integer batchWriteConcurrency;
+    private final Integer batchWriteCapacityUnitsPerSecond;
+    private final ExecutorService executorService;
+    private final Integer paginationPrefetchPages;
 
     /**
      * Legacy constructor, using default PaginationLoadingStrategy
@@ -578,7 +756,12 @@ public class DynamoDBMapperConfig {
                 null,
                 paginationLoadingStrategy,
                 requestMetricCollector,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT,
+                null,
+                null,
+                null,
+                null,
+                null);
     }
 
     private DynamoDBMapperConfig(
@@ -589,7 +772,12 @@ public class DynamoDBMapperConfig {
             ObjectTableNameResolver objectTableNameResolver,
             PaginationLoadingStrategy paginationLoadingStrategy,
             RequestMetricCollector requestMetricCollector,
-            ConversionSchema conversionSchema) {
+            ConversionSchema conversionSchema,
+            Integer batchLoadConcurrency,
+            Integer batchWriteConcurrency,
+            Integer batchWriteCapacityUnitsPerSecond,
+            ExecutorService executorService,
+            Integer paginationPrefetchPages) {
 
         this.saveBehavior = saveBehavior;
         this.consistentReads = consistentReads;
@@ -599,6 +787,11 @@ public class DynamoDBMapperConfig {
         this.paginationLoadingStrategy = paginationLoadingStrategy;
         this.requestMetricCollector = requestMetricCollector;
         this.conversionSchema = conversionSchema;
+        this.batchLoadConcurrency = batchLoadConcurrency;
+        this.batchWriteConcurrency = batchWriteConcurrency;
+        this.batchWriteCapacityUnitsPerSecond = batchWriteCapacityUnitsPerSecond;
+        this.executorService = executorService;
+        this.paginationPrefetchPages = paginationPrefetchPages;
     }
 
     /**
@@ -606,7 +799,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(SaveBehavior saveBehavior) {
         this(saveBehavior, null, null, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null);
     }
 
     /**
@@ -615,7 +808,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(ConsistentReads consistentReads) {
         this(null, consistentReads, null, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null);
     }
 
     /**
@@ -623,7 +816,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(TableNameOverride tableNameOverride) {
         this(null, null, tableNameOverride, null, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null);
     }
 
     /**
@@ -632,7 +825,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(TableNameResolver tableNameResolver) {
         this(null, null, null, tableNameResolver, null, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null);
     }
 
     /**
@@ -641,7 +834,7 @@ public class DynamoDBMapperConfig {
      */
     public DynamoDBMapperConfig(ObjectTableNameResolver objectTableNameResolver) {
         this(null, null, null, null, objectTableNameResolver, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null);
     }
 
     /**
@@ -651,7 +844,7 @@ public class DynamoDBMapperConfig {
     public DynamoDBMapperConfig(TableNameResolver tableNameResolver,
             ObjectTableNameResolver objectTableNameResolver) {
         this(null, null, null, tableNameResolver, objectTableNameResolver, null, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null);
     }
 
     /**
@@ -662,14 +855,15 @@ public class DynamoDBMapperConfig {
             PaginationLoadingStrategy paginationLoadingStrategy) {
 
         this(null, null, null, null, null, paginationLoadingStrategy, null,
-                ConversionSchemas.DEFAULT);
+                ConversionSchemas.DEFAULT, null, null, null, null, null);
     }
 
     /**
      * Constructs a new configuration object with the conversion schema given.
      */
     public DynamoDBMapperConfig(ConversionSchema conversionSchema) {
-        this(null, null, null, null, null, null, null, conversionSchema);
+        this(null, null, null, null, null, null, null, conversionSchema, null, null, null, null,
+                null);
     }
 
     /**
@@ -699,6 +893,12 @@ public class DynamoDBMapperConfig {
                     defaults.getPaginationLoadingStrategy();
             this.requestMetricCollector = defaults.getRequestMetricCollector();
             this.conversionSchema = defaults.getConversionSchema();
+            this.batchLoadConcurrency = defaults.getBatchLoadConcurrency();
+            this.batchWriteConcurrency = defaults.getBatchWriteConcurrency();
+            this.batchWriteCapacityUnitsPerSecond =
+                    defaults.getBatchWriteCapacityUnitsPerSecond();
+            this.executorService = defaults.getExecutorService();
+            this.paginationPrefetchPages = defaults.getPaginationPrefetchPages();
 
         } else {
 
@@ -736,6 +936,27 @@ public class DynamoDBMapperConfig {
                     ? defaults.getConversionSchema()
                     : overrides.getConversionSchema();
 
+            this.batchLoadConcurrency = (overrides.getBatchLoadConcurrency() == null)
+                    ? defaults.getBatchLoadConcurrency()
+                    : overrides.getBatchLoadConcurrency();
+
+            this.batchWriteConcurrency = (overrides.getBatchWriteConcurrency() == null)
+                    ? defaults.getBatchWriteConcurrency()
+                    : overrides.getBatchWriteConcurrency();
+
+            this.batchWriteCapacityUnitsPerSecond =
+                    (overrides.getBatchWriteCapacityUnitsPerSecond() == null)
+                            ? defaults.getBatchWriteCapacityUnitsPerSecond()
+                            : overrides.getBatchWriteCapacityUnitsPerSecond();
+
+            this.executorService = (overrides.getExecutorService() == null)
+                    ? defaults.getExecutorService()
+                    : overrides.getExecutorService();
+
+            this.paginationPrefetchPages = (overrides.getPaginationPrefetchPages() == null)
+                    ? defaults.getPaginationPrefetchPages()
+                    : overrides.getPaginationPrefetchPages();
+
         }
     }
 
@@ -812,6 +1033,59 @@ public class DynamoDBMapperConfig {
         return conversionSchema;
     }
 
+    /**
+     * Returns the maximum number of batch get requests a batch load sends
+     * concurrently, or null if not specified. Keys are loaded one batch at a
+     * time by default.
+     */
+    public Integer getBatchLoadConcurrency() {
+        return batchLoadConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of batch write requests a batch write sends
+     * concurrently, or null if not specified. Items are written one batch at a
+     * time by default. Fewer requests are sent concurrently while DynamoDB
+     * throttles the writes. Concurrent batches may be written in any order, so
+     * a batch write with more than one write request for the same item should
+     * be left at the default.
+     */
+    public Integer getBatchWriteConcurrency() {
+        return batchWriteConcurrency;
+    }
+
+    /**
+     * Returns the write capacity units per second a batch write may consume,
+     * or null if not specified, in which case the writes are not paced. The
+     * rate is lowered while DynamoDB throttles the writes, and raised back
+     * towards this value as they go through.
+     */
+    public Integer getBatchWriteCapacityUnitsPerSecond() {
+        return batchWriteCapacityUnitsPerSecond;
+    }
+
+    /**
+     * Returns the executor service that concurrent requests of the mapper are
+     * run on, or null if not specified, in which case a thread pool is created
+     * for each operation that needs one, and the segments of parallel scans
+     * are scanned on a thread pool shared by all of them. The executor service
+     * isn't shut down by the mapper.
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Returns the maximum number of pages a paginated list in STREAMING mode
+     * fetches ahead of its iterator, or null if not specified. The pages are
+     * fetched on the executor service, or on a thread of the list's own if
+     * none is specified. Each segment of a parallel scan in STREAMING mode
+     * also scans up to this many pages ahead.
+     */
+    public Integer getPaginationPrefetchPages() {
+        return paginationPrefetchPages;
+    }
+
     /**
      * Default configuration uses UPDATE behavior for saves and EVENTUALly
      * consistent reads, with no table name override and lazy-loading strategy.
@@ -824,5 +1098,10 @@ public class DynamoDBMapperConfig {
             null, // ObjectTableNameResolver
             PaginationLoadingStrategy.LAZY_LOADING,
             null, // RequestMetricCollector
-            ConversionSchemas.DEFAULT);
+            ConversionSchemas.DEFAULT,
+            1, // BatchLoadConcurrency
+            1, // BatchWriteConcurrency
+            null, // BatchWriteCapacityUnitsPerSecond
+            null, // ExecutorService
+            2); // PaginationPrefetchPages
 }
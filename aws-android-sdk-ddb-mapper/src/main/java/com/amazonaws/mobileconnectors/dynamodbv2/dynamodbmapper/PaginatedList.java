@@ -15,6 +15,7 @@
 
 package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 
@@ -26,6 +27,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Unmodifiable list supporting paginated result sets from Amazon DynamoDB.
@@ -43,6 +49,18 @@ public abstract class PaginatedList<T> implements List<T> {
 
     private static final String ITERATION_ONLY_UNSUPPORTED_OPERATION_MESSAGE = " is not supported when using ITERATION_ONLY configuration.";
 
+    private static final String STREAMING_UNSUPPORTED_OPERATION_MESSAGE = " is not supported when using STREAMING configuration.";
+
+    /** Makes the threads of the lists' own prefetch executors daemon threads */
+    private static final ThreadFactory PREFETCH_THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "PaginatedList-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
     /**
      * Reference to the DynamoDB mapper for marshalling DynamoDB attributes back
      * into objects
@@ -80,6 +98,17 @@ public abstract class PaginatedList<T> implements List<T> {
      */
     private boolean iterationStarted = false;
 
+    /**
+     * The max number of pages fetched ahead of the iterator in STREAMING mode.
+     */
+    private final int prefetchPages;
+
+    /**
+     * The executor that fetches pages in STREAMING mode, or null to create one
+     * when the list is iterated.
+     */
+    private final Executor prefetchExecutor;
+
     /**
      * Constructs a PaginatedList instance using the default
      * PaginationLoadingStrategy
@@ -103,6 +132,24 @@ public abstract class PaginatedList<T> implements List<T> {
      */
     public PaginatedList(DynamoDBMapper mapper, Class<T> clazz, AmazonDynamoDB dynamo,
             PaginationLoadingStrategy paginationLoadingStrategy) {
+        this(mapper, clazz, dynamo, paginationLoadingStrategy, null);
+    }
+
+    /**
+     * Constructs a PaginatedList instance.
+     *
+     * @param mapper The mapper for marshalling DynamoDB attributes into
+     *            objects.
+     * @param clazz The class of the annotated model.
+     * @param dynamo The DynamoDB client for making low-level request calls.
+     * @param paginationLoadingStrategy The strategy used for loading paginated
+     *            results. If null value is provided, LAZY_LOADING will be set
+     *            by default.
+     * @param config The mapper configuration the pages are fetched with in
+     *            STREAMING mode, or null for default.
+     */
+    protected PaginatedList(DynamoDBMapper mapper, Class<T> clazz, AmazonDynamoDB dynamo,
+            PaginationLoadingStrategy paginationLoadingStrategy, DynamoDBMapperConfig config) {
         this.mapper = mapper;
         this.clazz = clazz;
         this.dynamo = dynamo;
@@ -111,6 +158,11 @@ public abstract class PaginatedList<T> implements List<T> {
 
         this.allResults = new ArrayList<T>();
 
+        Integer prefetchPages = config == null ? null : config.getPaginationPrefetchPages();
+        this.prefetchPages = prefetchPages == null
+                ? DynamoDBMapperConfig.DEFAULT.getPaginationPrefetchPages() : prefetchPages;
+        this.prefetchExecutor = config == null ? null : config.getExecutorService();
+
         // Ideally, we should eagerly load all results here as soon as
         // EAGER_LOADING is configured.
         // But the implementation of loadAllResults() relies on a fully
@@ -202,10 +254,33 @@ public abstract class PaginatedList<T> implements List<T> {
      */
     @Override
     public Iterator<T> iterator() {
+        if (paginationLoadingStrategy == PaginationLoadingStrategy.STREAMING) {
+            return new StreamingIterator();
+        }
         return new PaginatedListIterator(
                 paginationLoadingStrategy == PaginationLoadingStrategy.ITERATION_ONLY);
     }
 
+    /**
+     * Returns whether pages are prefetched on a thread of the list's own in
+     * STREAMING mode, rather than on the configured executor service.
+     */
+    boolean prefetchesOnOwnThread() {
+        return false;
+    }
+
+    /**
+     * Marks the list as iterated, throwing an exception if it already was.
+     */
+    private synchronized void startIteration() {
+        if (iterationStarted) {
+            throw new UnsupportedOperationException(
+                    "The list could only be iterated once in "
+                            + paginationLoadingStrategy + " mode.");
+        }
+        iterationStarted = true;
+    }
+
     private class PaginatedListIterator implements Iterator<T> {
         /**
          * Whether this iterator is constructed by a PaginatedList in
@@ -228,13 +303,7 @@ public abstract class PaginatedList<T> implements List<T> {
             this.iterationOnly = iterationOnly;
 
             if (iterationOnly) {
-                synchronized (PaginatedList.this) {
-                    if (iterationStarted) {
-                        throw new UnsupportedOperationException(
-                                "The list could only be iterated once in ITERATION_ONLY mode.");
-                    }
-                    iterationStarted = true;
-                }
+                startIteration();
 
                 allResultsCopy = null; // not needed for ITERATION_ONLY mode
                 innerIterator = allResults.iterator();
@@ -309,6 +378,166 @@ public abstract class PaginatedList<T> implements List<T> {
 
     }
 
+    /**
+     * Iterator of a list in STREAMING mode. Pages are fetched one after another
+     * on the prefetch executor, as long as fewer than prefetchPages of them
+     * are waiting to be iterated; taking a page off the queue starts the next
+     * fetch. No thread blocks on a full queue, so an iterator that's dropped
+     * part-way through leaves nothing running behind it.
+     */
+    private class StreamingIterator implements Iterator<T> {
+
+        /** Fetched pages waiting to be iterated, guarded by this iterator */
+        private final LinkedList<List<T>> pages = new LinkedList<List<T>>();
+
+        private final Executor executor;
+
+        /** Whether a fetch is running on the executor */
+        private boolean fetching;
+
+        /** Whether the last page has been fetched */
+        private boolean endOfResults;
+
+        /** The exception the last fetch failed with, if any */
+        private RuntimeException failure;
+
+        /** Iterates over the page being consumed */
+        private Iterator<T> innerIterator;
+
+        public StreamingIterator() {
+            startIteration();
+
+            /*
+             * The first page was loaded by the constructor of the sub-class;
+             * it's handed over to this iterator rather than kept in the list.
+             */
+            innerIterator = new ArrayList<T>(allResults).iterator();
+            allResults.clear();
+            endOfResults = atEndOfResults();
+
+            if (prefetchExecutor != null && !prefetchesOnOwnThread()) {
+                executor = prefetchExecutor;
+            } else {
+                ThreadPoolExecutor ownExecutor = new ThreadPoolExecutor(1, 1,
+                        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        PREFETCH_THREAD_FACTORY);
+                ownExecutor.allowCoreThreadTimeOut(true);
+                executor = ownExecutor;
+            }
+
+            prefetch();
+        }
+
+        /**
+         * Starts fetching pages on the executor, unless they're already being
+         * fetched or there's no room for another page.
+         */
+        private synchronized void prefetch() {
+            if (fetching || endOfResults || failure != null || pages.size() >= prefetchPages) {
+                return;
+            }
+            fetching = true;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        fetchPages();
+                    }
+                });
+            } catch (RuntimeException e) {
+                fetching = false;
+                throw e;
+            }
+        }
+
+        /**
+         * Fetches pages until there's no room for another one.
+         */
+        private void fetchPages() {
+            while (true) {
+                List<T> page = null;
+                boolean lastPage = false;
+                RuntimeException error = null;
+                try {
+                    page = fetchNextPage();
+                    lastPage = atEndOfResults();
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+
+                synchronized (this) {
+                    if (error != null) {
+                        failure = error;
+                    } else {
+                        if (!page.isEmpty()) {
+                            pages.add(page);
+                        }
+                        endOfResults = lastPage;
+                    }
+                    notifyAll();
+                    if (failure != null || endOfResults || pages.size() >= prefetchPages) {
+                        fetching = false;
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes the next fetched page off the queue, waiting for it to be
+         * fetched if necessary, or returns null at the end of the results.
+         */
+        private synchronized List<T> takePage() {
+            while (pages.isEmpty()) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (endOfResults) {
+                    return null;
+                }
+                if (!fetching) {
+                    prefetch();
+                    continue;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AmazonClientException(
+                            "Interrupted while waiting for the next page of results.", e);
+                }
+            }
+            List<T> page = pages.removeFirst();
+            prefetch();
+            return page;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!innerIterator.hasNext()) {
+                List<T> page = takePage();
+                if (page == null) {
+                    return false;
+                }
+                innerIterator = page.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return innerIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(UNMODIFIABLE_MESSAGE);
+        }
+    }
+
     /**
      * Returns whether the collection is empty. At most one (non-empty) page of
      * results is loaded to make the check.
@@ -509,5 +738,9 @@ public abstract class PaginatedList<T> implements List<T> {
             throw new UnsupportedOperationException(methodSignature
                     + ITERATION_ONLY_UNSUPPORTED_OPERATION_MESSAGE);
         }
+        if (this.paginationLoadingStrategy == PaginationLoadingStrategy.STREAMING) {
+            throw new UnsupportedOperationException(methodSignature
+                    + STREAMING_UNSUPPORTED_OPERATION_MESSAGE);
+        }
     };
 }
@@ -19,6 +19,7 @@ import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperCo
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -32,6 +33,10 @@ import java.util.List;
  * This is an unmodifiable list, so callers should not invoke any operations
  * that modify this list, otherwise they will throw an
  * UnsupportedOperationException.
+ * <p>
+ * In STREAMING mode, the items of each segment page are returned as soon as
+ * the page is scanned, rather than a batch of pages (one of each segment) at a
+ * time.
  *
  * @param <T> The type of objects held in this list.
  * @see PaginatedList
@@ -46,6 +51,9 @@ public class PaginatedParallelScanList<T> extends PaginatedList<T> {
 
     private final DynamoDBMapperConfig config;
 
+    /** Whether pages are returned as the segments scan them */
+    private final boolean streaming;
+
     public PaginatedParallelScanList(
             DynamoDBMapper mapper,
             Class<T> clazz,
@@ -53,14 +61,14 @@ public class PaginatedParallelScanList<T> extends PaginatedList<T> {
             ParallelScanTask parallelScanTask,
             PaginationLoadingStrategy paginationLoadingStrategy,
             DynamoDBMapperConfig config) {
-        super(mapper, clazz, dynamo, paginationLoadingStrategy);
+        super(mapper, clazz, dynamo, paginationLoadingStrategy, config);
 
         this.parallelScanTask = parallelScanTask;
         this.config = config;
+        this.streaming = paginationLoadingStrategy == PaginationLoadingStrategy.STREAMING;
 
         // Marshal the first batch of results in allResults
-        allResults.addAll(marshalParallelScanResultsIntoObjects(parallelScanTask
-                .getNextBatchOfScanResults()));
+        allResults.addAll(fetchNextPage());
 
         // If the results should be eagerly loaded at once
         if (paginationLoadingStrategy == PaginationLoadingStrategy.EAGER_LOADING) {
@@ -75,9 +83,23 @@ public class PaginatedParallelScanList<T> extends PaginatedList<T> {
 
     @Override
     protected List<T> fetchNextPage() {
+        if (streaming) {
+            ScanResult scanResult = parallelScanTask.getNextScanResult();
+            return marshalParallelScanResultsIntoObjects(
+                    Collections.singletonList(scanResult));
+        }
         return marshalParallelScanResultsIntoObjects(parallelScanTask.getNextBatchOfScanResults());
     }
 
+    /**
+     * Pages are prefetched on a thread of the list's own, since fetching a page
+     * waits for segment scans that may be queued on the executor service.
+     */
+    @Override
+    boolean prefetchesOnOwnThread() {
+        return true;
+    }
+
     private List<T> marshalParallelScanResultsIntoObjects(List<ScanResult> scanResults) {
         List<T> allItems = new LinkedList<T>();
         for (ScanResult scanResult : scanResults) {
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the items of a batch load with up to a given number of concurrent
+ * batch get requests. The keys of all the tables are queued up and taken 100
+ * at a time; unprocessed keys returned by any request are put back at the head
+ * of the queue, so they're merged with the keys of other requests into full
+ * batches rather than retried on their own. Each response with unprocessed
+ * keys backs off exponentially before more requests are sent, until a
+ * response comes back with none.
+ */
+class ParallelBatchLoadTask {
+
+    /** The max number of keys allowed in a BatchGetItem request */
+    static final int MAX_KEYS_PER_BATCH = 100;
+
+    /** Runs the batch get requests on the calling thread. */
+    static final Executor CALLER_RUNS = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Receives the items loaded by the task, on the thread that called
+     * {@link ParallelBatchLoadTask#load(ItemHandler)}.
+     */
+    interface ItemHandler {
+        void handle(String tableName, Map<String, AttributeValue> item);
+    }
+
+    /** A key waiting to be loaded */
+    private static final class TableKey {
+        private final String tableName;
+        private final Map<String, AttributeValue> key;
+
+        private TableKey(String tableName, Map<String, AttributeValue> key) {
+            this.tableName = tableName;
+            this.key = key;
+        }
+    }
+
+    private final AmazonDynamoDB dynamo;
+    private final boolean consistentReads;
+    private final RequestMetricCollector requestMetricCollector;
+    private final int maxInFlight;
+    private final ExecutorService executorService;
+    private final LinkedList<TableKey> pendingKeys = new LinkedList<TableKey>();
+
+    /**
+     * @param maxInFlight the max number of concurrent batch get requests
+     * @param executorService the executor service to send concurrent requests
+     *            on, or null to create a thread pool for the load
+     */
+    ParallelBatchLoadTask(AmazonDynamoDB dynamo, boolean consistentReads,
+            RequestMetricCollector requestMetricCollector, int maxInFlight,
+            ExecutorService executorService) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+        }
+        this.dynamo = dynamo;
+        this.consistentReads = consistentReads;
+        this.requestMetricCollector = requestMetricCollector;
+        this.maxInFlight = maxInFlight;
+        this.executorService = executorService;
+    }
+
+    /**
+     * Queues up the key of an item to load from the given table.
+     */
+    void addKey(String tableName, Map<String, AttributeValue> key) {
+        pendingKeys.add(new TableKey(tableName, key));
+    }
+
+    /**
+     * Loads the items of all the queued keys, handing each to the given
+     * handler as the responses come back.
+     */
+    void load(ItemHandler handler) {
+        ExecutorService ownExecutorService = null;
+        Executor executor;
+        if (maxInFlight == 1 && executorService == null) {
+            executor = CALLER_RUNS;
+        } else if (executorService == null) {
+            ownExecutorService = Executors.newFixedThreadPool(maxInFlight);
+            executor = ownExecutorService;
+        } else {
+            executor = executorService;
+        }
+
+        CompletionService<BatchGetItemResult> completionService =
+                new ExecutorCompletionService<BatchGetItemResult>(executor);
+        List<Future<BatchGetItemResult>> futures = new LinkedList<Future<BatchGetItemResult>>();
+        int inFlight = 0;
+        int retries = 0;
+        int retriesWithoutItems = 0;
+        boolean completed = false;
+        try {
+            while (!pendingKeys.isEmpty() || inFlight > 0) {
+                while (inFlight < maxInFlight && !pendingKeys.isEmpty()) {
+                    futures.add(completionService.submit(newBatchGetCall(nextBatch())));
+                    inFlight++;
+                }
+
+                Future<BatchGetItemResult> future = take(completionService);
+                futures.remove(future);
+                inFlight--;
+                BatchGetItemResult result = get(future);
+
+                boolean loadedItems = false;
+                if (result.getResponses() != null) {
+                    for (Entry<String, List<Map<String, AttributeValue>>> response : result
+                            .getResponses().entrySet()) {
+                        for (Map<String, AttributeValue> item : response.getValue()) {
+                            handler.handle(response.getKey(), item);
+                            loadedItems = true;
+                        }
+                    }
+                }
+
+                Map<String, KeysAndAttributes> unprocessedKeys = result.getUnprocessedKeys();
+                if (unprocessedKeys == null || unprocessedKeys.isEmpty()) {
+                    retries = 0;
+                    continue;
+                }
+
+                requeue(unprocessedKeys);
+                retriesWithoutItems = loadedItems ? 0 : retriesWithoutItems + 1;
+                if (retriesWithoutItems > DynamoDBMapper.BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS) {
+                    throw new AmazonClientException(
+                            "Batch Get Item request to server hasn't received any data. "
+                                    + "Please try again later.");
+                }
+                pause(++retries);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                for (Future<BatchGetItemResult> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            if (ownExecutorService != null) {
+                ownExecutorService.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Takes up to {@link #MAX_KEYS_PER_BATCH} keys off the head of the queue.
+     */
+    private Map<String, KeysAndAttributes> nextBatch() {
+        Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
+        for (int i = 0; i < MAX_KEYS_PER_BATCH && !pendingKeys.isEmpty(); i++) {
+            TableKey tableKey = pendingKeys.removeFirst();
+            KeysAndAttributes keysAndAttributes = requestItems.get(tableKey.tableName);
+            if (keysAndAttributes == null) {
+                keysAndAttributes = new KeysAndAttributes()
+                        .withConsistentRead(consistentReads)
+                        .withKeys(new LinkedList<Map<String, AttributeValue>>());
+                requestItems.put(tableKey.tableName, keysAndAttributes);
+            }
+            keysAndAttributes.getKeys().add(tableKey.key);
+        }
+        return requestItems;
+    }
+
+    /**
+     * Puts the unprocessed keys of a response back at the head of the queue.
+     */
+    private void requeue(Map<String, KeysAndAttributes> unprocessedKeys) {
+        List<TableKey> keys = new ArrayList<TableKey>();
+        for (Entry<String, KeysAndAttributes> entry : unprocessedKeys.entrySet()) {
+            for (Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                keys.add(new TableKey(entry.getKey(), key));
+            }
+        }
+        pendingKeys.addAll(0, keys);
+    }
+
+    private Callable<BatchGetItemResult> newBatchGetCall(
+            final Map<String, KeysAndAttributes> requestItems) {
+        final BatchGetItemRequest request = new BatchGetItemRequest()
+                .withRequestItems(requestItems)
+                .withRequestMetricCollector(requestMetricCollector);
+        return new Callable<BatchGetItemResult>() {
+            @Override
+            public BatchGetItemResult call() {
+                return dynamo.batchGetItem(DynamoDBMapper.applyBatchOperationUserAgent(request));
+            }
+        };
+    }
+
+    private static Future<BatchGetItemResult> take(
+            CompletionService<BatchGetItemResult> completionService) {
+        try {
+            return completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Batch load interrupted by other thread.", e);
+        }
+    }
+
+    private static BatchGetItemResult get(Future<BatchGetItemResult> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof AmazonClientException) {
+                throw (AmazonClientException) ee.getCause();
+            }
+            throw new AmazonClientException("Error during the batch load.", ee.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Batch load interrupted by other thread.", e);
+        }
+    }
+
+    /**
+     * Backs off before sending more requests after the given number of
+     * consecutive responses with unprocessed keys.
+     */
+    void pause(int retries) {
+        DynamoDBMapper.pauseExponentially(retries);
+    }
+}
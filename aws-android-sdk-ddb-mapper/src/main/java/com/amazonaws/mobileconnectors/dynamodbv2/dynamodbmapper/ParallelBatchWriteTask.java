@@ -0,0 +1,364 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the items of a batch write with concurrent batch write requests,
+ * paced by an {@link AimdThrottle}. The write requests of all the tables are
+ * queued up and taken 25 at a time; unprocessed items returned by any request
+ * are put back at the head of the queue, so they're merged with other items
+ * into later batches. Unprocessed items and throttling errors cut down the
+ * number of requests in flight and the rate of consumed capacity, and back
+ * off exponentially before more requests are sent; each request that goes
+ * through lets both grow back.
+ * <p>
+ * A batch that is too large for a single request is split in half and each
+ * half written on its own. Batches failing otherwise are returned as
+ * {@link FailedBatch}es.
+ */
+class ParallelBatchWriteTask {
+
+    /** A write request waiting to be sent */
+    private static final class TableWrite {
+        private final String tableName;
+        private final WriteRequest writeRequest;
+
+        private TableWrite(String tableName, WriteRequest writeRequest) {
+            this.tableName = tableName;
+            this.writeRequest = writeRequest;
+        }
+    }
+
+    /** The outcome of a batch write request */
+    private static final class BatchOutcome {
+        private final Map<String, List<WriteRequest>> batch;
+        private final int itemCount;
+        private BatchWriteItemResult result;
+        private Exception exception;
+
+        private BatchOutcome(Map<String, List<WriteRequest>> batch, int itemCount) {
+            this.batch = batch;
+            this.itemCount = itemCount;
+        }
+    }
+
+    private final AmazonDynamoDB dynamo;
+    private final AimdThrottle throttle;
+    private final ExecutorService executorService;
+    private final LinkedList<TableWrite> pendingWrites = new LinkedList<TableWrite>();
+    /** Halves of batches that were too large, written before other items */
+    private final LinkedList<Map<String, List<WriteRequest>>> splitBatches =
+            new LinkedList<Map<String, List<WriteRequest>>>();
+
+    /**
+     * @param maxInFlight the max number of concurrent batch write requests
+     * @param capacityUnitsPerSecond the max rate of consumed write capacity
+     *            units per second, or 0 for no max rate
+     * @param executorService the executor service to send concurrent requests
+     *            on, or null to create a thread pool for the write
+     */
+    ParallelBatchWriteTask(AmazonDynamoDB dynamo, int maxInFlight,
+            double capacityUnitsPerSecond, ExecutorService executorService) {
+        this(dynamo, new AimdThrottle(maxInFlight, capacityUnitsPerSecond), executorService);
+    }
+
+    ParallelBatchWriteTask(AmazonDynamoDB dynamo, AimdThrottle throttle,
+            ExecutorService executorService) {
+        this.dynamo = dynamo;
+        this.throttle = throttle;
+        this.executorService = executorService;
+    }
+
+    /**
+     * Queues up a write request for the given table.
+     */
+    void addWriteRequest(String tableName, WriteRequest writeRequest) {
+        pendingWrites.add(new TableWrite(tableName, writeRequest));
+    }
+
+    /**
+     * Queues up all the write requests of the given batch.
+     */
+    void addBatch(Map<String, List<WriteRequest>> batch) {
+        for (Entry<String, List<WriteRequest>> entry : batch.entrySet()) {
+            for (WriteRequest writeRequest : entry.getValue()) {
+                addWriteRequest(entry.getKey(), writeRequest);
+            }
+        }
+    }
+
+    /**
+     * Writes all the queued write requests.
+     *
+     * @return the batches that failed
+     */
+    List<FailedBatch> write() {
+        ExecutorService ownExecutorService = null;
+        Executor executor;
+        int maxInFlight = throttle.getWindow();
+        if (maxInFlight == 1 && executorService == null) {
+            executor = ParallelBatchLoadTask.CALLER_RUNS;
+        } else if (executorService == null) {
+            ownExecutorService = Executors.newFixedThreadPool(maxInFlight);
+            executor = ownExecutorService;
+        } else {
+            executor = executorService;
+        }
+
+        List<FailedBatch> failedBatches = new LinkedList<FailedBatch>();
+        CompletionService<BatchOutcome> completionService =
+                new ExecutorCompletionService<BatchOutcome>(executor);
+        List<Future<BatchOutcome>> futures = new LinkedList<Future<BatchOutcome>>();
+        int inFlight = 0;
+        int retries = 0;
+        boolean completed = false;
+        try {
+            while (!pendingWrites.isEmpty() || !splitBatches.isEmpty() || inFlight > 0) {
+                while (inFlight < throttle.getWindow()
+                        && (!pendingWrites.isEmpty() || !splitBatches.isEmpty())) {
+                    Map<String, List<WriteRequest>> batch = splitBatches.isEmpty()
+                            ? nextBatch()
+                            : splitBatches.removeFirst();
+                    int itemCount = countItems(batch);
+                    throttle.acquire(itemCount);
+                    futures.add(completionService.submit(newBatchWriteCall(batch, itemCount)));
+                    inFlight++;
+                }
+
+                Future<BatchOutcome> future = take(completionService);
+                futures.remove(future);
+                inFlight--;
+                BatchOutcome outcome = get(future);
+
+                if (outcome.exception != null) {
+                    if (isRequestEntityTooLarge(outcome.exception) && outcome.itemCount > 1) {
+                        splitBatch(outcome.batch);
+                        continue;
+                    }
+                    failedBatches.add(toFailedBatch(outcome));
+                    if (isThrottling(outcome.exception)) {
+                        throttle.onThrottle();
+                        pause(++retries);
+                    }
+                    continue;
+                }
+
+                Map<String, List<WriteRequest>> unprocessedItems =
+                        outcome.result.getUnprocessedItems();
+                if (unprocessedItems == null || unprocessedItems.isEmpty()) {
+                    throttle.correct(outcome.itemCount, consumedCapacity(outcome));
+                    throttle.onSuccess();
+                    retries = 0;
+                    continue;
+                }
+
+                // the unprocessed items are paid for again when they're sent
+                // again
+                int unprocessed = requeue(unprocessedItems);
+                throttle.correct(outcome.itemCount, consumedCapacity(outcome) + unprocessed);
+                throttle.onThrottle();
+                pause(++retries);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                for (Future<BatchOutcome> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            if (ownExecutorService != null) {
+                ownExecutorService.shutdownNow();
+            }
+        }
+        return failedBatches;
+    }
+
+    /**
+     * Takes up to {@link DynamoDBMapper#MAX_ITEMS_PER_BATCH} write requests off
+     * the head of the queue.
+     */
+    private Map<String, List<WriteRequest>> nextBatch() {
+        Map<String, List<WriteRequest>> batch = new HashMap<String, List<WriteRequest>>();
+        for (int i = 0; i < DynamoDBMapper.MAX_ITEMS_PER_BATCH && !pendingWrites.isEmpty(); i++) {
+            TableWrite write = pendingWrites.removeFirst();
+            List<WriteRequest> writeRequests = batch.get(write.tableName);
+            if (writeRequests == null) {
+                writeRequests = new LinkedList<WriteRequest>();
+                batch.put(write.tableName, writeRequests);
+            }
+            writeRequests.add(write.writeRequest);
+        }
+        return batch;
+    }
+
+    /**
+     * Puts the unprocessed items of a response back at the head of the queue.
+     *
+     * @return the number of unprocessed items
+     */
+    private int requeue(Map<String, List<WriteRequest>> unprocessedItems) {
+        List<TableWrite> writes = new ArrayList<TableWrite>();
+        for (Entry<String, List<WriteRequest>> entry : unprocessedItems.entrySet()) {
+            for (WriteRequest writeRequest : entry.getValue()) {
+                writes.add(new TableWrite(entry.getKey(), writeRequest));
+            }
+        }
+        pendingWrites.addAll(0, writes);
+        return writes.size();
+    }
+
+    /**
+     * Divides a batch into two halves, to be written before other items.
+     */
+    private void splitBatch(Map<String, List<WriteRequest>> batch) {
+        Map<String, List<WriteRequest>> firstHalf = new HashMap<String, List<WriteRequest>>();
+        Map<String, List<WriteRequest>> secondHalf = new HashMap<String, List<WriteRequest>>();
+        for (Entry<String, List<WriteRequest>> entry : batch.entrySet()) {
+            List<WriteRequest> requests = entry.getValue();
+            int half = requests.size() / 2;
+            if (half > 0) {
+                firstHalf.put(entry.getKey(), requests.subList(0, half));
+            }
+            secondHalf.put(entry.getKey(), requests.subList(half, requests.size()));
+        }
+        if (firstHalf.isEmpty()) {
+            // one item per table: split the tables instead
+            Entry<String, List<WriteRequest>> first = secondHalf.entrySet().iterator().next();
+            firstHalf.put(first.getKey(), first.getValue());
+            secondHalf.remove(first.getKey());
+        }
+        splitBatches.addFirst(secondHalf);
+        splitBatches.addFirst(firstHalf);
+    }
+
+    private static int countItems(Map<String, List<WriteRequest>> batch) {
+        int count = 0;
+        for (List<WriteRequest> writeRequests : batch.values()) {
+            count += writeRequests.size();
+        }
+        return count;
+    }
+
+    private double consumedCapacity(BatchOutcome outcome) {
+        if (!throttle.isRateLimited()) {
+            return outcome.itemCount;
+        }
+        List<ConsumedCapacity> consumedCapacity = outcome.result.getConsumedCapacity();
+        if (consumedCapacity == null || consumedCapacity.isEmpty()) {
+            return outcome.itemCount;
+        }
+        double units = 0;
+        for (ConsumedCapacity tableCapacity : consumedCapacity) {
+            if (tableCapacity.getCapacityUnits() != null) {
+                units += tableCapacity.getCapacityUnits();
+            }
+        }
+        return units;
+    }
+
+    private static FailedBatch toFailedBatch(BatchOutcome outcome) {
+        FailedBatch failedBatch = new FailedBatch();
+        failedBatch.setUnprocessedItems(outcome.batch);
+        failedBatch.setException(outcome.exception);
+        return failedBatch;
+    }
+
+    private static boolean isRequestEntityTooLarge(Exception e) {
+        return e instanceof AmazonServiceException
+                && RetryUtils.isRequestEntityTooLargeException((AmazonServiceException) e);
+    }
+
+    private static boolean isThrottling(Exception e) {
+        return e instanceof AmazonServiceException
+                && RetryUtils.isThrottlingException((AmazonServiceException) e);
+    }
+
+    private Callable<BatchOutcome> newBatchWriteCall(
+            final Map<String, List<WriteRequest>> batch, int itemCount) {
+        final BatchOutcome outcome = new BatchOutcome(batch, itemCount);
+        final BatchWriteItemRequest request = new BatchWriteItemRequest()
+                .withRequestItems(batch);
+        if (throttle.isRateLimited()) {
+            request.setReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        }
+        return new Callable<BatchOutcome>() {
+            @Override
+            public BatchOutcome call() {
+                try {
+                    outcome.result = dynamo.batchWriteItem(
+                            DynamoDBMapper.applyBatchOperationUserAgent(request));
+                } catch (Exception e) {
+                    outcome.exception = e;
+                }
+                return outcome;
+            }
+        };
+    }
+
+    private static Future<BatchOutcome> take(CompletionService<BatchOutcome> completionService) {
+        try {
+            return completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Batch write interrupted by other thread.", e);
+        }
+    }
+
+    private static BatchOutcome get(Future<BatchOutcome> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ee) {
+            throw new AmazonClientException("Error during the batch write.", ee.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Batch write interrupted by other thread.", e);
+        }
+    }
+
+    /**
+     * Backs off before sending more requests after the given number of
+     * consecutive throttled responses.
+     */
+    void pause(int retries) {
+        DynamoDBMapper.pauseExponentially(retries);
+    }
+}
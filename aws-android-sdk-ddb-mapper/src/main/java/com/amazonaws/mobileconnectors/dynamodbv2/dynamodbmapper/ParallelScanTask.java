@@ -21,17 +21,37 @@ import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class ParallelScanTask {
 
+    /**
+     * The thread pool segments are scanned on when no executor service is
+     * configured, shared by all parallel scans. Idle threads are released
+     * after a minute.
+     */
+    private static final ExecutorService SHARED_EXECUTOR_SERVICE = new ThreadPoolExecutor(
+            0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ParallelScanTask");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     /**
      * The list of hard copies of ScanRequest with different segment number.
      */
@@ -40,23 +60,42 @@ public class ParallelScanTask {
     private final int totalSegments;
 
     /**
-     * Cache all the future tasks, so that we can extract the exception when we
-     * see failed segment scan.
+     * The exception each failed segment scan failed with.
+     */
+    private final AtomicReferenceArray<RuntimeException> segmentScanFailures;
+
+    /**
+     * Cache all the most recent ScanResult on each segment, whose last
+     * evaluated key the next page of the segment is scanned from.
+     */
+    private final AtomicReferenceArray<ScanResult> segmentScanResults;
+
+    /**
+     * The scanned pages of each segment that haven't been returned yet.
      */
-    private final List<Future<ScanResult>> segmentScanFutureTasks;
+    private final List<Queue<ScanResult>> segmentScanPages;
 
     /**
-     * Cache all the most recent ScanResult on each segment.
+     * The current state of the scan on each segment. A segment is only ever
+     * scanned by the task that moved it to Scanning.
      */
-    private final List<ScanResult> segmentScanResults;
+    private final AtomicReferenceArray<SegmentScanState> segmentScanStates;
 
     /**
-     * The current state of the scan on each segment. Used as the monitor for
-     * synchronization.
+     * Released each time a segment scan finishes a page or fails, to wake up
+     * the thread waiting for results.
      */
-    private final List<SegmentScanState> segmentScanStates;
+    private final Semaphore segmentScanEvents = new Semaphore(0);
 
-    private ExecutorService executorService;
+    /**
+     * The max number of pages each segment scans ahead of the pages returned.
+     */
+    private final int readAheadPages;
+
+    /** The segment the next merged page is looked for first */
+    private int nextSegment = 0;
+
+    private final ExecutorService executorService;
 
     private final AmazonDynamoDB dynamo;
 
@@ -67,18 +106,33 @@ public class ParallelScanTask {
     }
 
     ParallelScanTask(AmazonDynamoDB dynamo, List<ScanRequest> parallelScanRequests) {
+        this(dynamo, parallelScanRequests, null, 0);
+    }
+
+    /**
+     * @param executorService the executor service to scan the segments on, or
+     *            null to use a thread pool shared by all parallel scans
+     * @param readAheadPages the max number of pages each segment scans ahead
+     *            of the pages returned, or 0 to scan the next page of each
+     *            segment only when the next batch of results is asked for
+     */
+    ParallelScanTask(AmazonDynamoDB dynamo, List<ScanRequest> parallelScanRequests,
+            ExecutorService executorService, int readAheadPages) {
+        if (readAheadPages < 0) {
+            throw new IllegalArgumentException("readAheadPages must not be negative: "
+                    + readAheadPages);
+        }
         this.dynamo = dynamo;
         this.parallelScanRequests = parallelScanRequests;
         this.totalSegments = parallelScanRequests.size();
-        executorService = Executors.newCachedThreadPool();
+        this.executorService = executorService == null
+                ? SHARED_EXECUTOR_SERVICE : executorService;
+        this.readAheadPages = readAheadPages;
 
-        // Create synchronized views of the list to guarantee any changes are
-        // visible across all threads.
-        segmentScanFutureTasks = Collections.synchronizedList(new ArrayList<Future<ScanResult>>(
-                totalSegments));
-        segmentScanResults = Collections.synchronizedList(new ArrayList<ScanResult>(totalSegments));
-        segmentScanStates = Collections.synchronizedList(new ArrayList<SegmentScanState>(
-                totalSegments));
+        segmentScanFailures = new AtomicReferenceArray<RuntimeException>(totalSegments);
+        segmentScanResults = new AtomicReferenceArray<ScanResult>(totalSegments);
+        segmentScanStates = new AtomicReferenceArray<SegmentScanState>(totalSegments);
+        segmentScanPages = new ArrayList<Queue<ScanResult>>(totalSegments);
 
         initSegmentScanStates();
     }
@@ -88,144 +142,193 @@ public class ParallelScanTask {
     }
 
     public boolean isAllSegmentScanFinished() {
-        synchronized (segmentScanStates) {
-            for (int segment = 0; segment < totalSegments; segment++) {
-                if (segmentScanStates.get(segment) != SegmentScanState.SegmentScanCompleted)
-                    return false;
-            }
-            // Shut down if all data have been scanned and loaded.
-            executorService.shutdown();
-            return true;
+        for (int segment = 0; segment < totalSegments; segment++) {
+            if (!isSegmentScanFinished(segment))
+                return false;
         }
+        return true;
+    }
+
+    /**
+     * Returns whether the segment given has been scanned to the end and all of
+     * its pages returned. The state is read before the pages, since a segment
+     * scan adds its last page before it's marked completed.
+     */
+    private boolean isSegmentScanFinished(int segment) {
+        return segmentScanStates.get(segment) == SegmentScanState.SegmentScanCompleted
+                && segmentScanPages.get(segment).isEmpty();
     }
 
+    /**
+     * Returns the next page of every segment, with a null entry for each
+     * segment that has already been scanned to the end, waiting for the pages
+     * to be scanned if necessary.
+     */
     public List<ScanResult> getNextBatchOfScanResults() throws AmazonClientException {
         /**
          * Kick-off all the parallel scan tasks.
          */
-        startScanNextPages();
+        for (int segment = 0; segment < totalSegments; segment++) {
+            if (segmentScanPages.get(segment).isEmpty()) {
+                startScanNextPages(segment);
+            }
+        }
+
         /**
-         * Wait till all the tasks have finished.
+         * Wait till every segment has a page, or has been scanned to the end.
          */
-        synchronized (segmentScanStates) {
-            while (segmentScanStates.contains(SegmentScanState.Waiting)
-                    || segmentScanStates.contains(SegmentScanState.Scanning)) {
-                try {
-                    segmentScanStates.wait();
-                } catch (InterruptedException ie) {
-                    throw new AmazonClientException("Parallel scan interrupted by other thread.",
-                            ie);
+        boolean waiting = true;
+        while (waiting) {
+            waiting = false;
+            for (int segment = 0; segment < totalSegments; segment++) {
+                rethrowSegmentScanFailure(segment);
+                if (!isSegmentScanFinished(segment)
+                        && segmentScanPages.get(segment).isEmpty()) {
+                    startScanNextPages(segment);
+                    waiting = true;
                 }
             }
-            /**
-             * Keep the lock on segmentScanStates until all the cached results
-             * are marshaled and returned.
-             */
-            return marshalParallelScanResults();
+            if (waiting) {
+                awaitSegmentScanEvent();
+            }
         }
 
+        List<ScanResult> scanResults = new LinkedList<ScanResult>();
+        for (int segment = 0; segment < totalSegments; segment++) {
+            scanResults.add(segmentScanPages.get(segment).poll());
+            if (readAheadPages > 0) {
+                startScanNextPages(segment);
+            }
+        }
+        return scanResults;
     }
 
-    private void startScanNextPages() {
-        for (int segment = 0; segment < totalSegments; segment++) {
-            final int currentSegment = segment;
-            final SegmentScanState currentSegmentState = segmentScanStates.get(currentSegment);
-            /**
-             * Assert: Should never see any task in state of "Scanning" when
-             * starting a new batch.
-             */
-            if (currentSegmentState == SegmentScanState.Scanning) {
-                throw new AmazonClientException(
-                        "Should never see a 'Scanning' state when starting parallel scans.");
+    /**
+     * Returns the next page scanned by any of the segments, in the order the
+     * pages are scanned rather than a batch at a time, or null if all the
+     * segments have been scanned to the end. Every segment scans at least one
+     * page ahead, so the segments are scanned concurrently.
+     */
+    ScanResult getNextScanResult() throws AmazonClientException {
+        while (true) {
+            boolean finished = true;
+            for (int i = 0; i < totalSegments; i++) {
+                int segment = (nextSegment + i) % totalSegments;
+                rethrowSegmentScanFailure(segment);
+                ScanResult scanResult = segmentScanPages.get(segment).poll();
+                if (scanResult != null) {
+                    startScanNextPages(segment);
+                    nextSegment = (segment + 1) % totalSegments;
+                    return scanResult;
+                }
+                if (!isSegmentScanFinished(segment)) {
+                    startScanNextPages(segment);
+                    finished = false;
+                }
             }
-            /**
-             * Skip any failed or completed segment, and clear the corresponding
-             * cached result.
-             */
-            else if (currentSegmentState == SegmentScanState.Failed
-                    || currentSegmentState == SegmentScanState.SegmentScanCompleted) {
-                segmentScanResults.set(currentSegment, null);
-                continue;
+            if (finished) {
+                return null;
             }
-            /**
-             * Otherwise, submit a new future task and save it in
-             * segmentScanFutureTasks.
-             */
-            else {
-                // Update the state to "Scanning" and notify any waiting thread.
-                synchronized (segmentScanStates) {
-                    segmentScanStates.set(currentSegment, SegmentScanState.Scanning);
-                    segmentScanStates.notifyAll();
+            awaitSegmentScanEvent();
+        }
+    }
+
+    /**
+     * Waits for a segment scan to finish a page or fail. Events that arrived
+     * since the last wait are consumed at once, since the caller rechecks all
+     * the segments anyway.
+     */
+    private void awaitSegmentScanEvent() {
+        try {
+            segmentScanEvents.acquire();
+            segmentScanEvents.drainPermits();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Parallel scan interrupted by other thread.", ie);
+        }
+    }
+
+    /**
+     * Rethrow the exception from any failed segment scan.
+     */
+    private void rethrowSegmentScanFailure(int segment) {
+        if (segmentScanStates.get(segment) != SegmentScanState.Failed) {
+            return;
+        }
+        RuntimeException failure = segmentScanFailures.get(segment);
+        if (failure instanceof AmazonClientException) {
+            throw failure;
+        }
+        throw new AmazonClientException(
+                "Internal error during the scan on segment #" + segment + ".", failure);
+    }
+
+    /**
+     * Starts scanning the next pages of the segment given, unless it's
+     * already being scanned, has been scanned to the end, or has as many pages
+     * waiting to be returned as it may scan ahead.
+     */
+    private void startScanNextPages(final int segment) {
+        if (segmentScanPages.get(segment).size() >= Math.max(readAheadPages, 1)) {
+            return;
+        }
+        if (!segmentScanStates.compareAndSet(segment, SegmentScanState.Waiting,
+                SegmentScanState.Scanning)
+                && !segmentScanStates.compareAndSet(segment, SegmentScanState.HasNextPage,
+                        SegmentScanState.Scanning)) {
+            return;
+        }
+        try {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    scanSegment(segment);
                 }
-                Future<ScanResult> futureTask = executorService.submit(new Callable<ScanResult>() {
-                    @Override
-                    public ScanResult call() throws Exception {
-                        try {
-                            if (currentSegmentState == SegmentScanState.HasNextPage) {
-                                return scanNextPageOfSegment(currentSegment, true);
-                            }
-                            else if (currentSegmentState == SegmentScanState.Waiting) {
-                                return scanNextPageOfSegment(currentSegment, false);
-                            }
-                            else {
-                                throw new AmazonClientException(
-                                        "Should not start a new future task");
-                            }
-                        } catch (Exception e) {
-                            synchronized (segmentScanStates) {
-                                segmentScanStates.set(currentSegment, SegmentScanState.Failed);
-                                segmentScanStates.notifyAll();
-                            }
-                            throw e;
-                        }
-                    }
-                });
-                // Cache the future task (for getting the Exceptions in the
-                // working thread).
-                segmentScanFutureTasks.set(currentSegment, futureTask);
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            segmentScanFailed(segment, e);
         }
     }
 
-    private List<ScanResult> marshalParallelScanResults() {
-        List<ScanResult> scanResults = new LinkedList<ScanResult>();
-        for (int segment = 0; segment < totalSegments; segment++) {
-            SegmentScanState currentSegmentState = segmentScanStates.get(segment);
-            /**
-             * Rethrow the exception from any failed segment scan.
-             */
-            if (currentSegmentState == SegmentScanState.Failed) {
-                try {
-                    segmentScanFutureTasks.get(segment).get();
-                    throw new AmazonClientException("No Exception found in the failed scan task.");
-                } catch (ExecutionException ee) {
-                    if (ee.getCause() instanceof AmazonClientException) {
-                        throw (AmazonClientException) (ee.getCause());
-                    } else {
-                        throw new AmazonClientException(
-                                "Internal error during the scan on segment #" + segment + ".",
-                                ee.getCause());
-                    }
-                } catch (Exception e) {
-                    throw new AmazonClientException("Error during the scan on segment #" + segment
-                            + ".", e);
+    /**
+     * Scans pages of the segment given until it's scanned to the end or has
+     * as many pages waiting to be returned as it may scan ahead.
+     */
+    private void scanSegment(int segment) {
+        Queue<ScanResult> pages = segmentScanPages.get(segment);
+        try {
+            do {
+                ScanResult scanResult = scanNextPageOfSegment(segment,
+                        segmentScanResults.get(segment) != null);
+                pages.add(scanResult);
+                if (scanResult.getLastEvaluatedKey() == null) {
+                    segmentScanStates.set(segment, SegmentScanState.SegmentScanCompleted);
+                    segmentScanEvents.release();
+                    return;
                 }
-            }
-            /**
-             * Get the ScanResult from cache if the segment scan has finished.
-             */
-            else if (currentSegmentState == SegmentScanState.HasNextPage
-                    || currentSegmentState == SegmentScanState.SegmentScanCompleted) {
-                ScanResult scanResult = segmentScanResults.get(segment);
-                scanResults.add(scanResult);
-            }
-            else if (currentSegmentState == SegmentScanState.Waiting
-                    || currentSegmentState == SegmentScanState.Scanning) {
-                throw new AmazonClientException(
-                        "Should never see a 'Scanning' or 'Waiting' state when marshalling parallel scan results.");
-            }
+                segmentScanEvents.release();
+            } while (pages.size() < readAheadPages);
+        } catch (RuntimeException e) {
+            segmentScanFailed(segment, e);
+            return;
         }
-        return scanResults;
+
+        segmentScanStates.set(segment, SegmentScanState.HasNextPage);
+        /*
+         * Pages taken while the segment was still marked as scanning didn't
+         * start another scan, so make up for it here, and wake up a thread
+         * that may be waiting to start one itself.
+         */
+        segmentScanEvents.release();
+        if (readAheadPages > 0) {
+            startScanNextPages(segment);
+        }
+    }
+
+    private void segmentScanFailed(int segment, RuntimeException e) {
+        segmentScanFailures.set(segment, e);
+        segmentScanStates.set(segment, SegmentScanState.Failed);
+        segmentScanEvents.release();
     }
 
     ScanResult scanNextPageOfSegment(int currentSegment, boolean checkLastEvaluatedKey) {
@@ -239,29 +342,17 @@ public class ParallelScanTask {
         ScanResult scanResult = dynamo.scan(DynamoDBMapper.applyUserAgent(segmentScanRequest));
 
         /**
-         * Cache the scan result in segmentScanResults. We should never try to
-         * get these scan results by calling get() on the cached future tasks.
+         * Cache the scan result in segmentScanResults, so the next page of the
+         * segment is scanned from its last evaluated key.
          */
         segmentScanResults.set(currentSegment, scanResult);
-
-        /**
-         * Update the state and notify any waiting thread.
-         */
-        synchronized (segmentScanStates) {
-            if (null == scanResult.getLastEvaluatedKey())
-                segmentScanStates.set(currentSegment, SegmentScanState.SegmentScanCompleted);
-            else
-                segmentScanStates.set(currentSegment, SegmentScanState.HasNextPage);
-            segmentScanStates.notifyAll();
-        }
         return scanResult;
     }
 
     private void initSegmentScanStates() {
         for (int segment = 0; segment < totalSegments; segment++) {
-            segmentScanFutureTasks.add(null);
-            segmentScanResults.add(null);
-            segmentScanStates.add(SegmentScanState.Waiting);
+            segmentScanPages.add(new ConcurrentLinkedQueue<ScanResult>());
+            segmentScanStates.set(segment, SegmentScanState.Waiting);
         }
     }
 
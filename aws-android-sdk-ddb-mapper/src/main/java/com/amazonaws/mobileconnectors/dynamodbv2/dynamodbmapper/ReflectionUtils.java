@@ -51,6 +51,20 @@ class ReflectionUtils {
         }
     }
 
+    /**
+     * Turns off the access checks of the given method, which otherwise run on
+     * every invocation, and returns it. The method is returned as is if the
+     * security manager doesn't allow it.
+     */
+    static Method makeAccessible(Method method) {
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException e) {
+            // invoked with access checks
+        }
+        return method;
+    }
+
     /**
      * Returns the field name that corresponds to the given getter method,
      * according to the Java naming convention.
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AimdThrottleTest {
+
+    private static final long SECOND = 1000000000L;
+
+    /** A throttle with a clock that only moves when it sleeps */
+    private static final class FakeClockThrottle extends AimdThrottle {
+        private long now = -5 * SECOND;
+        private long slept;
+
+        FakeClockThrottle(int maxWindow, double maxRate) {
+            super(maxWindow, maxRate);
+        }
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+
+        @Override
+        void sleepNanos(long nanos) {
+            now += nanos;
+            slept += nanos;
+        }
+    }
+
+    @Test
+    public void testWindowHalvesAndGrowsBack() {
+        AimdThrottle throttle = new AimdThrottle(8, 0);
+        assertFalse(throttle.isRateLimited());
+        assertEquals(8, throttle.getWindow());
+
+        throttle.onThrottle();
+        assertEquals(4, throttle.getWindow());
+        throttle.onThrottle();
+        throttle.onThrottle();
+        throttle.onThrottle();
+        assertEquals(1, throttle.getWindow());
+
+        throttle.onSuccess();
+        assertEquals(2, throttle.getWindow());
+        for (int i = 0; i < 10; i++) {
+            throttle.onSuccess();
+        }
+        assertEquals(8, throttle.getWindow());
+    }
+
+    @Test
+    public void testRateHalvesAndGrowsBack() {
+        AimdThrottle throttle = new AimdThrottle(1, 100);
+        assertTrue(throttle.isRateLimited());
+
+        throttle.onThrottle();
+        assertEquals(50, throttle.getRate(), 0.001);
+        throttle.onSuccess();
+        assertEquals(55, throttle.getRate(), 0.001);
+
+        for (int i = 0; i < 20; i++) {
+            throttle.onThrottle();
+        }
+        assertEquals(100 * AimdThrottle.MIN_RATE, throttle.getRate(), 0.001);
+
+        for (int i = 0; i < 40; i++) {
+            throttle.onSuccess();
+        }
+        assertEquals(100, throttle.getRate(), 0.001);
+    }
+
+    @Test
+    public void testAcquirePacesRequests() {
+        FakeClockThrottle throttle = new FakeClockThrottle(1, 100);
+        // 25 units at 100 units per second: 4 requests per second
+        for (int i = 0; i < 5; i++) {
+            throttle.acquire(25);
+        }
+        assertEquals(SECOND, throttle.slept);
+
+        throttle.onThrottle();
+        throttle.acquire(25);
+        throttle.acquire(25);
+        // the fifth request took up a quarter second at the old rate, the
+        // sixth takes up half a second at the new rate
+        assertEquals(SECOND + SECOND / 4 + SECOND / 2, throttle.slept);
+    }
+
+    @Test
+    public void testCorrectWithConsumedCapacity() {
+        FakeClockThrottle throttle = new FakeClockThrottle(1, 100);
+        throttle.acquire(25);
+        // the request consumed 50 units rather than 25
+        throttle.correct(25, 50);
+        throttle.acquire(25);
+        assertEquals(SECOND / 2, throttle.slept);
+
+        // and the next one none at all
+        throttle.correct(25, 0);
+        throttle.acquire(25);
+        assertEquals(SECOND / 2, throttle.slept);
+    }
+
+    @Test
+    public void testUnlimitedRateNeverSleeps() {
+        FakeClockThrottle throttle = new FakeClockThrottle(4, 0);
+        for (int i = 0; i < 100; i++) {
+            throttle.acquire(25);
+        }
+        throttle.correct(25, 400);
+        throttle.acquire(25);
+        assertEquals(0, throttle.slept);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowMustBePositive() {
+        new AimdThrottle(0, 0);
+    }
+}
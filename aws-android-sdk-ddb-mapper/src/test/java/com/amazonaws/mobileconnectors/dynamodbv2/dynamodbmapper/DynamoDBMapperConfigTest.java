@@ -17,6 +17,7 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
 import com.amazonaws.Request;
@@ -31,6 +32,9 @@ import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperCo
 
 import org.junit.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class DynamoDBMapperConfigTest {
 
     @Test
@@ -190,6 +194,94 @@ public class DynamoDBMapperConfigTest {
         assertEquals(copy.getTableNameResolver(), conf.getTableNameResolver());
     }
 
+    @Test
+    public void testBatchLoadConcurrencyAndExecutorService() {
+        assertEquals(Integer.valueOf(1), DynamoDBMapperConfig.DEFAULT.getBatchLoadConcurrency());
+        assertNull(DynamoDBMapperConfig.DEFAULT.getExecutorService());
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            DynamoDBMapperConfig conf = new DynamoDBMapperConfig.Builder()
+                    .withBatchLoadConcurrency(8)
+                    .withExecutorService(executorService)
+                    .build();
+            assertEquals(Integer.valueOf(8), conf.getBatchLoadConcurrency());
+            assertSame(executorService, conf.getExecutorService());
+
+            DynamoDBMapperConfig merged = new DynamoDBMapperConfig(conf,
+                    new DynamoDBMapperConfig(ConsistentReads.CONSISTENT));
+            assertEquals(Integer.valueOf(8), merged.getBatchLoadConcurrency());
+            assertSame(executorService, merged.getExecutorService());
+
+            merged = new DynamoDBMapperConfig(DynamoDBMapperConfig.DEFAULT, conf);
+            assertEquals(Integer.valueOf(8), merged.getBatchLoadConcurrency());
+            assertSame(executorService, merged.getExecutorService());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchLoadConcurrencyMustBePositive() {
+        new DynamoDBMapperConfig.Builder().withBatchLoadConcurrency(0);
+    }
+
+    @Test
+    public void testBatchWriteConcurrencyAndCapacity() {
+        assertEquals(Integer.valueOf(1), DynamoDBMapperConfig.DEFAULT.getBatchWriteConcurrency());
+        assertNull(DynamoDBMapperConfig.DEFAULT.getBatchWriteCapacityUnitsPerSecond());
+
+        DynamoDBMapperConfig conf = new DynamoDBMapperConfig.Builder()
+                .withBatchWriteConcurrency(8)
+                .withBatchWriteCapacityUnitsPerSecond(500)
+                .build();
+        assertEquals(Integer.valueOf(8), conf.getBatchWriteConcurrency());
+        assertEquals(Integer.valueOf(500), conf.getBatchWriteCapacityUnitsPerSecond());
+
+        DynamoDBMapperConfig merged = new DynamoDBMapperConfig(conf,
+                new DynamoDBMapperConfig(ConsistentReads.CONSISTENT));
+        assertEquals(Integer.valueOf(8), merged.getBatchWriteConcurrency());
+        assertEquals(Integer.valueOf(500), merged.getBatchWriteCapacityUnitsPerSecond());
+
+        merged = new DynamoDBMapperConfig(DynamoDBMapperConfig.DEFAULT, conf);
+        assertEquals(Integer.valueOf(8), merged.getBatchWriteConcurrency());
+        assertEquals(Integer.valueOf(500), merged.getBatchWriteCapacityUnitsPerSecond());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchWriteConcurrencyMustBePositive() {
+        new DynamoDBMapperConfig.Builder().withBatchWriteConcurrency(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchWriteCapacityUnitsPerSecondMustBePositive() {
+        new DynamoDBMapperConfig.Builder().withBatchWriteCapacityUnitsPerSecond(0);
+    }
+
+    @Test
+    public void testPaginationPrefetchPages() {
+        assertEquals(Integer.valueOf(2), DynamoDBMapperConfig.DEFAULT.getPaginationPrefetchPages());
+
+        DynamoDBMapperConfig conf = new DynamoDBMapperConfig.Builder()
+                .withPaginationLoadingStrategy(PaginationLoadingStrategy.STREAMING)
+                .withPaginationPrefetchPages(4)
+                .build();
+        assertEquals(Integer.valueOf(4), conf.getPaginationPrefetchPages());
+
+        DynamoDBMapperConfig merged = new DynamoDBMapperConfig(conf,
+                new DynamoDBMapperConfig(ConsistentReads.CONSISTENT));
+        assertEquals(Integer.valueOf(4), merged.getPaginationPrefetchPages());
+
+        merged = new DynamoDBMapperConfig(DynamoDBMapperConfig.DEFAULT, conf);
+        assertEquals(Integer.valueOf(4), merged.getPaginationPrefetchPages());
+        assertEquals(PaginationLoadingStrategy.STREAMING, merged.getPaginationLoadingStrategy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPaginationPrefetchPagesMustBePositive() {
+        new DynamoDBMapperConfig.Builder().withPaginationPrefetchPages(0);
+    }
+
     private static class TestObjectTableNameResolver implements ObjectTableNameResolver {
 
         @Override
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -88,6 +89,37 @@ public class DynamoDBMapperTest {
                 MockTwoValuePlusVersionClass.class, "Hash", "Range");
     }
 
+    @Test
+    public void testConverterIsReusedAcrossCalls() {
+        ItemConverter converter = mapper.getConverter(config);
+        assertSame(converter, mapper.getConverter(config));
+    }
+
+    @Test
+    public void testMarshallIntoObjectsRoundTrip() {
+        IndexRangeKeyClass item = new IndexRangeKeyClass();
+        item.setKey(5L);
+        item.setRangeKey(9.0);
+        item.setIndexFooRangeKeyWithFakeName(1.0);
+        item.setIndexBarRangeKey(2.0);
+        item.setFooAttribute("foo");
+        item.setVersion(3L);
+
+        Map<String, AttributeValue> attributes = mapper.getConverter(config).convert(item);
+        assertEquals("5", attributes.get("key").getN());
+        assertEquals("foo", attributes.get("fooAttribute").getS());
+        assertFalse(attributes.containsKey("barAttribute"));
+
+        List<Map<String, AttributeValue>> page = new ArrayList<Map<String, AttributeValue>>();
+        page.add(attributes);
+        page.add(attributes);
+        List<IndexRangeKeyClass> items = mapper.marshallIntoObjects(IndexRangeKeyClass.class,
+                page);
+        assertEquals(2, items.size());
+        assertEquals(item, items.get(0));
+        assertEquals(item, items.get(1));
+    }
+
     @Test
     public void testTransformAttributeUpdates() {
 
@@ -433,25 +465,6 @@ public class DynamoDBMapperTest {
         assertEquals(sr2.getTotalSegments().intValue(), 2);
     }
 
-    @Test
-    public void testContainsThrottlingException() {
-        List<FailedBatch> failedBatches = new ArrayList<FailedBatch>();
-
-        FailedBatch nonThrottle = new FailedBatch();
-        nonThrottle.setException(new AmazonServiceException("InvalidInput"));
-        failedBatches.add(nonThrottle);
-
-        assertFalse(mapper.containsThrottlingException(failedBatches));
-
-        FailedBatch throttle = new FailedBatch();
-        AmazonServiceException ase = new AmazonServiceException("ThrottlingException");
-        ase.setErrorCode("ThrottlingException");
-        nonThrottle.setException(ase);
-        failedBatches.add(throttle);
-
-        assertTrue(mapper.containsThrottlingException(failedBatches));
-    }
-
     @Test
     public void testSaveObjectHandler() {
 
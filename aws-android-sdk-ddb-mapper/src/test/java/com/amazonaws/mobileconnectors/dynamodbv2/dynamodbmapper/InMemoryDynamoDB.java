@@ -0,0 +1,245 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for DynamoDB that keeps its tables in memory, with a fixed
+ * latency for each request, a cap on the number of keys it processes per
+ * batch get request and a provisioned write capacity shared by all tables.
+ */
+class InMemoryDynamoDB extends AmazonDynamoDBClient {
+
+    private final Map<String, String[]> keyNamesByTable = new HashMap<String, String[]>();
+    private final Map<String, Map<Map<String, AttributeValue>, Map<String, AttributeValue>>> tables =
+            new HashMap<String, Map<Map<String, AttributeValue>, Map<String, AttributeValue>>>();
+
+    private volatile long latencyMillis;
+    private volatile int maxKeysPerBatchGet = Integer.MAX_VALUE;
+    private double writeCapacityUnitsPerSecond;
+    private double writeCapacity;
+    private long writeCapacityUpdatedNanos;
+
+    final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    final List<Integer> batchGetSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Integer> batchWriteSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    final AtomicInteger throttledWrites = new AtomicInteger();
+
+    InMemoryDynamoDB() {
+        super(new BasicAWSCredentials("accessKey", "secretKey"));
+    }
+
+    InMemoryDynamoDB withLatency(long millis) {
+        latencyMillis = millis;
+        return this;
+    }
+
+    InMemoryDynamoDB withMaxKeysPerBatchGet(int maxKeys) {
+        maxKeysPerBatchGet = maxKeys;
+        return this;
+    }
+
+    /**
+     * Provisions the given write capacity units per second, with up to a
+     * second of unused capacity saved up for bursts. Write requests beyond the
+     * capacity are returned unprocessed.
+     */
+    synchronized InMemoryDynamoDB withWriteCapacity(double unitsPerSecond) {
+        writeCapacityUnitsPerSecond = unitsPerSecond;
+        writeCapacity = unitsPerSecond;
+        writeCapacityUpdatedNanos = System.nanoTime();
+        return this;
+    }
+
+    void createTable(String tableName, String... keyNames) {
+        keyNamesByTable.put(tableName, keyNames);
+        tables.put(tableName,
+                new LinkedHashMap<Map<String, AttributeValue>, Map<String, AttributeValue>>());
+    }
+
+    synchronized void storeItem(String tableName, Map<String, AttributeValue> item) {
+        table(tableName).put(keyOf(tableName, item), item);
+    }
+
+    synchronized Map<String, AttributeValue> storedItem(String tableName,
+            Map<String, AttributeValue> key) {
+        return table(tableName).get(key);
+    }
+
+    synchronized int itemCount(String tableName) {
+        return table(tableName).size();
+    }
+
+    /** The largest number of requests that were being served at once */
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+        int keys = 0;
+        Map<String, List<Map<String, AttributeValue>>> responses =
+                new HashMap<String, List<Map<String, AttributeValue>>>();
+        Map<String, KeysAndAttributes> unprocessedKeys = new HashMap<String, KeysAndAttributes>();
+        beginRequest();
+        try {
+            synchronized (this) {
+                for (Entry<String, KeysAndAttributes> entry : request.getRequestItems()
+                        .entrySet()) {
+                    String tableName = entry.getKey();
+                    for (Map<String, AttributeValue> key : entry.getValue().getKeys()) {
+                        if (keys++ >= maxKeysPerBatchGet) {
+                            if (!unprocessedKeys.containsKey(tableName)) {
+                                unprocessedKeys.put(tableName, new KeysAndAttributes()
+                                        .withKeys(new ArrayList<Map<String, AttributeValue>>()));
+                            }
+                            unprocessedKeys.get(tableName).getKeys().add(key);
+                            continue;
+                        }
+                        Map<String, AttributeValue> item = table(tableName).get(key);
+                        if (item != null) {
+                            if (!responses.containsKey(tableName)) {
+                                responses.put(tableName,
+                                        new ArrayList<Map<String, AttributeValue>>());
+                            }
+                            responses.get(tableName).add(item);
+                        }
+                    }
+                }
+            }
+        } finally {
+            endRequest();
+        }
+        batchGetSizes.add(keys);
+        return new BatchGetItemResult().withResponses(responses)
+                .withUnprocessedKeys(unprocessedKeys);
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        int writes = 0;
+        Map<String, List<WriteRequest>> unprocessedItems =
+                new HashMap<String, List<WriteRequest>>();
+        List<ConsumedCapacity> consumedCapacity = new ArrayList<ConsumedCapacity>();
+        beginRequest();
+        try {
+            synchronized (this) {
+                refillWriteCapacity();
+                for (Entry<String, List<WriteRequest>> entry : request.getRequestItems()
+                        .entrySet()) {
+                    String tableName = entry.getKey();
+                    double consumed = 0;
+                    for (WriteRequest writeRequest : entry.getValue()) {
+                        writes++;
+                        if (writeCapacityUnitsPerSecond > 0 && writeCapacity < 1) {
+                            if (!unprocessedItems.containsKey(tableName)) {
+                                unprocessedItems.put(tableName, new ArrayList<WriteRequest>());
+                            }
+                            unprocessedItems.get(tableName).add(writeRequest);
+                            throttledWrites.incrementAndGet();
+                            continue;
+                        }
+                        writeCapacity--;
+                        consumed++;
+                        if (writeRequest.getPutRequest() != null) {
+                            storeItem(tableName, writeRequest.getPutRequest().getItem());
+                        } else {
+                            table(tableName).remove(writeRequest.getDeleteRequest().getKey());
+                        }
+                    }
+                    consumedCapacity.add(new ConsumedCapacity().withTableName(tableName)
+                            .withCapacityUnits(consumed));
+                }
+            }
+        } finally {
+            endRequest();
+        }
+        batchWriteSizes.add(writes);
+        BatchWriteItemResult result = new BatchWriteItemResult()
+                .withUnprocessedItems(unprocessedItems);
+        if (ReturnConsumedCapacity.TOTAL.toString().equals(request.getReturnConsumedCapacity())) {
+            result.setConsumedCapacity(consumedCapacity);
+        }
+        return result;
+    }
+
+    private void refillWriteCapacity() {
+        long now = System.nanoTime();
+        writeCapacity = Math.min(writeCapacityUnitsPerSecond, writeCapacity
+                + writeCapacityUnitsPerSecond * (now - writeCapacityUpdatedNanos) / 1e9);
+        writeCapacityUpdatedNanos = now;
+    }
+
+    private void beginRequest() {
+        requests.incrementAndGet();
+        int current = inFlight.incrementAndGet();
+        int max;
+        do {
+            max = maxInFlight.get();
+        } while (current > max && !maxInFlight.compareAndSet(max, current));
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void endRequest() {
+        inFlight.decrementAndGet();
+    }
+
+    private Map<Map<String, AttributeValue>, Map<String, AttributeValue>> table(
+            String tableName) {
+        Map<Map<String, AttributeValue>, Map<String, AttributeValue>> table =
+                tables.get(tableName);
+        if (table == null) {
+            throw new IllegalArgumentException("No such table: " + tableName);
+        }
+        return table;
+    }
+
+    private Map<String, AttributeValue> keyOf(String tableName, Map<String, AttributeValue> item) {
+        Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        for (String keyName : keyNamesByTable.get(tableName)) {
+            key.put(keyName, item.get(keyName));
+        }
+        return key;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class PaginatedListTest {
+
+    private static final String TABLE = "testTable";
+
+    private AmazonDynamoDB mockClient;
+    private DynamoDBMapper mapper;
+    private DynamoDBMapperConfig config;
+
+    @Before
+    public void setup() {
+        mockClient = EasyMock.createMock(AmazonDynamoDB.class);
+        mapper = new DynamoDBMapper(mockClient);
+        config = new DynamoDBMapperConfig.Builder()
+                .withPaginationLoadingStrategy(PaginationLoadingStrategy.STREAMING)
+                .withPaginationPrefetchPages(1)
+                .build();
+    }
+
+    @Test
+    public void testStreamingIteratesAllPages() {
+        EasyMock.expect(mockClient.scan(EasyMock.anyObject(ScanRequest.class)))
+                .andReturn(page(2, 2, true))
+                .andReturn(page(4, 0, true))
+                .andReturn(page(4, 2, false));
+        EasyMock.replay(mockClient);
+
+        PaginatedScanList<IndexRangeKeyClass> list = newList(page(0, 2, true));
+        List<Long> keys = new ArrayList<Long>();
+        for (IndexRangeKeyClass item : list) {
+            keys.add(item.getKey());
+        }
+
+        assertEquals(6, keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(Long.valueOf(i), keys.get(i));
+        }
+        EasyMock.verify(mockClient);
+    }
+
+    @Test
+    public void testStreamingRethrowsFetchFailure() {
+        EasyMock.expect(mockClient.scan(EasyMock.anyObject(ScanRequest.class)))
+                .andThrow(new AmazonServiceException("scan failed"));
+        EasyMock.replay(mockClient);
+
+        Iterator<IndexRangeKeyClass> iterator = newList(page(0, 1, true)).iterator();
+        assertEquals(0L, iterator.next().getKey());
+        try {
+            iterator.hasNext();
+            fail("Expected the scan failure to be rethrown");
+        } catch (AmazonServiceException e) {
+            assertEquals("scan failed", e.getErrorMessage());
+        }
+    }
+
+    @Test
+    public void testStreamingListCanOnlyBeIteratedOnce() {
+        EasyMock.replay(mockClient);
+
+        PaginatedScanList<IndexRangeKeyClass> list = newList(page(0, 1, false));
+        Iterator<IndexRangeKeyClass> iterator = list.iterator();
+        assertEquals(0L, iterator.next().getKey());
+        assertFalse(iterator.hasNext());
+
+        try {
+            list.iterator();
+            fail("Expected the list to be iterated only once");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            list.size();
+            fail("Expected size() to be unsupported");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    private PaginatedScanList<IndexRangeKeyClass> newList(ScanResult firstPage) {
+        return new PaginatedScanList<IndexRangeKeyClass>(mapper, IndexRangeKeyClass.class,
+                mockClient, new ScanRequest().withTableName(TABLE), firstPage,
+                PaginationLoadingStrategy.STREAMING, config);
+    }
+
+    private static ScanResult page(int firstKey, int count, boolean hasNextPage) {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int key = firstKey; key < firstKey + count; key++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("key", new AttributeValue().withN(Integer.toString(key)));
+            item.put("rangeKey", new AttributeValue().withN("1"));
+            items.add(item);
+        }
+        ScanResult result = new ScanResult().withItems(items);
+        if (hasNextPage) {
+            Map<String, AttributeValue> lastEvaluatedKey = new HashMap<String, AttributeValue>();
+            lastEvaluatedKey.put("key", new AttributeValue().withN(Integer.toString(firstKey)));
+            result.setLastEvaluatedKey(lastEvaluatedKey);
+        }
+        return result;
+    }
+}
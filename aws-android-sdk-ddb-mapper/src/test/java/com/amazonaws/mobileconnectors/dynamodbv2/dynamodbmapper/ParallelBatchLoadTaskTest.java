@@ -0,0 +1,243 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelBatchLoadTaskTest {
+
+    private static final String TABLE = "aws-java-sdk-util";
+    private static final String OTHER_TABLE = "otherTable";
+
+    private InMemoryDynamoDB dynamo;
+
+    @Before
+    public void setup() {
+        dynamo = new InMemoryDynamoDB();
+        dynamo.createTable(TABLE, "key");
+        dynamo.createTable(OTHER_TABLE, "key");
+    }
+
+    private static Map<String, AttributeValue> key(int i) {
+        Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        key.put("key", new AttributeValue().withS("key" + i));
+        return key;
+    }
+
+    private void putItems(String tableName, int count) {
+        for (int i = 0; i < count; i++) {
+            Map<String, AttributeValue> item = key(i);
+            item.put("stringAttribute", new AttributeValue().withS(tableName + i));
+            dynamo.storeItem(tableName, item);
+        }
+    }
+
+    /** Records the items loaded, failing on any item loaded twice. */
+    private static final class CollectingHandler implements ParallelBatchLoadTask.ItemHandler {
+        private final Set<String> items = new HashSet<String>();
+
+        @Override
+        public void handle(String tableName, Map<String, AttributeValue> item) {
+            assertTrue(items.add(item.get("stringAttribute").getS()));
+        }
+    }
+
+    /** Records the back offs instead of sleeping */
+    private static final class RecordingPauseTask extends ParallelBatchLoadTask {
+        private final List<Integer> pauses = new ArrayList<Integer>();
+
+        RecordingPauseTask(InMemoryDynamoDB dynamo, int maxInFlight) {
+            super(dynamo, false, null, maxInFlight, null);
+        }
+
+        @Override
+        void pause(int retries) {
+            pauses.add(retries);
+        }
+    }
+
+    private long timeLoad(int keys, int maxInFlight) {
+        ParallelBatchLoadTask task = new ParallelBatchLoadTask(dynamo, false, null,
+                maxInFlight, null);
+        for (int i = 0; i < keys; i++) {
+            task.addKey(TABLE, key(i));
+        }
+        CollectingHandler handler = new CollectingHandler();
+        long start = System.nanoTime();
+        task.load(handler);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertEquals(keys, handler.items.size());
+        return elapsed;
+    }
+
+    @Test
+    public void testLoadsAllKeysOfAllTables() {
+        putItems(TABLE, 250);
+        putItems(OTHER_TABLE, 120);
+        ParallelBatchLoadTask task = new ParallelBatchLoadTask(dynamo, false, null, 4, null);
+        for (int i = 0; i < 250; i++) {
+            task.addKey(TABLE, key(i));
+        }
+        for (int i = 0; i < 120; i++) {
+            task.addKey(OTHER_TABLE, key(i));
+        }
+        CollectingHandler handler = new CollectingHandler();
+        task.load(handler);
+
+        assertEquals(370, handler.items.size());
+        assertEquals(4, dynamo.requests.get());
+        for (int size : dynamo.batchGetSizes) {
+            assertTrue(size <= ParallelBatchLoadTask.MAX_KEYS_PER_BATCH);
+        }
+    }
+
+    @Test
+    public void testMergesUnprocessedKeysIntoFullBatches() {
+        putItems(TABLE, 500);
+        dynamo.withMaxKeysPerBatchGet(60);
+        RecordingPauseTask task = new RecordingPauseTask(dynamo, 1);
+        for (int i = 0; i < 500; i++) {
+            task.addKey(TABLE, key(i));
+        }
+        CollectingHandler handler = new CollectingHandler();
+        task.load(handler);
+
+        assertEquals(500, handler.items.size());
+        // the 40 unprocessed keys of each request are topped up with new keys
+        List<Integer> sizes = dynamo.batchGetSizes;
+        for (int i = 0; i < sizes.size() - 2; i++) {
+            assertEquals(100, (int) sizes.get(i));
+        }
+        assertEquals((500 + 59) / 60, sizes.size());
+        // the back off grows while responses keep coming back with
+        // unprocessed keys
+        assertEquals(Integer.valueOf(1), task.pauses.get(0));
+        assertEquals(Integer.valueOf(2), task.pauses.get(1));
+    }
+
+    @Test
+    public void testCapsRequestsInFlight() throws Exception {
+        putItems(TABLE, 2000);
+        dynamo.withLatency(20);
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        try {
+            ParallelBatchLoadTask task = new ParallelBatchLoadTask(dynamo, false, null, 3,
+                    executorService);
+            for (int i = 0; i < 2000; i++) {
+                task.addKey(TABLE, key(i));
+            }
+            task.load(new CollectingHandler());
+
+            assertEquals(3, dynamo.getMaxInFlight());
+            // a shared executor service isn't shut down
+            assertFalse(executorService.isShutdown());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Loads 5000 keys from a stand-in with 25ms of latency, one batch at a time
+     * and then with 8 batches in flight.
+     */
+    @Test
+    public void testConcurrentLoadThroughput() {
+        putItems(TABLE, 5000);
+        dynamo.withLatency(25);
+        long serial = timeLoad(5000, 1);
+        assertEquals(1, dynamo.getMaxInFlight());
+        long parallel = timeLoad(5000, 8);
+        assertTrue("serial: " + serial + "ms, parallel: " + parallel + "ms",
+                parallel * 3 < serial);
+    }
+
+    @Test
+    public void testFailureIsRethrown() {
+        InMemoryDynamoDB failing = new InMemoryDynamoDB() {
+            @Override
+            public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+                throw new AmazonClientException("boom");
+            }
+        };
+        ParallelBatchLoadTask task = new ParallelBatchLoadTask(failing, false, null, 4, null);
+        for (int i = 0; i < 1000; i++) {
+            task.addKey(TABLE, key(i));
+        }
+        try {
+            task.load(new CollectingHandler());
+            fail("the load should fail");
+        } catch (AmazonClientException expected) {
+            assertEquals("boom", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testGivesUpWhenNoKeysAreProcessed() {
+        putItems(TABLE, 10);
+        dynamo.withMaxKeysPerBatchGet(0);
+        RecordingPauseTask task = new RecordingPauseTask(dynamo, 1);
+        task.addKey(TABLE, key(0));
+        try {
+            task.load(new CollectingHandler());
+            fail("the load should fail");
+        } catch (AmazonClientException expected) {
+        }
+        assertEquals(DynamoDBMapper.BATCH_GET_MAX_RETRY_COUNT_ALL_KEYS + 1,
+                dynamo.requests.get());
+    }
+
+    @Test
+    public void testMapperBatchLoadWithConcurrency() {
+        putItems(TABLE, 300);
+        DynamoDBMapper mapper = new DynamoDBMapper(dynamo, new DynamoDBMapperConfig.Builder()
+                .withBatchLoadConcurrency(4).build());
+        List<Object> keys = new ArrayList<Object>();
+        for (int i = 0; i < 300; i++) {
+            StringAttributeClass keyObject = new StringAttributeClass();
+            keyObject.setKey("key" + i);
+            keys.add(keyObject);
+        }
+        Map<String, List<Object>> results = mapper.batchLoad(keys);
+
+        assertEquals(300, results.get(TABLE).size());
+        assertEquals(3, dynamo.requests.get());
+        Set<String> attributes = new HashSet<String>();
+        for (Object result : results.get(TABLE)) {
+            attributes.add(((StringAttributeClass) result).getStringAttribute());
+        }
+        assertTrue(attributes.contains(TABLE + 299));
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelBatchWriteTaskTest {
+
+    private static final String TABLE = "aws-java-sdk-util";
+    private static final String OTHER_TABLE = "otherTable";
+
+    private InMemoryDynamoDB dynamo;
+
+    @Before
+    public void setup() {
+        dynamo = new InMemoryDynamoDB();
+        dynamo.createTable(TABLE, "key");
+        dynamo.createTable(OTHER_TABLE, "key");
+    }
+
+    private static Map<String, AttributeValue> key(int i) {
+        Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        key.put("key", new AttributeValue().withS("key" + i));
+        return key;
+    }
+
+    private static WriteRequest put(String tableName, int i) {
+        Map<String, AttributeValue> item = key(i);
+        item.put("stringAttribute", new AttributeValue().withS(tableName + i));
+        return new WriteRequest().withPutRequest(new PutRequest().withItem(item));
+    }
+
+    /** Records the back offs, sleeping only briefly */
+    private static final class RecordingPauseTask extends ParallelBatchWriteTask {
+        private final List<Integer> pauses = new ArrayList<Integer>();
+
+        RecordingPauseTask(InMemoryDynamoDB dynamo, int maxInFlight,
+                double capacityUnitsPerSecond) {
+            super(dynamo, maxInFlight, capacityUnitsPerSecond, null);
+        }
+
+        @Override
+        void pause(int retries) {
+            pauses.add(retries);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long timeWrite(int items, int maxInFlight) {
+        ParallelBatchWriteTask task = new ParallelBatchWriteTask(dynamo, maxInFlight, 0, null);
+        for (int i = 0; i < items; i++) {
+            task.addWriteRequest(TABLE, put(TABLE, i));
+        }
+        long start = System.nanoTime();
+        List<FailedBatch> failedBatches = task.write();
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue(failedBatches.isEmpty());
+        assertEquals(items, dynamo.itemCount(TABLE));
+        return elapsed;
+    }
+
+    @Test
+    public void testWritesAllItemsOfAllTables() {
+        dynamo.storeItem(TABLE, key(999));
+        ParallelBatchWriteTask task = new ParallelBatchWriteTask(dynamo, 4, 0, null);
+        for (int i = 0; i < 260; i++) {
+            task.addWriteRequest(TABLE, put(TABLE, i));
+        }
+        for (int i = 0; i < 120; i++) {
+            task.addWriteRequest(OTHER_TABLE, put(OTHER_TABLE, i));
+        }
+        task.addWriteRequest(TABLE, new WriteRequest()
+                .withDeleteRequest(new DeleteRequest().withKey(key(999))));
+
+        assertTrue(task.write().isEmpty());
+        assertEquals(260, dynamo.itemCount(TABLE));
+        assertEquals(120, dynamo.itemCount(OTHER_TABLE));
+        assertEquals((381 + 24) / 25, dynamo.requests.get());
+        for (int size : dynamo.batchWriteSizes) {
+            assertTrue(size <= DynamoDBMapper.MAX_ITEMS_PER_BATCH);
+        }
+    }
+
+    @Test
+    public void testMergesUnprocessedItemsIntoFullBatches() {
+        // 200 items' worth of capacity to start with, 200 a second after that
+        dynamo.withWriteCapacity(200);
+        RecordingPauseTask task = new RecordingPauseTask(dynamo, 1, 0);
+        for (int i = 0; i < 300; i++) {
+            task.addWriteRequest(TABLE, put(TABLE, i));
+        }
+
+        assertTrue(task.write().isEmpty());
+        assertEquals(300, dynamo.itemCount(TABLE));
+        assertTrue(dynamo.throttledWrites.get() > 0);
+        // the unprocessed items of each request are topped up with new items
+        // as long as there are any left
+        List<Integer> sizes = dynamo.batchWriteSizes;
+        assertTrue(sizes.size() > 300 / 25);
+        for (int i = 0; i < 300 / 25; i++) {
+            assertEquals(DynamoDBMapper.MAX_ITEMS_PER_BATCH, (int) sizes.get(i));
+        }
+        assertEquals(Integer.valueOf(1), task.pauses.get(0));
+    }
+
+    /**
+     * Writes 1000 items to a table provisioned with 500 write capacity units
+     * per second, first without and then with a matching capacity budget.
+     */
+    @Test
+    public void testCapacityBudgetAvoidsThrottling() {
+        dynamo.withWriteCapacity(500);
+        RecordingPauseTask unlimited = new RecordingPauseTask(dynamo, 8, 0);
+        for (int i = 0; i < 1000; i++) {
+            unlimited.addWriteRequest(TABLE, put(TABLE, i));
+        }
+        assertTrue(unlimited.write().isEmpty());
+        assertEquals(1000, dynamo.itemCount(TABLE));
+        assertTrue(dynamo.throttledWrites.get() > 0);
+        assertFalse(unlimited.pauses.isEmpty());
+
+        setup();
+        dynamo.withWriteCapacity(500);
+        RecordingPauseTask budgeted = new RecordingPauseTask(dynamo, 8, 500);
+        for (int i = 0; i < 1000; i++) {
+            budgeted.addWriteRequest(TABLE, put(TABLE, i));
+        }
+        assertTrue(budgeted.write().isEmpty());
+        assertEquals(1000, dynamo.itemCount(TABLE));
+        assertEquals(0, dynamo.throttledWrites.get());
+        assertTrue(budgeted.pauses.isEmpty());
+    }
+
+    /**
+     * Writes 2000 items to a stand-in with 20ms of latency, one batch at a
+     * time and then with 8 batches in flight.
+     */
+    @Test
+    public void testConcurrentWriteThroughput() {
+        dynamo.withLatency(20);
+        long serial = timeWrite(2000, 1);
+        assertEquals(1, dynamo.getMaxInFlight());
+
+        setup();
+        dynamo.withLatency(20);
+        long parallel = timeWrite(2000, 8);
+        assertTrue("serial: " + serial + "ms, parallel: " + parallel + "ms",
+                parallel * 3 < serial);
+    }
+
+    @Test
+    public void testCapsRequestsInFlight() {
+        dynamo.withLatency(20);
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        try {
+            ParallelBatchWriteTask task = new ParallelBatchWriteTask(dynamo, 3, 0,
+                    executorService);
+            for (int i = 0; i < 500; i++) {
+                task.addWriteRequest(TABLE, put(TABLE, i));
+            }
+            assertTrue(task.write().isEmpty());
+
+            assertEquals(3, dynamo.getMaxInFlight());
+            // a shared executor service isn't shut down
+            assertFalse(executorService.isShutdown());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testSplitsBatchesThatAreTooLarge() {
+        final List<Integer> rejectedSizes = new ArrayList<Integer>();
+        InMemoryDynamoDB limited = new InMemoryDynamoDB() {
+            @Override
+            public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+                int size = 0;
+                for (List<WriteRequest> writeRequests : request.getRequestItems().values()) {
+                    size += writeRequests.size();
+                }
+                if (size > 5) {
+                    rejectedSizes.add(size);
+                    AmazonServiceException e = new AmazonServiceException("too large");
+                    e.setErrorCode("Request entity too large");
+                    throw e;
+                }
+                return super.batchWriteItem(request);
+            }
+        };
+        limited.createTable(TABLE, "key");
+        ParallelBatchWriteTask task = new ParallelBatchWriteTask(limited, 1, 0, null);
+        for (int i = 0; i < 50; i++) {
+            task.addWriteRequest(TABLE, put(TABLE, i));
+        }
+
+        assertTrue(task.write().isEmpty());
+        assertEquals(50, limited.itemCount(TABLE));
+        assertTrue(rejectedSizes.contains(25));
+        assertTrue(rejectedSizes.contains(12));
+    }
+
+    @Test
+    public void testFailedBatchesAreReturned() {
+        InMemoryDynamoDB failing = new InMemoryDynamoDB() {
+            @Override
+            public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+                if (request.getRequestItems().containsKey(OTHER_TABLE)) {
+                    throw new AmazonServiceException("boom");
+                }
+                return super.batchWriteItem(request);
+            }
+        };
+        failing.createTable(TABLE, "key");
+        ParallelBatchWriteTask task = new ParallelBatchWriteTask(failing, 4, 0, null);
+        for (int i = 0; i < 100; i++) {
+            task.addWriteRequest(TABLE, put(TABLE, i));
+        }
+        for (int i = 0; i < 10; i++) {
+            task.addWriteRequest(OTHER_TABLE, put(OTHER_TABLE, i));
+        }
+
+        List<FailedBatch> failedBatches = task.write();
+        assertEquals(1, failedBatches.size());
+        assertEquals("boom", ((AmazonServiceException) failedBatches.get(0).getException())
+                .getErrorMessage());
+        assertEquals(10, failedBatches.get(0).getUnprocessedItems().get(OTHER_TABLE).size());
+        assertEquals(100, failing.itemCount(TABLE));
+    }
+
+    @Test
+    public void testMapperBatchSaveWithConcurrency() {
+        DynamoDBMapper mapper = new DynamoDBMapper(dynamo, new DynamoDBMapperConfig.Builder()
+                .withBatchWriteConcurrency(4).build());
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 300; i++) {
+            StringAttributeClass object = new StringAttributeClass();
+            object.setKey("key" + i);
+            object.setStringAttribute(TABLE + i);
+            objects.add(object);
+        }
+
+        assertTrue(mapper.batchSave(objects).isEmpty());
+        assertEquals(300, dynamo.itemCount(TABLE));
+        assertEquals(12, dynamo.requests.get());
+        assertTrue(dynamo.getMaxInFlight() <= 4);
+    }
+}
@@ -18,7 +18,9 @@ package com.amazonaws.mobileconnectors.dynamodbv2.dynamodbmapper;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
@@ -26,13 +28,16 @@ import com.amazonaws.services.dynamodbv2.model.ScanResult;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ParallelScanTaskTest {
 
@@ -192,4 +197,66 @@ public class ParallelScanTaskTest {
 
         assertTrue(testTask.isAllSegmentScanFinished());
     }
+
+    @Test
+    public void testGetNextScanResultMergesAllSegments() {
+        int totalSegments = 16;
+        final int pagesPerSegment = 3;
+        List<ScanRequest> list = new ArrayList<ScanRequest>();
+        for (int segment = 0; segment < totalSegments; segment++) {
+            list.add(new ScanRequest().withTableName(TABLE).withSegment(segment)
+                    .withTotalSegments(totalSegments));
+        }
+
+        EasyMock.expect(mockClient.scan(EasyMock.anyObject(ScanRequest.class)))
+                .andAnswer(new IAnswer<ScanResult>() {
+                    @Override
+                    public ScanResult answer() {
+                        ScanRequest request = (ScanRequest) EasyMock.getCurrentArguments()[0];
+                        int page = request.getExclusiveStartKey() == null ? 0 : Integer
+                                .parseInt(request.getExclusiveStartKey().get("page").getN());
+                        ScanResult result = new ScanResult().withCount(
+                                request.getSegment() * pagesPerSegment + page);
+                        if (page + 1 < pagesPerSegment) {
+                            Map<String, AttributeValue> lastEvaluatedKey =
+                                    new HashMap<String, AttributeValue>();
+                            lastEvaluatedKey.put("page",
+                                    new AttributeValue().withN(Integer.toString(page + 1)));
+                            result.setLastEvaluatedKey(lastEvaluatedKey);
+                        }
+                        return result;
+                    }
+                }).times(totalSegments * pagesPerSegment);
+        EasyMock.replay(mockClient);
+
+        ParallelScanTask testTask = new ParallelScanTask(mockClient, list, null, 2);
+
+        Set<Integer> pages = new HashSet<Integer>();
+        ScanResult result;
+        while ((result = testTask.getNextScanResult()) != null) {
+            assertTrue(pages.add(result.getCount()));
+        }
+
+        EasyMock.verify(mockClient);
+        assertEquals(totalSegments * pagesPerSegment, pages.size());
+        assertTrue(testTask.isAllSegmentScanFinished());
+    }
+
+    @Test
+    public void testGetNextScanResultRethrowsSegmentFailure() {
+        ScanRequest scan1 = new ScanRequest().withTableName(TABLE);
+        List<ScanRequest> list = new ArrayList<ScanRequest>();
+        list.add(scan1);
+
+        EasyMock.expect(mockClient.scan(scan1)).andThrow(new AmazonServiceException("failed"));
+        EasyMock.replay(mockClient);
+
+        ParallelScanTask testTask = new ParallelScanTask(mockClient, list, null, 1);
+        try {
+            testTask.getNextScanResult();
+            fail("Expected the segment failure to be rethrown");
+        } catch (AmazonServiceException e) {
+            assertEquals("failed", e.getErrorMessage());
+        }
+    }
 }
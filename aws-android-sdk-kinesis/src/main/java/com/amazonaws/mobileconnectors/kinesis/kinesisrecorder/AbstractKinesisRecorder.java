@@ -23,7 +23,17 @@ import com.amazonaws.util.StringUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An abstract class for Amazon Kinesis recorders. It manages local file store
@@ -50,6 +60,13 @@ public abstract class AbstractKinesisRecorder {
     protected KinesisRecorderConfig config;
     protected FileRecordStore recordStore;
 
+    /**
+     * Sends the batches of submitAllRecords() concurrently. It's created on
+     * first use and its idle threads time out.
+     */
+    private ThreadPoolExecutor batchExecutor;
+    private static final AtomicInteger batchThreadCount = new AtomicInteger(0);
+
     /**
      * Gets the sender to send saved records.
      * 
@@ -84,8 +101,8 @@ public abstract class AbstractKinesisRecorder {
 
     /**
      * Saves a record to local storage to be sent later. The record will be
-     * submitted to the streamName provided with a randomly generated partition
-     * key to ensure equal distribution across shards. Note: Since operation
+     * submitted to the streamName provided with a partition key picked by the
+     * record sender, a random one by default. Note: Since operation
      * involves file I/O it is recommended not to call this method on the main
      * thread to ensure responsive applications.
      *
@@ -93,13 +110,36 @@ public abstract class AbstractKinesisRecorder {
      * @param streamName The stream to submit the data to.
      */
     public void saveRecord(byte[] data, String streamName) {
+        saveRecord(data, streamName, null);
+    }
+
+    /**
+     * Saves a record with the given partition key to local storage to be sent
+     * later.
+     *
+     * @param data The data to submit to the stream
+     * @param streamName The stream to submit the data to.
+     * @param partitionKey The partition key of the record, or null to let the
+     *            record sender pick one.
+     */
+    protected void saveRecord(byte[] data, String streamName, String partitionKey) {
         try {
-            recordStore.put(FileRecordParser.asString(streamName, data));
+            recordStore.put(streamName, partitionKey, data);
         } catch (IOException e) {
             throw new AmazonClientException("Error saving record", e);
         }
     }
 
+    /**
+     * Saves records that couldn't be sent back to local storage, keeping
+     * their partition keys.
+     */
+    private void saveRecords(List<FileRecord> records) {
+        for (FileRecord record : records) {
+            saveRecord(record.bytes, record.streamName, record.partitionKey);
+        }
+    }
+
     /**
      * Submits all requests saved to Amazon Kinesis. Requests that are
      * successfully sent will be deleted from the device. Requests that fail due
@@ -115,9 +155,14 @@ public abstract class AbstractKinesisRecorder {
      *             to be valid, it will be kept.
      */
     public synchronized void submitAllRecords() {
+        if (config != null && config.getMaxConcurrentBatches() > 1) {
+            submitAllRecordsConcurrently(config.getMaxConcurrentBatches());
+            return;
+        }
+
         RecordSender sender = getRecordSender();
         RecordIterator iterator = recordStore.iterator();
-        List<byte[]> data = new ArrayList<byte[]>(MAX_RECORDS_PER_BATCH);
+        List<FileRecord> data = new ArrayList<FileRecord>(MAX_RECORDS_PER_BATCH);
         int retry = 0;
         int count = 0;
         try {
@@ -135,36 +180,93 @@ public abstract class AbstractKinesisRecorder {
                 }
 
                 try {
-                    List<byte[]> failures = sender.sendBatch(streamName, data);
+                    List<FileRecord> failures = sender.sendBatch(streamName, data);
                     int successCount = data.size() - failures.size();
                     count += successCount;
                     if (successCount == 0) {
                         // no record went through, increase retry count.
                         retry++;
                     }
-                    if (!failures.isEmpty()) {
-                        for (byte[] bytes : failures) {
-                            saveRecord(bytes, streamName);
+                    saveRecords(failures);
+                } catch (AmazonClientException ace) {
+                    handleFailedBatch(sender, ace, data);
+                    throw ace;
+                }
+            }
+        } finally {
+            Log.d(TAG, String.format("submitAllRecords sent %d records", count));
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                throw new AmazonClientException("Failed to close record file", e);
+            }
+        }
+    }
+
+    /**
+     * Submits all saved records with up to the given number of batches in
+     * flight. Batches are read ahead and removed from local storage as they
+     * are sent, and the results are handled in the order the batches were
+     * read, so that failed records go back to local storage in order. Once a
+     * batch fails with an exception, no more batches are sent, the batches
+     * in flight are completed and the first exception is thrown. The same
+     * holds if reading or removing a batch from local storage fails.
+     *
+     * @param maxConcurrentBatches maximum number of batches in flight
+     */
+    private void submitAllRecordsConcurrently(int maxConcurrentBatches) {
+        final RecordSender sender = getRecordSender();
+        RecordIterator iterator = recordStore.iterator();
+        ExecutorService executor = getBatchExecutor(maxConcurrentBatches);
+        LinkedList<PendingBatch> pendingBatches = new LinkedList<PendingBatch>();
+        RuntimeException error = null;
+        int retry = 0;
+        int count = 0;
+        try {
+            while (error == null && retry < 3) {
+                try {
+                    // read ahead until the pipeline is full
+                    while (pendingBatches.size() < maxConcurrentBatches && iterator.hasNext()) {
+                        PendingBatch batch = readAndSendBatch(sender, iterator, executor);
+                        if (batch == null) {
+                            break;
                         }
+                        pendingBatches.add(batch);
+                    }
+                } catch (RuntimeException e) {
+                    // the batches already removed from local storage are
+                    // still completed below, so their records aren't lost
+                    error = e;
+                    break;
+                }
+                if (pendingBatches.isEmpty()) {
+                    break;
+                }
+
+                try {
+                    int successCount = completeBatch(sender, pendingBatches.removeFirst());
+                    count += successCount;
+                    if (successCount == 0) {
+                        // no record went through, increase retry count.
+                        retry++;
                     }
                 } catch (AmazonClientException ace) {
-                    if (sender.isRecoverable(ace)) {
-                        for (byte[] bytes : data) {
-                            saveRecord(bytes, streamName);
-                        }
-                        Log.e(TAG,
-                                "ServiceException in submit all, the values of the data inside the requests appears valid.  The request will be kept",
-                                ace);
-                    } else {
-                        // We have reason to believe the values in the request
-                        // is invalid and cannot be sent or recovered.
-                        Log.e(TAG,
-                                "ServiceException in submit all, the last request is presumed to be the cause and will be dropped",
-                                ace);
+                    error = ace;
+                }
+            }
+
+            while (!pendingBatches.isEmpty()) {
+                try {
+                    count += completeBatch(sender, pendingBatches.removeFirst());
+                } catch (AmazonClientException ace) {
+                    if (error == null) {
+                        error = ace;
                     }
-                    throw ace;
                 }
             }
+            if (error != null) {
+                throw error;
+            }
         } finally {
             Log.d(TAG, String.format("submitAllRecords sent %d records", count));
             try {
@@ -175,6 +277,135 @@ public abstract class AbstractKinesisRecorder {
         }
     }
 
+    /**
+     * Reads the next batch, removes it from local storage and starts sending
+     * it.
+     *
+     * @return the batch being sent, or null if there are no more records
+     */
+    private PendingBatch readAndSendBatch(final RecordSender sender, RecordIterator iterator,
+            ExecutorService executor) {
+        final List<FileRecord> data = new ArrayList<FileRecord>(MAX_RECORDS_PER_BATCH);
+        final String streamName = nextBatch(iterator, data, MAX_RECORDS_PER_BATCH,
+                MAX_BATCH_RECORDS_SIZE_BYTES);
+        if (streamName == null || data.isEmpty()) {
+            return null;
+        }
+
+        try {
+            iterator.removeReadRecords();
+        } catch (IOException e) {
+            throw new AmazonClientException("Failed to removed records.", e);
+        }
+
+        try {
+            return new PendingBatch(data, executor.submit(new Callable<List<FileRecord>>() {
+                @Override
+                public List<FileRecord> call() {
+                    return sender.sendBatch(streamName, data);
+                }
+            }));
+        } catch (RuntimeException e) {
+            // never sent, keep the records
+            saveRecords(data);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the executor that sends batches, creating it on first use or
+     * resizing it if the maximum number of concurrent batches changed.
+     */
+    private ThreadPoolExecutor getBatchExecutor(int maxConcurrentBatches) {
+        if (batchExecutor == null) {
+            batchExecutor = new ThreadPoolExecutor(maxConcurrentBatches, maxConcurrentBatches,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r);
+                            thread.setName("kinesis-recorder-batch-"
+                                    + batchThreadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            batchExecutor.allowCoreThreadTimeOut(true);
+        } else if (batchExecutor.getMaximumPoolSize() != maxConcurrentBatches) {
+            if (maxConcurrentBatches > batchExecutor.getMaximumPoolSize()) {
+                batchExecutor.setMaximumPoolSize(maxConcurrentBatches);
+                batchExecutor.setCorePoolSize(maxConcurrentBatches);
+            } else {
+                batchExecutor.setCorePoolSize(maxConcurrentBatches);
+                batchExecutor.setMaximumPoolSize(maxConcurrentBatches);
+            }
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * Waits for a batch to be sent and saves the failed records back to local
+     * storage.
+     *
+     * @param sender the sender of the batch
+     * @param batch the batch
+     * @return the number of records sent successfully
+     * @throws AmazonClientException if the batch failed
+     */
+    private int completeBatch(RecordSender sender, PendingBatch batch) {
+        List<FileRecord> failures;
+        try {
+            failures = batch.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the outcome is unknown, keep the records
+            saveRecords(batch.data);
+            throw new AmazonClientException("Interrupted while submitting records", e);
+        } catch (ExecutionException e) {
+            AmazonClientException ace = e.getCause() instanceof AmazonClientException
+                    ? (AmazonClientException) e.getCause()
+                    : new AmazonClientException("Failed to submit records", e.getCause());
+            handleFailedBatch(sender, ace, batch.data);
+            throw ace;
+        }
+
+        saveRecords(failures);
+        return batch.data.size() - failures.size();
+    }
+
+    /**
+     * Keeps the records of a batch that failed with an exception if the
+     * exception is recoverable, or drops them otherwise.
+     */
+    private void handleFailedBatch(RecordSender sender, AmazonClientException ace,
+            List<FileRecord> data) {
+        if (sender.isRecoverable(ace)) {
+            saveRecords(data);
+            Log.e(TAG,
+                    "ServiceException in submit all, the values of the data inside the requests appears valid.  The request will be kept",
+                    ace);
+        } else {
+            // We have reason to believe the values in the request
+            // is invalid and cannot be sent or recovered.
+            Log.e(TAG,
+                    "ServiceException in submit all, the last request is presumed to be the cause and will be dropped",
+                    ace);
+        }
+    }
+
+    /**
+     * A batch of records that is being sent.
+     */
+    private static final class PendingBatch {
+        final List<FileRecord> data;
+        final Future<List<FileRecord>> future;
+
+        PendingBatch(List<FileRecord> data, Future<List<FileRecord>> future) {
+            this.data = data;
+            this.future = future;
+        }
+    }
+
     /**
      * Reads a batch of records belong to the same stream into a list. If data
      * is read successfully, the stream name is returned.
@@ -186,34 +417,23 @@ public abstract class AbstractKinesisRecorder {
      *            record that brings the total size over this threshold.
      * @return the stream name that the batch belongs to
      */
-    protected String nextBatch(RecordIterator iterator, List<byte[]> data, int maxCount,
+    protected String nextBatch(RecordIterator iterator, List<FileRecord> data, int maxCount,
             int maxSize) {
         data.clear();
 
         String lastStreamName = null;
         int size = 0;
         int count = 0;
-        FileRecordParser frp = new FileRecordParser();
         while (iterator.hasNext() && count < maxCount && size < maxSize) {
-            String line = iterator.peek();
-            if (line == null || line.isEmpty()) {
-                continue;
-            }
-            // parse a line. Skip in case of corrupted data
-            try {
-                frp.parse(line);
-            } catch (Exception e) {
-                Log.w(TAG, "Failed to read line. Skip.", e);
-                continue;
-            }
+            FileRecord record = iterator.peek();
 
             // check whether it belongs to previous batch
-            if (lastStreamName == null || lastStreamName.equals(frp.streamName)) {
-                data.add(frp.bytes);
+            if (lastStreamName == null || lastStreamName.equals(record.streamName)) {
+                data.add(record);
                 // update counter
                 count++;
-                size += frp.bytes.length;
-                lastStreamName = frp.streamName;
+                size += record.bytes.length;
+                lastStreamName = record.streamName;
                 iterator.next();
             } else {
                 break;
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+/**
+ * A Kinesis record read from the {@link FileRecordStore}.
+ */
+class FileRecord {
+    /**
+     * The stream name of the record.
+     */
+    final String streamName;
+    /**
+     * The partition key saved with the record, or null.
+     */
+    final String partitionKey;
+    /**
+     * The data of the record.
+     */
+    final byte[] bytes;
+
+    FileRecord(String streamName, byte[] bytes) {
+        this(streamName, null, bytes);
+    }
+
+    FileRecord(String streamName, String partitionKey, byte[] bytes) {
+        this.streamName = streamName;
+        this.partitionKey = partitionKey;
+        this.bytes = bytes;
+    }
+}
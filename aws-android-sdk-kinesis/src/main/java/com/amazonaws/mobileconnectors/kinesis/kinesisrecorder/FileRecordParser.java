@@ -18,9 +18,11 @@ package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 import com.amazonaws.util.Base64;
 
 /**
- * A parser for Kinesis records. It has a helper method to serialize a Kinesis
- * record. The serialized data can be read via {@link #parse(String)}. It's not
- * thread safe.
+ * A parser for Kinesis records in the text format of earlier versions, one
+ * record per line with the stream name and the Base64 encoded data. It's only
+ * used to migrate such records to the binary format of the
+ * {@link FileRecordStore}. The serialized data can be read via
+ * {@link #parse(String)}. It's not thread safe.
  */
 class FileRecordParser {
     /**
@@ -20,30 +20,70 @@ import android.util.Log;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.util.StringUtils;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
  * The FileRecordStore is responsible for recording Kinesis PutRecordRequests to
- * the Android disk. Currently it stores each request as a JSON object
- * representing it's properties. One request per line.
+ * the Android disk. Records are appended to a journal made of segment files.
+ * The position of the first unread record is kept in a small checkpoint file,
+ * and segments are deleted as a whole once all their records have been
+ * removed, so neither writing nor removing records rewrites what is already on
+ * disk.
+ * <p>
+ * A segment starts with a 4 byte header followed by one binary frame per
+ * record:
+ *
+ * <pre>
+ * | length (int) | stream id (int) | key length (short) | key | data | CRC32 (int) |
+ * </pre>
+ *
+ * The length is the one of the partition key and the data together, and the
+ * key length is 0 if the record has no partition key. The CRC32 covers
+ * everything between the length and itself. Stream ids index a table of
+ * stream names kept in a separate file. Records in the text format of earlier
+ * versions, one record per line, are migrated when the store is created.
  */
 class FileRecordStore {
     private static final String TAG = "FileRecordStore";
-    private final ReentrantLock accessLock = new ReentrantLock(true);
 
-    /** The file the requests are stored in **/
-    private File recordFile;
+    /** A segment is closed and a new one started once it reaches this size **/
+    static final long MAX_SEGMENT_SIZE = 256 * 1024L;
+
+    /** Header of segments in the binary format, "KRB1" **/
+    static final int SEGMENT_HEADER = 0x4B524231;
+    static final int SEGMENT_HEADER_LENGTH = 4;
+    /** Length, stream id, key length and CRC32 of a frame **/
+    static final int FRAME_OVERHEAD = 14;
+    /** Stream id and key length **/
+    private static final int FRAME_BODY_HEADER_LENGTH = 6;
+
+    /** Sequence number of a records file written by an earlier version **/
+    private static final long LEGACY_SEGMENT = -1L;
+    private static final String SEGMENT_SEPARATOR = ".";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String STREAMS_SUFFIX = ".streams";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final ReentrantLock accessLock = new ReentrantLock(true);
 
     /** The FileManager used for interacting with the FS **/
     private final FileManager fileManager;
@@ -51,10 +91,39 @@ class FileRecordStore {
     private final String recordFileName;
     private final long maxStorageSize;
 
+    /** The directory the segments are stored in **/
+    private File recordsDirectory;
+
+    /** Sizes of the segments on disk, keyed and ordered by sequence number **/
+    private final TreeMap<Long, Long> segments = new TreeMap<Long, Long>();
+
+    /**
+     * All records of the segments before checkpointSegment and the first
+     * checkpointOffset bytes of checkpointSegment have been removed
+     **/
+    private long checkpointSegment;
+    private long checkpointOffset;
+
+    /** Size in bytes of the records that haven't been removed **/
+    private volatile long storedBytes;
+
+    /** Stream names indexed by stream id, and the other way around **/
+    private final List<String> streamNames = new ArrayList<String>();
+    private final Map<String, Integer> streamIds = new HashMap<String, Integer>();
+
+    /**
+     * Appends records to the last segment, null until it's opened. A store
+     * always starts a new segment, so records are never appended after a
+     * frame that may have been torn by a crash.
+     **/
+    private OutputStream writer;
+
+    private final CRC32 crc = new CRC32();
+
     /**
      * Creates the FileRecordStore
      *
-     * @param recorderDirectory The directory (which the FileRecordStore is only
+     * @param workDirectory The directory (which the FileRecordStore is only
      *            used for the KinesisRecorder) to use to store requests in
      * @param recordFileName Name of the record file
      * @param maxStorageSize Maximum storage size in bytes
@@ -63,134 +132,434 @@ class FileRecordStore {
         this.fileManager = new FileManager(workDirectory);
         this.recordFileName = recordFileName;
         this.maxStorageSize = maxStorageSize;
+        accessLock.lock();
         try {
-            tryCreateRecordsFile();
+            loadJournal();
         } catch (IOException ioe) {
             throw new AmazonClientException("Failed to create fire store", ioe);
+        } finally {
+            accessLock.unlock();
         }
     }
 
-    public boolean put(final String record) throws IOException {
+    /**
+     * Appends a record to the store unless that would exceed the maximum
+     * storage size.
+     *
+     * @param streamName the stream name of the record
+     * @param data the data of the record
+     * @return true if the record is saved, false if the store is full
+     */
+    public boolean put(final String streamName, final byte[] data) throws IOException {
+        return put(streamName, null, data);
+    }
+
+    /**
+     * Appends a record with a partition key to the store unless that would
+     * exceed the maximum storage size.
+     *
+     * @param streamName the stream name of the record
+     * @param partitionKey the partition key of the record, or null
+     * @param data the data of the record
+     * @return true if the record is saved, false if the store is full
+     */
+    public boolean put(final String streamName, final String partitionKey, final byte[] data)
+            throws IOException {
+        final byte[] key = partitionKey == null ? new byte[0]
+                : partitionKey.getBytes(StringUtils.UTF8);
+        if (key.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Partition key is too long");
+        }
         boolean success = false;
-        BufferedWriter writer = null;
         accessLock.lock();
         try {
-            writer = tryInitializeWriter();
-            if (recordFile.length() + record.getBytes(StringUtils.UTF8).length <= maxStorageSize) {
-                writer.write(record);
-                writer.newLine();
-                writer.flush();
+            if (storedBytes + FRAME_OVERHEAD + key.length + data.length <= maxStorageSize) {
+                writeFrame(getStreamId(streamName), key, data);
                 success = true;
             }
         } finally {
-            if (writer != null) {
-                writer.close();
-            }
             accessLock.unlock();
         }
 
         return success;
     }
 
+    /**
+     * Returns the size in bytes of the records that haven't been removed.
+     */
     public long getFileSize() {
-        return recordFile == null ? 0 : recordFile.length();
+        return storedBytes;
     }
 
-    private void tryCreateRecordsFile() throws IOException {
-        if (recordFile != null && recordFile.exists()) {
-            return;
+    private void writeFrame(int streamId, byte[] key, byte[] data) throws IOException {
+        if (writer == null) {
+            startSegment(segments.isEmpty()
+                    ? Math.max(0, checkpointSegment) : segments.lastKey() + 1);
+        } else if (segments.lastEntry().getValue() >= MAX_SEGMENT_SIZE) {
+            closeWriter();
+            startSegment(segments.lastKey() + 1);
         }
 
-        synchronized (this) {
-            if (recordFile != null && recordFile.exists()) {
-                return;
-            }
+        final int length = key.length + data.length;
+        final ByteBuffer frame = ByteBuffer.allocate(FRAME_OVERHEAD + length);
+        frame.putInt(length);
+        frame.putInt(streamId);
+        frame.putShort((short) key.length);
+        frame.put(key);
+        frame.put(data);
+        frame.putInt(checksum(frame.array(), 4, FRAME_BODY_HEADER_LENGTH + length));
+        writer.write(frame.array());
+        writer.flush();
+
+        final long last = segments.lastKey();
+        segments.put(last, segments.get(last) + frame.capacity());
+        storedBytes += frame.capacity();
+    }
+
+    private int checksum(byte[] bytes, int offset, int length) {
+        crc.reset();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
 
-            File recordDir = fileManager.createDirectory(
-                    Constants.RECORDS_DIRECTORY);
-            recordFile = fileManager.createFile(new File(
-                    recordDir, recordFileName));
+    /**
+     * Returns the id of a stream, adding it to the stream table first if
+     * necessary. The table is written before any record refers to the id.
+     */
+    private int getStreamId(String streamName) throws IOException {
+        final Integer id = streamIds.get(streamName);
+        if (id != null) {
+            return id;
         }
+
+        Writer out = null;
+        try {
+            out = new OutputStreamWriter(fileManager.newOutputStream(getStreamsFile(), true),
+                    StringUtils.UTF8);
+            out.write(streamName);
+            out.write('\n');
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        streamNames.add(streamName);
+        streamIds.put(streamName, streamNames.size() - 1);
+        return streamNames.size() - 1;
     }
 
-    private BufferedWriter tryInitializeWriter() throws IOException {
-        BufferedWriter writer = null;
-        tryCreateRecordsFile();
-        OutputStream stream = fileManager.newOutputStream(recordFile, true);
-        writer = new BufferedWriter(new OutputStreamWriter(stream, StringUtils.UTF8));
+    private void loadStreamTable() throws IOException {
+        final File streamsFile = getStreamsFile();
+        if (!streamsFile.isFile()) {
+            return;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                fileManager.newInputStream(streamsFile), StringUtils.UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                streamIds.put(line, streamNames.size());
+                streamNames.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+    }
 
-        return writer;
+    /**
+     * Clears the stream table. Must only be called when there are no records.
+     */
+    private void clearStreamTable() {
+        streamNames.clear();
+        streamIds.clear();
+        fileManager.deleteFile(getStreamsFile());
     }
 
-    private File deleteAllRecords() throws IOException {
-        File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
+    /**
+     * Finds the segments and the checkpoint on disk, drops segments that have
+     * already been fully removed and migrates records in the text format.
+     */
+    private void loadJournal() throws IOException {
+        recordsDirectory = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        if (recordsDirectory == null) {
+            throw new IOException("Failed to create records directory");
+        }
+
+        final File legacyFile = new File(recordsDirectory, recordFileName);
+        if (legacyFile.isFile()) {
+            segments.put(LEGACY_SEGMENT, legacyFile.length());
+        }
+        final String prefix = recordFileName + SEGMENT_SEPARATOR;
+        for (final File file : fileManager.listFilesInDirectory(recordsDirectory)) {
+            final String name = file.getName();
+            if (!name.startsWith(prefix)) {
+                continue;
+            }
+            try {
+                segments.put(Long.parseLong(name.substring(prefix.length())), file.length());
+            } catch (NumberFormatException e) {
+                // not a segment, e.g. the checkpoint
+            }
+        }
 
-        recordFile.delete();
+        readCheckpoint();
+        final Long first = segments.isEmpty() ? null : segments.firstKey();
+        if (first != null && first > checkpointSegment) {
+            checkpointSegment = first;
+            checkpointOffset = 0;
+        }
+        deleteSegmentsBefore(checkpointSegment);
+        final Long size = segments.get(checkpointSegment);
+        if (size == null) {
+            checkpointOffset = 0;
+        } else if (checkpointOffset > size) {
+            checkpointOffset = size;
+        }
 
-        recordFile = fileManager.createFile(new File(
-                recordsDir, recordFileName));
-        return recordFile;
+        loadStreamTable();
+        migrateTextSegments();
+        if (segments.isEmpty()) {
+            clearStreamTable();
+        }
+        updateStoredBytes();
     }
 
-    private File deleteReadRecords(final int lineNumber) throws IOException {
-        // Write all records after line number to a temporary file
-        File recordsDir = fileManager.createDirectory(
-                Constants.RECORDS_DIRECTORY);
-
-        File tempRecordsFile = null;
-        File tempFile = new File(
-                recordsDir, recordFileName + ".tmp");
-        if (tempFile.exists()) {
-            if (!tempFile.delete()) {
-                throw new IOException("Failed to delete previous temp file");
+    /**
+     * Rewrites the segments in the text format of earlier versions, which
+     * don't start with the segment header, into a new binary segment. Lines
+     * that can't be parsed are dropped.
+     */
+    private void migrateTextSegments() throws IOException {
+        final List<Long> textSegments = new ArrayList<Long>();
+        for (final long segment : segments.keySet()) {
+            if (!hasSegmentHeader(segment)) {
+                textSegments.add(segment);
             }
         }
-        tempRecordsFile = fileManager.createFile(tempFile);
+        if (textSegments.isEmpty()) {
+            return;
+        }
 
-        if (tempRecordsFile != null && recordFile.exists() && tempRecordsFile.exists()) {
-            BufferedReader reader = null;
-            PrintWriter writer = null;
+        final FileRecordParser frp = new FileRecordParser();
+        for (final long segment : textSegments) {
+            final InputStream in = fileManager.newInputStream(getSegmentFile(segment));
             try {
-                reader = new BufferedReader(new InputStreamReader(new FileInputStream(recordFile),
+                if (segment == checkpointSegment) {
+                    skipFully(in, checkpointOffset);
+                }
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(in,
                         StringUtils.UTF8));
-                writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(
-                        tempRecordsFile, true), StringUtils.UTF8));
-
-                String line = null;
-                int currentLineNumber = 0;
+                String line;
                 while ((line = reader.readLine()) != null) {
-                    currentLineNumber++;
-                    if (currentLineNumber > lineNumber) {
-                        writer.println(line);
-                        writer.flush();
+                    if (line.isEmpty()) {
+                        continue;
                     }
-                }
-            } finally {
-                if (writer != null) {
-                    writer.close();
-                }
-                if (reader != null) {
                     try {
-                        reader.close();
-                    } catch (IOException e) {
-
+                        frp.parse(line);
+                    } catch (Exception e) {
+                        Log.w(TAG, "Failed to migrate record. Skip.", e);
+                        continue;
                     }
+                    writeFrame(getStreamId(frp.streamName), new byte[0], frp.bytes);
                 }
+            } finally {
+                in.close();
+            }
+        }
+        closeWriter();
+
+        // The text segments precede the migrated records. Moving the
+        // checkpoint past them first means a crash before they are deleted
+        // doesn't migrate them twice.
+        final long lastTextSegment = textSegments.get(textSegments.size() - 1);
+        final Long firstBinarySegment = segments.higherKey(lastTextSegment);
+        checkpointSegment = firstBinarySegment != null ? firstBinarySegment : lastTextSegment + 1;
+        checkpointOffset = 0;
+        writeCheckpoint();
+        for (final long segment : textSegments) {
+            segments.remove(segment);
+            if (!getSegmentFile(segment).delete()) {
+                Log.e(TAG, "Failed to delete records segment " + segment);
+            }
+        }
+    }
+
+    private boolean hasSegmentHeader(long segment) throws IOException {
+        if (segment == LEGACY_SEGMENT || segments.get(segment) < SEGMENT_HEADER_LENGTH) {
+            return false;
+        }
+        final DataInputStream in = new DataInputStream(
+                fileManager.newInputStream(getSegmentFile(segment)));
+        try {
+            return in.readInt() == SEGMENT_HEADER;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void readCheckpoint() {
+        checkpointSegment = LEGACY_SEGMENT;
+        checkpointOffset = 0;
+        final File checkpointFile = getCheckpointFile();
+        if (!checkpointFile.isFile()) {
+            return;
+        }
 
-                if (!recordFile.delete() || !tempRecordsFile.renameTo(recordFile)) {
-                    throw new IOException(
-                            "Failed to delete read records and persist unread records");
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    fileManager.newInputStream(checkpointFile), StringUtils.UTF8));
+            final String line = reader.readLine();
+            final String[] parts = line == null ? new String[0] : line.trim().split(" ");
+            if (parts.length == 2) {
+                checkpointSegment = Long.parseLong(parts[0]);
+                checkpointOffset = Long.parseLong(parts[1]);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read checkpoint, reading from the oldest segment", e);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid checkpoint, reading from the oldest segment", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignore
                 }
             }
+        }
+    }
 
-            if (tempFile.exists()) {
-                if (!tempFile.delete()) {
-                    Log.e(TAG, "Failed to delete temp file");
-                }
+    /**
+     * Persists the checkpoint. It's written to a temporary file first so that
+     * a crash never leaves a partially written checkpoint behind.
+     */
+    private void writeCheckpoint() throws IOException {
+        final File checkpointFile = getCheckpointFile();
+        final File tempFile = new File(recordsDirectory, checkpointFile.getName() + TEMP_SUFFIX);
+        Writer out = null;
+        try {
+            out = new OutputStreamWriter(fileManager.newOutputStream(tempFile, false),
+                    StringUtils.UTF8);
+            out.write(checkpointSegment + " " + checkpointOffset);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        if (!tempFile.renameTo(checkpointFile)) {
+            fileManager.deleteFile(checkpointFile);
+            if (!tempFile.renameTo(checkpointFile)) {
+                throw new IOException("Failed to persist records checkpoint");
             }
         }
-        return recordFile;
+    }
+
+    private File getCheckpointFile() {
+        return new File(recordsDirectory, recordFileName + CHECKPOINT_SUFFIX);
+    }
+
+    private File getStreamsFile() {
+        return new File(recordsDirectory, recordFileName + STREAMS_SUFFIX);
+    }
+
+    private File getSegmentFile(long segment) {
+        if (segment == LEGACY_SEGMENT) {
+            return new File(recordsDirectory, recordFileName);
+        }
+        return new File(recordsDirectory, recordFileName + SEGMENT_SEPARATOR + segment);
+    }
+
+    private void startSegment(long segment) throws IOException {
+        final File file = fileManager.createFile(getSegmentFile(segment));
+        if (file == null) {
+            throw new IOException("Failed to create records file");
+        }
+        writer = fileManager.newOutputStream(file, false);
+        writer.write(ByteBuffer.allocate(SEGMENT_HEADER_LENGTH).putInt(SEGMENT_HEADER).array());
+        segments.put(segment, (long) SEGMENT_HEADER_LENGTH);
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            try {
+                writer.close();
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+    private void deleteSegmentsBefore(long segment) {
+        while (!segments.isEmpty() && segments.firstKey() < segment) {
+            final long first = segments.pollFirstEntry().getKey();
+            if (!getSegmentFile(first).delete()) {
+                Log.e(TAG, "Failed to delete records segment " + first);
+            }
+        }
+    }
+
+    private void updateStoredBytes() {
+        long total = 0;
+        for (final Map.Entry<Long, Long> entry : segments.tailMap(checkpointSegment).entrySet()) {
+            total += entry.getValue() - SEGMENT_HEADER_LENGTH;
+        }
+        if (segments.containsKey(checkpointSegment)) {
+            total -= Math.max(checkpointOffset, SEGMENT_HEADER_LENGTH) - SEGMENT_HEADER_LENGTH;
+        }
+        storedBytes = total;
+    }
+
+    /**
+     * Moves the checkpoint to the given position and deletes the segments
+     * that are no longer needed.
+     *
+     * @param segment the segment of the position
+     * @param offset the offset within the segment
+     */
+    private void commit(long segment, long offset) throws IOException {
+        checkpointSegment = segment;
+        checkpointOffset = offset;
+        final Long size = segments.get(segment);
+        final boolean fullyRead = size != null && offset >= size;
+        if (fullyRead) {
+            final Long next = segments.higherKey(segment);
+            checkpointSegment = next != null ? next : segment + 1;
+            checkpointOffset = 0;
+            if (next == null) {
+                // the segment being written to has been read entirely, start
+                // a new one on the next write
+                closeWriter();
+            }
+        }
+        writeCheckpoint();
+        deleteSegmentsBefore(checkpointSegment);
+        if (segments.isEmpty()) {
+            clearStreamTable();
+        }
+        updateStoredBytes();
+    }
+
+    private void deleteAllRecords() throws IOException {
+        closeWriter();
+        final long next = segments.isEmpty() ? checkpointSegment : segments.lastKey() + 1;
+        deleteSegmentsBefore(Long.MAX_VALUE);
+        checkpointSegment = Math.max(0, next);
+        checkpointOffset = 0;
+        fileManager.deleteFile(getCheckpointFile());
+        clearStreamTable();
+        storedBytes = 0;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count) {
+            final long n = in.skip(count - skipped);
+            if (n <= 0) {
+                break;
+            }
+            skipped += n;
+        }
     }
 
     public RecordIterator iterator() {
@@ -198,74 +567,169 @@ class FileRecordStore {
 
     }
 
-    public class RecordIterator implements java.util.Iterator<String> {
-        int linesRead = 0;
-        String nextBuffer = null;
-        BufferedReader reader = null;
+    public class RecordIterator implements java.util.Iterator<FileRecord> {
+        int recordsRead = 0;
+        FileRecord nextBuffer = null;
         boolean isEndOfFile = false;
 
-        private boolean tryOpenReader() throws FileNotFoundException {
+        /** Position right after the buffered record **/
+        private long nextBufferSegment;
+        private long nextBufferOffset;
+
+        /** Position right after the last record returned by next() **/
+        private long lastReadSegment;
+        private long lastReadOffset;
+
+        /** Reader on the segment currently being read **/
+        private DataInputStream reader = null;
+        private long readerSegment;
+        private long readerOffset;
+
+        private boolean tryOpenReader() throws IOException {
             if (reader != null) {
                 return true;
             }
 
             if (!isEndOfFile) {
-                InputStreamReader streamReader = null;
-                streamReader = new InputStreamReader(fileManager.newInputStream(recordFile),
-                        StringUtils.UTF8);
-
-                if (streamReader != null) {
-                    reader = new BufferedReader(streamReader);
+                final Long segment = segments.ceilingKey(checkpointSegment);
+                if (segment != null) {
+                    openReader(segment, segment == checkpointSegment ? checkpointOffset : 0);
                     return true;
                 }
             }
             return false;
         }
 
+        private void openReader(long segment, long offset) throws IOException {
+            final InputStream in = fileManager.newInputStream(getSegmentFile(segment));
+            readerSegment = segment;
+            readerOffset = Math.max(offset, SEGMENT_HEADER_LENGTH);
+            skipFully(in, readerOffset);
+            reader = new DataInputStream(new BufferedInputStream(in));
+        }
+
         private void tryCloseReader() throws IOException {
             if (reader != null) {
-                reader.close();
-                reader = null;
+                try {
+                    reader.close();
+                } finally {
+                    reader = null;
+                }
+            }
+        }
+
+        /**
+         * Reads the next record, moving on to the next segment at the end of
+         * the current one, and remembers where the record ends.
+         *
+         * @return the next record, or null at the end of the journal
+         */
+        private FileRecord readRecord() throws IOException {
+            if (!tryOpenReader()) {
+                return null;
+            }
+            while (true) {
+                final FileRecord record = readRecordFromSegment();
+                if (record != null) {
+                    nextBufferSegment = readerSegment;
+                    nextBufferOffset = readerOffset;
+                    return record;
+                }
+                final Long next = segments.higherKey(readerSegment);
+                tryCloseReader();
+                if (next == null) {
+                    isEndOfFile = true;
+                    return null;
+                }
+                openReader(next, 0);
+            }
+        }
+
+        /**
+         * Reads the next frame of the current segment. A frame that is
+         * truncated or fails the CRC check ends the segment, as the frames
+         * after it can't be located anymore. Such a tail counts as read, so
+         * it's removed along with the records before it.
+         */
+        private FileRecord readRecordFromSegment() throws IOException {
+            final Long size = segments.get(readerSegment);
+            if (size == null) {
+                // removed by another iterator
+                return null;
+            }
+            while (readerOffset + FRAME_OVERHEAD <= size) {
+                final byte[] body;
+                final int checksum;
+                try {
+                    final int length = reader.readInt();
+                    if (length < 0 || readerOffset + FRAME_OVERHEAD + length > size) {
+                        skipCorruptedTail(size);
+                        return null;
+                    }
+                    body = new byte[FRAME_BODY_HEADER_LENGTH + length];
+                    reader.readFully(body);
+                    checksum = reader.readInt();
+                } catch (EOFException e) {
+                    skipCorruptedTail(size);
+                    return null;
+                }
+                if (checksum != checksum(body, 0, body.length)) {
+                    skipCorruptedTail(size);
+                    return null;
+                }
+                readerOffset += FRAME_OVERHEAD + body.length - FRAME_BODY_HEADER_LENGTH;
+
+                final ByteBuffer buffer = ByteBuffer.wrap(body);
+                final int streamId = buffer.getInt();
+                final int keyLength = buffer.getShort();
+                if (streamId < 0 || streamId >= streamNames.size()
+                        || keyLength < 0 || keyLength > buffer.remaining()) {
+                    Log.w(TAG, "Invalid record in segment " + readerSegment + ". Skip.");
+                    // counts as read, so that it's removed with the records
+                    // before it rather than read again on every pass
+                    markRead(readerSegment, readerOffset);
+                    continue;
+                }
+                final String partitionKey = keyLength == 0 ? null
+                        : new String(body, FRAME_BODY_HEADER_LENGTH, keyLength, StringUtils.UTF8);
+                final byte[] data = new byte[buffer.remaining() - keyLength];
+                System.arraycopy(body, FRAME_BODY_HEADER_LENGTH + keyLength, data, 0,
+                        data.length);
+                return new FileRecord(streamNames.get(streamId), partitionKey, data);
+            }
+            if (readerOffset < size) {
+                skipCorruptedTail(size);
             }
+            return null;
+        }
+
+        private void skipCorruptedTail(long size) {
+            Log.w(TAG, "Corrupted record in segment " + readerSegment + ". Skip.");
+            readerOffset = size;
+            markRead(readerSegment, size);
+        }
+
+        /**
+         * Moves the position of the records read up to the end of a frame that
+         * is skipped. Frames are only read once all the records before them
+         * have been returned by next(), so nothing unread is removed.
+         */
+        private void markRead(long segment, long offset) {
+            recordsRead++;
+            lastReadSegment = segment;
+            lastReadOffset = offset;
         }
 
         @Override
         public boolean hasNext() {
-            boolean hasNext = false;
             accessLock.lock();
             try {
                 // If there is something already buffered then there is a
                 // next
-                if (nextBuffer != null) {
-                    hasNext = true;
-                } else {
-                    if (!tryOpenReader()) {
-                        return hasNext;
-                    }
-                    // Nothing was previously buffered so try to read one
-                    // more line
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            nextBuffer = reader.readLine();
-                            found = true;
-                        } catch (IOException e) {
-                            nextBuffer = null;
-                            found = true;
-                        }
-                    }
-                    if (nextBuffer != null) {
-                        // There was at least one more line so there is a
-                        // next
-                        hasNext = true;
-                    } else {
-                        // The next line was null so it should be the end of
-                        // the file. Try to close the reader
-                        isEndOfFile = true;
-                        tryCloseReader();
-                    }
+                if (nextBuffer == null) {
+                    nextBuffer = readRecord();
                 }
-                return hasNext;
+                return nextBuffer != null;
             } catch (FileNotFoundException fnfe) {
                 throw new AmazonClientException("Cannot find records file", fnfe);
             } catch (IOException ioe) {
@@ -276,34 +740,15 @@ class FileRecordStore {
         }
 
         @Override
-        public String next() {
-            String next = null;
+        public FileRecord next() {
             accessLock.lock();
             try {
-                if (nextBuffer != null) {
-                    next = nextBuffer;
-                    linesRead++;
-                    nextBuffer = null;
-                } else {
-                    if (!tryOpenReader()) {
-                        return next;
-                    }
-                    boolean found = false;
-                    while (!found) {
-                        try {
-                            next = reader.readLine();
-                            found = true;
-                        } catch (IOException e) {
-                            next = null;
-                            found = true;
-                        }
-                    }
-                    if (next != null) {
-                        linesRead++;
-                    } else {
-                        isEndOfFile = true;
-                        tryCloseReader();
-                    }
+                final FileRecord next = nextBuffer != null ? nextBuffer : readRecord();
+                nextBuffer = null;
+                if (next != null) {
+                    recordsRead++;
+                    lastReadSegment = nextBufferSegment;
+                    lastReadOffset = nextBufferOffset;
                 }
                 return next;
             } catch (FileNotFoundException e) {
@@ -315,7 +760,7 @@ class FileRecordStore {
             }
         }
 
-        public String peek() {
+        public FileRecord peek() {
             accessLock.lock();
             try {
                 hasNext();
@@ -331,10 +776,16 @@ class FileRecordStore {
                     "The remove() operation is not supported for this iterator");
         }
 
+        /**
+         * Removes the records returned by {@link #next()} so far. Only the
+         * checkpoint is rewritten; segments are deleted once fully read.
+         */
         public void removeReadRecords() throws IOException {
             accessLock.lock();
             try {
-                deleteReadRecords(linesRead);
+                if (recordsRead > 0) {
+                    commit(lastReadSegment, lastReadOffset);
+                }
                 resetReader();
             } finally {
                 accessLock.unlock();
@@ -353,7 +804,7 @@ class FileRecordStore {
 
         private void resetReader() throws IOException {
             tryCloseReader();
-            linesRead = 0;
+            recordsRead = 0;
             nextBuffer = null;
             isEndOfFile = false;
         }
@@ -49,7 +49,7 @@ class FirehoseRecordSender implements RecordSender {
     }
 
     @Override
-    public List<byte[]> sendBatch(String streamName, List<byte[]> data)
+    public List<FileRecord> sendBatch(String streamName, List<FileRecord> data)
             throws AmazonClientException {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
@@ -58,9 +58,9 @@ class FirehoseRecordSender implements RecordSender {
         PutRecordBatchRequest request = new PutRecordBatchRequest();
         request.setDeliveryStreamName(streamName);
         List<Record> records = new ArrayList<Record>(data.size());
-        for (byte[] d : data) {
+        for (FileRecord d : data) {
             Record r = new Record();
-            r.setData(ByteBuffer.wrap(d));
+            r.setData(ByteBuffer.wrap(d.bytes));
             records.add(r);
         }
         request.setRecords(records);
@@ -69,7 +69,7 @@ class FirehoseRecordSender implements RecordSender {
         PutRecordBatchResult result = client.putRecordBatch(request);
 
         int size = result.getRequestResponses().size();
-        List<byte[]> failures = new ArrayList<byte[]>(result.getFailedPutCount());
+        List<FileRecord> failures = new ArrayList<FileRecord>(result.getFailedPutCount());
         for (int i = 0; i < size; i++) {
             // Error code is either ServiceUnavailable or InternalFailure
             if (result.getRequestResponses().get(i).getErrorCode() != null) {
@@ -15,19 +15,24 @@
 
 package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
 
+import android.util.Log;
+
 import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.kinesis.AmazonKinesis;
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
+import com.amazonaws.util.StringUtils;
 import com.amazonaws.util.VersionInfoUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.regex.Pattern;
 
 /**
@@ -73,6 +78,7 @@ import java.util.regex.Pattern;
  * </pre>
  */
 public class KinesisRecorder extends AbstractKinesisRecorder {
+    private static final String TAG = "KinesisRecorder";
 
     /**
      * Name of local file record store.
@@ -93,6 +99,10 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
      * Valid stream name pattern.
      */
     private static final Pattern STREAM_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_.-]{1,128}");
+    /**
+     * The maximum length of a partition key in Unicode code points.
+     */
+    private static final int MAX_PARTITION_KEY_LENGTH = 256;
 
     private KinesisStreamRecordSender sender;
 
@@ -150,7 +160,8 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
         AmazonKinesis client = new AmazonKinesisClient(credentialsProvider,
                 config.getClientConfiguration());
         client.setRegion(Region.getRegion(region));
-        sender = new KinesisStreamRecordSender(client, USER_AGENT);
+        sender = new KinesisStreamRecordSender(client, USER_AGENT,
+                config.getPartitionKeyStrategy());
 
         checkUpgrade(directory);
     }
@@ -198,23 +209,31 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
             }
 
             // iterate through all records in the old records file
-            FileRecordStore frs = new FileRecordStore(directory, Constants.RECORDS_FILE_NAME,
-                    Long.MAX_VALUE);
-            RecordIterator iterator = frs.iterator();
-            while (iterator.hasNext()) {
-                try {
-                    JSONObject json = new JSONObject(iterator.next());
-                    saveRecord(JSONRecordAdapter.getData(json).array(),
-                            JSONRecordAdapter.getStreamName(json));
-                } catch (JSONException e) {
-                    // skip invalid json
-                    continue;
-                }
-            }
+            BufferedReader reader = null;
             try {
-                iterator.close();
+                reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(oldRecordsFile), StringUtils.UTF8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        JSONObject json = new JSONObject(line);
+                        saveRecord(JSONRecordAdapter.getData(json).array(),
+                                JSONRecordAdapter.getStreamName(json));
+                    } catch (JSONException e) {
+                        // skip invalid json
+                        continue;
+                    }
+                }
             } catch (IOException e) {
-                // ignore
+                Log.e(TAG, "Failed to read old records file", e);
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
             }
             oldRecordsFile.delete();
         }
@@ -235,4 +254,33 @@ public class KinesisRecorder extends AbstractKinesisRecorder {
         }
         super.saveRecord(data, streamName);
     }
+
+    /**
+     * Saves a record with the given partition key to local storage to be sent
+     * later. The record is sent with this partition key instead of one picked
+     * by the {@link PartitionKeyStrategy} of the config, so records with the
+     * same key end up in the same shard. Note: Since operation involves file
+     * I/O it is recommended not to call this method on the main thread to
+     * ensure responsive applications.
+     *
+     * @param data The data to submit to the stream
+     * @param streamName The stream to submit the data to.
+     * @param partitionKey The partition key of the record, 1 to 256
+     *            characters, or null to let the partition key strategy pick
+     *            one.
+     */
+    @Override
+    public void saveRecord(byte[] data, String streamName, String partitionKey) {
+        if (streamName == null || !STREAM_NAME_PATTERN.matcher(streamName).matches()) {
+            throw new IllegalArgumentException("Invalid stream name: " + streamName);
+        }
+        if (data == null || data.length == 0 || data.length > MAX_RECORD_SIZE_BYTES) {
+            throw new IllegalArgumentException("Invalid data size.");
+        }
+        if (partitionKey != null && (partitionKey.length() == 0
+                || partitionKey.codePointCount(0, partitionKey.length()) > MAX_PARTITION_KEY_LENGTH)) {
+            throw new IllegalArgumentException("Invalid partition key: " + partitionKey);
+        }
+        super.saveRecord(data, streamName, partitionKey);
+    }
 }
@@ -24,6 +24,8 @@ import com.amazonaws.ClientConfiguration;
 public class KinesisRecorderConfig {
 
     private long maxStorageSize = 1024 * 1024 * 5L;
+    private int maxConcurrentBatches = 1;
+    private PartitionKeyStrategy partitionKeyStrategy = PartitionKeyStrategies.BATCH_RANDOM;
     private ClientConfiguration clientConfiguration;
 
     /**
@@ -56,6 +58,8 @@ public class KinesisRecorderConfig {
      */
     public KinesisRecorderConfig(KinesisRecorderConfig other) {
         this.maxStorageSize = other.getMaxStorageSize();
+        this.maxConcurrentBatches = other.getMaxConcurrentBatches();
+        this.partitionKeyStrategy = other.getPartitionKeyStrategy();
         this.clientConfiguration = new ClientConfiguration(other.getClientConfiguration());
     }
 
@@ -79,6 +83,61 @@ public class KinesisRecorderConfig {
         return this.maxStorageSize;
     }
 
+    /**
+     * Sets the maximum number of batches that submitAllRecords() sends
+     * concurrently. With a value greater than 1, batches are read ahead from
+     * local storage and sent while earlier batches are still in flight, which
+     * drains a large backlog faster. The default is 1, which sends one batch
+     * at a time. Note that the client configuration should allow at least as
+     * many connections.
+     *
+     * @param maxConcurrentBatches the maximum number of batches in flight
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withMaxConcurrentBatches(int maxConcurrentBatches) {
+        if (maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("maxConcurrentBatches must be at least 1");
+        }
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of batches that submitAllRecords() sends
+     *         concurrently.
+     */
+    public int getMaxConcurrentBatches() {
+        return this.maxConcurrentBatches;
+    }
+
+    /**
+     * Sets the strategy KinesisRecorder uses to pick the partition keys of
+     * records saved without one. The default is
+     * {@link PartitionKeyStrategies#BATCH_RANDOM}, which sends each batch to a
+     * single shard. Use {@link PartitionKeyStrategies#RECORD_RANDOM} or
+     * {@link PartitionKeyStrategies#roundRobin(int)} to spread the records of
+     * a batch across shards. It's not used by KinesisFirehoseRecorder.
+     *
+     * @param partitionKeyStrategy the partition key strategy
+     * @return This class for chaining
+     */
+    public KinesisRecorderConfig withPartitionKeyStrategy(
+            PartitionKeyStrategy partitionKeyStrategy) {
+        if (partitionKeyStrategy == null) {
+            throw new IllegalArgumentException("partitionKeyStrategy can't be null");
+        }
+        this.partitionKeyStrategy = partitionKeyStrategy;
+        return this;
+    }
+
+    /**
+     * @return The strategy that picks the partition keys of records saved
+     *         without one.
+     */
+    public PartitionKeyStrategy getPartitionKeyStrategy() {
+        return this.partitionKeyStrategy;
+    }
+
     /**
      * Returns the client configuration the Kinesis Recorder will use when
      * making requests to Amazon Kinesis
@@ -27,7 +27,6 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * A implementation of {@link RecordSender} for Amazon Kinesis.
@@ -36,6 +35,7 @@ class KinesisStreamRecordSender implements RecordSender {
 
     private AmazonKinesis client;
     private String userAgent;
+    private PartitionKeyStrategy partitionKeyStrategy;
 
     /**
      * Constructs a {@link KinesisStreamRecordSender}.
@@ -44,12 +44,26 @@ class KinesisStreamRecordSender implements RecordSender {
      * @param userAgent user agent string to be set in each request
      */
     public KinesisStreamRecordSender(AmazonKinesis client, String userAgent) {
+        this(client, userAgent, PartitionKeyStrategies.BATCH_RANDOM);
+    }
+
+    /**
+     * Constructs a {@link KinesisStreamRecordSender}.
+     *
+     * @param client an {@link AmazonKinesis} client
+     * @param userAgent user agent string to be set in each request
+     * @param partitionKeyStrategy assigns partition keys to the records that
+     *            weren't saved with one
+     */
+    public KinesisStreamRecordSender(AmazonKinesis client, String userAgent,
+            PartitionKeyStrategy partitionKeyStrategy) {
         this.client = client;
         this.userAgent = userAgent;
+        this.partitionKeyStrategy = partitionKeyStrategy;
     }
 
     @Override
-    public List<byte[]> sendBatch(String streamName, List<byte[]> data)
+    public List<FileRecord> sendBatch(String streamName, List<FileRecord> data)
             throws AmazonClientException {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
@@ -58,20 +72,27 @@ class KinesisStreamRecordSender implements RecordSender {
         PutRecordsRequest request = new PutRecordsRequest();
         request.setStreamName(streamName);
         List<PutRecordsRequestEntry> records = new ArrayList<PutRecordsRequestEntry>(data.size());
-        String partitionKey = UUID.randomUUID().toString();
-        for (byte[] d : data) {
+        List<PutRecordsRequestEntry> unkeyed = new ArrayList<PutRecordsRequestEntry>(data.size());
+        for (FileRecord d : data) {
             PutRecordsRequestEntry r = new PutRecordsRequestEntry();
-            r.setData(ByteBuffer.wrap(d));
-            r.setPartitionKey(partitionKey);
+            r.setData(ByteBuffer.wrap(d.bytes));
+            if (d.partitionKey != null) {
+                r.setPartitionKey(d.partitionKey);
+            } else {
+                unkeyed.add(r);
+            }
             records.add(r);
         }
+        if (!unkeyed.isEmpty()) {
+            partitionKeyStrategy.assignKeys(streamName, unkeyed);
+        }
         request.setRecords(records);
         request.getRequestClientOptions().appendUserAgent(userAgent);
 
         PutRecordsResult result = client.putRecords(request);
 
         int size = result.getRecords().size();
-        List<byte[]> failures = new ArrayList<byte[]>(result.getFailedRecordCount());
+        List<FileRecord> failures = new ArrayList<FileRecord>(result.getFailedRecordCount());
         for (int i = 0; i < size; i++) {
             if (result.getRecords().get(i).getErrorCode() != null) {
                 // always retry failed record
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Predefined {@link PartitionKeyStrategy} implementations.
+ */
+public class PartitionKeyStrategies {
+
+    /** The size of the hash key space of a Kinesis stream, 2^128 **/
+    private static final BigInteger HASH_KEY_SPACE = BigInteger.ONE.shiftLeft(128);
+
+    /**
+     * Uses one random partition key for all the records of a batch, so that
+     * each batch is written to a single shard. This is the default.
+     */
+    public static final PartitionKeyStrategy BATCH_RANDOM = new PartitionKeyStrategy() {
+        @Override
+        public void assignKeys(String streamName, List<PutRecordsRequestEntry> entries) {
+            String partitionKey = UUID.randomUUID().toString();
+            for (PutRecordsRequestEntry entry : entries) {
+                entry.setPartitionKey(partitionKey);
+            }
+        }
+    };
+
+    /**
+     * Uses a random partition key for each record, so that the records of a
+     * batch are spread across the shards of the stream.
+     */
+    public static final PartitionKeyStrategy RECORD_RANDOM = new PartitionKeyStrategy() {
+        @Override
+        public void assignKeys(String streamName, List<PutRecordsRequestEntry> entries) {
+            for (PutRecordsRequestEntry entry : entries) {
+                entry.setPartitionKey(UUID.randomUUID().toString());
+            }
+        }
+    };
+
+    /**
+     * Returns a strategy that splits the hash key space into the given number
+     * of equal ranges and assigns records to them in turn, using explicit
+     * hash keys. With as many ranges as the stream has evenly split shards,
+     * every shard gets the same share of the records.
+     *
+     * @param hashKeyRanges the number of ranges, usually the number of shards
+     * @return a round-robin partition key strategy
+     */
+    public static PartitionKeyStrategy roundRobin(int hashKeyRanges) {
+        if (hashKeyRanges < 1) {
+            throw new IllegalArgumentException("hashKeyRanges must be at least 1");
+        }
+        return new RoundRobinPartitionKeyStrategy(hashKeyRanges);
+    }
+
+    private static final class RoundRobinPartitionKeyStrategy implements PartitionKeyStrategy {
+        private final String[] hashKeys;
+        private final AtomicLong counter = new AtomicLong();
+
+        RoundRobinPartitionKeyStrategy(int hashKeyRanges) {
+            hashKeys = new String[hashKeyRanges];
+            BigInteger rangeSize = HASH_KEY_SPACE.divide(BigInteger.valueOf(hashKeyRanges));
+            BigInteger middle = rangeSize.shiftRight(1);
+            for (int i = 0; i < hashKeyRanges; i++) {
+                hashKeys[i] = rangeSize.multiply(BigInteger.valueOf(i)).add(middle).toString();
+            }
+        }
+
+        @Override
+        public void assignKeys(String streamName, List<PutRecordsRequestEntry> entries) {
+            long next = counter.getAndAdd(entries.size());
+            for (PutRecordsRequestEntry entry : entries) {
+                int range = (int) (next++ % hashKeys.length);
+                // a partition key is required, but the hash key decides the
+                // shard
+                entry.setPartitionKey(String.valueOf(range));
+                entry.setExplicitHashKey(hashKeys[range]);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.kinesis.kinesisrecorder;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+
+import java.util.List;
+
+/**
+ * Assigns partition keys to the records that {@link KinesisRecorder} sends
+ * to an Amazon Kinesis stream. The partition key, or the explicit hash key if
+ * one is set, determines the shard a record is written to. See
+ * {@link PartitionKeyStrategies} for the predefined strategies. A strategy
+ * may be called from several threads at once.
+ */
+public interface PartitionKeyStrategy {
+
+    /**
+     * Sets the partition key, and optionally the explicit hash key, of the
+     * entries of a PutRecords request. Records saved with their own partition
+     * key keep it and aren't passed to this method.
+     *
+     * @param streamName the name of the stream the entries are sent to
+     * @param entries the entries of the request that need a partition key
+     */
+    void assignKeys(String streamName, List<PutRecordsRequestEntry> entries);
+}
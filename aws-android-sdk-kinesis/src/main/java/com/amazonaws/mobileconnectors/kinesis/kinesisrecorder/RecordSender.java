@@ -24,15 +24,17 @@ import java.util.List;
  */
 interface RecordSender {
     /**
-     * Sends a batch of data to the given stream. If some data is rejected by
-     * the server and is retryable, it should be added to the return list.
+     * Sends a batch of records to the given stream. If some records are
+     * rejected by the server and are retryable, they should be added to the
+     * return list.
      * 
      * @param streamName stream name
-     * @param data a list of data to be sent
-     * @return a list to data that is failed to send
+     * @param records a list of records to be sent
+     * @return a list of records that failed to send
      * @throws AmazonClientException
      */
-    List<byte[]> sendBatch(String streamName, List<byte[]> data) throws AmazonClientException;
+    List<FileRecord> sendBatch(String streamName, List<FileRecord> records)
+            throws AmazonClientException;
 
     /**
      * Tests whether an exception is recoverable. If true, the list of data
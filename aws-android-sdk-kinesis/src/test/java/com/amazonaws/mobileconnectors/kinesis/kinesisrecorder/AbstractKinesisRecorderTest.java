@@ -25,6 +25,7 @@ import static org.junit.Assert.fail;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.mobileconnectors.kinesis.kinesisrecorder.FileRecordStore.RecordIterator;
+import com.amazonaws.util.StringUtils;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -32,14 +33,20 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
@@ -107,7 +114,7 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
         RecordIterator iterator;
 
         iterator = recorder.recordStore.iterator();
@@ -140,7 +147,7 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), anotherStream);
         }
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
 
         // read all data
         RecordIterator iterator = recorder.recordStore.iterator();
@@ -179,7 +186,7 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), anotherStream);
         }
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
 
         // read all data
         RecordIterator iterator = recorder.recordStore.iterator();
@@ -208,8 +215,8 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), anotherStream);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
-                .thenReturn(new ArrayList<byte[]>());
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(FileRecord.class)))
+                .thenReturn(new ArrayList<FileRecord>());
         recorder.submitAllRecords();
         assertEquals("no records after submitAllRecords", 0, recorder.getDiskBytesUsed());
     }
@@ -221,7 +228,7 @@ public class AbstractKinesisRecorderTest {
         }
         long size = recorder.getDiskBytesUsed();
         AmazonServiceException ase = new AmazonServiceException("some failures");
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(FileRecord.class)))
                 .thenThrow(ase);
         Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
         try {
@@ -239,7 +246,7 @@ public class AbstractKinesisRecorderTest {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
         AmazonServiceException ase = new AmazonServiceException("some failures");
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(FileRecord.class)))
                 .thenThrow(ase);
         Mockito.when(sender.isRecoverable(ase)).thenReturn(false);
         try {
@@ -256,26 +263,230 @@ public class AbstractKinesisRecorderTest {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(FileRecord.class)))
                 // one of the records fails, but succeeds the next time
-                .thenReturn(Arrays.asList(randomBytes(1024)))
-                .thenReturn(new ArrayList<byte[]>());
+                .thenReturn(Arrays.asList(new FileRecord(STREAM_NAME, randomBytes(1024))))
+                .thenReturn(new ArrayList<FileRecord>());
         recorder.submitAllRecords();
         assertEquals("records removed", 0, recorder.getDiskBytesUsed());
     }
 
+    @Test
+    public void testSubmitAllRecordsKeepsPartitionKeyOfFailedRecords() throws IOException {
+        recorder.saveRecord("keyed".getBytes(StringUtils.UTF8), STREAM_NAME, "user");
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(FileRecord.class)))
+                .thenAnswer(new Answer<List<FileRecord>>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public List<FileRecord> answer(InvocationOnMock invocation) {
+                        // the record always fails
+                        return new ArrayList<FileRecord>(
+                                (List<FileRecord>) invocation.getArguments()[1]);
+                    }
+                });
+        recorder.submitAllRecords();
+
+        RecordIterator iterator = recorder.recordStore.iterator();
+        FileRecord record = iterator.next();
+        assertEquals("user", record.partitionKey);
+        assertEquals("keyed", new String(record.bytes, StringUtils.UTF8));
+        iterator.close();
+    }
+
     @Test
     public void testSubmitAllRecordsWithPartialFailuresExceedsMaxRetry() {
         for (int i = 0; i < 10; i++) {
             recorder.saveRecord(randomBytes(1024), STREAM_NAME);
         }
-        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(byte[].class)))
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(FileRecord.class)))
                 // one of the records always failes
-                .thenReturn(Arrays.asList(randomBytes(1024)));
+                .thenReturn(Arrays.asList(new FileRecord(STREAM_NAME, randomBytes(1024))));
         recorder.submitAllRecords();
         assertTrue("records removed", recorder.getDiskBytesUsed() > 0);
     }
 
+    @Test
+    public void testSubmitAllRecordsConcurrently() throws IOException {
+        StubRecordSender stubSender = new StubRecordSender(50);
+        AbstractKinesisRecorder concurrentRecorder = createRecorder(stubSender, 4);
+        // 16 batches of 128 records, half of them for another stream
+        for (int i = 0; i < 16 * 128; i++) {
+            concurrentRecorder.saveRecord(String.valueOf(i), i < 8 * 128 ? STREAM_NAME
+                    : "another_stream");
+        }
+
+        long start = System.currentTimeMillis();
+        concurrentRecorder.submitAllRecords();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("no records after submitAllRecords", 0,
+                concurrentRecorder.getDiskBytesUsed());
+        assertEquals("all records sent", 16 * 128, stubSender.sent.size());
+        assertEquals("batches in flight", 4, stubSender.maxInFlight.get());
+        // sending one batch at a time takes at least 16 * 50 ms
+        assertTrue("batches sent concurrently", elapsed < 16 * 50);
+    }
+
+    @Test
+    public void testSubmitAllRecordsConcurrentlyWithPartialFailures() throws IOException {
+        StubRecordSender stubSender = new StubRecordSender(10);
+        List<String> firstBatchFailures = Arrays.asList("0", "1", "2", "3");
+        List<String> thirdBatchFailures = Arrays.asList("300", "301");
+        stubSender.failOnce.addAll(firstBatchFailures);
+        stubSender.failOnce.addAll(thirdBatchFailures);
+        AbstractKinesisRecorder concurrentRecorder = createRecorder(stubSender, 4);
+        for (int i = 0; i < 4 * 128; i++) {
+            concurrentRecorder.saveRecord(String.valueOf(i), STREAM_NAME);
+        }
+
+        concurrentRecorder.submitAllRecords();
+
+        assertEquals("no records after submitAllRecords", 0,
+                concurrentRecorder.getDiskBytesUsed());
+        assertEquals("all records sent", 4 * 128, stubSender.sent.size());
+        // the failed records of each batch are saved back and sent again in
+        // their original order
+        int firstRetry = stubSender.batches.indexOf(firstBatchFailures);
+        int thirdRetry = stubSender.batches.indexOf(thirdBatchFailures);
+        assertTrue("first batch retried", firstRetry > 0);
+        assertTrue("third batch retried after first", thirdRetry > firstRetry);
+    }
+
+    @Test
+    public void testSubmitAllRecordsConcurrentlyWithRecoverableFailures() {
+        AbstractKinesisRecorder concurrentRecorder = createRecorder(sender, 4);
+        for (int i = 0; i < 10; i++) {
+            concurrentRecorder.saveRecord(randomBytes(1024), STREAM_NAME);
+        }
+        long size = concurrentRecorder.getDiskBytesUsed();
+        AmazonServiceException ase = new AmazonServiceException("some failures");
+        Mockito.when(sender.sendBatch(Mockito.anyString(), Mockito.anyListOf(FileRecord.class)))
+                .thenThrow(ase);
+        Mockito.when(sender.isRecoverable(ase)).thenReturn(true);
+        try {
+            concurrentRecorder.submitAllRecords();
+            fail("Should throw exception");
+        } catch (AmazonClientException ace) {
+            assertSame("same exception", ase, ace);
+        }
+        assertEquals("no records sent", size, concurrentRecorder.getDiskBytesUsed());
+    }
+
+    @Test
+    public void testSubmitAllRecordsConcurrentlyKeepsInFlightBatchesOnReadFailure()
+            throws IOException {
+        StubRecordSender stubSender = new StubRecordSender(10);
+        List<String> firstBatchFailures = Arrays.asList("0", "1");
+        stubSender.failOnce.addAll(firstBatchFailures);
+        KinesisRecorderConfig config = new KinesisRecorderConfig().withMaxConcurrentBatches(4);
+        FileRecordStore recordStore = new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME,
+                config.getMaxStorageSize());
+        final AtomicInteger failingRead = new AtomicInteger(3);
+        MockAbstractKinesisRecorder concurrentRecorder = new MockAbstractKinesisRecorder(
+                recordStore, config) {
+            @Override
+            protected String nextBatch(RecordIterator iterator,
+                    List<FileRecord> data, int maxCount, int maxSize) {
+                // the third batch fails to be read, two are in flight
+                if (failingRead.decrementAndGet() == 0) {
+                    throw new AmazonClientException("read failed");
+                }
+                return super.nextBatch(iterator, data, maxCount, maxSize);
+            }
+        };
+        concurrentRecorder.setRecordSender(stubSender);
+        for (int i = 0; i < 4 * 128; i++) {
+            concurrentRecorder.saveRecord(String.valueOf(i), STREAM_NAME);
+        }
+
+        try {
+            concurrentRecorder.submitAllRecords();
+            fail("Should throw exception");
+        } catch (AmazonClientException ace) {
+            assertEquals("read failed", ace.getMessage());
+        }
+        assertEquals("in flight batches sent", 2 * 128 - 2, stubSender.sent.size());
+
+        // the failed records of the batches in flight were saved back
+        concurrentRecorder.submitAllRecords();
+        assertEquals("no records after submitAllRecords", 0,
+                concurrentRecorder.getDiskBytesUsed());
+        assertEquals("all records sent", 4 * 128, stubSender.sent.size());
+        assertTrue("first batch failures sent", stubSender.sent.containsAll(firstBatchFailures));
+    }
+
+    private AbstractKinesisRecorder createRecorder(RecordSender recordSender,
+            int maxConcurrentBatches) {
+        KinesisRecorderConfig config = new KinesisRecorderConfig()
+                .withMaxConcurrentBatches(maxConcurrentBatches);
+        FileRecordStore recordStore;
+        try {
+            recordStore = new FileRecordStore(temp.newFolder(), RECORD_FILE_NAME,
+                    config.getMaxStorageSize());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        MockAbstractKinesisRecorder mockRecorder = new MockAbstractKinesisRecorder(recordStore,
+                config);
+        mockRecorder.setRecordSender(recordSender);
+        return mockRecorder;
+    }
+
+    /**
+     * A sender that takes some time to send a batch and records what it sent.
+     */
+    private static class StubRecordSender implements RecordSender {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final List<List<String>> batches = Collections
+                .synchronizedList(new ArrayList<List<String>>());
+        /** Records that fail the first time they are sent **/
+        final Set<String> failOnce = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final long latency;
+
+        StubRecordSender(long latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public List<FileRecord> sendBatch(String streamName, List<FileRecord> data) {
+            int current = inFlight.incrementAndGet();
+            while (true) {
+                int max = maxInFlight.get();
+                if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                    break;
+                }
+            }
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            List<String> batch = new ArrayList<String>();
+            List<FileRecord> failures = new ArrayList<FileRecord>();
+            for (FileRecord fileRecord : data) {
+                String record = new String(fileRecord.bytes, StringUtils.UTF8);
+                batch.add(record);
+                if (failOnce.remove(record)) {
+                    failures.add(fileRecord);
+                } else {
+                    sent.add(record);
+                }
+            }
+            batches.add(batch);
+            return failures;
+        }
+
+        @Override
+        public boolean isRecoverable(AmazonClientException ace) {
+            return true;
+        }
+    }
+
     private byte[] randomBytes(int length) {
         byte[] data = new byte[length];
         new Random().nextBytes(data);
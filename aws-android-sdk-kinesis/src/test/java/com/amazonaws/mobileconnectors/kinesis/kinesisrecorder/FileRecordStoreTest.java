@@ -28,11 +28,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.HashMap;
@@ -45,6 +44,7 @@ public class FileRecordStoreTest {
 
     private static final File TEST_DIRECTORY = new File("FileRecordStoreTest");
     private static final String RECORDER_FILE_NAME = Constants.RECORDS_FILE_NAME;
+    private static final String STREAM_NAME = "stream";
     private static final long MAX_STORAGE_SIZE = 1024 * 1024 * 5L;
 
     @Before
@@ -69,21 +69,20 @@ public class FileRecordStoreTest {
     @Test
     public void testFileRecordStore_putIterateAndRemove() throws IOException {
 
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
         // Put some events into the store
-        recordStore.put("1");
-        recordStore.put("2");
-        recordStore.put("3");
-        recordStore.put("4");
-        recordStore.put("5");
-        recordStore.put("6");
-        recordStore.put("7");
-        recordStore.put("8");
-        recordStore.put("9");
-        recordStore.put("10");
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+        put(recordStore, "4");
+        put(recordStore, "5");
+        put(recordStore, "6");
+        put(recordStore, "7");
+        put(recordStore, "8");
+        put(recordStore, "9");
+        put(recordStore, "10");
 
         // Use the iterator to read through the events in the store
         int counter = 0;
@@ -91,51 +90,52 @@ public class FileRecordStoreTest {
 
         while (iter.hasNext()) {
             counter++;
-            String record = iter.next();
+            String record = asString(iter.next());
             assertSame(Integer.valueOf(record), counter);
             // If we read 5 events remove the 5 last read events
             if (counter % 5 == 0) {
                 iter.removeReadRecords();
-                assertSame(getNumberOfLinesInFile(fileManager), (10 - counter));
+                assertEquals(10 - counter, getNumberOfRecords(recordStore));
             }
         }
 
         // Put some events into the store
-        recordStore.put("1");
-        recordStore.put("2");
-        recordStore.put("3");
-        recordStore.put("4");
-        recordStore.put("5");
-        recordStore.put("6");
-        recordStore.put("7");
-        recordStore.put("8");
-        recordStore.put("9");
-        recordStore.put("10");
+        put(recordStore, "1");
+        put(recordStore, "2");
+        put(recordStore, "3");
+        put(recordStore, "4");
+        put(recordStore, "5");
+        put(recordStore, "6");
+        put(recordStore, "7");
+        put(recordStore, "8");
+        put(recordStore, "9");
+        put(recordStore, "10");
         String nextRecord = null;
         counter = 0;
         iter = recordStore.iterator();
-        while ((nextRecord = iter.next()) != null) {
+        while ((nextRecord = asString(iter.next())) != null) {
             counter++;
             assertSame(Integer.valueOf(nextRecord), counter);
         }
         iter.removeReadRecords();
-        assertSame(getNumberOfLinesInFile(fileManager), 0);
+        assertEquals(0, getNumberOfRecords(recordStore));
+        assertEquals(0, recordStore.getFileSize());
 
         // Try getting a new iterator while the store is empty and verify
         // that hasNext is false
         iter = recordStore.iterator();
         assertFalse(iter.hasNext());
-        assertNull(iter.next());
+        assertNull(asString(iter.next()));
 
         // Put another record in the store and try to read it back out with a
         // new iterator.
-        recordStore.put("11");
+        put(recordStore, "11");
         iter = recordStore.iterator();
 
         // Try peeking and the next record more than once and verify it will
         // only show the next record each time
-        assertTrue(iter.peek().equalsIgnoreCase("11"));
-        assertTrue(iter.peek().equalsIgnoreCase("11"));
+        assertTrue(asString(iter.peek()).equalsIgnoreCase("11"));
+        assertTrue(asString(iter.peek()).equalsIgnoreCase("11"));
 
         // Try calling remove and get an UnsupportedOperationException
         boolean unsupportedCaught = false;
@@ -147,7 +147,7 @@ public class FileRecordStoreTest {
         assertTrue(unsupportedCaught);
 
         while (iter.hasNext()) {
-            String record = iter.next();
+            String record = asString(iter.next());
             assertSame(Integer.valueOf(record), 11);
         }
 
@@ -170,7 +170,7 @@ public class FileRecordStoreTest {
 
             fileManager.deleteFile(recordsFile);
             kinesisDirectory.setReadOnly();
-            recordStore.put("2");
+            put(recordStore, "2");
         } finally {
             if (kinesisDirectory != null && kinesisDirectory.exists()) {
 
@@ -183,38 +183,27 @@ public class FileRecordStoreTest {
 
     @Test
     public void testWhenWritingExceedsMaxStorageSize_noMoreRecordsWritten() throws IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
+        long recordSize = FileRecordStore.FRAME_OVERHEAD + 9;
         FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
-                RECORDER_FILE_NAME, 100L);
-
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
+                RECORDER_FILE_NAME, 10 * recordSize);
 
         for (int i = 0; i < 10; i++) {
-            recordStore.put("ten bytes");
+            assertTrue(put(recordStore, "nine byte"));
         }
-        assertSame(recordsFile.length(), 100L);
+        assertEquals(10 * recordSize, recordStore.getFileSize());
 
-        recordStore.put("0123456789");
-        assertSame(recordsFile.length(), 100L);
+        assertFalse(put(recordStore, "0123456789"));
+        assertEquals(10 * recordSize, recordStore.getFileSize());
+        assertEquals(10, getNumberOfRecords(recordStore));
 
     }
 
     @Test
     public void testWhenWritingTooManyConcurrentRecords() throws
             InterruptedException, IOException {
-        File recordsDirectory = null;
-        File recordsFile = null;
-        FileManager fileManager = new FileManager(TEST_DIRECTORY);
         final FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
                 RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
 
-        recordsDirectory = fileManager.getDirectory(Constants.RECORDS_DIRECTORY);
-        recordsFile = new File(recordsDirectory, Constants.RECORDS_FILE_NAME);
-
         SecureRandom random = new SecureRandom();
 
         // first fill the disk
@@ -226,11 +215,11 @@ public class FileRecordStoreTest {
         final String recordStr = tempRecordStr;
 
         for (int i = 0; i < 30; i++) {
-            recordStore.put(recordStr);
+            put(recordStore, recordStr);
         }
 
-        long initialSize = recordsFile.length();
-        assertTrue(recordsFile.length() <= MAX_STORAGE_SIZE);
+        long initialSize = recordStore.getFileSize();
+        assertTrue(initialSize <= MAX_STORAGE_SIZE);
 
         final CountDownLatch latch = new CountDownLatch(1);
         ExecutorService threadPool = Executors.newFixedThreadPool(1);
@@ -241,7 +230,7 @@ public class FileRecordStoreTest {
                     for (int i = 0; i < 100; i++) {
                         RecordIterator itr = recordStore.iterator();
                         if (itr.hasNext()) {
-                            String next = itr.next();
+                            String next = asString(itr.next());
                             assertEquals(next.length(), recordStr.length());
                             itr.removeReadRecords();
                         }
@@ -258,18 +247,18 @@ public class FileRecordStoreTest {
         });
 
         for (int i = 0; i < 10000; i++) {
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
-            recordStore.put(recordStr);
-            assertTrue(recordsFile.length() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
+            put(recordStore, recordStr);
+            assertTrue(recordStore.getFileSize() <= initialSize);
             Thread.sleep(1);
         }
 
         latch.await();
-        assertEquals(recordsFile.length(), initialSize);
-        assertTrue(recordsFile.length() < MAX_STORAGE_SIZE);
+        assertEquals(initialSize, recordStore.getFileSize());
+        assertTrue(recordStore.getFileSize() < MAX_STORAGE_SIZE);
 
     }
 
@@ -293,7 +282,7 @@ public class FileRecordStoreTest {
                         Long eventsWritten = threadWrites.get(Thread.currentThread().getId());
                         eventsWritten = (eventsWritten == null) ? 0L : eventsWritten;
                         threadWrites.put(Thread.currentThread().getId(), ++eventsWritten);
-                        recordStore.put(String.valueOf(Thread.currentThread().getId()));
+                        put(recordStore, String.valueOf(Thread.currentThread().getId()));
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     } finally {
@@ -314,7 +303,7 @@ public class FileRecordStoreTest {
         final Map<Long, Long> actualThreadWrites = new HashMap<Long, Long>();
         RecordIterator iter = recordStore.iterator();
         while (iter.hasNext()) {
-            String next = iter.next();
+            String next = asString(iter.next());
             Long id = Long.valueOf(next);
             Long eventsWritten = actualThreadWrites.get(id);
             eventsWritten = (eventsWritten == null) ? 0L : eventsWritten;
@@ -328,28 +317,184 @@ public class FileRecordStoreTest {
 
     }
 
-    private int getNumberOfLinesInFile(final FileManager fileManager) throws NumberFormatException,
-            IOException {
-        BufferedReader reader = getRecordsFileReader(fileManager);
+    @Test
+    public void testRemoveReadRecords_deletesConsumedSegments() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        File recordsDirectory = new FileManager(TEST_DIRECTORY)
+                .getDirectory(Constants.RECORDS_DIRECTORY);
+
+        // about 3 MB of records, spread over several segments
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            padding.append('x');
+        }
+        int total = 3000;
+        for (int i = 0; i < total; i++) {
+            assertTrue(put(recordStore, i + padding.toString()));
+        }
+        assertTrue(countSegments(recordsDirectory) > 1);
+
+        // drain in batches, like the recorder does
+        int expected = 0;
+        while (true) {
+            RecordIterator iter = recordStore.iterator();
+            int read = 0;
+            while (read < 128 && iter.hasNext()) {
+                assertEquals(expected + padding.toString(), asString(iter.next()));
+                expected++;
+                read++;
+            }
+            iter.removeReadRecords();
+            iter.close();
+            if (read == 0) {
+                break;
+            }
+            long remaining = (long) (total - expected)
+                    * (padding.length() + 4 + FileRecordStore.FRAME_OVERHEAD);
+            assertTrue(recordStore.getFileSize() <= remaining);
+            assertTrue(countSegments(recordsDirectory)
+                    <= recordStore.getFileSize() / FileRecordStore.MAX_SEGMENT_SIZE + 2);
+        }
+        assertEquals(total, expected);
+        assertEquals(0, recordStore.getFileSize());
+        assertEquals(0, countSegments(recordsDirectory));
+    }
+
+    @Test
+    public void testRecordsAndCheckpointSurviveReopen() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        for (int i = 0; i < 10; i++) {
+            put(recordStore, String.valueOf(i));
+        }
+        RecordIterator iter = recordStore.iterator();
+        for (int i = 0; i < 4; i++) {
+            iter.next();
+        }
+        iter.removeReadRecords();
+        iter.close();
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        assertEquals(6 * (FileRecordStore.FRAME_OVERHEAD + 1), recordStore.getFileSize());
+        put(recordStore, "10");
+        iter = recordStore.iterator();
+        for (int i = 4; i <= 10; i++) {
+            assertEquals(String.valueOf(i), asString(iter.next()));
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testPartitionKeySurvivesReopen() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        recordStore.put(STREAM_NAME, "user-\u00e9", "1".getBytes(StringUtils.UTF8));
+        put(recordStore, "2");
+        assertEquals(2 * (FileRecordStore.FRAME_OVERHEAD + 1) + 7, recordStore.getFileSize());
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        RecordIterator iter = recordStore.iterator();
+        FileRecord record = iter.next();
+        assertEquals("user-\u00e9", record.partitionKey);
+        assertEquals("1", asString(record));
+        record = iter.next();
+        assertNull(record.partitionKey);
+        assertEquals("2", asString(record));
+        iter.close();
+    }
+
+    @Test
+    public void testMigratesRecordsFileOfPreviousVersion() throws IOException {
+        FileManager fileManager = new FileManager(TEST_DIRECTORY);
+        File recordsDirectory = fileManager.createDirectory(Constants.RECORDS_DIRECTORY);
+        Writer out = new OutputStreamWriter(fileManager.newOutputStream(
+                new File(recordsDirectory, RECORDER_FILE_NAME), false), StringUtils.UTF8);
+        out.write(FileRecordParser.asString(STREAM_NAME, "1".getBytes(StringUtils.UTF8)) + "\n");
+        out.write(FileRecordParser.asString("another", "2".getBytes(StringUtils.UTF8)) + "\n");
+        out.close();
+
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        assertFalse(new File(recordsDirectory, RECORDER_FILE_NAME).exists());
+        put(recordStore, "3");
+        assertEquals(3 * (FileRecordStore.FRAME_OVERHEAD + 1), recordStore.getFileSize());
+
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("1", asString(iter.next()));
+        iter.removeReadRecords();
+        FileRecord record = iter.next();
+        assertEquals("another", record.streamName);
+        assertEquals("2", asString(record));
+        record = iter.next();
+        assertEquals(STREAM_NAME, record.streamName);
+        assertEquals("3", asString(record));
+        assertNull(iter.next());
+        iter.close();
+
+        // the checkpoint survives the migration
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        assertEquals(2, getNumberOfRecords(recordStore));
+    }
+
+    @Test
+    public void testRemoveReadRecords_removesInvalidRecords() throws IOException {
+        FileRecordStore recordStore = new FileRecordStore(TEST_DIRECTORY,
+                RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        put(recordStore, "1");
+        recordStore.put("unknown", "2".getBytes(StringUtils.UTF8));
+        put(recordStore, "3");
+        recordStore.put("unknown", "4".getBytes(StringUtils.UTF8));
+
+        // lose the stream of the second and fourth records
+        File recordsDirectory = new FileManager(TEST_DIRECTORY)
+                .getDirectory(Constants.RECORDS_DIRECTORY);
+        Writer out = new OutputStreamWriter(new FileManager(TEST_DIRECTORY).newOutputStream(
+                new File(recordsDirectory, RECORDER_FILE_NAME + ".streams"), false),
+                StringUtils.UTF8);
+        out.write(STREAM_NAME + "\n");
+        out.close();
+
+        recordStore = new FileRecordStore(TEST_DIRECTORY, RECORDER_FILE_NAME, MAX_STORAGE_SIZE);
+        RecordIterator iter = recordStore.iterator();
+        assertEquals("1", asString(iter.next()));
+        assertEquals("3", asString(iter.next()));
+        assertFalse(iter.hasNext());
+        iter.removeReadRecords();
+        iter.close();
+
+        // the invalid records are removed too, not read again
+        assertEquals(0, recordStore.getFileSize());
+        assertEquals(0, getNumberOfRecords(recordStore));
+        assertEquals(0, countSegments(recordsDirectory));
+    }
+
+    private static boolean put(final FileRecordStore recordStore, final String record)
+            throws IOException {
+        return recordStore.put(STREAM_NAME, record.getBytes(StringUtils.UTF8));
+    }
+
+    private static String asString(final FileRecord record) {
+        return record == null ? null : new String(record.bytes, StringUtils.UTF8);
+    }
+
+    private int getNumberOfRecords(final FileRecordStore recordStore) throws IOException {
+        RecordIterator iter = recordStore.iterator();
         int counter = 0;
-        while (reader.readLine() != null) {
+        while (iter.next() != null) {
             counter++;
         }
+        iter.close();
         return counter;
     }
 
-    private BufferedReader getRecordsFileReader(final FileManager fileManager) {
-        InputStreamReader streamReader = null;
-        try {
-            streamReader = new InputStreamReader(
-                    fileManager.newInputStream(Constants.RECORDS_DIRECTORY + File.separator
-                            + Constants.RECORDS_FILE_NAME), StringUtils.UTF8);
-        } catch (FileNotFoundException e) {
-        }
-
-        if (streamReader != null) {
-            return new BufferedReader(streamReader);
+    private int countSegments(final File recordsDirectory) {
+        int counter = 0;
+        for (File file : recordsDirectory.listFiles()) {
+            if (file.getName().matches(RECORDER_FILE_NAME + "\\.\\d+")) {
+                counter++;
+            }
         }
-        return null;
+        return counter;
     }
 }
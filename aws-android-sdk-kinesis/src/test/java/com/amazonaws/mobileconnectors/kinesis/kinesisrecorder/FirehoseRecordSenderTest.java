@@ -69,12 +69,12 @@ public class FirehoseRecordSenderTest {
         result.setRequestResponses(entries);
 
         // create data
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
         for (int i = 0; i < count; i++) {
-            data.add(("record" + i).getBytes(StringUtils.UTF8));
+            data.add(new FileRecord(streamName, ("record" + i).getBytes(StringUtils.UTF8)));
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<FileRecord> failures = sender.sendBatch(streamName, data);
 
         ArgumentCaptor<PutRecordBatchRequest> argument = ArgumentCaptor
                 .forClass(PutRecordBatchRequest.class);
@@ -109,17 +109,17 @@ public class FirehoseRecordSenderTest {
         result.setRequestResponses(entries);
 
         // create data
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
         for (int i = 0; i < count; i++) {
-            data.add(("record" + i).getBytes(StringUtils.UTF8));
+            data.add(new FileRecord(streamName, ("record" + i).getBytes(StringUtils.UTF8)));
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<FileRecord> failures = sender.sendBatch(streamName, data);
 
         assertTrue("has 5 failures", failures.size() == 5);
         for (int i = 0; i < 5; i++) {
             String failedRecordString = "record" + (i * 2 + 1);
-            assertEquals(failedRecordString, new String(failures.get(i), StringUtils.UTF8));
+            assertEquals(failedRecordString, new String(failures.get(i).bytes, StringUtils.UTF8));
         }
     }
 
@@ -140,9 +140,9 @@ public class FirehoseRecordSenderTest {
         result.setRequestResponses(entries);
 
         // create data
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
         for (int i = 0; i < count; i++) {
-            data.add(("record" + i).getBytes(StringUtils.UTF8));
+            data.add(new FileRecord(streamName, ("record" + i).getBytes(StringUtils.UTF8)));
         }
         Mockito.when(client.putRecordBatch(any(PutRecordBatchRequest.class))).thenThrow(
                 new InvalidArgumentException("invalid argument"));
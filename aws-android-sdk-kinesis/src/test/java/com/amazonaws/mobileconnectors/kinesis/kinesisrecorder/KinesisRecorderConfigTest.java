@@ -58,11 +58,14 @@ public class KinesisRecorderConfigTest {
     public void copyConstructor() {
         KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
         kConfig.withMaxStorageSize(5);
+        kConfig.withMaxConcurrentBatches(3);
 
         KinesisRecorderConfig copiedConfig = new KinesisRecorderConfig(kConfig);
 
         assertEquals(kConfig.getMaxStorageSize(),
                 copiedConfig.getMaxStorageSize());
+        assertEquals(kConfig.getMaxConcurrentBatches(),
+                copiedConfig.getMaxConcurrentBatches());
 
     }
 
@@ -72,6 +75,14 @@ public class KinesisRecorderConfigTest {
         KinesisRecorderConfig kConfig = new KinesisRecorderConfig();
         kConfig.withMaxStorageSize(100);
         assertEquals(kConfig.getMaxStorageSize(), 100);
+        assertEquals(kConfig.getMaxConcurrentBatches(), 1);
+        kConfig.withMaxConcurrentBatches(4);
+        assertEquals(kConfig.getMaxConcurrentBatches(), 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxConcurrentBatches() {
+        new KinesisRecorderConfig().withMaxConcurrentBatches(0);
     }
 
 }
@@ -34,7 +34,10 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.util.Random;
 import java.util.UUID;
@@ -79,12 +82,29 @@ public class KinesisRecorderTest {
         recorder.saveRecord("valid".getBytes(StringUtils.UTF8), null);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPartitionKey() throws IOException {
+        recorder.saveRecord("valid".getBytes(StringUtils.UTF8), "stream", "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionKeyTooLong() throws IOException {
+        StringBuilder partitionKey = new StringBuilder();
+        for (int i = 0; i <= 256; i++) {
+            partitionKey.append('k');
+        }
+        recorder.saveRecord("valid".getBytes(StringUtils.UTF8), "stream",
+                partitionKey.toString());
+    }
+
     @SuppressWarnings("deprecation")
     @Test
     public void testUpgrade() throws Exception {
         File directory = temp.newFolder();
-        FileRecordStore recordStore = new FileRecordStore(directory, Constants.RECORDS_FILE_NAME,
-                5 * 1024 * 1024);
+        File recordsDirectory = new File(directory, Constants.RECORDS_DIRECTORY);
+        recordsDirectory.mkdirs();
+        Writer oldRecords = new OutputStreamWriter(new FileOutputStream(
+                new File(recordsDirectory, Constants.RECORDS_FILE_NAME)), StringUtils.UTF8);
         String streamName = "stream";
         int length = 1024;
         JSONRecordAdapter adapter = new JSONRecordAdapter();
@@ -94,19 +114,19 @@ public class KinesisRecorderTest {
             byte[] bytes = randomBytes(length);
             req.setData(ByteBuffer.wrap(bytes));
             req.setPartitionKey(UUID.randomUUID().toString());
-            recordStore.put(adapter.translateFromRecord(req).toString());
+            oldRecords.write(adapter.translateFromRecord(req).toString() + "\n");
         }
+        oldRecords.close();
 
         recorder = new KinesisRecorder(directory, Regions.US_EAST_1, provider);
         Thread.sleep(1000);
         RecordIterator iterator = recorder.recordStore.iterator();
-        FileRecordParser frp = new FileRecordParser();
         int count = 0;
         while (iterator.hasNext()) {
             count++;
-            frp.parse(iterator.next());
-            assertEquals("same stream", streamName, frp.streamName);
-            assertEquals("same data length", length, frp.bytes.length);
+            FileRecord record = iterator.next();
+            assertEquals("same stream", streamName, record.streamName);
+            assertEquals("same data length", length, record.bytes.length);
         }
         assertEquals("has 10 records from upgrade", 10, count);
     }
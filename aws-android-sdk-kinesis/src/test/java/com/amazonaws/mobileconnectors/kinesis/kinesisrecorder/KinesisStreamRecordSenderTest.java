@@ -25,6 +25,7 @@ import com.amazonaws.AmazonServiceException;
 import com.amazonaws.RequestClientOptions.Marker;
 import com.amazonaws.services.kinesis.AmazonKinesis;
 import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
 import com.amazonaws.services.kinesis.model.PutRecordsResult;
 import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
 import com.amazonaws.services.kinesisfirehose.model.InvalidArgumentException;
@@ -36,8 +37,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class KinesisStreamRecordSenderTest {
  
@@ -69,12 +75,12 @@ public class KinesisStreamRecordSenderTest {
         result.setRecords(entries);
 
         // create data
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
         for (int i = 0; i < count; i++) {
-            data.add(("record" + i).getBytes(StringUtils.UTF8));
+            data.add(new FileRecord(streamName, ("record" + i).getBytes(StringUtils.UTF8)));
         }
         Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<FileRecord> failures = sender.sendBatch(streamName, data);
 
         ArgumentCaptor<PutRecordsRequest> argument = ArgumentCaptor
                 .forClass(PutRecordsRequest.class);
@@ -109,17 +115,17 @@ public class KinesisStreamRecordSenderTest {
         result.setRecords(entries);
 
         // create data
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
         for (int i = 0; i < count; i++) {
-            data.add(("record" + i).getBytes(StringUtils.UTF8));
+            data.add(new FileRecord(streamName, ("record" + i).getBytes(StringUtils.UTF8)));
         }
         Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(result);
-        List<byte[]> failures = sender.sendBatch(streamName, data);
+        List<FileRecord> failures = sender.sendBatch(streamName, data);
 
         assertTrue("has 5 failures", failures.size() == 5);
         for (int i = 0; i < 5; i++) {
             String failedRecordString = "record" + (i * 2 + 1);
-            assertEquals(failedRecordString, new String(failures.get(i), StringUtils.UTF8));
+            assertEquals(failedRecordString, new String(failures.get(i).bytes, StringUtils.UTF8));
         }
     }
 
@@ -140,15 +146,89 @@ public class KinesisStreamRecordSenderTest {
         result.setRecords(entries);
 
         // create data
-        List<byte[]> data = new ArrayList<byte[]>();
+        List<FileRecord> data = new ArrayList<FileRecord>();
         for (int i = 0; i < count; i++) {
-            data.add(("record" + i).getBytes(StringUtils.UTF8));
+            data.add(new FileRecord(streamName, ("record" + i).getBytes(StringUtils.UTF8)));
         }
         Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenThrow(
                 new InvalidArgumentException("invalid argument"));
         sender.sendBatch(streamName, data);
     }
 
+    @Test
+    public void testBatchRandomSendsBatchToOneShard() {
+        List<PutRecordsRequestEntry> entries = sendAndCapture(sender, 100);
+        int[] counts = countPerShard(entries, 4);
+        int usedShards = 0;
+        for (int c : counts) {
+            if (c > 0) {
+                usedShards++;
+            }
+        }
+        assertEquals("one shard", 1, usedShards);
+    }
+
+    @Test
+    public void testRecordRandomSpreadsAcrossShards() {
+        KinesisStreamRecordSender recordRandomSender = new KinesisStreamRecordSender(client,
+                USER_AGENT, PartitionKeyStrategies.RECORD_RANDOM);
+        List<PutRecordsRequestEntry> entries = sendAndCapture(recordRandomSender, 500);
+        int[] counts = countPerShard(entries, 4);
+        for (int i = 0; i < counts.length; i++) {
+            assertTrue("shard " + i + " gets records", counts[i] > 0);
+        }
+    }
+
+    @Test
+    public void testRoundRobinSpreadsEvenlyAcrossShards() {
+        KinesisStreamRecordSender roundRobinSender = new KinesisStreamRecordSender(client,
+                USER_AGENT, PartitionKeyStrategies.roundRobin(4));
+        List<PutRecordsRequestEntry> entries = sendAndCapture(roundRobinSender, 400);
+        int[] counts = countPerShard(entries, 4);
+        for (int i = 0; i < counts.length; i++) {
+            assertEquals("shard " + i, 100, counts[i]);
+        }
+    }
+
+    @Test
+    public void testSavedPartitionKeyIsKept() {
+        final Set<String> assigned = new HashSet<String>();
+        KinesisStreamRecordSender keyedSender = new KinesisStreamRecordSender(client,
+                USER_AGENT, new PartitionKeyStrategy() {
+                    @Override
+                    public void assignKeys(String streamName,
+                            List<PutRecordsRequestEntry> entries) {
+                        for (PutRecordsRequestEntry entry : entries) {
+                            String key = "assigned" + assigned.size();
+                            assigned.add(key);
+                            entry.setPartitionKey(key);
+                        }
+                    }
+                });
+        List<FileRecord> data = new ArrayList<FileRecord>();
+        for (int i = 0; i < 10; i++) {
+            data.add(new FileRecord("stream", i % 2 == 0 ? "user" + i : null,
+                    ("record" + i).getBytes(StringUtils.UTF8)));
+        }
+        Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(okResult(10));
+        keyedSender.sendBatch("stream", data);
+
+        ArgumentCaptor<PutRecordsRequest> argument = ArgumentCaptor
+                .forClass(PutRecordsRequest.class);
+        Mockito.verify(client).putRecords(argument.capture());
+        List<PutRecordsRequestEntry> entries = argument.getValue().getRecords();
+        assertEquals(10, entries.size());
+        assertEquals("only unkeyed records are assigned a key", 5, assigned.size());
+        for (int i = 0; i < 10; i++) {
+            String key = entries.get(i).getPartitionKey();
+            if (i % 2 == 0) {
+                assertEquals("user" + i, key);
+            } else {
+                assertTrue(assigned.contains(key));
+            }
+        }
+    }
+
     @Test
     public void testIsRecoverableClientException() {
         AmazonClientException aceNoCause = new AmazonClientException("failure");
@@ -171,6 +251,71 @@ public class KinesisStreamRecordSenderTest {
                 .isRecoverable(getServiceException("ProvisionedThroughputExceededException")));
     }
 
+    /**
+     * Sends the given number of records in batches of 100 and returns the
+     * entries of all requests.
+     */
+    private List<PutRecordsRequestEntry> sendAndCapture(KinesisStreamRecordSender sender,
+            int count) {
+        Mockito.when(client.putRecords(any(PutRecordsRequest.class))).thenReturn(okResult(100));
+        for (int i = 0; i < count; i += 100) {
+            List<FileRecord> data = new ArrayList<FileRecord>();
+            for (int j = i; j < i + 100; j++) {
+                data.add(new FileRecord("stream", ("record" + j).getBytes(StringUtils.UTF8)));
+            }
+            sender.sendBatch("stream", data);
+        }
+
+        ArgumentCaptor<PutRecordsRequest> argument = ArgumentCaptor
+                .forClass(PutRecordsRequest.class);
+        Mockito.verify(client, Mockito.times(count / 100)).putRecords(argument.capture());
+        List<PutRecordsRequestEntry> entries = new ArrayList<PutRecordsRequestEntry>();
+        for (PutRecordsRequest request : argument.getAllValues()) {
+            entries.addAll(request.getRecords());
+        }
+        return entries;
+    }
+
+    /**
+     * Counts the entries per shard of a stream whose hash key space is evenly
+     * split into the given number of shards, the way Kinesis maps them.
+     */
+    private int[] countPerShard(List<PutRecordsRequestEntry> entries, int shards) {
+        BigInteger rangeSize = BigInteger.ONE.shiftLeft(128).divide(BigInteger.valueOf(shards));
+        int[] counts = new int[shards];
+        for (PutRecordsRequestEntry entry : entries) {
+            BigInteger hashKey;
+            if (entry.getExplicitHashKey() != null) {
+                hashKey = new BigInteger(entry.getExplicitHashKey());
+            } else {
+                hashKey = new BigInteger(1, md5(entry.getPartitionKey()));
+            }
+            counts[Math.min(hashKey.divide(rangeSize).intValue(), shards - 1)]++;
+        }
+        return counts;
+    }
+
+    private byte[] md5(String key) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(key.getBytes(StringUtils.UTF8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private PutRecordsResult okResult(int count) {
+        PutRecordsResult result = new PutRecordsResult();
+        List<PutRecordsResultEntry> entries = new ArrayList<PutRecordsResultEntry>();
+        result.setFailedRecordCount(0);
+        for (int i = 0; i < count; i++) {
+            PutRecordsResultEntry entry = new PutRecordsResultEntry();
+            entry.setSequenceNumber("record_id_" + i);
+            entries.add(entry);
+        }
+        result.setRecords(entries);
+        return result;
+    }
+
     private AmazonServiceException getServiceException(String errorCode) {
         AmazonServiceException ase = new AmazonServiceException("some error message");
         ase.setErrorCode(errorCode);
@@ -30,6 +30,8 @@ import com.amazonaws.services.pinpointanalytics.model.Session;
 import com.amazonaws.util.Base64;
 import com.amazonaws.util.DateUtils;
 import com.amazonaws.util.VersionInfoUtils;
+import com.amazonaws.util.json.AwsJsonReader;
+import com.amazonaws.util.json.JsonUtils;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +39,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -148,38 +152,24 @@ public class EventRecorder {
         });
     }
 
-    JSONArray getBatchOfEvents(Cursor cursor, List<Integer> idsToDeletes, List<Integer> sizeToDeletes) {
-        final JSONArray eventArray = new JSONArray();
+    List<String> getBatchOfEvents(Cursor cursor, List<Integer> idsToDeletes, List<Integer> sizeToDeletes) {
+        final List<String> events = new ArrayList<String>();
         long currentRequestSize = 0;
-        long eventLength;
         final long maxRequestSize = pinpointContext.getConfiguration().optLong(
                 KEY_MAX_SUBMISSION_SIZE, DEFAULT_MAX_SUBMISSION_SIZE);
 
-        JSONObject json = translateFromCursor(cursor);
-        idsToDeletes.add(cursor.getInt(EventTable.COLUMN_INDEX.ID.getValue()));
-        sizeToDeletes.add(cursor.getInt(EventTable.COLUMN_INDEX.ID.getValue()));
-        if (json != null) {
-            eventLength = json.length();
-            currentRequestSize += eventLength;
-            eventArray.put(json);
-        }
-
-        while (cursor.moveToNext()) {
-            json = translateFromCursor(cursor);
+        do {
+            final int eventSize = cursor.getInt(EventTable.COLUMN_INDEX.SIZE.getValue());
             idsToDeletes.add(cursor.getInt(EventTable.COLUMN_INDEX.ID.getValue()));
-            sizeToDeletes.add(cursor.getInt(EventTable.COLUMN_INDEX.ID.getValue()));
+            sizeToDeletes.add(eventSize);
+            final String json = cursor.getString(EventTable.COLUMN_INDEX.JSON.getValue());
             if (json != null) {
-                eventLength = json.length();
-                currentRequestSize += eventLength;
-                eventArray.put(json);
-
-                if (currentRequestSize > maxRequestSize) {
-                    break;
-                }
+                currentRequestSize += eventSize;
+                events.add(json);
             }
-        }
+        } while (currentRequestSize <= maxRequestSize && cursor.moveToNext());
 
-        return eventArray;
+        return events;
     }
 
     public List<JSONObject> getAllEvents() {
@@ -198,7 +188,7 @@ public class EventRecorder {
         final Cursor cursor = dbUtil.queryAllEvents();
 
         final List<Integer> idsToDeletes = new ArrayList<Integer>();
-        final List<Integer> sizeToDeletes = new ArrayList<Integer>();
+        long sizeToDelete = 0;
         boolean successful;
         int submissions = 0;
         final long maxSubmissionsAllowed = pinpointContext.getConfiguration().optInt(
@@ -210,7 +200,9 @@ public class EventRecorder {
             successful = submitEvents(this.getBatchOfEvents(cursor, batchIdsToDeletes, batchSizeToDeletes));
             if (successful) {
                 idsToDeletes.addAll(batchIdsToDeletes);
-                sizeToDeletes.addAll(batchSizeToDeletes);
+                for (final Integer size : batchSizeToDeletes) {
+                    sizeToDelete += size;
+                }
                 submissions++;
             }
             if (submissions >= maxSubmissionsAllowed) {
@@ -219,13 +211,11 @@ public class EventRecorder {
         }
         cursor.close();
 
-        if (sizeToDeletes.size() > 0) {
-            for(int i = 0; i < sizeToDeletes.size(); i++) {
-                try {
-                    dbUtil.deleteEvent(idsToDeletes.get(i), sizeToDeletes.get(i));
-                } catch (final Exception exc) {
-                    log.error("Failed to delete event: " + idsToDeletes.get(i), exc);
-                }
+        if (idsToDeletes.size() > 0) {
+            try {
+                dbUtil.deleteEvents(idsToDeletes, sizeToDelete);
+            } catch (final Exception exc) {
+                log.error(String.format("Failed to delete %d events", idsToDeletes.size()), exc);
             }
         }
 
@@ -233,12 +223,16 @@ public class EventRecorder {
                 System.currentTimeMillis() - start));
     }
 
-    boolean submitEvents(final JSONArray eventArray) {
+    boolean submitEvents(final List<String> events) {
         boolean submitted = false;
 
         // package them into an ers request
-        final PutEventsRequest request = this.createRecordEventsRequest(eventArray,
+        final PutEventsRequest request = this.createRecordEventsRequest(events,
                 pinpointContext.getNetworkType(), pinpointContext.getTargetingClient());
+        if (request == null) {
+            // nothing valid to send, the events can be removed
+            return true;
+        }
         request.withClientContextEncoding("base64");
 
         request.getRequestClientOptions().appendUserAgent(USER_AGENT);
@@ -246,7 +240,7 @@ public class EventRecorder {
         try {
             pinpointContext.getAnalyticsServiceClient().putEvents(request);
             submitted = true;
-            log.info(String.format("Successful submission of %d events", eventArray.length()));
+            log.info(String.format("Successful submission of %d events", events.size()));
 
             return submitted;
         } catch (final AmazonServiceException e) {
@@ -260,7 +254,7 @@ public class EventRecorder {
                         "Failed to submit events to EventService: statusCode: " + e.getStatusCode()
                                 + " errorCode: ", errorCode));
                 log.error(String.format("Failed submission of %d events, events will be removed",
-                        eventArray.length()), e);
+                        events.size()), e);
 
                 return submitted;
             } else {
@@ -284,64 +278,178 @@ public class EventRecorder {
             return null;
         }
 
-        final PutEventsRequest putRequest = new PutEventsRequest();
-        final List<Event> eventList = new ArrayList<Event>();
+        final List<String> eventJSONs = new ArrayList<String>(events.length());
+        for (int i = 0; i < events.length(); i++) {
+            final JSONObject eventJSON = events.optJSONObject(i);
+            if (eventJSON == null) {
+                log.error("Stored event was invalid JSON");
+                continue;
+            }
+            eventJSONs.add(eventJSON.toString());
+        }
+        return createRecordEventsRequest(eventJSONs, networkType, targetingClient);
+    }
+
+    /**
+     * Creates a PutEvents request from events in the JSON format they are
+     * stored in. The events are read with a streaming parser straight into
+     * the request, only the last valid event is fully translated to build the
+     * client context of the request.
+     *
+     * @param events the stored events
+     * @param networkType the network type of the client context
+     * @param targetingClient the targeting client of the endpoint profile
+     * @return the request, or null if there are no valid events
+     */
+    PutEventsRequest createRecordEventsRequest(List<String> events, String networkType,
+            TargetingClient targetingClient) {
+        if (events == null || events.isEmpty()) {
+            return null;
+        }
+
+        final List<Event> eventList = new ArrayList<Event>(events.size());
+        int lastValidEvent = -1;
+        for (int i = 0; i < events.size(); i++) {
+            final Event event = readEvent(events.get(i));
+            if (event != null) {
+                eventList.add(event);
+                lastValidEvent = i;
+            }
+        }
 
         ClientContext clientContext = null;
-        for (int i = 0; i < events.length(); i++) {
-            JSONObject eventJSON = null;
-            AnalyticsEvent internalEvent = null;
+        for (int i = lastValidEvent; i >= 0 && clientContext == null; i--) {
             try {
-                eventJSON = events.getJSONObject(i);
-                internalEvent = AnalyticsEvent.translateToEvent(eventJSON);
+                clientContext = AnalyticsEvent.translateToEvent(new JSONObject(events.get(i)))
+                        .createClientContext(networkType);
             } catch (final JSONException e) {
                 log.error("Stored event was invalid JSON", e);
-                continue;
-            }
-            clientContext = internalEvent.createClientContext(networkType);
-
-            //Add EndpointProfile profile to client pinpointContext
-            if (targetingClient != null && targetingClient.currentEndpoint() != null) {
-                final String endpoint = targetingClient.currentEndpoint().toJSONObject().toString();
-                final Map<String, String> customAttribute = new HashMap<String, String>();
-                customAttribute.put("endpoint", endpoint);
-                clientContext.setCustom(customAttribute);
-                log.info("Recorded profile to client pinpointContext: " + clientContext.toJSONObject());
-            } else {
-                log.error("Event Client is null");
             }
+        }
+        if (clientContext == null || eventList.isEmpty()) {
+            log.error("ClientContext is null or event list is empty");
+            return null;
+        }
 
-            final Event event = new Event();
-            final Session session = new Session();
-            session.withId(internalEvent.getSession().getSessionId());
-            session.withStartTimestamp(DateUtils.formatISO8601Date(new Date(internalEvent
-                    .getSession().getSessionStart())));
-            if (internalEvent.getSession().getSessionStop() != null && internalEvent.getSession().getSessionStop() != 0L) {
-                session.withStopTimestamp(DateUtils.formatISO8601Date(new Date(internalEvent
-                        .getSession().getSessionStop())));
+        //Add EndpointProfile profile to client pinpointContext
+        if (targetingClient != null && targetingClient.currentEndpoint() != null) {
+            final String endpoint = targetingClient.currentEndpoint().toJSONObject().toString();
+            final Map<String, String> customAttribute = new HashMap<String, String>();
+            customAttribute.put("endpoint", endpoint);
+            clientContext.setCustom(customAttribute);
+            log.info("Recorded profile to client pinpointContext: " + clientContext.toJSONObject());
+        } else {
+            log.error("Event Client is null");
+        }
+
+        final PutEventsRequest putRequest = new PutEventsRequest();
+        putRequest.withEvents(eventList).withClientContext(
+                Base64.encodeAsString(clientContext.toJSONObject().toString().getBytes()));
+        return putRequest;
+    }
+
+    /**
+     * Reads an event from the JSON format it's stored in, see
+     * {@link AnalyticsEvent#toJSONObject()}, without building an intermediate
+     * JSON object.
+     *
+     * @param json the stored event
+     * @return the event, or null if the JSON isn't a valid event
+     */
+    static Event readEvent(String json) {
+        final AwsJsonReader reader = JsonUtils.getJsonReader(new StringReader(json));
+        final Event event = new Event();
+        Session session = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if ("event_type".equals(name)) {
+                    event.setEventType(reader.nextString());
+                } else if ("timestamp".equals(name)) {
+                    event.setTimestamp(DateUtils.formatISO8601Date(new Date(Long
+                            .parseLong(reader.nextString()))));
+                } else if ("session".equals(name)) {
+                    session = readSession(reader);
+                } else if ("attributes".equals(name)) {
+                    final Map<String, String> attributes = new HashMap<String, String>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        final String key = reader.nextName();
+                        final String value = reader.nextString();
+                        if (value != null) {
+                            attributes.put(key, value);
+                        }
+                    }
+                    reader.endObject();
+                    event.setAttributes(attributes);
+                } else if ("metrics".equals(name)) {
+                    final Map<String, Double> metrics = new HashMap<String, Double>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        final String key = reader.nextName();
+                        final String value = reader.nextString();
+                        try {
+                            metrics.put(key, Double.valueOf(value));
+                        } catch (final RuntimeException e) {
+                            log.error("Failed to convert metric back to double from JSON value", e);
+                        }
+                    }
+                    reader.endObject();
+                    event.setMetrics(metrics);
+                } else {
+                    reader.skipValue();
+                }
             }
-            if (internalEvent.getSession().getSessionDuration() != null
-                    && internalEvent.getSession().getSessionDuration() != 0L) {
-                session.withDuration(internalEvent.getSession().getSessionDuration());
+            reader.endObject();
+        } catch (final IOException e) {
+            log.error("Stored event was invalid JSON", e);
+            return null;
+        } catch (final RuntimeException e) {
+            log.error("Stored event was invalid JSON", e);
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (final IOException e) {
+                // ignore
             }
+        }
 
-            event.withAttributes(internalEvent.getAllAttributes())
-                    .withMetrics(internalEvent.getAllMetrics())
-                    .withEventType(internalEvent.getEventType())
-                    .withTimestamp(
-                            DateUtils.formatISO8601Date(new Date(internalEvent.getEventTimestamp())))
-                    .withSession(session);
-
-            eventList.add(event);
+        if (event.getEventType() == null || event.getTimestamp() == null || session == null) {
+            log.error("Stored event was invalid JSON");
+            return null;
         }
+        return event.withSession(session);
+    }
 
-        if (clientContext != null && eventList.size() > 0) {
-            putRequest.withEvents(eventList).withClientContext(
-                    Base64.encodeAsString(clientContext.toJSONObject().toString().getBytes()));
-        } else {
-            log.error("ClientContext is null or event list is empty");
+    private static Session readSession(AwsJsonReader reader) throws IOException {
+        final Session session = new Session();
+        Long startTimestamp = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("id".equals(name)) {
+                session.withId(reader.nextString());
+            } else if ("startTimestamp".equals(name)) {
+                startTimestamp = Long.parseLong(reader.nextString());
+                session.withStartTimestamp(DateUtils.formatISO8601Date(new Date(startTimestamp)));
+            } else if ("stopTimestamp".equals(name)) {
+                final long stopTimestamp = Long.parseLong(reader.nextString());
+                if (stopTimestamp != 0L) {
+                    session.withStopTimestamp(DateUtils.formatISO8601Date(new Date(stopTimestamp)));
+                }
+            } else if ("duration".equals(name)) {
+                final long duration = Long.parseLong(reader.nextString());
+                if (duration != 0L) {
+                    session.withDuration(duration);
+                }
+            } else {
+                reader.skipValue();
+            }
         }
-        return putRequest;
+        reader.endObject();
+        return session.getId() == null || startTimestamp == null ? null : session;
     }
 
 }
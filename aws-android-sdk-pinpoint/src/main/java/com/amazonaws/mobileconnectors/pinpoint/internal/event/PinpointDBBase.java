@@ -24,6 +24,8 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.text.TextUtils;
 
+import java.util.List;
+
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.COLUMN_SIZE;
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.TABLE_EVENT;
 
@@ -35,6 +37,10 @@ public class PinpointDBBase {
     private static final int EVENTS = 10;
     private static final int EVENT_ID = 20;
     private static final String BASE_PATH = "events";
+    /**
+     * Maximum number of ids in the IN clause of a single delete statement.
+     */
+    private static final int MAX_IDS_PER_DELETE = 500;
     private final Context context;
     private final Uri contentUri;
     private final UriMatcher uriMatcher;
@@ -236,4 +242,51 @@ public class PinpointDBBase {
         }
         return rowsDeleted;
     }
+
+    /**
+     * Deletes the records with the given ids in a single transaction, with
+     * as few delete statements as possible.
+     *
+     * @param uri The Uri of the table.
+     * @param ids The ids of the records to delete.
+     * @param knownSize Known total size of the records (If known).
+     * @return Number of rows deleted.
+     */
+    public int bulkDelete(Uri uri, List<Integer> ids, Long knownSize) {
+        int uriType = uriMatcher.match(uri);
+        if (uriType != EVENTS) {
+            throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        long size = getTotalSize();
+        int rowsDeleted = 0;
+        db.beginTransaction();
+        try {
+            for (int start = 0; start < ids.size(); start += MAX_IDS_PER_DELETE) {
+                int end = Math.min(ids.size(), start + MAX_IDS_PER_DELETE);
+                StringBuilder whereClause = new StringBuilder(EventTable.COLUMN_ID)
+                        .append(" IN (");
+                for (int i = start; i < end; i++) {
+                    if (i > start) {
+                        whereClause.append(',');
+                    }
+                    whereClause.append(ids.get(i));
+                }
+                whereClause.append(')');
+                rowsDeleted += db.delete(TABLE_EVENT, whereClause.toString(), null);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rowsDeleted == ids.size() && knownSize != null) {
+            totalSize = size - knownSize;
+        } else {
+            totalSize = -1;
+        }
+        return rowsDeleted;
+    }
 }
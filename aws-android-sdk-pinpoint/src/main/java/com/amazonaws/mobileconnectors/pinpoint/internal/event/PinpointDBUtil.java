@@ -21,6 +21,8 @@ import android.database.Cursor;
 import android.net.Uri;
 import com.amazonaws.mobileconnectors.pinpoint.analytics.AnalyticsEvent;
 
+import java.util.List;
+
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.COLUMN_ID;
 import static com.amazonaws.mobileconnectors.pinpoint.internal.event.EventTable.COLUMN_SIZE;
 
@@ -112,6 +114,17 @@ public class PinpointDBUtil {
         return pinpointDBBase.delete(getEventUri(id), null, null, size);
     }
 
+    /**
+     * Deletes the events with the given ids in a single transaction.
+     *
+     * @param ids The ids of the events to be deleted.
+     * @param size Known total size of the events.
+     * @return Number of rows deleted.
+     */
+    public int deleteEvents(List<Integer> ids, Long size) {
+        return pinpointDBBase.bulkDelete(pinpointDBBase.getContentUri(), ids, size);
+    }
+
     /**
      * Gets the Uri of the event table.
      *
@@ -18,6 +18,7 @@ package com.amazonaws.mobileconnectors.pinpoint.internal.event;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import android.database.Cursor;
@@ -28,6 +29,9 @@ import com.amazonaws.mobileconnectors.pinpoint.analytics.utils.AnalyticsContextB
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.PinpointContext;
 import com.amazonaws.mobileconnectors.pinpoint.internal.core.system.MockDeviceDetails;
 import com.amazonaws.services.pinpointanalytics.AmazonPinpointAnalyticsClient;
+import com.amazonaws.services.pinpointanalytics.model.Event;
+import com.amazonaws.services.pinpointanalytics.model.PutEventsRequest;
+import com.amazonaws.util.DateUtils;
 
 import org.json.JSONObject;
 import org.junit.After;
@@ -41,6 +45,8 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -118,6 +124,48 @@ public class EventRecorderTest {
         assertTrue(dbUtil.queryAllEvents().getCount() == 0);
     }
 
+    @Test
+    public void testProcessEventsDeletesAllSubmittedEvents() {
+        for (int i = 0; i < 50; i++) {
+            eventRecorder.recordEvent(analyticsEvent);
+        }
+        eventRecorder.processEvents();
+        assertEquals(0, dbUtil.queryAllEvents().getCount());
+        assertEquals(0, dbUtil.getTotalSize());
+    }
+
+    @Test
+    public void testReadEventFromStoredJSON() {
+        analyticsEvent.addAttribute("color", "red");
+        analyticsEvent.addMetric("price", 9.99);
+        final Event event = EventRecorder.readEvent(analyticsEvent.toJSONObject().toString());
+
+        assertNotNull(event);
+        assertEquals(EVENT_NAME, event.getEventType());
+        assertEquals(DateUtils.formatISO8601Date(new Date(TIME_STAMP)), event.getTimestamp());
+        assertEquals(SESSION_ID, event.getSession().getId());
+        assertEquals(DateUtils.formatISO8601Date(new Date(SESSION_START)),
+                event.getSession().getStartTimestamp());
+        assertEquals(DateUtils.formatISO8601Date(new Date(SESSION_END)),
+                event.getSession().getStopTimestamp());
+        assertEquals(Long.valueOf(SESSION_DURATION), event.getSession().getDuration());
+        assertEquals(analyticsEvent.getAllAttributes(), event.getAttributes());
+        assertEquals(analyticsEvent.getAllMetrics(), event.getMetrics());
+    }
+
+    @Test
+    public void testCreateRecordEventsRequestSkipsInvalidEvents() {
+        final String json = analyticsEvent.toJSONObject().toString();
+        final PutEventsRequest request = eventRecorder.createRecordEventsRequest(
+                Arrays.asList(json, "{not json", "{\"event_type\":\"no_session\"}", json),
+                "WIFI", null);
+
+        assertEquals(2, request.getEvents().size());
+        assertNotNull(request.getClientContext());
+        assertNull(eventRecorder.createRecordEventsRequest(Arrays.asList("{not json"), "WIFI",
+                null));
+    }
+
     @Test
     public void testTrimming() {
         final List<Uri> uris = new ArrayList<Uri>();
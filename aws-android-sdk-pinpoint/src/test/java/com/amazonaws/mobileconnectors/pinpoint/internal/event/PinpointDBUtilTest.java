@@ -15,6 +15,9 @@ import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
@@ -121,4 +124,22 @@ public class PinpointDBUtilTest {
         assertEquals(c2.getCount(), 0);
         c2.close();
     }
+
+    @Test
+    public void testDeleteEvents() {
+        AnalyticsEvent analyticsEvent = AnalyticsEvent.newInstance(mockContext, SESSION_ID, SESSION_START, SESSION_END,
+                SESSION_DURATION, TIME_STAMP, EVENT_NAME);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 1200; i++) {
+            ids.add(Integer.parseInt(dbUtil.saveEvent(analyticsEvent).getLastPathSegment()));
+        }
+        long eventSize = dbUtil.getTotalSize() / ids.size();
+
+        int deleted = dbUtil.deleteEvents(ids.subList(0, 1100), 1100 * eventSize);
+        assertEquals(1100, deleted);
+        Cursor c = dbUtil.queryAllEvents();
+        assertEquals(100, c.getCount());
+        c.close();
+        assertEquals(100 * eventSize, dbUtil.getTotalSize());
+    }
 }
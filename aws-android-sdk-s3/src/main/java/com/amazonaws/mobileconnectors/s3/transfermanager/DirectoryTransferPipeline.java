@@ -0,0 +1,331 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileTransfer;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.TransferStateChangeListener;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams the files of a directory transfer from a walk of the source to
+ * single-file transfers. A walker thread adds the files it finds to a bounded
+ * queue, and a dispatcher thread starts a transfer for each of them as soon as
+ * fewer than the configured number are in flight. Transfers therefore start
+ * while the rest of the directory is still being walked, and the total size of
+ * the transfer grows as files are found.
+ * <p>
+ * The walker and dispatcher run on dedicated daemon threads rather than on the
+ * {@link TransferManager}'s executor. Both block for as long as the directory
+ * transfer lasts: the walker while the queue is full, the dispatcher while the
+ * maximum number of transfers are in flight. On a bounded executor they would
+ * hold threads that the single-file transfers they wait for need to run, and
+ * a small pool would deadlock. The number of single-file transfers running on
+ * the executor is still bounded by the configured concurrency.
+ *
+ * @param <E> The type of the files walked, such as a local file or an object
+ *            summary.
+ * @param <T> The type of the single-file transfers.
+ */
+abstract class DirectoryTransferPipeline<E, T extends Transfer> {
+
+    /** Marks the end of the walk in the queue. */
+    private static final Object END_OF_WALK = new Object();
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private static final AtomicInteger pipelineCount = new AtomicInteger(0);
+
+    /** Carries the exception the walk failed with. */
+    private static final class WalkFailure {
+        private final Exception exception;
+
+        WalkFailure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    private final MultipleFileTransfer<?> transfer;
+    private final TransferProgress transferProgress;
+    private final Collection<T> subTransfers;
+    private final BlockingQueue<Object> queue;
+    private final Semaphore inFlight;
+    private final TransferStateChangeListener stateChangeListener;
+    private final FutureTask<Object> dispatch;
+    private final Future<Object> queueingFuture;
+
+    /** Whether the dispatcher has stopped, in which case the walk stops too. */
+    private volatile boolean stopped = false;
+    /** Whether all the transfers have been started. */
+    private volatile boolean queued = false;
+    private long totalBytes = 0;
+
+    /**
+     * @param transfer The directory transfer.
+     * @param transferProgress The progress of the directory transfer.
+     * @param subTransfers The collection the single-file transfers are added
+     *            to as they start. It must support concurrent iteration.
+     * @param configuration The configuration giving the number of files in
+     *            flight and the size of the queue.
+     */
+    DirectoryTransferPipeline(MultipleFileTransfer<?> transfer,
+            TransferProgress transferProgress, Collection<T> subTransfers,
+            TransferManagerConfiguration configuration) {
+        this.transfer = transfer;
+        this.transferProgress = transferProgress;
+        this.subTransfers = subTransfers;
+        this.queue = new ArrayBlockingQueue<Object>(configuration.getDirectoryTransferQueueSize());
+        this.inFlight = new Semaphore(configuration.getDirectoryTransferConcurrency());
+        // All the single-file transfers are queued before the directory
+        // transfer is completed, so there is nothing to wait for.
+        this.stateChangeListener = new MultipleFileTransferStateChangeListener(
+                new CountDownLatch(0), transfer);
+        this.dispatch = new FutureTask<Object>(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    dispatchAll();
+                    allQueued();
+                    return null;
+                } catch (Exception e) {
+                    failed();
+                    throw e;
+                } finally {
+                    stopped = true;
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                // A dispatcher canceled before it runs never gets to its
+                // finally block, so the walk is stopped here as well.
+                stopped = true;
+                if (isCancelled()) {
+                    canceled();
+                }
+            }
+        };
+        this.queueingFuture = new QueueingFuture();
+    }
+
+    /**
+     * Walks the source of the directory transfer, calling
+     * {@link #add(Object, long)} for each file found.
+     */
+    protected abstract void walk() throws Exception;
+
+    /**
+     * Starts the transfer of a single file.
+     *
+     * @param file A file found by the walk.
+     * @param listener The listener to notify of state changes of the transfer.
+     * @return The started transfer.
+     */
+    protected abstract T startTransfer(E file, TransferStateChangeListener listener);
+
+    /**
+     * Returns the future that is done once all the files have been walked and
+     * their transfers started. It's canceled to stop the walk and start no
+     * more transfers.
+     */
+    Future<?> getQueueingFuture() {
+        return queueingFuture;
+    }
+
+    /**
+     * Starts the walker and dispatcher threads. They're dedicated threads, not
+     * tasks of the transfer manager's executor, see the class documentation.
+     */
+    void start() {
+        int pipelineNumber = pipelineCount.incrementAndGet();
+        newThread(new Runnable() {
+            @Override
+            public void run() {
+                walkAll();
+            }
+        }, "s3-transfer-manager-directory-walker-" + pipelineNumber).start();
+        newThread(dispatch, "s3-transfer-manager-directory-dispatcher-" + pipelineNumber)
+                .start();
+    }
+
+    private static Thread newThread(Runnable r, String name) {
+        Thread thread = new Thread(r);
+        thread.setName(name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Adds a file found by the walk to the queue, waiting while the queue is
+     * full.
+     *
+     * @param file The file found.
+     * @param size The size of the file in bytes.
+     * @return False if the directory transfer has stopped, in which case the
+     *         walk should stop too.
+     */
+    protected boolean add(E file, long size) throws InterruptedException {
+        totalBytes += size;
+        transferProgress.setTotalBytesToTransfer(totalBytes);
+        return offer(file);
+    }
+
+    private boolean offer(Object item) throws InterruptedException {
+        while (!queue.offer(item, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (stopped) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void walkAll() {
+        try {
+            // the total grows from zero as files are found
+            transferProgress.setTotalBytesToTransfer(0);
+            walk();
+            offer(END_OF_WALK);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            try {
+                offer(new WalkFailure(e));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatchAll() throws Exception {
+        while (true) {
+            Object item = queue.take();
+            if (item == END_OF_WALK) {
+                return;
+            } else if (item instanceof WalkFailure) {
+                throw ((WalkFailure) item).exception;
+            }
+
+            inFlight.acquire();
+            T subTransfer;
+            try {
+                subTransfer = startTransfer((E) item, new InFlightListener());
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+            subTransfers.add(subTransfer);
+        }
+    }
+
+    /**
+     * Completes the directory transfer if all the transfers are already done.
+     * Otherwise the last transfer to finish completes it.
+     */
+    private void allQueued() {
+        synchronized (transfer) {
+            queued = true;
+            if (!transfer.isDone() && transfer.getMonitor().isDone()) {
+                transfer.collateFinalState();
+            }
+        }
+    }
+
+    /**
+     * Fails the directory transfer when the walk or the start of a transfer
+     * failed. The transfers already started carry on.
+     */
+    private void failed() {
+        synchronized (transfer) {
+            if (!transfer.isDone() && !dispatch.isCancelled()) {
+                transfer.setState(TransferState.Failed);
+            }
+        }
+    }
+
+    private void canceled() {
+        synchronized (transfer) {
+            if (!transfer.isDone()) {
+                transfer.setState(TransferState.Canceled);
+            }
+        }
+    }
+
+    /**
+     * The future of the dispatcher, except that it's done as soon as all the
+     * transfers are started, before the dispatcher thread sets its result.
+     * Otherwise the last transfer to finish could miss that the directory
+     * transfer is complete.
+     */
+    private final class QueueingFuture implements Future<Object> {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return dispatch.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return dispatch.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return queued || dispatch.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            return dispatch.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException,
+                ExecutionException, TimeoutException {
+            return dispatch.get(timeout, unit);
+        }
+    }
+
+    /**
+     * Frees the place of a single-file transfer in flight once it's done, and
+     * updates the state of the directory transfer.
+     */
+    private final class InFlightListener implements TransferStateChangeListener {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        @Override
+        public void transferStateChanged(Transfer subTransfer, TransferState state) {
+            if ((state == TransferState.Completed || state == TransferState.Failed
+                    || state == TransferState.Canceled)
+                    && released.compareAndSet(false, true)) {
+                inFlight.release();
+            }
+            stateChangeListener.transferStateChanged(subTransfer, state);
+        }
+    }
+}
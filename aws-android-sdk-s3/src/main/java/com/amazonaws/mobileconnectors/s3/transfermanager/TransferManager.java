@@ -71,19 +71,17 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.File;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Stack;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * High level utility for managing transfers to Amazon S3.
@@ -156,13 +154,6 @@ public class TransferManager {
     /** The thread pool in which transfers are uploaded or downloaded. */
     private final ExecutorService threadPool;
 
-    /**
-     * Thread used for periodicially checking transfers and updating thier
-     * state.
-     */
-    private final ScheduledExecutorService timedThreadPool = new ScheduledThreadPoolExecutor(1,
-            daemonThreadFactory);
-
     private static final Log log = LogFactory.getLog(TransferManager.class);
 
     /**
@@ -508,7 +499,6 @@ public class TransferManager {
                 upload, putObjectRequest, listenerChain, multipartUploadId, transferProgress);
         UploadMonitor watcher = new UploadMonitor(this, upload, threadPool,
                 uploadCallable, putObjectRequest, listenerChain);
-        watcher.setTimedThreadPool(timedThreadPool);
         upload.setMonitor(watcher);
 
         return upload;
@@ -748,6 +738,12 @@ public class TransferManager {
      * Downloads all objects in the virtual directory designated by the
      * keyPrefix given to the destination directory given. All virtual
      * subdirectories will be downloaded recursively.
+     * <p>
+     * The objects are listed in the background, and each one starts
+     * downloading as soon as it's listed, with at most
+     * {@link TransferManagerConfiguration#getDirectoryTransferConcurrency()}
+     * downloads in flight. The total size of the transfer grows as objects are
+     * listed.
      *
      * @param bucketName The bucket containing the virtual directory
      * @param keyPrefix The key prefix for the virtual directory, or null for
@@ -756,107 +752,103 @@ public class TransferManager {
      * @param destinationDirectory The directory to place downloaded files.
      *            Subdirectories will be created as necessary.
      */
-    public MultipleFileDownload downloadDirectory(String bucketName, String keyPrefix,
-            File destinationDirectory) {
+    public MultipleFileDownload downloadDirectory(final String bucketName, String keyPrefix,
+            final File destinationDirectory) {
 
         if (keyPrefix == null)
             keyPrefix = "";
-
-        List<S3ObjectSummary> objectSummaries = new LinkedList<S3ObjectSummary>();
-        Stack<String> commonPrefixes = new Stack<String>();
-        commonPrefixes.add(keyPrefix);
-        long totalSize = 0;
-
-        // Recurse all virtual subdirectories to get a list of object summaries.
-        // This is a depth-first search.
-        do {
-            String prefix = commonPrefixes.pop();
-            ObjectListing listObjectsResponse = null;
-
-            do {
-                if (listObjectsResponse == null) {
-                    ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-                            .withBucketName(bucketName)
-                            .withDelimiter(DEFAULT_DELIMITER).withPrefix(prefix);
-                    listObjectsResponse = s3.listObjects(listObjectsRequest);
-                } else {
-                    listObjectsResponse = s3.listNextBatchOfObjects(listObjectsResponse);
-                }
-
-                for (S3ObjectSummary s : listObjectsResponse.getObjectSummaries()) {
-                    // Skip any files that are also virtual directories, since
-                    // we can't save both a directory and a file of the same
-                    // name.
-                    if (!s.getKey().equals(prefix)
-                            && !listObjectsResponse.getCommonPrefixes().contains(
-                                    s.getKey() + DEFAULT_DELIMITER)) {
-                        objectSummaries.add(s);
-                        totalSize += s.getSize();
-                    } else {
-                        log.debug("Skipping download for object " + s.getKey()
-                                + " since it is also a virtual directory");
-                    }
-                }
-
-                commonPrefixes.addAll(listObjectsResponse.getCommonPrefixes());
-            } while (listObjectsResponse.isTruncated());
-        } while (!commonPrefixes.isEmpty());
+        final String directoryKeyPrefix = keyPrefix;
 
         /* This is the hook for adding additional progress listeners */
         ProgressListenerChain additionalListeners = new ProgressListenerChain();
 
         TransferProgress transferProgress = new TransferProgress();
-        transferProgress.setTotalBytesToTransfer(totalSize);
         /*
          * Bind additional progress listeners to this
          * MultipleFileTransferProgressUpdatingListener to receive
          * ByteTransferred events from each single-file download implementation.
          */
-        ProgressListener listener = new MultipleFileTransferProgressUpdatingListener(
+        final ProgressListener listener = new MultipleFileTransferProgressUpdatingListener(
                 transferProgress, additionalListeners);
 
-        List<DownloadImpl> downloads = new ArrayList<DownloadImpl>();
+        Collection<DownloadImpl> downloads = new ConcurrentLinkedQueue<DownloadImpl>();
 
         String description = "Downloading from " + bucketName + "/" + keyPrefix;
         final MultipleFileDownloadImpl multipleFileDownload = new MultipleFileDownloadImpl(
                 description, transferProgress,
                 additionalListeners, keyPrefix, bucketName, downloads);
-        multipleFileDownload.setMonitor(new MultipleFileTransferMonitor(multipleFileDownload,
-                downloads));
 
-        final CountDownLatch latch = new CountDownLatch(1);
-        MultipleFileTransferStateChangeListener transferListener = new MultipleFileTransferStateChangeListener(
-                latch, multipleFileDownload);
-
-        for (S3ObjectSummary summary : objectSummaries) {
-            // TODO: non-standard delimiters
-            File f = new File(destinationDirectory, summary.getKey());
-            File parentFile = f.getParentFile();
-            if (!parentFile.exists() && !parentFile.mkdirs()) {
-                throw new RuntimeException("Couldn't create parent directories for "
-                        + f.getAbsolutePath());
-            }
+        DirectoryTransferPipeline<S3ObjectSummary, DownloadImpl> pipeline = new DirectoryTransferPipeline<S3ObjectSummary, DownloadImpl>(
+                multipleFileDownload, transferProgress, downloads, configuration) {
 
-            // All the single-file downloads share the same
-            // MultipleFileTransferProgressUpdatingListener and
-            // MultipleFileTransferStateChangeListener
-            downloads.add((DownloadImpl) doDownload(
-                    new GetObjectRequest(summary.getBucketName(),
-                            summary.getKey())
-                            .withGeneralProgressListener(
-                            listener),
-                    f,
-                    transferListener, null, false));
-        }
+            @Override
+            protected void walk() throws InterruptedException {
+                Stack<String> commonPrefixes = new Stack<String>();
+                commonPrefixes.add(directoryKeyPrefix);
+
+                // Recurse all virtual subdirectories to list the object
+                // summaries. This is a depth-first search.
+                do {
+                    String prefix = commonPrefixes.pop();
+                    ObjectListing listObjectsResponse = null;
+
+                    do {
+                        if (listObjectsResponse == null) {
+                            ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
+                                    .withBucketName(bucketName)
+                                    .withDelimiter(DEFAULT_DELIMITER).withPrefix(prefix);
+                            listObjectsResponse = s3.listObjects(listObjectsRequest);
+                        } else {
+                            listObjectsResponse = s3.listNextBatchOfObjects(listObjectsResponse);
+                        }
 
-        if (downloads.isEmpty()) {
-            multipleFileDownload.setState(TransferState.Completed);
-            return multipleFileDownload;
-        }
+                        for (S3ObjectSummary s : listObjectsResponse.getObjectSummaries()) {
+                            // Skip any files that are also virtual directories,
+                            // since we can't save both a directory and a file
+                            // of the same name.
+                            if (!s.getKey().equals(prefix)
+                                    && !listObjectsResponse.getCommonPrefixes().contains(
+                                            s.getKey() + DEFAULT_DELIMITER)) {
+                                if (!add(s, s.getSize())) {
+                                    return;
+                                }
+                            } else {
+                                log.debug("Skipping download for object " + s.getKey()
+                                        + " since it is also a virtual directory");
+                            }
+                        }
 
-        // Notify all state changes waiting for the downloads to all be queued
-        // to wake up and continue.
-        latch.countDown();
+                        commonPrefixes.addAll(listObjectsResponse.getCommonPrefixes());
+                    } while (listObjectsResponse.isTruncated());
+                } while (!commonPrefixes.isEmpty());
+            }
+
+            @Override
+            protected DownloadImpl startTransfer(S3ObjectSummary summary,
+                    TransferStateChangeListener transferListener) {
+                // TODO: non-standard delimiters
+                File f = new File(destinationDirectory, summary.getKey());
+                File parentFile = f.getParentFile();
+                if (!parentFile.exists() && !parentFile.mkdirs()) {
+                    throw new RuntimeException("Couldn't create parent directories for "
+                            + f.getAbsolutePath());
+                }
+
+                // All the single-file downloads share the same
+                // MultipleFileTransferProgressUpdatingListener and
+                // MultipleFileTransferStateChangeListener
+                return (DownloadImpl) doDownload(
+                        new GetObjectRequest(summary.getBucketName(),
+                                summary.getKey())
+                                .withGeneralProgressListener(
+                                listener),
+                        f,
+                        transferListener, null, false);
+            }
+        };
+        multipleFileDownload.setMonitor(new MultipleFileTransferMonitor(multipleFileDownload,
+                downloads, pipeline.getQueueingFuture()));
+        pipeline.start();
 
         return multipleFileDownload;
     }
@@ -889,6 +881,12 @@ public class TransferManager {
      * <p>
      * S3 will overwrite any existing objects that happen to have the same key,
      * just as when uploading individual files, so use with caution.
+     * <p>
+     * The directory is walked in the background, and each file starts
+     * uploading as soon as it's found, with at most
+     * {@link TransferManagerConfiguration#getDirectoryTransferConcurrency()}
+     * uploads in flight. The total size of the transfer grows as files are
+     * found.
      *
      * @param bucketName The name of the bucket to upload objects to.
      * @param virtualDirectoryKeyPrefix The key prefix of the virtual directory
@@ -908,11 +906,8 @@ public class TransferManager {
             throw new IllegalArgumentException("Must provide a directory to upload");
         }
 
-        List<File> files = new LinkedList<File>();
-        listFiles(directory, files, includeSubdirectories);
-
-        return uploadFileList(bucketName, virtualDirectoryKeyPrefix, directory, files,
-                metadataProvider);
+        return uploadFiles(bucketName, virtualDirectoryKeyPrefix, directory, null,
+                includeSubdirectories, metadataProvider);
     }
 
     /**
@@ -967,11 +962,30 @@ public class TransferManager {
                     "Must provide a common base directory for uploaded files");
         }
 
+        // without files, the transfer completes with no uploads rather than
+        // walking the directory
+        if (files == null) {
+            files = Collections.emptyList();
+        }
+        return uploadFiles(bucketName, virtualDirectoryKeyPrefix, directory, files, false,
+                metadataProvider);
+    }
+
+    /**
+     * Uploads the given files, or the files found by walking the given
+     * directory if files is null, streaming them through a
+     * {@link DirectoryTransferPipeline}.
+     */
+    private MultipleFileUpload uploadFiles(final String bucketName,
+            String virtualDirectoryKeyPrefix, final File directory, final List<File> files,
+            final boolean includeSubdirectories, final ObjectMetadataProvider metadataProvider) {
+
         if (virtualDirectoryKeyPrefix == null || virtualDirectoryKeyPrefix.length() == 0) {
             virtualDirectoryKeyPrefix = "";
         } else if (!virtualDirectoryKeyPrefix.endsWith("/")) {
             virtualDirectoryKeyPrefix = virtualDirectoryKeyPrefix + "/";
         }
+        final String keyPrefix = virtualDirectoryKeyPrefix;
 
         /* This is the hook for adding additional progress listeners */
         ProgressListenerChain additionalListeners = new ProgressListenerChain();
@@ -982,90 +996,91 @@ public class TransferManager {
          * MultipleFileTransferProgressUpdatingListener to receive
          * ByteTransferred events from each single-file upload implementation.
          */
-        ProgressListener listener = new MultipleFileTransferProgressUpdatingListener(
+        final ProgressListener listener = new MultipleFileTransferProgressUpdatingListener(
                 progress, additionalListeners);
 
-        List<UploadImpl> uploads = new LinkedList<UploadImpl>();
+        Collection<UploadImpl> uploads = new ConcurrentLinkedQueue<UploadImpl>();
         MultipleFileUploadImpl multipleFileUpload = new MultipleFileUploadImpl("Uploading etc",
-                progress, additionalListeners, virtualDirectoryKeyPrefix, bucketName, uploads);
-        multipleFileUpload.setMonitor(new MultipleFileTransferMonitor(multipleFileUpload, uploads));
+                progress, additionalListeners, keyPrefix, bucketName, uploads);
 
-        final CountDownLatch latch = new CountDownLatch(1);
-        MultipleFileTransferStateChangeListener transferListener = new MultipleFileTransferStateChangeListener(
-                latch, multipleFileUpload);
+        /*
+         * If the absolute path for the common/base directory does NOT end in a
+         * separator (which is the case for anything but root directories),
+         * then we know there's still a separator between the base directory
+         * and the rest of the file's path, so we increment the starting
+         * position by one.
+         */
+        int position = directory.getAbsolutePath().length();
+        if (!(directory.getAbsolutePath().endsWith(File.separator)))
+            position++;
+        final int startingPosition = position;
 
-        if (files == null || files.isEmpty()) {
-            multipleFileUpload.setState(TransferState.Completed);
-        } else {
+        DirectoryTransferPipeline<File, UploadImpl> pipeline = new DirectoryTransferPipeline<File, UploadImpl>(
+                multipleFileUpload, progress, uploads, configuration) {
 
-            /*
-             * If the absolute path for the common/base directory does NOT end
-             * in a separator (which is the case for anything but root
-             * directories), then we know there's still a separator between the
-             * base directory and the rest of the file's path, so we increment
-             * the starting position by one.
-             */
-            int startingPosition = directory.getAbsolutePath().length();
-            if (!(directory.getAbsolutePath().endsWith(File.separator)))
-                startingPosition++;
-
-            long totalSize = 0;
-            for (File f : files) {
-                // Check, if file, since only files can be uploaded.
-                if (f.isFile()) {
-                    totalSize += f.length();
-
-                    String key = f.getAbsolutePath().substring(startingPosition)
-                            .replaceAll("\\\\", "/");
-
-                    ObjectMetadata metadata = new ObjectMetadata();
-
-                    // Invoke the callback if it's present.
-                    // The callback allows the user to customize the metadata
-                    // for each file being uploaded.
-                    if (metadataProvider != null) {
-                        metadataProvider.provideObjectMetadata(f, metadata);
+            @Override
+            protected void walk() throws InterruptedException {
+                if (files != null) {
+                    for (File f : files) {
+                        // Check, if file, since only files can be uploaded.
+                        if (f.isFile() && !add(f, f.length())) {
+                            return;
+                        }
                     }
+                    return;
+                }
 
-                    // All the single-file uploads share the same
-                    // MultipleFileTransferProgressUpdatingListener and
-                    // MultipleFileTransferStateChangeListener
-                    uploads.add((UploadImpl) doUpload(
-                            new PutObjectRequest(bucketName,
-                                    virtualDirectoryKeyPrefix + key, f)
-                                    .withMetadata(metadata)
-                                    .withGeneralProgressListener(
-                                            listener),
-                            transferListener, null, null));
+                // Breadth-first, so that files start uploading before the
+                // subdirectories are walked.
+                LinkedList<File> directories = new LinkedList<File>();
+                directories.add(directory);
+                while (!directories.isEmpty()) {
+                    File[] found = directories.removeFirst().listFiles();
+                    if (found == null) {
+                        continue;
+                    }
+                    for (File f : found) {
+                        if (f.isDirectory()) {
+                            if (includeSubdirectories) {
+                                directories.add(f);
+                            }
+                        } else if (f.isFile() && !add(f, f.length())) {
+                            return;
+                        }
+                    }
                 }
             }
-            progress.setTotalBytesToTransfer(totalSize);
-        }
 
-        // Notify all state changes waiting for the uploads to all be queued
-        // to wake up and continue
-        latch.countDown();
-
-        return multipleFileUpload;
-    }
-
-    /**
-     * Lists files in the directory given and adds them to the result list
-     * passed in, optionally adding subdirectories recursively.
-     */
-    private void listFiles(File dir, List<File> results, boolean includeSubDirectories) {
-        File[] found = dir.listFiles();
-        if (found != null) {
-            for (File f : found) {
-                if (f.isDirectory()) {
-                    if (includeSubDirectories) {
-                        listFiles(f, results, includeSubDirectories);
-                    }
-                } else {
-                    results.add(f);
+            @Override
+            protected UploadImpl startTransfer(File f,
+                    TransferStateChangeListener transferListener) {
+                String key = f.getAbsolutePath().substring(startingPosition)
+                        .replaceAll("\\\\", "/");
+
+                ObjectMetadata metadata = new ObjectMetadata();
+
+                // Invoke the callback if it's present.
+                // The callback allows the user to customize the metadata
+                // for each file being uploaded.
+                if (metadataProvider != null) {
+                    metadataProvider.provideObjectMetadata(f, metadata);
                 }
+
+                // All the single-file uploads share the same
+                // MultipleFileTransferProgressUpdatingListener and
+                // MultipleFileTransferStateChangeListener
+                return (UploadImpl) doUpload(
+                        new PutObjectRequest(bucketName, keyPrefix + key, f)
+                                .withMetadata(metadata)
+                                .withGeneralProgressListener(listener),
+                        transferListener, null, null);
             }
-        }
+        };
+        multipleFileUpload.setMonitor(new MultipleFileTransferMonitor(multipleFileUpload,
+                uploads, pipeline.getQueueingFuture()));
+        pipeline.start();
+
+        return multipleFileUpload;
     }
 
     /**
@@ -1136,7 +1151,6 @@ public class TransferManager {
      */
     public void shutdownNow(boolean shutDownS3Client) {
         threadPool.shutdownNow();
-        timedThreadPool.shutdownNow();
 
         if (shutDownS3Client) {
             if (s3 instanceof AmazonS3Client) {
@@ -1152,7 +1166,6 @@ public class TransferManager {
      */
     private void shutdown() {
         threadPool.shutdown();
-        timedThreadPool.shutdown();
     }
 
     public static <X extends AmazonWebServiceRequest> X appendSingleObjectUserAgent(X request) {
@@ -1172,24 +1185,6 @@ public class TransferManager {
 
     private static final String DEFAULT_DELIMITER = "/";
 
-    /**
-     * There is no need for threads from timedThreadPool if there is no more
-     * running threads in current process, so we need a daemon thread factory
-     * for it.
-     */
-    private static final ThreadFactory daemonThreadFactory = new ThreadFactory() {
-        final AtomicInteger threadCount = new AtomicInteger(0);
-
-        @Override
-        public Thread newThread(Runnable r) {
-            int threadNumber = threadCount.incrementAndGet();
-            Thread thread = new Thread(r);
-            thread.setDaemon(true);
-            thread.setName("S3TransferManagerTimedThread-" + threadNumber);
-            return thread;
-        }
-    };
-
     /**
      * <p>
      * Schedules a new transfer to copy data from one Amazon S3 location to
@@ -1338,7 +1333,6 @@ public class TransferManager {
                 copyObjectRequest, metadata, listenerChain);
         CopyMonitor watcher = new CopyMonitor(this, copy, threadPool,
                 copyCallable, copyObjectRequest, listenerChain);
-        watcher.setTimedThreadPool(timedThreadPool);
         copy.setMonitor(watcher);
         return copy;
     }
@@ -47,6 +47,15 @@ public class TransferManagerConfiguration {
     /** Default minimum size of each part for multi-part copy. */
     private static final long DEFAULT_MINIMUM_COPY_PART_SIZE = 100 * MB;
 
+    /** Default maximum number of files of a directory transfer in flight. */
+    private static final int DEFAULT_DIRECTORY_TRANSFER_CONCURRENCY = 10;
+
+    /**
+     * Default maximum number of files found by the walk of a directory
+     * transfer that wait to be transferred.
+     */
+    private static final int DEFAULT_DIRECTORY_TRANSFER_QUEUE_SIZE = 1000;
+
     /**
      * The minimum part size for upload parts. Decreasing the minimum part size
      * will cause multipart uploads to be split into a larger number of smaller
@@ -85,6 +94,20 @@ public class TransferManagerConfiguration {
      */
     private long multipartCopyPartSize = DEFAULT_MINIMUM_COPY_PART_SIZE;
 
+    /**
+     * The maximum number of files of a directory upload or download that are
+     * transferred at the same time. The transfers still share the thread pool
+     * of the transfer manager.
+     */
+    private int directoryTransferConcurrency = DEFAULT_DIRECTORY_TRANSFER_CONCURRENCY;
+
+    /**
+     * The maximum number of files found by the walk of a directory upload or
+     * download that wait for a transfer to start. The walk pauses while this
+     * many files are waiting.
+     */
+    private int directoryTransferQueueSize = DEFAULT_DIRECTORY_TRANSFER_QUEUE_SIZE;
+
     /**
      * Returns the minimum part size for upload parts. Decreasing the minimum
      * part size causes multipart uploads to be split into a larger number of
@@ -192,4 +215,57 @@ public class TransferManagerConfiguration {
     public void setMultipartCopyThreshold(long multipartCopyThreshold) {
         this.multipartCopyThreshold = multipartCopyThreshold;
     }
+
+    /**
+     * Returns the maximum number of files of a directory upload or download
+     * that are transferred at the same time.
+     *
+     * @return The maximum number of files of a directory transfer in flight.
+     */
+    public int getDirectoryTransferConcurrency() {
+        return directoryTransferConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of files of a directory upload or download that
+     * are transferred at the same time. The transfers of the files start as
+     * soon as they are found, while the rest of the directory is walked.
+     *
+     * @param directoryTransferConcurrency The maximum number of files of a
+     *            directory transfer in flight, at least 1.
+     */
+    public void setDirectoryTransferConcurrency(int directoryTransferConcurrency) {
+        if (directoryTransferConcurrency < 1) {
+            throw new IllegalArgumentException(
+                    "Directory transfer concurrency must be at least 1");
+        }
+        this.directoryTransferConcurrency = directoryTransferConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of files found by the walk of a directory
+     * upload or download that wait for a transfer to start.
+     *
+     * @return The maximum number of files waiting to be transferred.
+     */
+    public int getDirectoryTransferQueueSize() {
+        return directoryTransferQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of files found by the walk of a directory upload
+     * or download that wait for a transfer to start. The walk pauses while
+     * this many files are waiting, which bounds the memory used for very large
+     * directories.
+     *
+     * @param directoryTransferQueueSize The maximum number of files waiting to
+     *            be transferred, at least 1.
+     */
+    public void setDirectoryTransferQueueSize(int directoryTransferQueueSize) {
+        if (directoryTransferQueueSize < 1) {
+            throw new IllegalArgumentException(
+                    "Directory transfer queue size must be at least 1");
+        }
+        this.directoryTransferQueueSize = directoryTransferQueueSize;
+    }
 }
@@ -89,6 +89,8 @@ public class CopyCallable implements Callable<CopyResult> {
      * initiated.
      */
     private final List<Future<PartETag>> futures = new ArrayList<Future<PartETag>>();
+    /** Tracks the copy part requests running in the thread pool. */
+    private final PartCompletionTracker partCompletionTracker = new PartCompletionTracker();
 
     private final ProgressListenerCallbackExecutor progressListenerChainCallbackExecutor;
 
@@ -110,6 +112,13 @@ public class CopyCallable implements Callable<CopyResult> {
         return futures;
     }
 
+    /**
+     * Returns the tracker of the parts submitted to the thread pool.
+     */
+    PartCompletionTracker getPartCompletionTracker() {
+        return partCompletionTracker;
+    }
+
     String getMultipartUploadId() {
         return multipartUploadId;
     }
@@ -215,7 +224,8 @@ public class CopyCallable implements Callable<CopyResult> {
                 throw new CancellationException(
                         "TransferManager has been shutdown");
             CopyPartRequest request = requestFactory.getNextCopyPartRequest();
-            futures.add(threadPool.submit(new CopyPartCallable(s3, request)));
+            futures.add(partCompletionTracker.submit(threadPool,
+                    new CopyPartCallable(s3, request)));
         }
     }
 
@@ -34,15 +34,14 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.FutureTask;
 
 /**
- * Monitors an copy operation by periodically checking to see if the operation
- * is completed, and returning a result if so. Otherwise, schedules a copy of
- * itself to be run in the future. When waiting on the result of this class via
- * a Future object, clients must call {@link CopyMonitor#isDone()} and
- * {@link CopyMonitor#getFuture()}
+ * Monitors a copy operation by starting it and returning a result if it's
+ * done. Otherwise, submits itself again as soon as the last part of the
+ * multi-part copy is done, to complete the copy. When waiting on the result of
+ * this class via a Future object, clients must call
+ * {@link CopyMonitor#isDone()} and {@link CopyMonitor#getFuture()}
  */
 public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
 
@@ -55,11 +54,6 @@ public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
     private final ExecutorService threadPool;
     /** A reference to the original copy request received. */
     private final CopyObjectRequest copyObjectRequest;
-    /**
-     * Thread pool used for scheduling the monitor to check if the copy
-     * operation is completed.
-     */
-    private ScheduledExecutorService timedThreadPool;
     /** Reference to the CopyCallable that is used for initiating copy requests. */
     private final CopyCallable multipartCopyCallable;
     private final CopyImpl transfer;
@@ -95,10 +89,6 @@ public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
         isCopyDone = true;
     }
 
-    // TODO: this could be configured in the configuration object (which we're
-    // not using right now)
-    private int pollInterval = 5000;
-
     /**
      * Constructs a new watcher for copy operation, which immediately submits
      * itself to the thread pool.
@@ -132,7 +122,7 @@ public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
             if (uploadId == null) {
                 return copy();
             } else {
-                return poll();
+                return completeCopy();
             }
         } catch (CancellationException e) {
             transfer.setState(TransferState.Canceled);
@@ -145,22 +135,11 @@ public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
         }
     }
 
-    public void setTimedThreadPool(ScheduledExecutorService timedThreadPool) {
-        this.timedThreadPool = timedThreadPool;
-    }
-
     /**
-     * Polls for a result from a multi-part copy operation and either returns it
-     * if complete, or reschedules to poll again later if not.
+     * Completes a multi-part copy operation once all its parts are done, unless
+     * any of them was canceled.
      */
-    private CopyResult poll() throws InterruptedException {
-        for (Future<PartETag> f : futures) {
-            if (!f.isDone()) {
-                reschedule();
-                return null;
-            }
-        }
-
+    private CopyResult completeCopy() {
         for (Future<PartETag> f : futures) {
             if (f.isCancelled()) {
                 throw new CancellationException();
@@ -180,8 +159,8 @@ public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
 
     /**
      * Initiates the copy operation and checks on the result. If it has
-     * completed, returns the result; otherwise, reschedules to check back
-     * later.
+     * completed, returns the result; otherwise, completes it once the parts
+     * are done.
      */
     private CopyResult copy() throws Exception, InterruptedException {
 
@@ -192,7 +171,7 @@ public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
         } else {
             uploadId = multipartCopyCallable.getMultipartUploadId();
             futures.addAll(multipartCopyCallable.getFutures());
-            reschedule();
+            completeWhenPartsAreDone();
         }
 
         return result;
@@ -210,14 +189,21 @@ public class CopyMonitor implements Callable<CopyResult>, TransferMonitor {
         }
     }
 
-    private void reschedule() {
-        setNextFuture(timedThreadPool.schedule(new Callable<CopyResult>() {
-            @Override
-            public CopyResult call() throws Exception {
-                setNextFuture(threadPool.submit(CopyMonitor.this));
-                return null;
-            }
-        }, pollInterval, TimeUnit.MILLISECONDS));
+    /**
+     * Resubmits this monitor to the thread pool as soon as the last part is
+     * done, so that the copy is completed without waiting for a poll.
+     */
+    private void completeWhenPartsAreDone() {
+        FutureTask<CopyResult> resubmission = new FutureTask<CopyResult>(
+                new Callable<CopyResult>() {
+                    @Override
+                    public CopyResult call() throws Exception {
+                        setNextFuture(threadPool.submit(CopyMonitor.this));
+                        return null;
+                    }
+                });
+        setNextFuture(resubmission);
+        multipartCopyCallable.getPartCompletionTracker().allPartsSubmitted(resubmission);
     }
 
     /**
@@ -15,12 +15,15 @@
 
 package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.event.ProgressEvent;
 import com.amazonaws.event.ProgressListenerChain;
 import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer;
 import com.amazonaws.mobileconnectors.s3.transfermanager.TransferProgress;
 
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -39,6 +42,33 @@ public abstract class MultipleFileTransfer<T extends Transfer> extends AbstractT
         this.subTransfers = subTransfers;
     }
 
+    /**
+     * Waits for this transfer to complete. This is a blocking call; the current
+     * thread is suspended until this transfer completes.
+     *
+     * @throws AmazonClientException If any errors were encountered in the
+     *             client while making the request or handling the response.
+     * @throws AmazonServiceException If any errors occurred in Amazon S3 while
+     *             processing the request.
+     * @throws InterruptedException If this thread is interrupted while waiting
+     *             for the transfer to complete.
+     */
+    @Override
+    public void waitForCompletion()
+            throws AmazonClientException, AmazonServiceException, InterruptedException {
+        // Sub-transfers may still be added while the source is walked.
+        if (monitor instanceof MultipleFileTransferMonitor) {
+            try {
+                ((MultipleFileTransferMonitor) monitor).waitForSubTransfersToBeQueued();
+            } catch (ExecutionException e) {
+                rethrowExecutionException(e);
+            }
+        }
+        if (subTransfers.isEmpty())
+            return;
+        super.waitForCompletion();
+    }
+
     /**
      * Set the state based on the states of all file downloads. Assumes all file
      * downloads are done.
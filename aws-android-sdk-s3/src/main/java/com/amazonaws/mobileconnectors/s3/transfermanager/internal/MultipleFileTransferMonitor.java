@@ -28,11 +28,28 @@ public class MultipleFileTransferMonitor implements TransferMonitor {
     private final Collection<? extends AbstractTransfer> subTransfers;
     private final AbstractTransfer transfer;
     private final Future<?> future;
+    private final Future<?> queueingFuture;
 
     public MultipleFileTransferMonitor(AbstractTransfer transfer,
             Collection<? extends AbstractTransfer> subTransfers) {
+        this(transfer, subTransfers, null);
+    }
+
+    /**
+     * Constructs a monitor of a transfer whose sub-transfers are still being
+     * added to the given collection.
+     *
+     * @param transfer The multiple file transfer.
+     * @param subTransfers The sub-transfers, which must support concurrent
+     *            iteration while sub-transfers are added.
+     * @param queueingFuture The future that is done once all the
+     *            sub-transfers are added, or null if they already are.
+     */
+    public MultipleFileTransferMonitor(AbstractTransfer transfer,
+            Collection<? extends AbstractTransfer> subTransfers, Future<?> queueingFuture) {
         this.subTransfers = subTransfers;
         this.transfer = transfer;
+        this.queueingFuture = queueingFuture;
 
         /*
          * The future object is not publicly exposed, so we only need to worry
@@ -43,11 +60,15 @@ public class MultipleFileTransferMonitor implements TransferMonitor {
 
             @Override
             public boolean cancel(boolean mayInterruptIfRunning) {
+                if (MultipleFileTransferMonitor.this.queueingFuture != null) {
+                    MultipleFileTransferMonitor.this.queueingFuture.cancel(mayInterruptIfRunning);
+                }
                 return true;
             }
 
             @Override
             public Object get() throws InterruptedException, ExecutionException {
+                waitForSubTransfersToBeQueued();
                 Object result = null;
                 for (AbstractTransfer download : MultipleFileTransferMonitor.this.subTransfers) {
                     result = download.getMonitor().getFuture().get();
@@ -59,6 +80,9 @@ public class MultipleFileTransferMonitor implements TransferMonitor {
             public Object get(long timeout, TimeUnit unit) throws InterruptedException,
                     ExecutionException,
                     TimeoutException {
+                if (MultipleFileTransferMonitor.this.queueingFuture != null) {
+                    MultipleFileTransferMonitor.this.queueingFuture.get(timeout, unit);
+                }
                 Object result = null;
                 for (AbstractTransfer subTransfer : MultipleFileTransferMonitor.this.subTransfers) {
                     result = subTransfer.getMonitor().getFuture().get(timeout, unit);
@@ -83,8 +107,22 @@ public class MultipleFileTransferMonitor implements TransferMonitor {
         return future;
     }
 
+    /**
+     * Waits until all the sub-transfers have been added.
+     *
+     * @throws ExecutionException If adding the sub-transfers failed.
+     */
+    void waitForSubTransfersToBeQueued() throws InterruptedException, ExecutionException {
+        if (queueingFuture != null) {
+            queueingFuture.get();
+        }
+    }
+
     @Override
     public synchronized boolean isDone() {
+        if (queueingFuture != null && !queueingFuture.isDone()) {
+            return false;
+        }
         for (Transfer subTransfer : subTransfers) {
             if (!subTransfer.isDone())
                 return false;
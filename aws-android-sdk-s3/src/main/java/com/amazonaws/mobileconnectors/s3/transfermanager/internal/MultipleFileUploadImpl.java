@@ -15,8 +15,6 @@
 
 package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
 
-import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.event.ProgressListenerChain;
 import com.amazonaws.mobileconnectors.s3.transfermanager.MultipleFileUpload;
 import com.amazonaws.mobileconnectors.s3.transfermanager.TransferProgress;
@@ -58,25 +56,6 @@ public class MultipleFileUploadImpl extends MultipleFileTransfer<Upload> impleme
         return bucketName;
     }
 
-    /**
-     * Waits for this transfer to complete. This is a blocking call; the current
-     * thread is suspended until this transfer completes.
-     *
-     * @throws AmazonClientException If any errors were encountered in the
-     *             client while making the request or handling the response.
-     * @throws AmazonServiceException If any errors occurred in Amazon S3 while
-     *             processing the request.
-     * @throws InterruptedException If this thread is interrupted while waiting
-     *             for the transfer to complete.
-     */
-    @Override
-    public void waitForCompletion()
-            throws AmazonClientException, AmazonServiceException, InterruptedException {
-        if (subTransfers.isEmpty())
-            return;
-        super.waitForCompletion();
-    }
-
     /*
      * (non-Javadoc)
      * @see
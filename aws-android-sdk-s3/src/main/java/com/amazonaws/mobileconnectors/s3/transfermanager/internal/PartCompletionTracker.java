@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the parts of a multi-part transfer that are still running, and runs a
+ * callback as soon as the last of them is done, whether it succeeded, failed
+ * or was canceled. This lets a monitor complete the transfer without polling
+ * the part futures.
+ */
+class PartCompletionTracker {
+
+    /**
+     * The number of parts still running, plus one until all the parts have
+     * been submitted.
+     */
+    private final AtomicInteger pendingParts = new AtomicInteger(1);
+    private volatile Runnable callback;
+
+    /**
+     * Submits a part to the thread pool.
+     *
+     * @param threadPool The thread pool running the part.
+     * @param partCallable The callable transferring the part.
+     * @return The future of the part.
+     */
+    <T> Future<T> submit(ExecutorService threadPool, Callable<T> partCallable) {
+        FutureTask<T> future = new FutureTask<T>(partCallable) {
+            @Override
+            protected void done() {
+                partDone();
+            }
+        };
+        pendingParts.incrementAndGet();
+        try {
+            threadPool.execute(future);
+        } catch (RuntimeException e) {
+            pendingParts.decrementAndGet();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Signals that no more parts will be submitted. The callback is run once
+     * all the submitted parts are done, right away if they already are.
+     *
+     * @param callback The callback to run once all the parts are done.
+     */
+    void allPartsSubmitted(Runnable callback) {
+        this.callback = callback;
+        partDone();
+    }
+
+    private void partDone() {
+        if (pendingParts.decrementAndGet() == 0) {
+            callback.run();
+        }
+    }
+}
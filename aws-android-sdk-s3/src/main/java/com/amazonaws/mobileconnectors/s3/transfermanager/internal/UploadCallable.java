@@ -64,6 +64,7 @@ public class UploadCallable implements Callable<UploadResult> {
     private static final Log log = LogFactory.getLog(UploadCallable.class);
     private final TransferManagerConfiguration configuration;
     private final List<Future<PartETag>> futures = new ArrayList<Future<PartETag>>();
+    private final PartCompletionTracker partCompletionTracker = new PartCompletionTracker();
     private final ProgressListenerChain listener;
     private final TransferProgress transferProgress;
 
@@ -95,6 +96,13 @@ public class UploadCallable implements Callable<UploadResult> {
         return futures;
     }
 
+    /**
+     * Returns the tracker of the parts submitted to the thread pool.
+     */
+    PartCompletionTracker getPartCompletionTracker() {
+        return partCompletionTracker;
+    }
+
     /**
      * Returns the ETags retrieved from Amazon S3 for a multi-part upload id.
      * These parts will be skipped while resuming a paused upload.
@@ -185,7 +193,13 @@ public class UploadCallable implements Callable<UploadResult> {
             UploadPartRequestFactory requestFactory = new UploadPartRequestFactory(
                     putObjectRequest, multipartUploadId, optimalPartSize);
 
-            if (TransferManagerUtils.isUploadParallelizable(putObjectRequest, isUsingEncryption)) {
+            if (isUsingEncryption && isEncryptedUploadParallelizable()) {
+                // The encryption context lives in the client, so an encrypted
+                // upload can't be persisted and resumed.
+                uploadPartsInParallel(requestFactory, multipartUploadId);
+                return null;
+            } else if (TransferManagerUtils.isUploadParallelizable(putObjectRequest,
+                    isUsingEncryption)) {
                 captureUploadStateIfPossible();
                 uploadPartsInParallel(requestFactory, multipartUploadId);
                 return null;
@@ -207,6 +221,16 @@ public class UploadCallable implements Callable<UploadResult> {
         }
     }
 
+    /**
+     * Returns true if the encryption client encrypts each part before
+     * uploading it, in which case the parts of a file can be uploaded in
+     * parallel.
+     */
+    private boolean isEncryptedUploadParallelizable() {
+        return ((AmazonS3EncryptionClient) s3).isParallelMultipartUploadEnabled()
+                && TransferManagerUtils.getRequestFile(putObjectRequest) != null;
+    }
+
     /**
      * Performs an
      * {@link AmazonS3#abortMultipartUpload(AbortMultipartUploadRequest)}
@@ -297,7 +321,8 @@ public class UploadCallable implements Callable<UploadResult> {
                 transferProgress.updateProgress(summary.getSize());
                 continue;
             }
-            futures.add(threadPool.submit(new UploadPartCallable(s3, request)));
+            futures.add(partCompletionTracker.submit(threadPool,
+                    new UploadPartCallable(s3, request)));
         }
     }
 
@@ -41,22 +41,20 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.FutureTask;
 
 /**
- * Manages an upload by periodically checking to see if the upload is done, and
- * returning a result if so. Otherwise, schedules a copy of itself to be run in
- * the future and returns null. When waiting on the result of this class via a
- * Future object, clients must call {@link UploadMonitor#isDone()} and
- * {@link UploadMonitor#getFuture()}
+ * Manages an upload by starting it and returning a result if it's done.
+ * Otherwise, returns null and submits itself again as soon as the last part of
+ * the multipart upload is done, to complete the upload. When waiting on the
+ * result of this class via a Future object, clients must call
+ * {@link UploadMonitor#isDone()} and {@link UploadMonitor#getFuture()}
  */
 public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
 
     private final AmazonS3 s3;
     private final ExecutorService threadPool;
     private final PutObjectRequest putObjectRequest;
-    private ScheduledExecutorService timedThreadPool;
 
     private static final Log log = LogFactory.getLog(UploadMonitor.class);
     private final TransferManagerConfiguration configuration;
@@ -94,10 +92,6 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
         isUploadDone = true;
     }
 
-    // TODO: this could be configured in the configuration object (which we're
-    // not using right now)
-    private int pollInterval = 5000;
-
     /**
      * Constructs a new upload watcher, which immediately submits itself to the
      * thread pool.
@@ -129,17 +123,13 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
         setNextFuture(threadPool.submit(this));
     }
 
-    public void setTimedThreadPool(ScheduledExecutorService timedThreadPool) {
-        this.timedThreadPool = timedThreadPool;
-    }
-
     @Override
     public UploadResult call() throws Exception {
         try {
             if (uploadId == null) {
                 return upload();
             } else {
-                return poll();
+                return completeUpload();
             }
         } catch (CancellationException e) {
             transfer.setState(TransferState.Canceled);
@@ -153,17 +143,10 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
     }
 
     /**
-     * Polls for a result from a multipart upload and either returns it if
-     * complete, or reschedules to poll again later if not.
+     * Completes a multipart upload once all its parts are done, unless any of
+     * them was canceled.
      */
-    private UploadResult poll() throws InterruptedException {
-        for (Future<PartETag> f : futures) {
-            if (!f.isDone()) {
-                reschedule();
-                return null;
-            }
-        }
-
+    private UploadResult completeUpload() {
         for (Future<PartETag> f : futures) {
             if (f.isCancelled()) {
                 throw new CancellationException();
@@ -175,7 +158,7 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
 
     /**
      * Initiates the upload and checks on the result. If it has completed,
-     * returns the result; otherwise, reschedules to check back later.
+     * returns the result; otherwise, completes it once the parts are done.
      */
     private UploadResult upload() throws Exception, InterruptedException {
 
@@ -186,7 +169,7 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
         } else {
             uploadId = multipartUploadCallable.getMultipartUploadId();
             futures.addAll(multipartUploadCallable.getFutures());
-            reschedule();
+            completeWhenPartsAreDone();
         }
 
         return result;
@@ -203,14 +186,21 @@ public class UploadMonitor implements Callable<UploadResult>, TransferMonitor {
         }
     }
 
-    private void reschedule() {
-        setNextFuture(timedThreadPool.schedule(new Callable<UploadResult>() {
-            @Override
-            public UploadResult call() throws Exception {
-                setNextFuture(threadPool.submit(UploadMonitor.this));
-                return null;
-            }
-        }, pollInterval, TimeUnit.MILLISECONDS));
+    /**
+     * Resubmits this monitor to the thread pool as soon as the last part is
+     * done, so that the upload is completed without waiting for a poll.
+     */
+    private void completeWhenPartsAreDone() {
+        FutureTask<UploadResult> resubmission = new FutureTask<UploadResult>(
+                new Callable<UploadResult>() {
+                    @Override
+                    public UploadResult call() throws Exception {
+                        setNextFuture(threadPool.submit(UploadMonitor.this));
+                        return null;
+                    }
+                });
+        setNextFuture(resubmission);
+        multipartUploadCallable.getPartCompletionTracker().allPartsSubmitted(resubmission);
     }
 
     private void fireProgressEvent(final int eventType) {
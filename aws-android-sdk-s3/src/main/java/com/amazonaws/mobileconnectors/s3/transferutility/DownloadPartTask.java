@@ -0,0 +1,150 @@
+/**
+ * Copyright 2015-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import android.util.Log;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads a byte range of an object and writes it at the same position of
+ * the file, which is preallocated by {@link DownloadTask}. Returns false if
+ * it's interrupted by user.
+ */
+class DownloadPartTask implements Callable<Boolean> {
+
+    private final static String TAG = "DownloadPartTask";
+
+    private final TransferRecord part;
+    private final String eTag;
+    private final AmazonS3 s3;
+    private final TransferDBUtil dbUtil;
+    private final ProgressListener progressListener;
+
+    /**
+     * Constructs a DownloadPartTask.
+     *
+     * @param part the part record with the byte range to download
+     * @param eTag the ETag of the object, the part must match it
+     * @param s3 Low-level S3 client
+     * @param dbUtil database util
+     * @param progressListener listener of the progress of the whole download
+     */
+    public DownloadPartTask(TransferRecord part, String eTag, AmazonS3 s3,
+            TransferDBUtil dbUtil, ProgressListener progressListener) {
+        this.part = part;
+        this.eTag = eTag;
+        this.s3 = s3;
+        this.dbUtil = dbUtil;
+        this.progressListener = progressListener;
+    }
+
+    /*
+     * Runs part download task and returns whether successfully downloaded.
+     */
+    @Override
+    public Boolean call() throws Exception {
+        final GetObjectRequest getObjectRequest = new GetObjectRequest(part.bucketName,
+                part.key);
+        getObjectRequest.setRange(part.rangeStart, part.rangeLast);
+        if (eTag != null) {
+            getObjectRequest.withMatchingETagConstraint(eTag);
+        }
+        TransferUtility.appendMultipartTransferServiceUserAgentString(getObjectRequest);
+        getObjectRequest.setGeneralProgressListener(progressListener);
+
+        try {
+            S3Object object = s3.getObject(getObjectRequest);
+            if (object == null) {
+                throw new AmazonClientException("Object " + part.key
+                        + " was modified during the download");
+            }
+            long bytesWritten = writeToFile(object.getObjectContent(), new File(part.file),
+                    part.rangeStart);
+            if (bytesWritten != part.bytesTotal) {
+                throw new AmazonClientException(String.format(
+                        "Part %d of %s ended after %d of %d bytes", part.partNumber, part.key,
+                        bytesWritten, part.bytesTotal));
+            }
+            dbUtil.updateState(part.id, TransferState.PART_COMPLETED);
+            return true;
+        } catch (Exception e) {
+            dbUtil.updateState(part.id, TransferState.FAILED);
+            if (RetryUtils.isInterrupted(e) || Thread.currentThread().isInterrupted()) {
+                // thread interrupted by user
+                return false;
+            }
+            Log.e(TAG, "Encountered error downloading part " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Writes stream data into the file at the given position with positional
+     * writes, so that parts can be written concurrently.
+     *
+     * @param is input stream
+     * @param file file to be written
+     * @param position the position in the file to write the data at
+     * @return the number of bytes written
+     */
+    private long writeToFile(InputStream is, File file, long position) {
+        RandomAccessFile raf = null;
+        long bytesWritten = 0;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            byte[] buffer = new byte[1024 * 16];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, bytesRead);
+                while (bb.hasRemaining()) {
+                    bytesWritten += channel.write(bb, position + bytesWritten);
+                }
+            }
+            return bytesWritten;
+        } catch (IOException e) {
+            throw new AmazonClientException(
+                    "Unable to store object contents to disk: " + e.getMessage(), e);
+        } finally {
+            try {
+                if (raf != null) {
+                    raf.close();
+                }
+            } catch (IOException ioe) {
+                // ignore
+            }
+            try {
+                is.close();
+            } catch (IOException ioe) {
+                // ignore
+            }
+        }
+    }
+}
@@ -15,13 +15,19 @@
 
 package com.amazonaws.mobileconnectors.s3.transferutility;
 
+import static com.amazonaws.services.s3.internal.Constants.MAXIMUM_UPLOAD_PARTS;
+
+import android.content.ContentValues;
 import android.util.Log;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.mobileconnectors.s3.transferutility.TransferService.NetworkInfoReceiver;
 import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3EncryptionClient;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 
 import java.io.BufferedOutputStream;
@@ -30,11 +36,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Performs download operation and returns a Boolean value indicating whether
- * the file has been downloaded successfully.
+ * the file has been downloaded successfully. Objects larger than
+ * {@link TransferUtility#MINIMUM_DOWNLOAD_PART_SIZE} are downloaded in byte
+ * ranges concurrently by {@link DownloadPartTask}s, with a part record per
+ * range so that the download can be resumed part by part.
  */
 class DownloadTask implements Callable<Boolean> {
 
@@ -42,8 +56,10 @@ class DownloadTask implements Callable<Boolean> {
 
     private final AmazonS3 s3;
     private final TransferRecord download;
+    private final TransferDBUtil dbUtil;
     private final TransferStatusUpdater updater;
     private final NetworkInfoReceiver networkInfo;
+    private final TransferThreadPool threadPool;
 
     /**
      * Constructs a DownloadTask with the given download info and S3 client.
@@ -51,15 +67,20 @@ class DownloadTask implements Callable<Boolean> {
      * @param download A TransferRecord object storing all the information of
      *            the download
      * @param s3 Low-level S3 client
+     * @param dbUtil database util
      * @param updater status updater
      * @param networkInfo network info
+     * @param threadPool thread pool to run the parts on
      */
-    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferStatusUpdater updater,
-            NetworkInfoReceiver networkInfo) {
+    public DownloadTask(TransferRecord download, AmazonS3 s3, TransferDBUtil dbUtil,
+            TransferStatusUpdater updater, NetworkInfoReceiver networkInfo,
+            TransferThreadPool threadPool) {
         this.download = download;
         this.s3 = s3;
+        this.dbUtil = dbUtil;
         this.updater = updater;
         this.networkInfo = networkInfo;
+        this.threadPool = threadPool;
     }
 
     /**
@@ -72,12 +93,24 @@ class DownloadTask implements Callable<Boolean> {
             return false;
         }
         updater.updateState(download.id, TransferState.IN_PROGRESS);
+        if (download.isMultipart == 1) {
+            return downloadMultipartAndWaitForCompletion();
+        }
 
         final GetObjectRequest getObjectRequest = new GetObjectRequest(download.bucketName,
                 download.key);
         TransferUtility.appendTransferServiceUserAgentString(getObjectRequest);
         File file = new File(download.file);
         long bytesCurrent = file.length();
+        if (bytesCurrent == 0 && !(s3 instanceof AmazonS3EncryptionClient)) {
+            try {
+                if (createMultipartDownloadRecords()) {
+                    return downloadMultipartAndWaitForCompletion();
+                }
+            } catch (Exception e) {
+                return handleException(e);
+            }
+        }
         if (bytesCurrent > 0) {
             Log.d(TAG, String.format("Resume transfer %d from %d bytes", download.id,
                     bytesCurrent));
@@ -105,25 +138,178 @@ class DownloadTask implements Callable<Boolean> {
             updater.updateState(download.id, TransferState.COMPLETED);
             return true;
         } catch (Exception e) {
-            if (RetryUtils.isInterrupted(e)) {
-                /*
-                 * thread is interrupted by user. don't update the state as it's
-                 * set by caller who interrupted
-                 */
-                Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
-            } else if (e.getCause() != null && e.getCause() instanceof IOException
-                    && !networkInfo.isNetworkConnected()) {
-                Log.d(TAG, "Transfer " + download.id + " waits for network");
-                updater.updateState(download.id, TransferState.WAITING_FOR_NETWORK);
-            } else {
-                Log.e(TAG, "Failed to download: " + download.id + " due to " + e.getMessage());
-                updater.throwError(download.id, e);
-                updater.updateState(download.id, TransferState.FAILED);
+            return handleException(e);
+        }
+    }
+
+    /**
+     * Checks the size of the object and, if it's large enough, splits the
+     * download into parts and saves the part records to database.
+     *
+     * @return true if the download is now a multipart download
+     */
+    private boolean createMultipartDownloadRecords() {
+        final GetObjectMetadataRequest metadataRequest = new GetObjectMetadataRequest(
+                download.bucketName, download.key);
+        TransferUtility.appendMultipartTransferServiceUserAgentString(metadataRequest);
+        final ObjectMetadata metadata = s3.getObjectMetadata(metadataRequest);
+        final long bytesTotal = metadata.getContentLength();
+        if (bytesTotal <= TransferUtility.MINIMUM_DOWNLOAD_PART_SIZE) {
+            return false;
+        }
+
+        final long partSize = Math.max(
+                (long) Math.ceil((double) bytesTotal / (double) MAXIMUM_UPLOAD_PARTS),
+                TransferUtility.MINIMUM_DOWNLOAD_PART_SIZE);
+        final int partCount = (int) Math.ceil((double) bytesTotal / (double) partSize);
+        final ContentValues[] valuesArray = new ContentValues[partCount];
+        for (int i = 0; i < partCount; i++) {
+            final long rangeStart = i * partSize;
+            final long rangeLast = Math.min(rangeStart + partSize, bytesTotal) - 1;
+            valuesArray[i] = dbUtil.generateContentValuesForMultiPartDownload(download, i + 1,
+                    rangeStart, rangeLast, i == partCount - 1 ? 1 : 0);
+        }
+        if (dbUtil.insertMultipartDownloadRecords(download.id, bytesTotal, metadata.getETag(),
+                valuesArray) != partCount) {
+            // fall back to a single download
+            return false;
+        }
+        download.isMultipart = 1;
+        download.bytesTotal = bytesTotal;
+        download.eTag = metadata.getETag();
+        return true;
+    }
+
+    private Boolean downloadMultipartAndWaitForCompletion() {
+        final File file = new File(download.file);
+        final List<TransferRecord> parts = dbUtil.queryPartRecords(download.id);
+        /*
+         * Completed parts are only kept if the file they were written to is
+         * still intact, e.g. it's not deleted by a cancel.
+         */
+        final boolean isFileIntact = file.isFile() && file.length() == download.bytesTotal;
+        long bytesAlreadyTransferred = 0;
+        final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        try {
+            if (!isFileIntact) {
+                preallocate(file, download.bytesTotal);
+            }
+            for (TransferRecord part : parts) {
+                if (isFileIntact && TransferState.PART_COMPLETED.equals(part.state)) {
+                    bytesAlreadyTransferred += part.bytesTotal;
+                }
+            }
+            if (bytesAlreadyTransferred > 0) {
+                Log.d(TAG, String.format("Resume transfer %d from %d bytes", download.id,
+                        bytesAlreadyTransferred));
+            }
+            updater.updateProgress(download.id, bytesAlreadyTransferred, download.bytesTotal);
+
+            Log.d(TAG, "multipart download " + download.id + " in " + parts.size() + " parts.");
+            for (TransferRecord part : parts) {
+                if (isFileIntact && TransferState.PART_COMPLETED.equals(part.state)) {
+                    continue;
+                }
+                // blocks while the part queue is full
+                futures.add(threadPool.submitPartTask(new DownloadPartTask(part, download.eTag,
+                        s3, dbUtil, updater.newProgressListener(download.id)), part.bytesTotal));
+            }
+
+            boolean isSuccess = true;
+            for (Future<Boolean> f : futures) {
+                // DownloadPartTask returns false when it's interrupted by user
+                // and the state is set by caller
+                isSuccess &= f.get();
+            }
+            if (!isSuccess) {
+                return false;
             }
+        } catch (InterruptedException e) {
+            /*
+             * Future.get() will catch InterruptedException, but it's not a
+             * failure, it may be caused by a pause operation from applications.
+             */
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            // abort by user
+            Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
+            return false;
+        } catch (ExecutionException ee) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            if (ee.getCause() instanceof Exception) {
+                return handleException((Exception) ee.getCause());
+            }
+            updater.updateState(download.id, TransferState.FAILED);
+            return false;
+        } catch (Exception e) {
+            return handleException(e);
+        }
+
+        updater.updateProgress(download.id, download.bytesTotal, download.bytesTotal);
+        updater.updateState(download.id, TransferState.COMPLETED);
+        return true;
+    }
+
+    /**
+     * Updates the state of the download after an exception.
+     *
+     * @param e the exception
+     * @return false
+     */
+    private Boolean handleException(Exception e) {
+        if (RetryUtils.isInterrupted(e)) {
+            /*
+             * thread is interrupted by user. don't update the state as it's
+             * set by caller who interrupted
+             */
+            Log.d(TAG, "Transfer " + download.id + " is interrupted by user");
+        } else if (e.getCause() != null && e.getCause() instanceof IOException
+                && !networkInfo.isNetworkConnected()) {
+            Log.d(TAG, "Transfer " + download.id + " waits for network");
+            updater.updateState(download.id, TransferState.WAITING_FOR_NETWORK);
+        } else {
+            Log.e(TAG, "Failed to download: " + download.id + " due to " + e.getMessage());
+            updater.throwError(download.id, e);
+            updater.updateState(download.id, TransferState.FAILED);
         }
         return false;
     }
 
+    /**
+     * Creates the file with the given length so that parts can be written at
+     * their positions.
+     *
+     * @param file file to be created
+     * @param length length of the file
+     */
+    private void preallocate(File file, long length) {
+        // attempt to create the parent if it doesn't exist
+        File parentDirectory = file.getParentFile();
+        if (parentDirectory != null && !parentDirectory.exists()) {
+            parentDirectory.mkdirs();
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException e) {
+            throw new AmazonClientException(
+                    "Unable to allocate file for object contents: " + e.getMessage(), e);
+        } finally {
+            try {
+                if (raf != null) {
+                    raf.close();
+                }
+            } catch (IOException ioe) {
+                // ignore
+            }
+        }
+    }
+
     /**
      * Writes stream data into a file.
      *
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the number of concurrent parts from the measured throughput and error
+ * rate. Finished parts are collected in windows of at least as many parts as
+ * are running. At the end of a window, the number is halved if too many parts
+ * failed. Otherwise it keeps moving by one in the same direction while the
+ * throughput improves, turns around when the throughput drops and stays put
+ * in between.
+ */
+class PartConcurrencyController {
+
+    /**
+     * Error rate of a window above which the concurrency is halved.
+     */
+    static final double MAX_ERROR_RATE = 0.1;
+
+    /**
+     * Relative change of throughput that counts as better or worse.
+     */
+    static final double THROUGHPUT_THRESHOLD = 0.1;
+
+    private static final int MIN_WINDOW_SIZE = 2;
+
+    private final int maxConcurrency;
+    private int concurrency;
+    private int direction = 1;
+    private double lastThroughput;
+
+    private long windowStartNanos;
+    private long windowBytes;
+    private int windowParts;
+    private int windowErrors;
+
+    /**
+     * Constructs a controller that starts at half of the maximum.
+     *
+     * @param maxConcurrency the maximum number of concurrent parts
+     * @param nowNanos the current time in nanoseconds
+     */
+    PartConcurrencyController(int maxConcurrency, long nowNanos) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.concurrency = (maxConcurrency + 1) / 2;
+        this.windowStartNanos = nowNanos;
+    }
+
+    /**
+     * @return the current number of concurrent parts
+     */
+    synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Records a finished part and returns the number of concurrent parts to
+     * use from now on.
+     *
+     * @param bytes the size of the part
+     * @param failed whether the part failed
+     * @param nowNanos the current time in nanoseconds
+     * @return the number of concurrent parts
+     */
+    synchronized int onPartFinished(long bytes, boolean failed, long nowNanos) {
+        windowParts++;
+        if (failed) {
+            windowErrors++;
+        } else {
+            windowBytes += bytes;
+        }
+        if (windowParts < Math.max(MIN_WINDOW_SIZE, concurrency)) {
+            return concurrency;
+        }
+
+        final long elapsedNanos = Math.max(1, nowNanos - windowStartNanos);
+        final double throughput = windowBytes * (double) TimeUnit.SECONDS.toNanos(1)
+                / elapsedNanos;
+        if ((double) windowErrors / windowParts > MAX_ERROR_RATE) {
+            concurrency = Math.max(1, concurrency / 2);
+            direction = 1;
+            // measure again from scratch at the lower concurrency
+            lastThroughput = 0;
+        } else {
+            if (throughput > lastThroughput * (1 + THROUGHPUT_THRESHOLD)) {
+                concurrency += direction;
+            } else if (throughput < lastThroughput * (1 - THROUGHPUT_THRESHOLD)) {
+                direction = -direction;
+                concurrency += direction;
+            }
+            concurrency = Math.min(maxConcurrency, Math.max(1, concurrency));
+            if (concurrency == 1) {
+                direction = 1;
+            }
+            lastThroughput = throughput;
+        }
+
+        windowStartNanos = nowNanos;
+        windowBytes = 0;
+        windowParts = 0;
+        windowErrors = 0;
+        return concurrency;
+    }
+}
@@ -255,4 +255,37 @@ class TransferDBBase {
         }
         return mainUploadId;
     }
+
+    /**
+     * Updates the summary record of a multipart transfer and inserts its part
+     * records in a single transaction.
+     *
+     * @param mainUploadId The id of the summary record.
+     * @param mainValues The values to update the summary record with.
+     * @param valuesArray An array of values of the part records.
+     * @return Number of part records inserted, 0 if the transaction failed.
+     */
+    public int bulkInsertParts(int mainUploadId, ContentValues mainValues,
+            ContentValues[] valuesArray) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        int inserted = 0;
+        try {
+            db.beginTransaction();
+            db.update(TransferTable.TABLE_TRANSFER, mainValues, TransferTable.COLUMN_ID + "="
+                    + mainUploadId, null);
+            for (ContentValues values : valuesArray) {
+                values.put(TransferTable.COLUMN_MAIN_UPLOAD_ID, mainUploadId);
+                db.insertOrThrow(TransferTable.TABLE_TRANSFER, null, values);
+                inserted++;
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TransferDBBase.class.getSimpleName(),
+                    "bulkInsertParts error : " + e.getMessage());
+            inserted = 0;
+        } finally {
+            db.endTransaction();
+        }
+        return inserted;
+    }
 }
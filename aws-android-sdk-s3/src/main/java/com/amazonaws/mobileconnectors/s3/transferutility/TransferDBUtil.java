@@ -142,6 +142,25 @@ class TransferDBUtil {
         return transferDBBase.bulkInsert(transferDBBase.getContentUri(), valuesArray);
     }
 
+    /**
+     * Turns a download into a multipart download: updates its total bytes and
+     * ETag and inserts the part records in a single transaction.
+     *
+     * @param id The id of the download.
+     * @param bytesTotal The total bytes of the object.
+     * @param eTag The ETag of the object, which every part must match.
+     * @param valuesArray An array of values of the part records.
+     * @return Number of part records inserted, 0 if it failed.
+     */
+    public int insertMultipartDownloadRecords(int id, long bytesTotal, String eTag,
+            ContentValues[] valuesArray) {
+        ContentValues values = new ContentValues();
+        values.put(TransferTable.COLUMN_IS_MULTIPART, 1);
+        values.put(TransferTable.COLUMN_BYTES_TOTAL, bytesTotal);
+        values.put(TransferTable.COLUMN_ETAG, eTag);
+        return transferDBBase.bulkInsertParts(id, values, valuesArray);
+    }
+
     /**
      * Writes transfer status including transfer state, current transferred
      * bytes and total bytes into database.
@@ -490,6 +509,28 @@ class TransferDBUtil {
         return partETags;
     }
 
+    /**
+     * Queries the part records of a multipart transfer.
+     *
+     * @param mainUploadId The id of the summary record of the transfer
+     * @return A list of TransferRecord of the parts, ordered by part number
+     */
+    public List<TransferRecord> queryPartRecords(int mainUploadId) {
+        List<TransferRecord> parts = new ArrayList<TransferRecord>();
+        Cursor c = transferDBBase.query(getPartUri(mainUploadId), null, null, null,
+                TransferTable.COLUMN_PART_NUM);
+        try {
+            while (c.moveToNext()) {
+                TransferRecord part = new TransferRecord(0);
+                part.updateFromDB(c);
+                parts.add(part);
+            }
+        } finally {
+            c.close();
+        }
+        return parts;
+    }
+
     /**
      * Queries uncompleted partUpload tasks of a multipart upload and constructs
      * a UploadPartRequest for each task. It's used when resuming a multipart
@@ -579,6 +620,37 @@ class TransferDBUtil {
         return values;
     }
 
+    /**
+     * Generates a ContentValues object to insert into the database with the
+     * given values for a part record of a multipart download.
+     *
+     * @param download The summary record of the download.
+     * @param partNumber The part number of this part.
+     * @param rangeStart The position of the first byte of the part.
+     * @param rangeLast The position of the last byte of the part.
+     * @param isLastPart Whether this part is the last part of the download.
+     * @return The ContentValues object generated.
+     */
+    public ContentValues generateContentValuesForMultiPartDownload(TransferRecord download,
+            int partNumber, long rangeStart, long rangeLast, int isLastPart) {
+        ContentValues values = new ContentValues();
+        values.put(TransferTable.COLUMN_TYPE, TransferType.DOWNLOAD.toString());
+        values.put(TransferTable.COLUMN_STATE, TransferState.WAITING.toString());
+        values.put(TransferTable.COLUMN_BUCKET_NAME, download.bucketName);
+        values.put(TransferTable.COLUMN_KEY, download.key);
+        values.put(TransferTable.COLUMN_FILE, download.file);
+        values.put(TransferTable.COLUMN_BYTES_CURRENT, 0l);
+        values.put(TransferTable.COLUMN_BYTES_TOTAL, rangeLast - rangeStart + 1);
+        values.put(TransferTable.COLUMN_IS_MULTIPART, 1);
+        values.put(TransferTable.COLUMN_PART_NUM, partNumber);
+        values.put(TransferTable.COLUMN_FILE_OFFSET, rangeStart);
+        values.put(TransferTable.COLUMN_DATA_RANGE_START, rangeStart);
+        values.put(TransferTable.COLUMN_DATA_RANGE_LAST, rangeLast);
+        values.put(TransferTable.COLUMN_IS_LAST_PART, isLastPart);
+        values.put(TransferTable.COLUMN_IS_ENCRYPTED, 0);
+        return values;
+    }
+
     /**
      * Adds mappings to a ContentValues object for the data in the passed in
      * ObjectMetadata
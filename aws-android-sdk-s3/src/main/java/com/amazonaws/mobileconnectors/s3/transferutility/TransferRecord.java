@@ -154,17 +154,20 @@ class TransferRecord {
      * @param dbUtil database util
      * @param updater status updater
      * @param networkInfo network info
+     * @param threadPool thread pool to run the transfer on
      * @return Whether the task is running.
+     * @throws java.util.concurrent.RejectedExecutionException if the transfer
+     *             queue of the thread pool is full
      */
     public boolean start(AmazonS3 s3, TransferDBUtil dbUtil, TransferStatusUpdater updater,
-            NetworkInfoReceiver networkInfo) {
+            NetworkInfoReceiver networkInfo, TransferThreadPool threadPool) {
         if (!isRunning() && checkIsReadyToRun()) {
             if (type.equals(TransferType.DOWNLOAD)) {
-                submittedTask = TransferThreadPool
-                        .submitTask(new DownloadTask(this, s3, updater, networkInfo));
+                submittedTask = threadPool.submitTask(new DownloadTask(this, s3, dbUtil, updater,
+                        networkInfo, threadPool));
             } else {
-                submittedTask = TransferThreadPool
-                        .submitTask(new UploadTask(this, s3, dbUtil, updater, networkInfo));
+                submittedTask = threadPool.submitTask(new UploadTask(this, s3, dbUtil, updater,
+                        networkInfo, threadPool));
             }
             return true;
         }
@@ -205,7 +208,7 @@ class TransferRecord {
                 submittedTask.cancel(true);
             }
             // additional cleanups
-            if (isMultipart == 1) {
+            if (TransferType.UPLOAD.equals(type) && isMultipart == 1) {
                 new Thread(new Runnable() {
                     @Override
                     public void run() {
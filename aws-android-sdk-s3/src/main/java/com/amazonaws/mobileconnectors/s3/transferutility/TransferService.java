@@ -39,6 +39,8 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Performs background upload and download tasks. Uses a thread pool to manage
@@ -56,6 +58,11 @@ public class TransferService extends Service {
     static final int MSG_CHECK = 200;
     static final int MSG_DISCONNECT = 300;
     private static final int MINUTE_IN_MILLIS = 60 * 1000;
+    /*
+     * Delay before transfers that didn't fit in the transfer queue are tried
+     * again.
+     */
+    private static final int DEFERRED_SCAN_DELAY_MILLIS = 5 * 1000;
 
     /*
      * Constants of intent action sent to the service.
@@ -66,9 +73,18 @@ public class TransferService extends Service {
     static final String INTENT_ACTION_TRANSFER_CANCEL = "cancel_transfer";
     static final String INTENT_BUNDLE_TRANSFER_ID = "id";
     static final String INTENT_BUNDLE_S3_REFERENCE_KEY = "s3_reference_key";
+    static final String INTENT_BUNDLE_TRANSFER_UTILITY_OPTIONS = "transfer_utility_options";
 
     private AmazonS3 s3;
 
+    /*
+     * Thread pools by the options of the transfer utilities that use them.
+     * Transfers loaded from database run on the pool of the latest command.
+     */
+    private final Map<TransferUtilityOptions, TransferThreadPool> threadPools =
+            new ConcurrentHashMap<TransferUtilityOptions, TransferThreadPool>();
+    private TransferThreadPool threadPool;
+
     /*
      * updateHandler manages update requests in a queue. It updates transfers
      * from database and start/stop threads if needed.
@@ -204,7 +220,10 @@ public class TransferService extends Service {
              */
         }
         handlerThread.quit();
-        TransferThreadPool.closeThreadPool();
+        for (final TransferThreadPool pool : threadPools.values()) {
+            pool.shutdown();
+        }
+        threadPools.clear();
         S3ClientReference.clear();
         super.onDestroy();
     }
@@ -237,8 +256,9 @@ public class TransferService extends Service {
     void checkTransfers() {
         // scan database for previously unfinished transfers
         if (shouldScan && networkInfoReceiver.isNetworkConnected() && s3 != null) {
-            loadTransfersFromDB();
+            // cleared first, as transfers deferred during the scan set it again
             shouldScan = false;
+            loadTransfersFromDB();
         }
         removeCompletedTransfers();
 
@@ -267,6 +287,8 @@ public class TransferService extends Service {
 
         final String action = intent.getAction();
         final int id = intent.getIntExtra(INTENT_BUNDLE_TRANSFER_ID, 0);
+        threadPool = getThreadPool((TransferUtilityOptions) intent
+                .getSerializableExtra(INTENT_BUNDLE_TRANSFER_UTILITY_OPTIONS));
 
         if (id == 0) {
             Log.e(TAG, "Invalid id: " + id);
@@ -284,7 +306,7 @@ public class TransferService extends Service {
                 final TransferRecord transfer = dbUtil.getTransferById(id);
                 if (transfer != null) {
                     updater.addTransfer(transfer);
-                    transfer.start(s3, dbUtil, updater, networkInfoReceiver);
+                    startTransfer(transfer);
                 } else {
                     Log.e(TAG, "Can't find transfer: " + id);
                 }
@@ -307,7 +329,7 @@ public class TransferService extends Service {
                     Log.e(TAG, "Can't find transfer: " + id);
                 }
             }
-            transfer.start(s3, dbUtil, updater, networkInfoReceiver);
+            startTransfer(transfer);
         } else if (INTENT_ACTION_TRANSFER_CANCEL.equals(action)) {
             TransferRecord transfer = updater.getTransfer(id);
             if (transfer == null) {
@@ -367,6 +389,9 @@ public class TransferService extends Service {
      */
     void loadTransfersFromDB() {
         Log.d(TAG, "Loading transfers from database");
+        if (threadPool == null) {
+            threadPool = getThreadPool(null);
+        }
         final Cursor c = dbUtil.queryAllTransfersWithType(TransferType.ANY);
         int count = 0;
         try {
@@ -383,14 +408,14 @@ public class TransferService extends Service {
                     if (updater.getTransfer(id) == null) {
                         final TransferRecord transfer = new TransferRecord(id);
                         transfer.updateFromDB(c);
-                        if (transfer.start(s3, dbUtil, updater, networkInfoReceiver)) {
+                        if (startTransfer(transfer)) {
                             updater.addTransfer(transfer);
                             count++;
                         }
                     } else {
                         final TransferRecord transfer = updater.getTransfer(id);
                         if (!transfer.isRunning()) {
-                            transfer.start(s3, dbUtil, updater, networkInfoReceiver);
+                            startTransfer(transfer);
                         }
                     }
                 }
@@ -401,6 +426,43 @@ public class TransferService extends Service {
         Log.d(TAG, count + " transfers are loaded from database");
     }
 
+    /**
+     * Starts a transfer on the current thread pool. If the transfer queue is
+     * full, the transfer stays in database and a scan is scheduled to start it
+     * later.
+     *
+     * @param transfer the transfer to start
+     * @return true if the transfer is started, false otherwise
+     */
+    boolean startTransfer(TransferRecord transfer) {
+        try {
+            return transfer.start(s3, dbUtil, updater, networkInfoReceiver, threadPool);
+        } catch (final RejectedExecutionException ree) {
+            Log.d(TAG, "Transfer queue is full, deferring transfer " + transfer.id);
+            shouldScan = true;
+            updateHandler.sendEmptyMessageDelayed(MSG_CHECK, DEFERRED_SCAN_DELAY_MILLIS);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the thread pool for the given options, creating it if needed.
+     *
+     * @param options options of a transfer utility, or null for the defaults
+     * @return the thread pool
+     */
+    private TransferThreadPool getThreadPool(TransferUtilityOptions options) {
+        if (options == null) {
+            options = new TransferUtilityOptions();
+        }
+        TransferThreadPool pool = threadPools.get(options);
+        if (pool == null) {
+            pool = new TransferThreadPool(options);
+            threadPools.put(options, pool);
+        }
+        return pool;
+    }
+
     /**
      * Pause all running transfers and set state to WAITING_FOR_NETWORK.
      */
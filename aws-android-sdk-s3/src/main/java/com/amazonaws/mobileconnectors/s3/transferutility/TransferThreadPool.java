@@ -15,48 +15,165 @@
 
 package com.amazonaws.mobileconnectors.s3.transferutility;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * The threads that run the transfers of {@link TransferUtility} instances
+ * with the same {@link TransferUtilityOptions}. Transfers run on the main
+ * threads, and the parts of multipart transfers on the part threads. Both
+ * queues are bounded: a full transfer queue rejects new transfers, and a full
+ * part queue blocks the transfer that submits parts until there is room.
+ */
 class TransferThreadPool {
 
-    private static ExecutorService executorMainTask;
-    private static ExecutorService executorPartTask;
+    private final ThreadPoolExecutor executorMainTask;
+    private final ThreadPoolExecutor executorPartTask;
 
-    private synchronized static void init() {
-        int processors = Runtime.getRuntime().availableProcessors();
-        if (executorMainTask == null) {
-            executorMainTask = buildExecutor(processors + 1);
-        }
-        if (executorPartTask == null) {
-            executorPartTask = buildExecutor(processors + 1);
+    /*
+     * Limits the parts that are running or queued. The part queue itself is
+     * unbounded, as the number of part threads may change.
+     */
+    private final Semaphore partPermits;
+
+    /*
+     * Adjusts the number of part threads, or null if it's fixed.
+     */
+    private final PartConcurrencyController partConcurrencyController;
+
+    /**
+     * Constructs a TransferThreadPool.
+     *
+     * @param options the options of the thread pool
+     */
+    TransferThreadPool(TransferUtilityOptions options) {
+        executorMainTask = buildExecutor(options.getMainConcurrency(),
+                new ArrayBlockingQueue<Runnable>(options.getMainQueueCapacity()));
+        if (options.isAdaptivePartConcurrency()) {
+            partConcurrencyController = new PartConcurrencyController(
+                    options.getPartConcurrency(), System.nanoTime());
+            executorPartTask = buildExecutor(partConcurrencyController.getConcurrency(),
+                    new LinkedBlockingQueue<Runnable>());
+        } else {
+            partConcurrencyController = null;
+            executorPartTask = buildExecutor(options.getPartConcurrency(),
+                    new LinkedBlockingQueue<Runnable>());
         }
+        partPermits = new Semaphore(options.getPartConcurrency()
+                + options.getPartQueueCapacity());
     }
 
-    public static <T> Future<T> submitTask(Callable<T> c) {
-        init();
-        if (c instanceof UploadPartTask) {
-            return executorPartTask.submit(c);
-        } else {
-            return executorMainTask.submit(c);
+    /**
+     * Submits a transfer task.
+     *
+     * @param c the transfer task
+     * @return a future of the result of the task
+     * @throws RejectedExecutionException if the transfer queue is full. The
+     *             transfer remains in the database and can be submitted
+     *             again later.
+     */
+    <T> Future<T> submitTask(Callable<T> c) {
+        return executorMainTask.submit(c);
+    }
+
+    /**
+     * Submits a part of a multipart transfer. Blocks while the part queue is
+     * full.
+     *
+     * @param c the part task, which returns false when it's interrupted
+     * @param bytes the size of the part
+     * @return a future of the result of the task
+     * @throws InterruptedException if interrupted while waiting for room in
+     *             the part queue
+     */
+    Future<Boolean> submitPartTask(Callable<Boolean> c, long bytes)
+            throws InterruptedException {
+        partPermits.acquire();
+        final PartFutureTask task = new PartFutureTask(c, bytes);
+        try {
+            executorPartTask.execute(task);
+        } catch (RejectedExecutionException e) {
+            partPermits.release();
+            throw e;
         }
+        return task;
+    }
+
+    /**
+     * @return the current number of part threads
+     */
+    int getPartConcurrency() {
+        return executorPartTask.getMaximumPoolSize();
     }
 
-    public static void closeThreadPool() {
+    /**
+     * Shuts down the threads, interrupting the running tasks.
+     */
+    void shutdown() {
         shutdown(executorPartTask);
-        executorPartTask = null;
         shutdown(executorMainTask);
-        executorMainTask = null;
     }
 
-    private static void shutdown(ExecutorService executor) {
-        if (executor == null) {
+    private void onPartFinished(long bytes, boolean failed) {
+        if (partConcurrencyController == null) {
             return;
         }
+        final int concurrency = partConcurrencyController.onPartFinished(bytes, failed,
+                System.nanoTime());
+        synchronized (executorPartTask) {
+            // grow the maximum first and shrink the core first to keep core
+            // <= maximum
+            if (concurrency > executorPartTask.getMaximumPoolSize()) {
+                executorPartTask.setMaximumPoolSize(concurrency);
+                executorPartTask.setCorePoolSize(concurrency);
+            } else if (concurrency < executorPartTask.getMaximumPoolSize()) {
+                executorPartTask.setCorePoolSize(concurrency);
+                executorPartTask.setMaximumPoolSize(concurrency);
+            }
+        }
+    }
+
+    /**
+     * A part task that releases its permit when it's done, including when
+     * it's canceled before it runs, and reports its outcome.
+     */
+    private final class PartFutureTask extends FutureTask<Boolean> {
+        PartFutureTask(final Callable<Boolean> c, final long bytes) {
+            super(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    boolean failed = true;
+                    try {
+                        final Boolean result = c.call();
+                        failed = false;
+                        if (result) {
+                            onPartFinished(bytes, false);
+                        }
+                        return result;
+                    } finally {
+                        if (failed && !Thread.currentThread().isInterrupted()) {
+                            onPartFinished(bytes, true);
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        protected void done() {
+            partPermits.release();
+        }
+    }
+
+    private static void shutdown(ThreadPoolExecutor executor) {
         // Attempt to shutdown executor
         executor.shutdown();
         try {
@@ -71,19 +188,14 @@ class TransferThreadPool {
         }
     }
 
-    private static ExecutorService buildExecutor(int maxThreadsAllowed) {
+    private static ThreadPoolExecutor buildExecutor(int maxThreadsAllowed,
+            BlockingQueue<Runnable> queue) {
         /*
          * Create a bounded thread pool for executing transfers; it creates
          * threads as needed (up to maximum) and reclaims them when finished.
          */
         final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreadsAllowed,
-                maxThreadsAllowed, 10, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>());
-        /*
-         * It's safe to discard tasks, as they are saved in database and will be
-         * recovered on next database scan.
-         */
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+                maxThreadsAllowed, 10, TimeUnit.SECONDS, queue);
         executor.allowCoreThreadTimeOut(true);
         return executor;
     }
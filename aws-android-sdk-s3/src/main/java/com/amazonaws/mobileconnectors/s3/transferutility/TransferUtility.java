@@ -94,9 +94,16 @@ public class TransferUtility {
      */
     static final int MINIMUM_UPLOAD_PART_SIZE = 5 * MB;
 
+    /**
+     * Default minimum part size for download parts. Anything below this will
+     * use a single download
+     */
+    static final int MINIMUM_DOWNLOAD_PART_SIZE = 5 * MB;
+
     private final AmazonS3 s3;
     private final Context appContext;
     private final TransferDBUtil dbUtil;
+    private final TransferUtilityOptions options;
 
     /**
      * Constructs a new TransferUtility specifying the client to use and
@@ -105,12 +112,27 @@ public class TransferUtility {
      *
      * @param s3 The client to use when making requests to Amazon S3
      * @param context The current context
-     * @param configuration Configuration parameters for this TransferUtility
      */
     public TransferUtility(AmazonS3 s3, Context context) {
+        this(s3, context, new TransferUtilityOptions());
+    }
+
+    /**
+     * Constructs a new TransferUtility specifying the client to use and the
+     * options of the threads that run its transfers.
+     *
+     * @param s3 The client to use when making requests to Amazon S3
+     * @param context The current context
+     * @param options Options of the threads that run the transfers
+     */
+    public TransferUtility(AmazonS3 s3, Context context, TransferUtilityOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException("options can't be null");
+        }
         this.s3 = s3;
         this.appContext = context.getApplicationContext();
         this.dbUtil = new TransferDBUtil(appContext);
+        this.options = new TransferUtilityOptions(options);
     }
 
     /**
@@ -429,6 +451,7 @@ public class TransferUtility {
         intent.setAction(action);
         intent.putExtra(TransferService.INTENT_BUNDLE_TRANSFER_ID, id);
         intent.putExtra(TransferService.INTENT_BUNDLE_S3_REFERENCE_KEY, s3Key);
+        intent.putExtra(TransferService.INTENT_BUNDLE_TRANSFER_UTILITY_OPTIONS, options);
         appContext.startService(intent);
     }
 
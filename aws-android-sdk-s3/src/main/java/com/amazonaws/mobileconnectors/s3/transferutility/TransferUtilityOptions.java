@@ -0,0 +1,213 @@
+/**
+ * Copyright 2015-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import java.io.Serializable;
+
+/**
+ * Allows configuration of the threads {@link TransferService} uses to run the
+ * transfers of a {@link TransferUtility}, such as the number of concurrent
+ * transfers and the number of concurrent parts of multipart transfers.
+ * TransferUtility instances with equal options share the same threads.
+ */
+public class TransferUtilityOptions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of transfers that are queued when all the transfer
+     * threads are busy.
+     */
+    static final int DEFAULT_MAIN_QUEUE_CAPACITY = 1000;
+
+    /**
+     * Default number of parts that are queued when all the part threads are
+     * busy.
+     */
+    static final int DEFAULT_PART_QUEUE_CAPACITY = 100;
+
+    private int mainConcurrency = defaultConcurrency();
+    private int partConcurrency = defaultConcurrency();
+    private int mainQueueCapacity = DEFAULT_MAIN_QUEUE_CAPACITY;
+    private int partQueueCapacity = DEFAULT_PART_QUEUE_CAPACITY;
+    private boolean adaptivePartConcurrency = false;
+
+    /**
+     * Construct an instance of TransferUtilityOptions which has default
+     * values of mainConcurrency and partConcurrency = the number of processors
+     * + 1, mainQueueCapacity = 1000, partQueueCapacity = 100 and adaptive part
+     * concurrency disabled.
+     */
+    public TransferUtilityOptions() {
+    }
+
+    /**
+     * Creates a copy of the passed in TransferUtilityOptions
+     *
+     * @param other the TransferUtilityOptions to copy.
+     */
+    public TransferUtilityOptions(TransferUtilityOptions other) {
+        this.mainConcurrency = other.getMainConcurrency();
+        this.partConcurrency = other.getPartConcurrency();
+        this.mainQueueCapacity = other.getMainQueueCapacity();
+        this.partQueueCapacity = other.getPartQueueCapacity();
+        this.adaptivePartConcurrency = other.isAdaptivePartConcurrency();
+    }
+
+    /**
+     * Sets the maximum number of transfers that run concurrently. A multipart
+     * transfer counts as one, its parts run on the part threads.
+     *
+     * @param mainConcurrency the maximum number of concurrent transfers
+     * @return This class for chaining
+     */
+    public TransferUtilityOptions withMainConcurrency(int mainConcurrency) {
+        if (mainConcurrency < 1) {
+            throw new IllegalArgumentException("mainConcurrency must be at least 1");
+        }
+        this.mainConcurrency = mainConcurrency;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of transfers that run concurrently.
+     */
+    public int getMainConcurrency() {
+        return this.mainConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of parts of multipart uploads and downloads that
+     * are transferred concurrently. Transfers are I/O bound, so a value larger
+     * than the number of processors usually pays off on a fast network. With
+     * adaptive part concurrency, this is the upper limit.
+     *
+     * @param partConcurrency the maximum number of concurrent parts
+     * @return This class for chaining
+     */
+    public TransferUtilityOptions withPartConcurrency(int partConcurrency) {
+        if (partConcurrency < 1) {
+            throw new IllegalArgumentException("partConcurrency must be at least 1");
+        }
+        this.partConcurrency = partConcurrency;
+        return this;
+    }
+
+    /**
+     * @return The maximum number of parts that are transferred concurrently.
+     */
+    public int getPartConcurrency() {
+        return this.partConcurrency;
+    }
+
+    /**
+     * Sets the number of transfers that are queued when all the transfer
+     * threads are busy. Transfers beyond that aren't dropped; they stay in the
+     * database and are started when there is room again.
+     *
+     * @param mainQueueCapacity the capacity of the transfer queue
+     * @return This class for chaining
+     */
+    public TransferUtilityOptions withMainQueueCapacity(int mainQueueCapacity) {
+        if (mainQueueCapacity < 1) {
+            throw new IllegalArgumentException("mainQueueCapacity must be at least 1");
+        }
+        this.mainQueueCapacity = mainQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @return The number of transfers that are queued when all the transfer
+     *         threads are busy.
+     */
+    public int getMainQueueCapacity() {
+        return this.mainQueueCapacity;
+    }
+
+    /**
+     * Sets the number of parts that are queued when all the part threads are
+     * busy. A multipart transfer that has more parts waits for room in the
+     * queue before it submits the rest.
+     *
+     * @param partQueueCapacity the capacity of the part queue
+     * @return This class for chaining
+     */
+    public TransferUtilityOptions withPartQueueCapacity(int partQueueCapacity) {
+        if (partQueueCapacity < 1) {
+            throw new IllegalArgumentException("partQueueCapacity must be at least 1");
+        }
+        this.partQueueCapacity = partQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @return The number of parts that are queued when all the part threads
+     *         are busy.
+     */
+    public int getPartQueueCapacity() {
+        return this.partQueueCapacity;
+    }
+
+    /**
+     * Sets whether the number of concurrent parts adapts to the network. When
+     * enabled, it starts at half of partConcurrency and is raised while
+     * throughput improves, and lowered when throughput drops or parts fail.
+     *
+     * @param adaptivePartConcurrency whether part concurrency is adaptive
+     * @return This class for chaining
+     */
+    public TransferUtilityOptions withAdaptivePartConcurrency(boolean adaptivePartConcurrency) {
+        this.adaptivePartConcurrency = adaptivePartConcurrency;
+        return this;
+    }
+
+    /**
+     * @return Whether the number of concurrent parts adapts to the network.
+     */
+    public boolean isAdaptivePartConcurrency() {
+        return this.adaptivePartConcurrency;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TransferUtilityOptions)) {
+            return false;
+        }
+        TransferUtilityOptions other = (TransferUtilityOptions) obj;
+        return mainConcurrency == other.mainConcurrency
+                && partConcurrency == other.partConcurrency
+                && mainQueueCapacity == other.mainQueueCapacity
+                && partQueueCapacity == other.partQueueCapacity
+                && adaptivePartConcurrency == other.adaptivePartConcurrency;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mainConcurrency;
+        result = 31 * result + partConcurrency;
+        result = 31 * result + mainQueueCapacity;
+        result = 31 * result + partQueueCapacity;
+        result = 31 * result + (adaptivePartConcurrency ? 1 : 0);
+        return result;
+    }
+
+    private static int defaultConcurrency() {
+        return Runtime.getRuntime().availableProcessors() + 1;
+    }
+}
@@ -50,14 +50,17 @@ class UploadTask implements Callable<Boolean> {
     private final TransferDBUtil dbUtil;
     private final TransferStatusUpdater updater;
     private final NetworkInfoReceiver networkInfo;
+    private final TransferThreadPool threadPool;
 
     public UploadTask(TransferRecord uploadInfo, AmazonS3 s3, TransferDBUtil dbUtil,
-            TransferStatusUpdater updater, NetworkInfoReceiver networkInfo) {
+            TransferStatusUpdater updater, NetworkInfoReceiver networkInfo,
+            TransferThreadPool threadPool) {
         this.upload = uploadInfo;
         this.s3 = s3;
         this.dbUtil = dbUtil;
         this.updater = updater;
         this.networkInfo = networkInfo;
+        this.threadPool = threadPool;
     }
 
     /*
@@ -123,12 +126,14 @@ class UploadTask implements Callable<Boolean> {
                 upload.multipartId);
         Log.d(TAG, "multipart upload " + upload.id + " in " + requestList.size() + " parts.");
         ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
-        for (UploadPartRequest request : requestList) {
-            TransferUtility.appendMultipartTransferServiceUserAgentString(request);
-            request.setGeneralProgressListener(updater.newProgressListener(upload.id));
-            futures.add(TransferThreadPool.submitTask(new UploadPartTask(request, s3, dbUtil)));
-        }
         try {
+            for (UploadPartRequest request : requestList) {
+                TransferUtility.appendMultipartTransferServiceUserAgentString(request);
+                request.setGeneralProgressListener(updater.newProgressListener(upload.id));
+                // blocks while the part queue is full
+                futures.add(threadPool.submitPartTask(new UploadPartTask(request, s3, dbUtil),
+                        request.getPartSize()));
+            }
             boolean isSuccess = true;
             /*
              * Future.get() will block the current thread until the method
@@ -1576,23 +1576,11 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
             // Always set the content length, even if it's already set
             metadata.setContentLength(file.length());
 
-            final boolean calculateMD5 = metadata.getContentMD5() == null;
-
             // Only set the content type if it hasn't already been set
             if (metadata.getContentType() == null) {
                 metadata.setContentType(Mimetypes.getInstance().getMimetype(file));
             }
 
-            if (calculateMD5 && !skipContentMd5Check) {
-                try {
-                    String contentMd5_b64 = Md5Utils.md5AsBase64(file);
-                    metadata.setContentMD5(contentMd5_b64);
-                } catch (Exception e) {
-                    throw new AmazonClientException(
-                            "Unable to calculate MD5 hash: " + e.getMessage(), e);
-                }
-            }
-
             try {
                 input = new RepeatableFileInputStream(file);
             } catch (FileNotFoundException fnfe) {
@@ -1603,6 +1591,23 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
         Request<PutObjectRequest> request = createRequest(bucketName, key, putObjectRequest,
                 HttpMethodName.PUT);
 
+        /*
+         * With SigV4 the payload is signed chunk by chunk as it's sent, and
+         * S3 rejects a corrupted chunk, so the file is read only once and its
+         * MD5 is calculated on the fly below. Otherwise the file is read an
+         * extra time up front for the Content-MD5 header.
+         */
+        if (putObjectRequest.getFile() != null && metadata.getContentMD5() == null
+                && !skipContentMd5Check && !isPayloadChunkSigned(request, bucketName, key)) {
+            try {
+                String contentMd5_b64 = Md5Utils.md5AsBase64(putObjectRequest.getFile());
+                metadata.setContentMD5(contentMd5_b64);
+            } catch (Exception e) {
+                throw new AmazonClientException(
+                        "Unable to calculate MD5 hash: " + e.getMessage(), e);
+            }
+        }
+
         if (putObjectRequest.getAccessControlList() != null) {
             addAclHeaders(request, putObjectRequest.getAccessControlList());
         } else if (putObjectRequest.getCannedAcl() != null) {
@@ -3764,6 +3769,15 @@ public class AmazonS3Client extends AmazonWebServiceClient implements AmazonS3 {
         return signer;
     }
 
+    /**
+     * Returns whether the payload of the request will be signed chunk by
+     * chunk with aws-chunked encoding, which makes S3 verify the integrity of
+     * the payload as it's received.
+     */
+    private boolean isPayloadChunkSigned(Request<?> request, String bucketName, String key) {
+        return createSigner(request, bucketName, key) instanceof AWSS3V4Signer;
+    }
+
     private boolean upgradeToSigV4(Request<?> request) {
 
         // User has said to always use SigV4 - this will fail if the user
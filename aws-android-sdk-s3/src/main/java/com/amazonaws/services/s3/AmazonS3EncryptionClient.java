@@ -31,6 +31,7 @@ import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
 import com.amazonaws.services.s3.model.CopyPartRequest;
 import com.amazonaws.services.s3.model.CopyPartResult;
 import com.amazonaws.services.s3.model.CryptoConfiguration;
+import com.amazonaws.services.s3.model.CryptoMode;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
 import com.amazonaws.services.s3.model.EncryptedInitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.EncryptedPutObjectRequest;
@@ -64,6 +65,7 @@ public class AmazonS3EncryptionClient extends AmazonS3Client {
     public static final String USER_AGENT = AmazonS3EncryptionClient.class.getName()
             + "/" + VersionInfoUtils.getVersion();
     private final S3CryptoModule<?> crypto;
+    private final boolean parallelMultipartUploadEnabled;
 
     // ///////////////////// Constructors ////////////////
     /**
@@ -388,6 +390,21 @@ public class AmazonS3EncryptionClient extends AmazonS3Client {
         this.crypto = new CryptoModuleDispatcher(new S3DirectImpl(),
                 credentialsProvider, kekMaterialsProvider,
                 clientConfig, cryptoConfig);
+        CryptoMode cryptoMode = cryptoConfig.getCryptoMode();
+        this.parallelMultipartUploadEnabled = cryptoConfig.isParallelMultipartUploadEnabled()
+                && cryptoMode != null && cryptoMode != CryptoMode.EncryptionOnly;
+    }
+
+    /**
+     * Returns true if the parts of a multipart upload made with this client
+     * can be uploaded in parallel, which requires an authenticated encryption
+     * crypto mode and parallel multipart uploads to be enabled in the crypto
+     * configuration; false otherwise.
+     *
+     * @see CryptoConfiguration#setParallelMultipartUploadEnabled(boolean)
+     */
+    public boolean isParallelMultipartUploadEnabled() {
+        return parallelMultipartUploadEnabled;
     }
 
     private void assertParameterNotNull(Object parameterValue,
@@ -463,7 +480,8 @@ public class AmazonS3EncryptionClient extends AmazonS3Client {
      * N-1 in order to encrypt block N, parts uploaded with the
      * AmazonS3EncryptionClient (as opposed to the normal AmazonS3Client) must
      * be uploaded serially, and in order. Otherwise, the previous encryption
-     * context isn't available to use when encrypting the current part.
+     * context isn't available to use when encrypting the current part. See
+     * {@link #isParallelMultipartUploadEnabled()} for lifting this restriction.
      */
     @Override
     public UploadPartResult uploadPart(UploadPartRequest uploadPartRequest)
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import com.amazonaws.internal.SdkFilterInputStream;
+import com.amazonaws.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream wrapper that replaces carriage return (\r) characters of an XML
+ * document with explicit XML character entities as the document is read, to
+ * prevent the SAX parser from misinterpreting 0x0D characters as 0x0A. The
+ * document is expected to be UTF-8 encoded, where the byte 0x0D only occurs as
+ * a carriage return.
+ */
+public class CarriageReturnEscapingInputStream extends SdkFilterInputStream {
+
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte[] ESCAPED_CARRIAGE_RETURN = "&#013;"
+            .getBytes(StringUtils.UTF8);
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+
+    /**
+     * The position in the escape sequence being written, equal to its length
+     * when there is none.
+     */
+    private int escapePos = ESCAPED_CARRIAGE_RETURN.length;
+
+    public CarriageReturnEscapingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int result = read(b, 0, 1);
+        return result == -1 ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            if (escapePos < ESCAPED_CARRIAGE_RETURN.length) {
+                b[off + n++] = ESCAPED_CARRIAGE_RETURN[escapePos++];
+                continue;
+            }
+            if (bufferPos == bufferLimit) {
+                // don't block for more data once some is available
+                if (n > 0) {
+                    break;
+                }
+                int read = super.read(buffer, 0, buffer.length);
+                if (read == -1) {
+                    return -1;
+                }
+                bufferPos = 0;
+                bufferLimit = read;
+            }
+            int end = bufferPos + Math.min(len - n, bufferLimit - bufferPos);
+            int i = bufferPos;
+            while (i < end && buffer[i] != CARRIAGE_RETURN) {
+                i++;
+            }
+            System.arraycopy(buffer, bufferPos, b, off + n, i - bufferPos);
+            n += i - bufferPos;
+            bufferPos = i;
+            if (i < end) {
+                // skip the carriage return and write its escape sequence
+                bufferPos++;
+                escapePos = 0;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] skipBuffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(0, n))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return ESCAPED_CARRIAGE_RETURN.length - escapePos + bufferLimit - bufferPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -215,6 +215,18 @@ public final class CipherLiteInputStream extends SdkFilterInputStream {
             return -1;
         bufout = null;
         int len = in.read(bufin);
+        // A cipher may hold back its output, such as a decrypting cipher that
+        // withholds the plaintext until the tag is verified, so keep feeding
+        // it rather than counting each empty output as a failed attempt.
+        while (len > 0) {
+            bufout = cipherLite.update(bufin, 0, len);
+            if (bufout != null && bufout.length > 0) {
+                curr_pos = 0;
+                return max_pos = bufout.length;
+            }
+            abortIfNeeded();
+            len = in.read(bufin);
+        }
         if (len == -1) {
             eof = true;
             // Skip doFinal if it's a multi-part upload but not the last part
@@ -237,9 +249,8 @@ public final class CipherLiteInputStream extends SdkFilterInputStream {
             }
             return -1;
         }
-        bufout = cipherLite.update(bufin, 0, len);
         curr_pos = 0;
-        return max_pos = (bufout == null ? 0 : bufout.length);
+        return max_pos = 0;
     }
 
 }
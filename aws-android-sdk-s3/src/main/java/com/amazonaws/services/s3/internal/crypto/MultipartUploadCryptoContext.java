@@ -15,8 +15,20 @@
 
 package com.amazonaws.services.s3.internal.crypto;
 
+import com.amazonaws.AmazonClientException;
+
 final class MultipartUploadCryptoContext extends MultipartUploadContext {
     private final ContentCryptoMaterial cekMaterial;
+    /**
+     * The number of the last part encrypted, when parts are encrypted before
+     * being uploaded in parallel.
+     */
+    private int lastPartNumber;
+    /**
+     * True if a part failed to be encrypted, leaving the cipher unusable for
+     * the following parts.
+     */
+    private boolean encryptionFailed;
 
     MultipartUploadCryptoContext(String bucketName, String key,
             ContentCryptoMaterial cekMaterial) {
@@ -39,4 +51,46 @@ final class MultipartUploadCryptoContext extends MultipartUploadContext {
     ContentCryptoMaterial getContentCryptoMaterial() {
         return cekMaterial;
     }
+
+    /**
+     * Waits until all the parts before the given one have been encrypted, so
+     * the cipher is positioned at the beginning of the given part. Parts must
+     * be numbered consecutively from one.
+     *
+     * @throws AmazonClientException if a previous part failed to be
+     *             encrypted, or if the given part has already been encrypted.
+     */
+    synchronized void beginPartEncryption(int partNumber) {
+        if (partNumber <= lastPartNumber) {
+            throw new AmazonClientException("Part " + partNumber
+                    + " has already been encrypted; parts must be numbered consecutively from one");
+        }
+        while (!encryptionFailed && partNumber != lastPartNumber + 1) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                endPartEncryption(partNumber, false);
+                throw new AmazonClientException(
+                        "Interrupted while waiting to encrypt part " + partNumber, e);
+            }
+        }
+        if (encryptionFailed) {
+            throw new AmazonClientException("Unable to encrypt part " + partNumber
+                    + " since a previous part failed to be encrypted");
+        }
+    }
+
+    /**
+     * Signals that the given part has been encrypted, letting the next part be
+     * encrypted if it succeeded, and failing all the following parts
+     * otherwise.
+     */
+    synchronized void endPartEncryption(int partNumber, boolean succeeded) {
+        if (succeeded)
+            lastPartNumber = partNumber;
+        else
+            encryptionFailed = true;
+        notifyAll();
+    }
 }
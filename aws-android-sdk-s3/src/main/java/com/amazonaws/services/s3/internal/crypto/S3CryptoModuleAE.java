@@ -409,7 +409,10 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
      * previous blocks, parts uploaded with the AmazonS3EncryptionClient (as
      * opposed to the normal AmazonS3Client) must be uploaded serially, and in
      * order. Otherwise, the previous encryption context isn't available to use
-     * when encrypting the current part.
+     * when encrypting the current part. If parallel multipart uploads are
+     * enabled in the crypto configuration, each part is instead encrypted into
+     * a temporary file, in order, before it is uploaded, so only the
+     * encryption is serialized.
      */
     @Override
     public UploadPartResult uploadPartSecurely(UploadPartRequest req)
@@ -436,27 +439,101 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
                     "No client-side information available on upload ID " + uploadId);
         }
 
-        CipherLite cipherLite = uploadContext.getCipherLite();
-        req.setInputStream(newMultipartS3CipherInputStream(req, cipherLite));
-        // Treat all encryption requests as input stream upload requests, not as
-        // file upload requests.
-        req.setFile(null);
-        req.setFileOffset(0);
-        // The last part of the multipart upload will contain an extra 16-byte
-        // mac
-        if (req.isLastPart()) {
-            // We only change the size of the last part
-            req.setPartSize(partSize + (contentCryptoScheme.getTagLengthInBits() / 8));
-            if (uploadContext.hasFinalPartBeenSeen()) {
-                throw new AmazonClientException(
-                        "This part was specified as the last part in a multipart upload, but a previous part was already marked as the last part.  "
-                                + "Only the last part of the upload should be marked as the last part.");
+        File encryptedPart = null;
+        try {
+            if (cryptoConfig.isParallelMultipartUploadEnabled()) {
+                // Encrypt the part up front so that the upload itself no
+                // longer depends on the previous parts.
+                encryptedPart = encryptPartToFile(req, uploadContext);
+                req.setInputStream(null);
+                req.setFile(encryptedPart);
+                req.setFileOffset(0);
+                req.setPartSize(encryptedPart.length());
+            } else {
+                CipherLite cipherLite = uploadContext.getCipherLite();
+                req.setInputStream(newMultipartS3CipherInputStream(req, cipherLite));
+                // Treat all encryption requests as input stream upload
+                // requests, not as file upload requests.
+                req.setFile(null);
+                req.setFileOffset(0);
+            }
+            // The last part of the multipart upload will contain an extra
+            // 16-byte mac
+            if (req.isLastPart()) {
+                // We only change the size of the last part, unless it has
+                // already been measured from the encrypted part
+                if (encryptedPart == null)
+                    req.setPartSize(partSize + (contentCryptoScheme.getTagLengthInBits() / 8));
+                if (uploadContext.hasFinalPartBeenSeen()) {
+                    throw new AmazonClientException(
+                            "This part was specified as the last part in a multipart upload, but a previous part was already marked as the last part.  "
+                                    + "Only the last part of the upload should be marked as the last part.");
+                }
+                uploadContext.setHasFinalPartBeenSeen(true);
+            }
+
+            UploadPartResult result = s3.uploadPart(req);
+            return result;
+        } finally {
+            if (encryptedPart != null && !encryptedPart.delete()) {
+                log.debug("Unable to delete encrypted part " + encryptedPart);
             }
-            uploadContext.setHasFinalPartBeenSeen(true);
         }
+    }
 
-        UploadPartResult result = s3.uploadPart(req);
-        return result;
+    /**
+     * Encrypts a part into a temporary file once all the previous parts of the
+     * upload have been encrypted.
+     *
+     * @return The temporary file containing the encrypted part, which the
+     *         caller is responsible for deleting.
+     */
+    private File encryptPartToFile(UploadPartRequest req,
+            MultipartUploadCryptoContext uploadContext) {
+        final int partNumber = req.getPartNumber();
+        uploadContext.beginPartEncryption(partNumber);
+        boolean succeeded = false;
+        File encryptedPart = null;
+        OutputStream outputStream = null;
+        CipherLiteInputStream cipherInputStream = null;
+        try {
+            encryptedPart = File.createTempFile("s3-encrypted-part-", ".tmp");
+            outputStream = new BufferedOutputStream(new FileOutputStream(encryptedPart));
+            cipherInputStream = newMultipartS3CipherInputStream(req,
+                    uploadContext.getCipherLite());
+            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = cipherInputStream.read(buffer)) > -1) {
+                outputStream.write(buffer, 0, bytesRead);
+            }
+            outputStream.close();
+            succeeded = true;
+            return encryptedPart;
+        } catch (IOException e) {
+            throw new AmazonClientException("Unable to encrypt part " + partNumber
+                    + ": " + e.getMessage(), e);
+        } finally {
+            uploadContext.endPartEncryption(partNumber, succeeded);
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    log.debug(e.getMessage());
+                }
+            }
+            // Only close the file opened for the part; a caller supplied
+            // stream is left to the caller as for serial uploads
+            if (cipherInputStream != null && req.getFile() != null) {
+                try {
+                    cipherInputStream.close();
+                } catch (IOException e) {
+                    log.debug(e.getMessage());
+                }
+            }
+            if (!succeeded && encryptedPart != null && !encryptedPart.delete()) {
+                log.debug("Unable to delete encrypted part " + encryptedPart);
+            }
+        }
     }
 
     protected final CipherLiteInputStream newMultipartS3CipherInputStream(
@@ -540,9 +617,15 @@ class S3CryptoModuleAE extends S3CryptoModuleBase<MultipartUploadCryptoContext>
     private S3ObjectWrapper decrypt(S3ObjectWrapper wrapper,
             ContentCryptoMaterial cekMaterial, long[] range) {
         S3ObjectInputStream objectContent = wrapper.getObjectContent();
+        CipherLite cipherLite = cekMaterial.getCipherLite();
+        final int window = cryptoConfig.getStreamingDecryptionWindow();
+        if (window > 0 && range == null
+                && cipherLite.getContentCryptoScheme() == ContentCryptoScheme.AES_GCM) {
+            cipherLite = new StreamingGCMCipherLite(cipherLite, window);
+        }
         wrapper.setObjectContent(new S3ObjectInputStream(
-                new CipherLiteInputStream(objectContent, cekMaterial
-                        .getCipherLite(), DEFAULT_BUFFER_SIZE), objectContent
+                new CipherLiteInputStream(objectContent, cipherLite,
+                        DEFAULT_BUFFER_SIZE), objectContent
                         .getHttpRequest()));
         return wrapper;
     }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+
+/**
+ * An AES/GCM decrypting {@link CipherLite} that uses a bounded amount of
+ * memory regardless of the size of the ciphertext.
+ * <p>
+ * Some security providers buffer the entire ciphertext of an AES/GCM
+ * decryption until the tag can be verified. Instead, this cipher lite decrypts
+ * the ciphertext with AES/CTR, which produces the same plaintext as AES/GCM,
+ * and verifies the tag by re-encrypting the plaintext with AES/GCM and
+ * comparing the resulting tag with the one at the end of the ciphertext.
+ * <p>
+ * Up to <code>window</code> bytes of plaintext are held back until the tag has
+ * been verified, so content that fits in the window is never released
+ * unauthenticated. Beyond the window the plaintext is released as it is
+ * decrypted, and a tag mismatch is reported at the end of the stream.
+ *
+ * @see GCMCipherLite
+ */
+final class StreamingGCMCipherLite extends CipherLite {
+    private static final int TAG_LENGTH = ContentCryptoScheme.AES_GCM
+            .getTagLengthInBits() / 8;
+    /** The AES/CTR cipher decrypting the ciphertext. */
+    private final CipherLite decipher;
+    /** The AES/GCM cipher re-encrypting the plaintext to compute the tag. */
+    private final CipherLite verifier;
+    /** The maximum number of bytes of plaintext held back. */
+    private final int window;
+    /**
+     * The last bytes of ciphertext seen so far, which are the tag if no more
+     * ciphertext follows.
+     */
+    private final byte[] tail = new byte[TAG_LENGTH];
+    private int tailLength;
+    /**
+     * The plaintext held back until the tag is verified, or null once the
+     * plaintext has outgrown the window.
+     */
+    private ByteArrayOutputStream held = new ByteArrayOutputStream();
+    /**
+     * True if doFinal has been called; false otherwise.
+     */
+    private boolean doneFinal;
+
+    /**
+     * @param cipherLite an AES/GCM cipher lite in decryption mode, which
+     *            provides the key and IV.
+     * @param window the maximum number of bytes of plaintext held back until
+     *            the tag is verified.
+     */
+    StreamingGCMCipherLite(CipherLite cipherLite, int window) {
+        super(cipherLite.getCipher(), ContentCryptoScheme.AES_GCM,
+                cipherLite.getSecretKey(), Cipher.DECRYPT_MODE);
+        if (cipherLite.getCipherMode() != Cipher.DECRYPT_MODE
+                || cipherLite.getContentCryptoScheme() != ContentCryptoScheme.AES_GCM) {
+            throw new IllegalArgumentException(
+                    "Expecting an AES/GCM cipher lite in decryption mode");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window (" + window
+                    + ") must be positive");
+        }
+        this.window = window;
+        try {
+            // the plaintext starts at the beginning of the counter stream
+            this.decipher = cipherLite.createAuxiliary(0);
+            this.verifier = cipherLite.createInverse();
+        } catch (Exception e) {
+            throw ((e instanceof RuntimeException)
+                    ? (RuntimeException) e
+                    : new IllegalStateException(e));
+        }
+    }
+
+    @Override
+    byte[] update(byte[] input, int inputOffset, int inputLen) {
+        if (doneFinal)
+            throw new IllegalStateException("doFinal has been called");
+        int total = tailLength + inputLen;
+        if (total <= TAG_LENGTH) {
+            System.arraycopy(input, inputOffset, tail, tailLength, inputLen);
+            tailLength = total;
+            return null;
+        }
+        // Everything but the last TAG_LENGTH bytes is known to be ciphertext
+        byte[] ciphertext = new byte[total];
+        System.arraycopy(tail, 0, ciphertext, 0, tailLength);
+        System.arraycopy(input, inputOffset, ciphertext, tailLength, inputLen);
+        int len = total - TAG_LENGTH;
+        System.arraycopy(ciphertext, len, tail, 0, TAG_LENGTH);
+        tailLength = TAG_LENGTH;
+        return release(decrypt(ciphertext, len), false);
+    }
+
+    @Override
+    byte[] doFinal() throws IllegalBlockSizeException, BadPaddingException {
+        if (doneFinal)
+            throw new IllegalStateException("doFinal has been called");
+        doneFinal = true;
+        if (tailLength < TAG_LENGTH)
+            throw new BadPaddingException("Ciphertext is shorter than the tag");
+        byte[] last = decipher.doFinal();
+        if (last != null && last.length > 0)
+            verifier.update(last, 0, last.length);
+        byte[] encrypted = verifier.doFinal();
+        byte[] tag = new byte[TAG_LENGTH];
+        System.arraycopy(encrypted, encrypted.length - TAG_LENGTH, tag, 0, TAG_LENGTH);
+        if (!MessageDigest.isEqual(tag, tail)) {
+            held = null;
+            throw new BadPaddingException("Tag mismatch");
+        }
+        return release(last, true);
+    }
+
+    @Override
+    byte[] doFinal(byte[] input) throws IllegalBlockSizeException,
+            BadPaddingException {
+        return doFinal(input, 0, input.length);
+    }
+
+    @Override
+    byte[] doFinal(byte[] input, int inputOffset, int inputLen)
+            throws IllegalBlockSizeException, BadPaddingException {
+        byte[] out = update(input, inputOffset, inputLen);
+        byte[] last = doFinal();
+        if (out == null)
+            return last;
+        if (last == null)
+            return out;
+        byte[] result = new byte[out.length + last.length];
+        System.arraycopy(out, 0, result, 0, out.length);
+        System.arraycopy(last, 0, result, out.length, last.length);
+        return result;
+    }
+
+    /**
+     * Decrypts the first <code>len</code> bytes of the ciphertext and feeds the
+     * plaintext to the verifier.
+     */
+    private byte[] decrypt(byte[] ciphertext, int len) {
+        byte[] plaintext = decipher.update(ciphertext, 0, len);
+        if (plaintext != null && plaintext.length > 0)
+            verifier.update(plaintext, 0, plaintext.length);
+        return plaintext;
+    }
+
+    /**
+     * Returns the plaintext that can be released, holding it back while it
+     * still fits in the window and the tag is not yet verified.
+     */
+    private byte[] release(byte[] plaintext, boolean verified) {
+        if (held == null)
+            return plaintext;
+        if (plaintext != null)
+            held.write(plaintext, 0, plaintext.length);
+        if (!verified && held.size() <= window)
+            return null;
+        byte[] out = held.toByteArray();
+        held = null;
+        return out;
+    }
+
+    @Override
+    int getOutputSize(int inputLen) {
+        return (held == null ? 0 : held.size()) + tailLength + inputLen;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import com.amazonaws.AmazonClientException;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An iterator over the summaries of listing pages that are fetched ahead by
+ * background threads, one thread per prefix. The pages of all the prefixes
+ * are merged in the order they arrive. At most the given number of pages wait
+ * in the buffer; a thread with a page and no room in the buffer waits until
+ * the iterator catches up. A thread gives up when the iterator is garbage
+ * collected before it's drained.
+ *
+ * @param <P> the type of a listing page
+ * @param <T> the type of a summary
+ */
+class PrefetchingIterator<P, T> implements Iterator<T> {
+
+    /**
+     * The maximum number of threads listing prefixes at the same time, which
+     * matches the default size of the connection pool.
+     */
+    static final int MAX_LISTING_THREADS = 10;
+
+    private static final long OFFER_TIMEOUT_SECONDS = 1;
+
+    /**
+     * Fetches the pages of a listing.
+     *
+     * @param <P> the type of a listing page
+     * @param <T> the type of a summary
+     */
+    interface PageLister<P, T> {
+        /**
+         * Lists the first page of the given prefix.
+         */
+        P listFirstPage(String prefix);
+
+        /**
+         * Lists the page that follows the given one.
+         */
+        P listNextPage(P page);
+
+        /**
+         * Returns whether there are pages after the given one.
+         */
+        boolean isTruncated(P page);
+
+        /**
+         * Returns the summaries of the given page.
+         */
+        List<T> getSummaries(P page);
+    }
+
+    /** Marks the end of the pages of a prefix. */
+    private static final Object END_OF_PREFIX = new Object();
+
+    /** Carries the exception a listing thread failed with. */
+    private static final class Failure {
+        private final RuntimeException exception;
+
+        Failure(RuntimeException exception) {
+            this.exception = exception;
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName("s3-listing-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final PageLister<P, T> lister;
+    private final BlockingQueue<Object> buffer;
+    private final int prefixCount;
+    private int finishedPrefixes = 0;
+    private Iterator<T> currentIterator = null;
+
+    /**
+     * Starts listing the given prefixes in the background.
+     *
+     * @param lister fetches the pages
+     * @param prefixes the prefixes to list, which shouldn't overlap
+     * @param bufferedPages the maximum number of pages waiting to be iterated
+     */
+    PrefetchingIterator(PageLister<P, T> lister, List<String> prefixes, int bufferedPages) {
+        this.lister = lister;
+        this.prefixCount = prefixes.size();
+        this.buffer = new ArrayBlockingQueue<Object>(Math.max(1, bufferedPages));
+
+        if (prefixCount > 0) {
+            final WeakReference<PrefetchingIterator<P, T>> iteratorReference =
+                    new WeakReference<PrefetchingIterator<P, T>>(this);
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(prefixCount, MAX_LISTING_THREADS), THREAD_FACTORY);
+            for (String prefix : prefixes) {
+                executor.execute(new PrefixLister<P, T>(lister, prefix, buffer,
+                        iteratorReference));
+            }
+            // the threads finish once the prefixes are listed
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        prepareCurrentPage();
+        return currentIterator != null && currentIterator.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentIterator.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void prepareCurrentPage() {
+        while ((currentIterator == null || !currentIterator.hasNext())
+                && finishedPrefixes < prefixCount) {
+            final Object item;
+            try {
+                item = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while waiting for a listing page", e);
+            }
+            if (item == END_OF_PREFIX) {
+                finishedPrefixes++;
+            } else if (item instanceof Failure) {
+                // the other prefixes may still be listing, but the iteration
+                // can't be completed
+                finishedPrefixes = prefixCount;
+                throw ((Failure) item).exception;
+            } else {
+                currentIterator = lister.getSummaries((P) item).iterator();
+            }
+        }
+    }
+
+    /**
+     * Lists the pages of a prefix into the buffer. It doesn't hold on to the
+     * iterator, so that an abandoned iterator can be garbage collected.
+     */
+    private static final class PrefixLister<P, T> implements Runnable {
+        private final PageLister<P, T> lister;
+        private final String prefix;
+        private final BlockingQueue<Object> buffer;
+        private final WeakReference<PrefetchingIterator<P, T>> iteratorReference;
+
+        PrefixLister(PageLister<P, T> lister, String prefix, BlockingQueue<Object> buffer,
+                WeakReference<PrefetchingIterator<P, T>> iteratorReference) {
+            this.lister = lister;
+            this.prefix = prefix;
+            this.buffer = buffer;
+            this.iteratorReference = iteratorReference;
+        }
+
+        @Override
+        public void run() {
+            try {
+                P page = lister.listFirstPage(prefix);
+                if (!offer(page)) {
+                    return;
+                }
+                while (lister.isTruncated(page)) {
+                    page = lister.listNextPage(page);
+                    if (!offer(page)) {
+                        return;
+                    }
+                }
+                offer(END_OF_PREFIX);
+            } catch (RuntimeException e) {
+                try {
+                    offer(new Failure(e));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits for room in the buffer and adds the item.
+         *
+         * @return false if the iterator has been garbage collected
+         */
+        private boolean offer(Object item) throws InterruptedException {
+            while (!buffer.offer(item, OFFER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                if (iteratorReference.get() == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
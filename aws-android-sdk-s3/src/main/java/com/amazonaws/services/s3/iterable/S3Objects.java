@@ -20,7 +20,11 @@ import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Provides an easy way to iterate Amazon S3 objects in a "foreach" statement.
@@ -34,7 +38,11 @@ import java.util.Iterator;
  * <p>
  * The list of {@link S3ObjectSummary}s will be fetched lazily, a page at a
  * time, as they are needed. The size of the page can be controlled with the
- * {@link S3Objects#withBatchSize(int)} method.
+ * {@link S3Objects#withBatchSize(int)} method. With
+ * {@link S3Objects#withPrefetch(int)}, the next pages are fetched in the
+ * background while the current one is iterated, and
+ * {@link S3Objects#withPrefixes(AmazonS3, String, Collection)} lists several
+ * prefixes in parallel.
  */
 public class S3Objects implements Iterable<S3ObjectSummary> {
 
@@ -42,6 +50,8 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
     private String prefix = null;
     private String bucketName;
     private Integer batchSize = null;
+    private List<String> prefixes = null;
+    private int prefetchPages = 0;
 
     private S3Objects(AmazonS3 s3, String bucketName) {
         this.s3 = s3;
@@ -75,6 +85,46 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
         return objects;
     }
 
+    /**
+     * Constructs an iterable that covers the objects in an Amazon S3 bucket
+     * where the key begins with any of the given prefixes. The prefixes are
+     * listed in parallel, and the objects are returned in the order their
+     * pages arrive, not in key order. The prefixes shouldn't overlap, or the
+     * objects under more than one of them are returned more than once. Unless
+     * set with {@link #withPrefetch(int)}, one page per prefix is buffered.
+     *
+     * @param s3 The Amazon S3 client.
+     * @param bucketName The bucket name.
+     * @param prefixes The prefixes.
+     * @return An iterator for object summaries.
+     */
+    public static S3Objects withPrefixes(AmazonS3 s3, String bucketName,
+            Collection<String> prefixes) {
+        if (prefixes == null || prefixes.isEmpty()) {
+            throw new IllegalArgumentException("At least one prefix must be specified");
+        }
+        S3Objects objects = new S3Objects(s3, bucketName);
+        objects.prefixes = Collections.unmodifiableList(new ArrayList<String>(prefixes));
+        objects.prefetchPages = prefixes.size();
+        return objects;
+    }
+
+    /**
+     * Sets the number of pages that are fetched ahead in the background while
+     * the objects of the current page are iterated. Fetching stops when that
+     * many pages are waiting, until the iteration catches up. Zero, the
+     * default for a single prefix, fetches a page only when it's needed.
+     *
+     * @param prefetchPages How many pages to fetch ahead.
+     */
+    public S3Objects withPrefetch(int prefetchPages) {
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("prefetchPages can't be negative");
+        }
+        this.prefetchPages = prefetchPages;
+        return this;
+    }
+
     /**
      * Sets the batch size, i.e., how many {@link S3ObjectSummary}s will be
      * fetched at once.
@@ -94,6 +144,17 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
         return prefix;
     }
 
+    /**
+     * @return The prefixes listed in parallel, or null for a single prefix.
+     */
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    public int getPrefetchPages() {
+        return prefetchPages;
+    }
+
     public String getBucketName() {
         return bucketName;
     }
@@ -145,8 +206,43 @@ public class S3Objects implements Iterable<S3ObjectSummary> {
 
     }
 
+    private class ObjectPageLister implements
+            PrefetchingIterator.PageLister<ObjectListing, S3ObjectSummary> {
+
+        @Override
+        public ObjectListing listFirstPage(String prefix) {
+            ListObjectsRequest req = new ListObjectsRequest();
+            req.setBucketName(getBucketName());
+            req.setPrefix(prefix);
+            req.setMaxKeys(getBatchSize());
+            return getS3().listObjects(req);
+        }
+
+        @Override
+        public ObjectListing listNextPage(ObjectListing page) {
+            return getS3().listNextBatchOfObjects(page);
+        }
+
+        @Override
+        public boolean isTruncated(ObjectListing page) {
+            return page.isTruncated();
+        }
+
+        @Override
+        public List<S3ObjectSummary> getSummaries(ObjectListing page) {
+            return page.getObjectSummaries();
+        }
+    }
+
     @Override
     public Iterator<S3ObjectSummary> iterator() {
+        if (prefixes != null) {
+            return new PrefetchingIterator<ObjectListing, S3ObjectSummary>(
+                    new ObjectPageLister(), prefixes, prefetchPages);
+        } else if (prefetchPages > 0) {
+            return new PrefetchingIterator<ObjectListing, S3ObjectSummary>(
+                    new ObjectPageLister(), Collections.singletonList(prefix), prefetchPages);
+        }
         return new S3ObjectIterator();
     }
 
@@ -20,7 +20,11 @@ import com.amazonaws.services.s3.model.ListVersionsRequest;
 import com.amazonaws.services.s3.model.S3VersionSummary;
 import com.amazonaws.services.s3.model.VersionListing;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Provides an easy way to iterate Amazon S3 object versions in a "foreach"
@@ -34,7 +38,11 @@ import java.util.Iterator;
  * <p>
  * The list of {@link S3VersionSummary}s will be fetched lazily, a page at a
  * time, as they are needed. The size of the page can be controlled with the
- * {@link S3Versions#withBatchSize(int)} method.
+ * {@link S3Versions#withBatchSize(int)} method. With
+ * {@link S3Versions#withPrefetch(int)}, the next pages are fetched in the
+ * background while the current one is iterated, and
+ * {@link S3Versions#withPrefixes(AmazonS3, String, Collection)} lists several
+ * prefixes in parallel.
  */
 public class S3Versions implements Iterable<S3VersionSummary> {
 
@@ -43,6 +51,8 @@ public class S3Versions implements Iterable<S3VersionSummary> {
     private String prefix;
     private String key;
     private Integer batchSize;
+    private List<String> prefixes;
+    private int prefetchPages;
 
     private S3Versions(AmazonS3 s3, String bucketName) {
         this.s3 = s3;
@@ -77,6 +87,31 @@ public class S3Versions implements Iterable<S3VersionSummary> {
         return versions;
     }
 
+    /**
+     * Constructs an iterable that covers the versions in an Amazon S3 bucket
+     * where the object key begins with any of the given prefixes. The
+     * prefixes are listed in parallel, and the versions are returned in the
+     * order their pages arrive, not in key order. The prefixes shouldn't
+     * overlap, or the versions under more than one of them are returned more
+     * than once. Unless set with {@link #withPrefetch(int)}, one page per
+     * prefix is buffered.
+     *
+     * @param s3 The Amazon S3 client.
+     * @param bucketName The bucket name.
+     * @param prefixes The prefixes.
+     * @return An iterator for object version summaries.
+     */
+    public static S3Versions withPrefixes(AmazonS3 s3, String bucketName,
+            Collection<String> prefixes) {
+        if (prefixes == null || prefixes.isEmpty()) {
+            throw new IllegalArgumentException("At least one prefix must be specified");
+        }
+        S3Versions versions = new S3Versions(s3, bucketName);
+        versions.prefixes = Collections.unmodifiableList(new ArrayList<String>(prefixes));
+        versions.prefetchPages = prefixes.size();
+        return versions;
+    }
+
     /**
      * Constructs an iterable that covers the versions of a single Amazon S3
      * object.
@@ -92,6 +127,23 @@ public class S3Versions implements Iterable<S3VersionSummary> {
         return versions;
     }
 
+    /**
+     * Sets the number of pages that are fetched ahead in the background while
+     * the versions of the current page are iterated. Fetching stops when that
+     * many pages are waiting, until the iteration catches up. Zero, the
+     * default for a single prefix or key, fetches a page only when it's
+     * needed.
+     *
+     * @param prefetchPages How many pages to fetch ahead.
+     */
+    public S3Versions withPrefetch(int prefetchPages) {
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("prefetchPages can't be negative");
+        }
+        this.prefetchPages = prefetchPages;
+        return this;
+    }
+
     /**
      * Sets the batch size, i.e., how many {@link S3VersionSummary}s will be
      * fetched at once.
@@ -115,6 +167,17 @@ public class S3Versions implements Iterable<S3VersionSummary> {
         return key;
     }
 
+    /**
+     * @return The prefixes listed in parallel, or null for a single prefix.
+     */
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    public int getPrefetchPages() {
+        return prefetchPages;
+    }
+
     public AmazonS3 getS3() {
         return s3;
     }
@@ -189,8 +252,64 @@ public class S3Versions implements Iterable<S3VersionSummary> {
 
     }
 
+    private class VersionPageLister implements
+            PrefetchingIterator.PageLister<VersionListing, S3VersionSummary> {
+
+        @Override
+        public VersionListing listFirstPage(String prefix) {
+            ListVersionsRequest req = new ListVersionsRequest();
+            req.setBucketName(getBucketName());
+            req.setPrefix(prefix);
+            req.setMaxResults(getBatchSize());
+            return getS3().listVersions(req);
+        }
+
+        @Override
+        public VersionListing listNextPage(VersionListing page) {
+            return getS3().listNextBatchOfVersions(page);
+        }
+
+        @Override
+        public boolean isTruncated(VersionListing page) {
+            if (getKey() != null) {
+                // versions are sorted by key, so there are no more versions of
+                // the key after another key
+                for (S3VersionSummary summary : page.getVersionSummaries()) {
+                    if (!summary.getKey().equals(getKey())) {
+                        return false;
+                    }
+                }
+            }
+            return page.isTruncated();
+        }
+
+        @Override
+        public List<S3VersionSummary> getSummaries(VersionListing page) {
+            if (getKey() == null) {
+                return page.getVersionSummaries();
+            }
+            List<S3VersionSummary> summaries = new ArrayList<S3VersionSummary>();
+            for (S3VersionSummary summary : page.getVersionSummaries()) {
+                if (!summary.getKey().equals(getKey())) {
+                    break;
+                }
+                summaries.add(summary);
+            }
+            return summaries;
+        }
+    }
+
     @Override
     public Iterator<S3VersionSummary> iterator() {
+        if (prefixes != null) {
+            return new PrefetchingIterator<VersionListing, S3VersionSummary>(
+                    new VersionPageLister(), prefixes, prefetchPages);
+        } else if (prefetchPages > 0) {
+            return new PrefetchingIterator<VersionListing, S3VersionSummary>(
+                    new VersionPageLister(),
+                    Collections.singletonList(getKey() != null ? getKey() : getPrefix()),
+                    prefetchPages);
+        }
         return new VersionIterator();
     }
 
@@ -31,6 +31,8 @@ public class CryptoConfiguration {
     private CryptoMode cryptoMode;
     private CryptoStorageMode storageMode;
     private Provider cryptoProvider;
+    private int streamingDecryptionWindow;
+    private boolean parallelMultipartUploadEnabled;
 
     /**
      * Creates a new CryptoConfiguration object with default storage mode and
@@ -159,6 +161,100 @@ public class CryptoConfiguration {
         return this;
     }
 
+    /**
+     * Sets the size of the window used to decrypt objects encrypted with
+     * authenticated encryption in a bounded amount of memory; or zero, the
+     * default, to let the crypto provider decrypt them.
+     * <p>
+     * Some crypto providers buffer the whole object before verifying its
+     * authentication tag. With a positive window, the object is instead
+     * decrypted as it is read, holding back at most this many bytes of
+     * plaintext until the tag at the end of the object is verified. Objects
+     * larger than the window are returned before their tag is verified, and a
+     * {@link SecurityException} is thrown at the end of the object content if
+     * the verification fails.
+     *
+     * @param streamingDecryptionWindow the maximum number of bytes of plaintext
+     *            held back until the tag is verified, or zero to disable
+     *            streaming decryption.
+     * @throws IllegalArgumentException if the window is negative.
+     */
+    public void setStreamingDecryptionWindow(int streamingDecryptionWindow) {
+        if (streamingDecryptionWindow < 0)
+            throw new IllegalArgumentException(
+                    "The streaming decryption window must not be negative");
+        this.streamingDecryptionWindow = streamingDecryptionWindow;
+    }
+
+    /**
+     * Fluent API to set the size of the window used to decrypt objects
+     * encrypted with authenticated encryption in a bounded amount of memory.
+     *
+     * @param streamingDecryptionWindow the maximum number of bytes of plaintext
+     *            held back until the tag is verified, or zero to disable
+     *            streaming decryption.
+     * @return The updated CryptoConfiguration object.
+     * @see #setStreamingDecryptionWindow(int)
+     */
+    public CryptoConfiguration withStreamingDecryptionWindow(int streamingDecryptionWindow) {
+        setStreamingDecryptionWindow(streamingDecryptionWindow);
+        return this;
+    }
+
+    /**
+     * Returns the size of the window used to decrypt objects encrypted with
+     * authenticated encryption in a bounded amount of memory, or zero if
+     * streaming decryption is disabled.
+     *
+     * @see #setStreamingDecryptionWindow(int)
+     */
+    public int getStreamingDecryptionWindow() {
+        return streamingDecryptionWindow;
+    }
+
+    /**
+     * Sets whether the parts of a multipart upload encrypted with
+     * authenticated encryption may be uploaded in parallel; applicable only to
+     * the authenticated encryption crypto modes.
+     * <p>
+     * When enabled, each part is encrypted into a temporary file before it is
+     * uploaded. The parts are still encrypted in order, one after the other,
+     * but the uploads can overlap, such as in the
+     * <code>TransferManager</code>. Parts must be numbered consecutively from
+     * one, and each part waits for the previous one to be encrypted.
+     *
+     * @param parallelMultipartUploadEnabled true to allow the parts to be
+     *            uploaded in parallel.
+     */
+    public void setParallelMultipartUploadEnabled(boolean parallelMultipartUploadEnabled) {
+        this.parallelMultipartUploadEnabled = parallelMultipartUploadEnabled;
+    }
+
+    /**
+     * Fluent API to set whether the parts of a multipart upload encrypted with
+     * authenticated encryption may be uploaded in parallel.
+     *
+     * @param parallelMultipartUploadEnabled true to allow the parts to be
+     *            uploaded in parallel.
+     * @return The updated CryptoConfiguration object.
+     * @see #setParallelMultipartUploadEnabled(boolean)
+     */
+    public CryptoConfiguration withParallelMultipartUploadEnabled(
+            boolean parallelMultipartUploadEnabled) {
+        this.parallelMultipartUploadEnabled = parallelMultipartUploadEnabled;
+        return this;
+    }
+
+    /**
+     * Returns whether the parts of a multipart upload encrypted with
+     * authenticated encryption may be uploaded in parallel.
+     *
+     * @see #setParallelMultipartUploadEnabled(boolean)
+     */
+    public boolean isParallelMultipartUploadEnabled() {
+        return parallelMultipartUploadEnabled;
+    }
+
     /**
      * Checks if the crypto mode is supported by the runtime.
      *
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.event.ProgressListenerChain;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileTransferMonitor;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.MultipleFileUploadImpl;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.TransferStateChangeListener;
+import com.amazonaws.mobileconnectors.s3.transfermanager.internal.UploadImpl;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DirectoryTransferTest {
+
+    private AmazonS3 s3;
+    private TransferManager tm;
+    private File directory;
+    private final Set<String> uploadedKeys = Collections.synchronizedSet(new HashSet<String>());
+
+    @Before
+    public void setup() throws IOException {
+        s3 = mock(AmazonS3.class);
+        tm = new TransferManager(s3);
+        directory = File.createTempFile("directory-transfer", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        tm.shutdownNow(false);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private File createFile(String path, int size) throws IOException {
+        File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        return file;
+    }
+
+    /**
+     * Records the uploaded keys, waiting on the given latch while the given
+     * number of uploads are in flight.
+     */
+    private void stubPutObject(final CountDownLatch latch, final AtomicInteger inFlight,
+            final AtomicInteger maxInFlight) {
+        when(s3.putObject(any(PutObjectRequest.class))).thenAnswer(new Answer<PutObjectResult>() {
+            @Override
+            public PutObjectResult answer(InvocationOnMock invocation) throws Exception {
+                int count = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), count));
+                }
+                try {
+                    latch.await();
+                    uploadedKeys.add(((PutObjectRequest) invocation.getArguments()[0]).getKey());
+                    return new PutObjectResult();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testUploadDirectory() throws Exception {
+        createFile("a.txt", 10);
+        createFile("sub/b.txt", 20);
+        createFile("sub/deeper/c.txt", 30);
+        stubPutObject(new CountDownLatch(0), new AtomicInteger(), new AtomicInteger());
+
+        MultipleFileUpload upload = tm.uploadDirectory("bucket", "prefix", directory, true);
+        upload.waitForCompletion();
+
+        assertEquals(TransferState.Completed, upload.getState());
+        assertEquals(new HashSet<String>(Arrays.asList("prefix/a.txt", "prefix/sub/b.txt",
+                "prefix/sub/deeper/c.txt")), uploadedKeys);
+        assertEquals(3, upload.getSubTransfers().size());
+        assertEquals(60, upload.getProgress().getTotalBytesToTransfer());
+    }
+
+    @Test
+    public void testUploadDirectoryWithoutSubdirectories() throws Exception {
+        createFile("a.txt", 10);
+        createFile("sub/b.txt", 20);
+        stubPutObject(new CountDownLatch(0), new AtomicInteger(), new AtomicInteger());
+
+        MultipleFileUpload upload = tm.uploadDirectory("bucket", null, directory, false);
+        upload.waitForCompletion();
+
+        assertEquals(TransferState.Completed, upload.getState());
+        assertEquals(Collections.singleton("a.txt"), uploadedKeys);
+    }
+
+    @Test
+    public void testUploadEmptyDirectory() throws Exception {
+        MultipleFileUpload upload = tm.uploadDirectory("bucket", "prefix", directory, true);
+        upload.waitForCompletion();
+
+        assertEquals(TransferState.Completed, upload.getState());
+        assertTrue(upload.getSubTransfers().isEmpty());
+        assertEquals(0, upload.getProgress().getTotalBytesToTransfer());
+    }
+
+    @Test
+    public void testUploadConcurrencyIsBounded() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            createFile("file" + i, 1);
+        }
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setDirectoryTransferConcurrency(2);
+        configuration.setDirectoryTransferQueueSize(1);
+        tm.setConfiguration(configuration);
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        stubPutObject(latch, inFlight, maxInFlight);
+
+        MultipleFileUpload upload = tm.uploadDirectory("bucket", "", directory, false);
+        long deadline = System.currentTimeMillis() + 1000;
+        while (inFlight.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(2, inFlight.get());
+        assertEquals(TransferState.InProgress, upload.getState());
+
+        latch.countDown();
+        upload.waitForCompletion();
+        assertEquals(TransferState.Completed, upload.getState());
+        assertEquals(20, uploadedKeys.size());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void testUploadNullFileListUploadsNothing() throws Exception {
+        createFile("a.txt", 10);
+        stubPutObject(new CountDownLatch(0), new AtomicInteger(), new AtomicInteger());
+
+        MultipleFileUpload upload = tm.uploadFileList("bucket", "prefix", directory, null);
+        upload.waitForCompletion();
+
+        assertEquals(TransferState.Completed, upload.getState());
+        assertTrue(upload.getSubTransfers().isEmpty());
+        assertTrue(uploadedKeys.isEmpty());
+        verify(s3, never()).putObject(any(PutObjectRequest.class));
+    }
+
+    /**
+     * The walk stops when the transfer is canceled before the dispatcher
+     * starts, instead of waiting for the full queue forever.
+     */
+    @Test
+    public void testCancelBeforeDispatchStopsWalk() throws Exception {
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setDirectoryTransferQueueSize(1);
+        Collection<UploadImpl> uploads = new ConcurrentLinkedQueue<UploadImpl>();
+        TransferProgress progress = new TransferProgress();
+        MultipleFileUploadImpl upload = new MultipleFileUploadImpl("upload", progress,
+                new ProgressListenerChain(), "", "bucket", uploads);
+        final CountDownLatch walked = new CountDownLatch(1);
+        final AtomicBoolean addFailed = new AtomicBoolean(false);
+        DirectoryTransferPipeline<File, UploadImpl> pipeline = new DirectoryTransferPipeline<File, UploadImpl>(
+                upload, progress, uploads, configuration) {
+            @Override
+            protected void walk() throws InterruptedException {
+                try {
+                    for (int i = 0; i < 5; i++) {
+                        if (!add(new File("file" + i), 1)) {
+                            addFailed.set(true);
+                            return;
+                        }
+                    }
+                } finally {
+                    walked.countDown();
+                }
+            }
+
+            @Override
+            protected UploadImpl startTransfer(File file,
+                    TransferStateChangeListener listener) {
+                throw new AssertionError("no transfer should start");
+            }
+        };
+        upload.setMonitor(new MultipleFileTransferMonitor(upload, uploads,
+                pipeline.getQueueingFuture()));
+
+        pipeline.getQueueingFuture().cancel(true);
+        pipeline.start();
+
+        assertTrue(walked.await(5, TimeUnit.SECONDS));
+        assertTrue(addFailed.get());
+        assertEquals(TransferState.Canceled, upload.getState());
+    }
+
+    /**
+     * The first file is uploaded while the rest of the files are still being
+     * walked.
+     */
+    @Test
+    public void testUploadStartsBeforeWalkIsDone() throws Exception {
+        final File first = createFile("first", 1);
+        final File second = createFile("second", 1);
+        final CountDownLatch firstUploaded = new CountDownLatch(1);
+        when(s3.putObject(any(PutObjectRequest.class))).thenAnswer(new Answer<PutObjectResult>() {
+            @Override
+            public PutObjectResult answer(InvocationOnMock invocation) throws Exception {
+                uploadedKeys.add(((PutObjectRequest) invocation.getArguments()[0]).getKey());
+                firstUploaded.countDown();
+                return new PutObjectResult();
+            }
+        });
+        List<File> files = new AbstractList<File>() {
+            @Override
+            public File get(int index) {
+                if (index == 0) {
+                    return first;
+                }
+                try {
+                    if (!firstUploaded.await(5, TimeUnit.SECONDS)) {
+                        fail("the first file wasn't uploaded during the walk");
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return second;
+            }
+
+            @Override
+            public int size() {
+                return 2;
+            }
+        };
+
+        MultipleFileUpload upload = tm.uploadFileList("bucket", "", directory, files);
+        upload.waitForCompletion();
+
+        assertEquals(TransferState.Completed, upload.getState());
+        assertEquals(new HashSet<String>(Arrays.asList("first", "second")), uploadedKeys);
+    }
+
+    @Test
+    public void testWalkFailureFailsTransfer() throws Exception {
+        List<File> files = new AbstractList<File>() {
+            @Override
+            public File get(int index) {
+                throw new IllegalStateException("walk failed");
+            }
+
+            @Override
+            public int size() {
+                return 1;
+            }
+        };
+
+        MultipleFileUpload upload = tm.uploadFileList("bucket", "", directory, files);
+        try {
+            upload.waitForCompletion();
+            fail("the walk failure should be thrown");
+        } catch (Exception e) {
+            assertEquals("walk failed", e.getCause().getMessage());
+        }
+        assertEquals(TransferState.Failed, upload.getState());
+    }
+
+    private static S3ObjectSummary summary(String key, long size) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName("bucket");
+        summary.setKey(key);
+        summary.setSize(size);
+        return summary;
+    }
+
+    private static ObjectListing listing(List<String> commonPrefixes,
+            S3ObjectSummary... summaries) {
+        ObjectListing listing = new ObjectListing();
+        listing.getObjectSummaries().addAll(Arrays.asList(summaries));
+        listing.setCommonPrefixes(commonPrefixes);
+        return listing;
+    }
+
+    @Test
+    public void testDownloadDirectory() throws Exception {
+        final byte[] content = "content".getBytes(StringUtils.UTF8);
+        when(s3.listObjects(any(ListObjectsRequest.class))).thenAnswer(
+                new Answer<ObjectListing>() {
+                    @Override
+                    public ObjectListing answer(InvocationOnMock invocation) {
+                        String prefix = ((ListObjectsRequest) invocation.getArguments()[0])
+                                .getPrefix();
+                        if ("photos/".equals(prefix)) {
+                            return listing(Arrays.asList("photos/2016/"),
+                                    summary("photos/a.jpg", content.length));
+                        }
+                        return listing(Collections.<String> emptyList(),
+                                summary("photos/2016/b.jpg", content.length));
+                    }
+                });
+        when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(
+                metadata(content));
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                S3Object object = new S3Object();
+                object.setObjectMetadata(metadata(content));
+                object.setObjectContent(new ByteArrayInputStream(content));
+                return object;
+            }
+        });
+
+        MultipleFileDownload download = tm.downloadDirectory("bucket", "photos/", directory);
+        download.waitForCompletion();
+
+        assertEquals(TransferState.Completed, download.getState());
+        assertEquals(2 * content.length, download.getProgress().getTotalBytesToTransfer());
+        assertEquals("content", FileUtils.readFileToString(new File(directory,
+                "photos/a.jpg")));
+        assertEquals("content", FileUtils.readFileToString(new File(directory,
+                "photos/2016/b.jpg")));
+    }
+
+    private static ObjectMetadata metadata(byte[] content) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.setHeader(Headers.ETAG, BinaryUtils.toHex(Md5Utils.computeMD5Hash(content)));
+        return metadata;
+    }
+
+    @Test
+    public void testDownloadListingFailureFailsTransfer() throws Exception {
+        when(s3.listObjects(any(ListObjectsRequest.class))).thenThrow(
+                new AmazonServiceException("listing failed"));
+
+        MultipleFileDownload download = tm.downloadDirectory("bucket", "photos/", directory);
+        try {
+            download.waitForCompletion();
+            fail("the listing failure should be thrown");
+        } catch (AmazonServiceException e) {
+            assertEquals("listing failed", e.getErrorMessage());
+        }
+        assertEquals(TransferState.Failed, download.getState());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.mobileconnectors.s3.transfermanager.Transfer.TransferState;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.CopyResult;
+import com.amazonaws.mobileconnectors.s3.transfermanager.model.UploadResult;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Checks that multi-part uploads and copies are completed as soon as their
+ * last part is done, rather than on the next poll of the transfer monitor.
+ */
+public class TransferMonitorLatencyTest {
+
+    private static final int PARTS = 4;
+    private static final int PART_SIZE = 256;
+    /** Well under the five second interval the monitors used to poll at. */
+    private static final long MAX_LATENCY_MILLIS = 2000;
+
+    private AmazonS3 s3;
+    private TransferManager tm;
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        s3 = mock(AmazonS3.class);
+        tm = new TransferManager(s3);
+        TransferManagerConfiguration configuration = new TransferManagerConfiguration();
+        configuration.setMultipartUploadThreshold(PART_SIZE);
+        configuration.setMinimumUploadPartSize(PART_SIZE);
+        configuration.setMultipartCopyThreshold(PART_SIZE);
+        configuration.setMultipartCopyPartSize(PART_SIZE);
+        tm.setConfiguration(configuration);
+
+        file = File.createTempFile("transfer-monitor", ".bin");
+        OutputStream out = new FileOutputStream(file);
+        out.write(new byte[PARTS * PART_SIZE]);
+        out.close();
+
+        InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId("uploadId");
+        when(s3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class)))
+                .thenReturn(initiateResult);
+        when(s3.listParts(any(ListPartsRequest.class))).thenReturn(new PartListing());
+        CompleteMultipartUploadResult completeResult = new CompleteMultipartUploadResult();
+        completeResult.setBucketName("bucket");
+        completeResult.setKey("key");
+        completeResult.setETag("etag");
+        when(s3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(completeResult);
+    }
+
+    @After
+    public void tearDown() {
+        tm.shutdownNow(false);
+        file.delete();
+    }
+
+    @Test
+    public void testUploadCompletesWhenLastPartIsDone() throws Exception {
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenAnswer(
+                new Answer<UploadPartResult>() {
+                    @Override
+                    public UploadPartResult answer(InvocationOnMock invocation) {
+                        UploadPartRequest request = (UploadPartRequest) invocation
+                                .getArguments()[0];
+                        UploadPartResult result = new UploadPartResult();
+                        result.setPartNumber(request.getPartNumber());
+                        result.setETag("etag" + request.getPartNumber());
+                        return result;
+                    }
+                });
+
+        long start = System.currentTimeMillis();
+        Upload upload = tm.upload("bucket", "key", file);
+        UploadResult result = upload.waitForUploadResult();
+        long latency = System.currentTimeMillis() - start;
+
+        assertEquals("etag", result.getETag());
+        assertEquals(TransferState.Completed, upload.getState());
+        verify(s3, times(PARTS)).uploadPart(any(UploadPartRequest.class));
+        assertTrue("upload took " + latency + " ms", latency < MAX_LATENCY_MILLIS);
+    }
+
+    @Test
+    public void testCopyCompletesWhenLastPartIsDone() throws Exception {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(PARTS * PART_SIZE);
+        when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(metadata);
+        when(s3.copyPart(any(CopyPartRequest.class))).thenAnswer(new Answer<CopyPartResult>() {
+            @Override
+            public CopyPartResult answer(InvocationOnMock invocation) {
+                CopyPartRequest request = (CopyPartRequest) invocation.getArguments()[0];
+                CopyPartResult result = new CopyPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag" + request.getPartNumber());
+                return result;
+            }
+        });
+
+        long start = System.currentTimeMillis();
+        Copy copy = tm.copy("sourceBucket", "sourceKey", "bucket", "key");
+        CopyResult result = copy.waitForCopyResult();
+        long latency = System.currentTimeMillis() - start;
+
+        assertEquals("etag", result.getETag());
+        assertEquals(TransferState.Completed, copy.getState());
+        verify(s3, times(PARTS)).copyPart(any(CopyPartRequest.class));
+        assertTrue("copy took " + latency + " ms", latency < MAX_LATENCY_MILLIS);
+    }
+
+    @Test
+    public void testUploadFailsWhenPartFails() throws Exception {
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenThrow(
+                new AmazonServiceException("part failed"));
+
+        long start = System.currentTimeMillis();
+        Upload upload = tm.upload("bucket", "key", file);
+        try {
+            upload.waitForUploadResult();
+            fail("the part failure should be thrown");
+        } catch (Exception e) {
+            // expected
+        }
+        long latency = System.currentTimeMillis() - start;
+
+        assertEquals(TransferState.Failed, upload.getState());
+        assertTrue("upload took " + latency + " ms", latency < MAX_LATENCY_MILLIS);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ *    http://aws.amazon.com/apache2.0
+ *
+ * This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES
+ * OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transfermanager.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PartCompletionTrackerTest {
+
+    private ExecutorService threadPool;
+    private PartCompletionTracker tracker;
+    private final AtomicInteger callbackCount = new AtomicInteger(0);
+    private final Runnable callback = new Runnable() {
+        @Override
+        public void run() {
+            callbackCount.incrementAndGet();
+        }
+    };
+
+    @Before
+    public void setup() {
+        threadPool = Executors.newFixedThreadPool(2);
+        tracker = new PartCompletionTracker();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    private static Callable<Integer> waitingPart(final CountDownLatch latch, final int result) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                latch.await();
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testCallbackRunsAfterLastPart() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Future<Integer> first = tracker.submit(threadPool, waitingPart(latch, 1));
+        Future<Integer> second = tracker.submit(threadPool, waitingPart(latch, 2));
+        tracker.allPartsSubmitted(callback);
+        assertEquals(0, callbackCount.get());
+
+        latch.countDown();
+        assertEquals(Integer.valueOf(1), first.get());
+        assertEquals(Integer.valueOf(2), second.get());
+        waitForCallback();
+        assertEquals(1, callbackCount.get());
+    }
+
+    @Test
+    public void testCallbackWaitsForAllPartsToBeSubmitted() throws Exception {
+        CountDownLatch latch = new CountDownLatch(0);
+        tracker.submit(threadPool, waitingPart(latch, 1)).get();
+        Thread.sleep(50);
+        assertEquals(0, callbackCount.get());
+
+        tracker.allPartsSubmitted(callback);
+        assertEquals(1, callbackCount.get());
+    }
+
+    @Test
+    public void testCallbackRunsWithoutParts() {
+        tracker.allPartsSubmitted(callback);
+        assertEquals(1, callbackCount.get());
+    }
+
+    @Test
+    public void testCanceledPartIsDone() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Future<Integer> part = tracker.submit(threadPool, waitingPart(latch, 1));
+        tracker.allPartsSubmitted(callback);
+
+        assertTrue(part.cancel(true));
+        assertEquals(1, callbackCount.get());
+    }
+
+    private void waitForCallback() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (callbackCount.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
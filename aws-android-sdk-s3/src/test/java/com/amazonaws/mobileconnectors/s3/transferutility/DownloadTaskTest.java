@@ -0,0 +1,359 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.mobileconnectors.s3.transferutility.TransferService.NetworkInfoReceiver;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DownloadTaskTest {
+
+    private static final int DOWNLOAD_ID = 1;
+    private static final String BUCKET = "bucket";
+    private static final String KEY = "key";
+    private static final String ETAG = "etag";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private AmazonS3 s3;
+    private TransferDBUtil dbUtil;
+    private TransferStatusUpdater updater;
+    private NetworkInfoReceiver networkInfo;
+    private TransferThreadPool threadPool;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        s3 = mock(AmazonS3.class);
+        dbUtil = mock(TransferDBUtil.class);
+        updater = mock(TransferStatusUpdater.class);
+        networkInfo = mock(NetworkInfoReceiver.class);
+        when(networkInfo.isNetworkConnected()).thenReturn(true);
+        threadPool = new TransferThreadPool(new TransferUtilityOptions());
+        file = new File(temp.getRoot(), "download");
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdown();
+    }
+
+    @Test
+    public void testSplitsIntoRangesWithShorterLastPart() throws Exception {
+        final long partSize = TransferUtility.MINIMUM_DOWNLOAD_PART_SIZE;
+        assertEquals(Arrays.asList(
+                Arrays.asList(0L, partSize - 1),
+                Arrays.asList(partSize, 2 * partSize - 1),
+                Arrays.asList(2 * partSize, 2 * partSize + 99)),
+                splitIntoRanges(2 * partSize + 100));
+    }
+
+    @Test
+    public void testSplitsIntoRangesWithOneByteLastPart() throws Exception {
+        final long partSize = TransferUtility.MINIMUM_DOWNLOAD_PART_SIZE;
+        assertEquals(Arrays.asList(
+                Arrays.asList(0L, partSize - 1),
+                Arrays.asList(partSize, 2 * partSize - 1),
+                Arrays.asList(2 * partSize, 2 * partSize)),
+                splitIntoRanges(2 * partSize + 1));
+    }
+
+    @Test
+    public void testSmallObjectIsNotSplit() throws Exception {
+        final byte[] data = randomBytes(100);
+        when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class)))
+                .thenReturn(metadata(data.length));
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(object(data));
+
+        assertTrue(newDownloadTask(download()).call());
+        assertArrayEquals(data, FileUtils.readFileToByteArray(file));
+        verify(dbUtil, never()).insertMultipartDownloadRecords(anyInt(), anyLong(),
+                anyString(), any(ContentValues[].class));
+    }
+
+    @Test
+    public void testPartsAreWrittenAtTheirPositions() throws Exception {
+        final byte[] data = randomBytes(100);
+        final TransferRecord download = multipartDownload(data.length);
+        when(dbUtil.queryPartRecords(DOWNLOAD_ID)).thenReturn(Arrays.asList(
+                part(2, 40, 79), part(1, 0, 39), part(3, 80, 99)));
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new RangeAnswer(data, ETAG));
+
+        assertTrue(newDownloadTask(download).call());
+        assertArrayEquals(data, FileUtils.readFileToByteArray(file));
+        verify(dbUtil, times(3)).updateState(anyInt(), eq(TransferState.PART_COMPLETED));
+        verify(updater).updateState(DOWNLOAD_ID, TransferState.COMPLETED);
+    }
+
+    @Test
+    public void testResumeDownloadsOnlyIncompleteParts() throws Exception {
+        final byte[] data = randomBytes(100);
+        // the first part is already in the file, the rest is not
+        final byte[] partial = new byte[data.length];
+        System.arraycopy(data, 0, partial, 0, 40);
+        FileUtils.writeByteArrayToFile(file, partial);
+
+        final TransferRecord completed = part(1, 0, 39);
+        completed.state = TransferState.PART_COMPLETED;
+        when(dbUtil.queryPartRecords(DOWNLOAD_ID)).thenReturn(Arrays.asList(
+                completed, part(2, 40, 79), part(3, 80, 99)));
+        final RangeAnswer answer = new RangeAnswer(data, ETAG);
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(answer);
+
+        assertTrue(newDownloadTask(multipartDownload(data.length)).call());
+        assertArrayEquals(data, FileUtils.readFileToByteArray(file));
+        assertEquals(new HashSet<Long>(Arrays.asList(40L, 80L)), answer.rangeStarts);
+        verify(updater).updateProgress(DOWNLOAD_ID, 40, data.length);
+    }
+
+    @Test
+    public void testResumeRestartsAllPartsIfFileIsGone() throws Exception {
+        final byte[] data = randomBytes(100);
+        final TransferRecord completed = part(1, 0, 39);
+        completed.state = TransferState.PART_COMPLETED;
+        when(dbUtil.queryPartRecords(DOWNLOAD_ID)).thenReturn(Arrays.asList(
+                completed, part(2, 40, 99)));
+        final RangeAnswer answer = new RangeAnswer(data, ETAG);
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(answer);
+
+        assertTrue(newDownloadTask(multipartDownload(data.length)).call());
+        assertArrayEquals(data, FileUtils.readFileToByteArray(file));
+        assertEquals(new HashSet<Long>(Arrays.asList(0L, 40L)), answer.rangeStarts);
+    }
+
+    @Test
+    public void testShortReadFailsPart() throws Exception {
+        final byte[] data = randomBytes(100);
+        FileUtils.writeByteArrayToFile(file, new byte[data.length]);
+        final TransferRecord part = part(2, 40, 79);
+        // the body ends 10 bytes early
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(
+                object(Arrays.copyOfRange(data, 40, 70)));
+
+        try {
+            new DownloadPartTask(part, ETAG, s3, dbUtil, null).call();
+            fail("a truncated part should fail");
+        } catch (AmazonClientException e) {
+            assertTrue(e.getMessage().contains("30 of 40 bytes"));
+        }
+        verify(dbUtil).updateState(part.id, TransferState.FAILED);
+        verify(dbUtil, never()).updateState(part.id, TransferState.PART_COMPLETED);
+    }
+
+    @Test
+    public void testShortReadFailsDownload() throws Exception {
+        final byte[] data = randomBytes(100);
+        when(dbUtil.queryPartRecords(DOWNLOAD_ID)).thenReturn(Arrays.asList(
+                part(1, 0, 39), part(2, 40, 99)));
+        when(s3.getObject(any(GetObjectRequest.class))).thenReturn(
+                object(Arrays.copyOfRange(data, 0, 10)));
+
+        assertFalse(newDownloadTask(multipartDownload(data.length)).call());
+        verify(updater).throwError(eq(DOWNLOAD_ID), any(AmazonClientException.class));
+        verify(updater).updateState(DOWNLOAD_ID, TransferState.FAILED);
+        verify(updater, never()).updateState(DOWNLOAD_ID, TransferState.COMPLETED);
+    }
+
+    @Test
+    public void testETagMismatchAbortsDownload() throws Exception {
+        final byte[] data = randomBytes(100);
+        when(dbUtil.queryPartRecords(DOWNLOAD_ID)).thenReturn(Arrays.asList(
+                part(1, 0, 39), part(2, 40, 99)));
+        // the object was overwritten after the download started
+        final RangeAnswer answer = new RangeAnswer(data, "modified");
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(answer);
+
+        assertFalse(newDownloadTask(multipartDownload(data.length)).call());
+        assertEquals(Collections.singletonList(ETAG), answer.eTagConstraints);
+        verify(updater).throwError(eq(DOWNLOAD_ID), any(AmazonClientException.class));
+        verify(updater).updateState(DOWNLOAD_ID, TransferState.FAILED);
+        verify(dbUtil, never()).updateState(anyInt(), eq(TransferState.PART_COMPLETED));
+    }
+
+    /**
+     * Starts a download of an object of the given size and returns the byte
+     * ranges of the part records it creates.
+     */
+    private List<List<Long>> splitIntoRanges(long bytesTotal) throws Exception {
+        when(s3.getObjectMetadata(any(GetObjectMetadataRequest.class)))
+                .thenReturn(metadata(bytesTotal));
+        when(dbUtil.insertMultipartDownloadRecords(eq(DOWNLOAD_ID), eq(bytesTotal), eq(ETAG),
+                any(ContentValues[].class))).thenAnswer(new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        return ((ContentValues[]) invocation.getArguments()[3]).length;
+                    }
+                });
+        when(dbUtil.queryPartRecords(DOWNLOAD_ID)).thenReturn(new ArrayList<TransferRecord>());
+
+        final TransferRecord download = download();
+        assertTrue(newDownloadTask(download).call());
+        assertEquals(1, download.isMultipart);
+        assertEquals(bytesTotal, download.bytesTotal);
+        assertEquals(bytesTotal, file.length());
+
+        final ArgumentCaptor<Integer> partNumbers = ArgumentCaptor.forClass(Integer.class);
+        final ArgumentCaptor<Long> rangeStarts = ArgumentCaptor.forClass(Long.class);
+        final ArgumentCaptor<Long> rangeLasts = ArgumentCaptor.forClass(Long.class);
+        final ArgumentCaptor<Integer> isLastParts = ArgumentCaptor.forClass(Integer.class);
+        verify(dbUtil, times(3)).generateContentValuesForMultiPartDownload(eq(download),
+                partNumbers.capture(), rangeStarts.capture(), rangeLasts.capture(),
+                isLastParts.capture());
+        assertEquals(Arrays.asList(1, 2, 3), partNumbers.getAllValues());
+        assertEquals(Arrays.asList(0, 0, 1), isLastParts.getAllValues());
+
+        final List<List<Long>> ranges = new ArrayList<List<Long>>();
+        for (int i = 0; i < rangeStarts.getAllValues().size(); i++) {
+            ranges.add(Arrays.asList(rangeStarts.getAllValues().get(i),
+                    rangeLasts.getAllValues().get(i)));
+        }
+        return ranges;
+    }
+
+    private DownloadTask newDownloadTask(TransferRecord download) {
+        return new DownloadTask(download, s3, dbUtil, updater, networkInfo, threadPool);
+    }
+
+    private TransferRecord download() {
+        final TransferRecord download = new TransferRecord(DOWNLOAD_ID);
+        download.type = TransferType.DOWNLOAD;
+        download.bucketName = BUCKET;
+        download.key = KEY;
+        download.file = file.getAbsolutePath();
+        return download;
+    }
+
+    private TransferRecord multipartDownload(long bytesTotal) {
+        final TransferRecord download = download();
+        download.isMultipart = 1;
+        download.bytesTotal = bytesTotal;
+        download.eTag = ETAG;
+        return download;
+    }
+
+    private TransferRecord part(int partNumber, long rangeStart, long rangeLast) {
+        final TransferRecord part = new TransferRecord(DOWNLOAD_ID + partNumber);
+        part.mainUploadId = DOWNLOAD_ID;
+        part.type = TransferType.DOWNLOAD;
+        part.partNumber = partNumber;
+        part.bucketName = BUCKET;
+        part.key = KEY;
+        part.file = file.getAbsolutePath();
+        part.rangeStart = rangeStart;
+        part.rangeLast = rangeLast;
+        part.bytesTotal = rangeLast - rangeStart + 1;
+        part.state = TransferState.WAITING;
+        return part;
+    }
+
+    private static ObjectMetadata metadata(long contentLength) {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(contentLength);
+        metadata.setHeader("ETag", ETAG);
+        return metadata;
+    }
+
+    private static S3Object object(byte[] data) {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        final S3Object object = new S3Object();
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new ByteArrayInputStream(data));
+        return object;
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Serves the requested byte range of an object with the given ETag, or
+     * null if the request's ETag constraint doesn't match, as S3 does.
+     */
+    private static class RangeAnswer implements Answer<S3Object> {
+        private final byte[] data;
+        private final String eTag;
+        final Set<Long> rangeStarts = Collections.synchronizedSet(new HashSet<Long>());
+        volatile List<String> eTagConstraints;
+
+        RangeAnswer(byte[] data, String eTag) {
+            this.data = data;
+            this.eTag = eTag;
+        }
+
+        @Override
+        public S3Object answer(InvocationOnMock invocation) {
+            final GetObjectRequest request = (GetObjectRequest) invocation.getArguments()[0];
+            eTagConstraints = request.getMatchingETagConstraints();
+            if (!eTagConstraints.isEmpty() && !eTagConstraints.contains(eTag)) {
+                return null;
+            }
+            final long[] range = request.getRange();
+            rangeStarts.add(range[0]);
+            return object(Arrays.copyOfRange(data, (int) range[0], (int) range[1] + 1));
+        }
+    }
+}
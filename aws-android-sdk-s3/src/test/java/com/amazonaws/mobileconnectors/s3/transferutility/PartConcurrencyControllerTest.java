@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class PartConcurrencyControllerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long PART_SIZE = 5L * 1024 * 1024;
+
+    private long now = 0;
+
+    /**
+     * Finishes a full window of parts that take the given time in total.
+     */
+    private int finishWindow(PartConcurrencyController controller, long windowNanos,
+            int failures) {
+        int parts = Math.max(2, controller.getConcurrency());
+        int concurrency = 0;
+        for (int i = 0; i < parts; i++) {
+            now += windowNanos / parts;
+            concurrency = controller.onPartFinished(PART_SIZE, i < failures, now);
+        }
+        return concurrency;
+    }
+
+    @Test
+    public void testStartsAtHalfOfMax() {
+        assertEquals(4, new PartConcurrencyController(8, now).getConcurrency());
+        assertEquals(1, new PartConcurrencyController(1, now).getConcurrency());
+    }
+
+    @Test
+    public void testRaisesWhileThroughputImproves() {
+        PartConcurrencyController controller = new PartConcurrencyController(8, now);
+        // every window of n parts takes one second, so throughput grows with n
+        assertEquals(5, finishWindow(controller, SECOND, 0));
+        assertEquals(6, finishWindow(controller, SECOND, 0));
+        assertEquals(7, finishWindow(controller, SECOND, 0));
+        assertEquals(8, finishWindow(controller, SECOND, 0));
+        // capped at the maximum
+        assertEquals(8, finishWindow(controller, SECOND, 0));
+    }
+
+    @Test
+    public void testHoldsOnPlateauAndTurnsAroundOnDrop() {
+        PartConcurrencyController controller = new PartConcurrencyController(8, now);
+        assertEquals(5, finishWindow(controller, SECOND, 0));
+        // 5 parts in 5/4 seconds is the same throughput as 4 parts in one
+        assertEquals(5, finishWindow(controller, SECOND * 5 / 4, 0));
+        // much slower window, back off
+        assertEquals(4, finishWindow(controller, SECOND * 3, 0));
+    }
+
+    @Test
+    public void testHalvesOnErrors() {
+        PartConcurrencyController controller = new PartConcurrencyController(16, now);
+        assertEquals(8, controller.getConcurrency());
+        assertEquals(4, finishWindow(controller, SECOND, 2));
+        assertEquals(2, finishWindow(controller, SECOND, 1));
+        assertEquals(1, finishWindow(controller, SECOND, 1));
+        assertEquals(1, finishWindow(controller, SECOND, 1));
+        // recovers once parts succeed again
+        assertEquals(2, finishWindow(controller, SECOND, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMax() {
+        new PartConcurrencyController(0, now);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.mobileconnectors.s3.transferutility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TransferThreadPoolTest {
+
+    private TransferThreadPool threadPool;
+
+    @After
+    public void tearDown() {
+        if (threadPool != null) {
+            threadPool.shutdown();
+        }
+    }
+
+    private static Callable<Boolean> awaitLatch(final CountDownLatch latch) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                latch.await();
+                return true;
+            }
+        };
+    }
+
+    @Test
+    public void testFullTransferQueueRejects() throws Exception {
+        threadPool = new TransferThreadPool(new TransferUtilityOptions()
+                .withMainConcurrency(1)
+                .withMainQueueCapacity(1));
+        CountDownLatch latch = new CountDownLatch(1);
+        Future<Boolean> running = threadPool.submitTask(awaitLatch(latch));
+        Future<Boolean> queued = threadPool.submitTask(awaitLatch(latch));
+        try {
+            threadPool.submitTask(awaitLatch(latch));
+            fail("transfer queue should be full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        latch.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFullPartQueueBlocksSubmitter() throws Exception {
+        threadPool = new TransferThreadPool(new TransferUtilityOptions()
+                .withPartConcurrency(1)
+                .withPartQueueCapacity(1));
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        futures.add(threadPool.submitPartTask(awaitLatch(latch), 1));
+        futures.add(threadPool.submitPartTask(awaitLatch(latch), 1));
+
+        final AtomicBoolean submitted = new AtomicBoolean();
+        Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    futures.add(threadPool.submitPartTask(awaitLatch(latch), 1));
+                    submitted.set(true);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        });
+        submitter.start();
+        submitter.join(200);
+        assertFalse(submitted.get());
+
+        latch.countDown();
+        submitter.join(5000);
+        assertTrue(submitted.get());
+        for (Future<Boolean> f : futures) {
+            assertTrue(f.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testCanceledPartReleasesRoom() throws Exception {
+        threadPool = new TransferThreadPool(new TransferUtilityOptions()
+                .withPartConcurrency(1)
+                .withPartQueueCapacity(1));
+        CountDownLatch latch = new CountDownLatch(1);
+        Future<Boolean> running = threadPool.submitPartTask(awaitLatch(latch), 1);
+        Future<Boolean> queued = threadPool.submitPartTask(awaitLatch(latch), 1);
+        // canceling the queued part makes room without it ever running
+        queued.cancel(true);
+        Future<Boolean> next = threadPool.submitPartTask(awaitLatch(latch), 1);
+        latch.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(next.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAdaptivePartConcurrencyStartsAtHalf() {
+        threadPool = new TransferThreadPool(new TransferUtilityOptions()
+                .withPartConcurrency(8)
+                .withAdaptivePartConcurrency(true));
+        assertEquals(4, threadPool.getPartConcurrency());
+    }
+}
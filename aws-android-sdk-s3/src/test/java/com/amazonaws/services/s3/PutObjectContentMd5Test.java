@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.http.HttpClient;
+import com.amazonaws.http.HttpRequest;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.internal.StaticCredentialsProvider;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.Md5Utils;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+public class PutObjectContentMd5Test {
+
+    private static final byte[] DATA = "0123456789abcdefghijklmnopqrstuvwxyz"
+            .getBytes(StringUtils.UTF8);
+
+    private File file;
+    private StubHttpClient httpClient;
+    private AmazonS3Client s3;
+
+    /**
+     * Reads the whole request body and answers with the given ETag.
+     */
+    private static class StubHttpClient implements HttpClient {
+        String eTag;
+        Map<String, String> requestHeaders;
+
+        @Override
+        public HttpResponse execute(HttpRequest request) throws IOException {
+            requestHeaders = request.getHeaders();
+            IOUtils.toByteArray(request.getContent());
+            return HttpResponse.builder()
+                    .statusCode(200)
+                    .statusText("OK")
+                    .header(Headers.ETAG, "\"" + eTag + "\"")
+                    .content(new ByteArrayInputStream(new byte[0]))
+                    .build();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("put-object", ".txt");
+        OutputStream out = new FileOutputStream(file);
+        out.write(DATA);
+        out.close();
+
+        httpClient = new StubHttpClient();
+        httpClient.eTag = BinaryUtils.toHex(Md5Utils.computeMD5Hash(DATA));
+        s3 = new AmazonS3Client(new StaticCredentialsProvider(new BasicAWSCredentials(
+                "accessKey", "secretKey")), new ClientConfiguration(), httpClient);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testSigV4FileUploadCalculatesMd5WhileSending() {
+        s3.setRegion(Region.getRegion(Regions.US_WEST_2));
+        PutObjectResult result = s3.putObject(new PutObjectRequest("bucket", "key", file));
+        assertNull(httpClient.requestHeaders.get(Headers.CONTENT_MD5));
+        assertNotNull(httpClient.requestHeaders.get("x-amz-decoded-content-length"));
+        assertEquals(Md5Utils.md5AsBase64(DATA), result.getContentMd5());
+    }
+
+    @Test
+    public void testSigV4FileUploadDetectsCorruption() {
+        s3.setRegion(Region.getRegion(Regions.US_WEST_2));
+        httpClient.eTag = BinaryUtils.toHex(Md5Utils.computeMD5Hash(new byte[1]));
+        try {
+            s3.putObject(new PutObjectRequest("bucket", "key", file));
+            fail("upload should fail the integrity check");
+        } catch (AmazonClientException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSigV2FileUploadSendsContentMd5() {
+        PutObjectResult result = s3.putObject(new PutObjectRequest("bucket", "key", file));
+        assertEquals(Md5Utils.md5AsBase64(DATA), httpClient.requestHeaders.get(Headers.CONTENT_MD5));
+        assertEquals(Md5Utils.md5AsBase64(DATA), result.getContentMd5());
+    }
+}
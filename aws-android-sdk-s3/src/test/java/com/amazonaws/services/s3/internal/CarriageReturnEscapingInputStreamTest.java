@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.transform.XmlResponsesSaxParser;
+import com.amazonaws.util.StringUtils;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class CarriageReturnEscapingInputStreamTest {
+
+    private static String escape(InputStream is) throws IOException {
+        return new String(IOUtils.toByteArray(new CarriageReturnEscapingInputStream(is)),
+                StringUtils.UTF8);
+    }
+
+    private static InputStream toStream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StringUtils.UTF8));
+    }
+
+    @Test
+    public void testEscapesCarriageReturns() throws Exception {
+        assertEquals("", escape(toStream("")));
+        assertEquals("abc", escape(toStream("abc")));
+        assertEquals("&#013;", escape(toStream("\r")));
+        assertEquals("a&#013;&#013;b\n&#013;", escape(toStream("a\r\rb\n\r")));
+        assertEquals("é&#013;漢", escape(toStream("é\r漢")));
+    }
+
+    @Test
+    public void testSingleByteReads() throws Exception {
+        InputStream is = new CarriageReturnEscapingInputStream(toStream("a\rb"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = is.read()) != -1) {
+            out.write(b);
+        }
+        assertEquals("a&#013;b", new String(out.toByteArray(), StringUtils.UTF8));
+    }
+
+    @Test
+    public void testEscapeSplitAcrossReads() throws Exception {
+        InputStream is = new CarriageReturnEscapingInputStream(toStream("a\r\rb"));
+        byte[] b = new byte[4];
+        StringBuilder sb = new StringBuilder();
+        int read;
+        while ((read = is.read(b, 1, 3)) != -1) {
+            sb.append(new String(b, 1, read, StringUtils.UTF8));
+        }
+        assertEquals("a&#013;&#013;b", sb.toString());
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        InputStream is = new CarriageReturnEscapingInputStream(toStream("\rabc"));
+        assertEquals(3, is.skip(3));
+        assertEquals("13;abc", new String(IOUtils.toByteArray(is), StringUtils.UTF8));
+    }
+
+    /**
+     * The stream returns what is available instead of waiting for the rest of
+     * the document, so that parsing can start before the whole response is
+     * received.
+     */
+    @Test
+    public void testDoesNotWaitForMoreData() throws Exception {
+        InputStream trickle = new FilterInputStream(toStream("ab\rcd")) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 2));
+            }
+        };
+        InputStream is = new CarriageReturnEscapingInputStream(trickle);
+        byte[] b = new byte[100];
+        assertEquals(2, is.read(b, 0, b.length));
+        assertEquals(7, is.read(b, 0, b.length));
+        assertEquals("&#013;c", new String(b, 0, 7, StringUtils.UTF8));
+    }
+
+    /**
+     * Compares the stream with escaping the whole document in memory, over a
+     * synthetic multi-megabyte listing, and parses it.
+     */
+    @Test
+    public void testLargeListing() throws Exception {
+        int keys = 20000;
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>bucket</Name><Prefix></Prefix><Marker></Marker>")
+                .append("<MaxKeys>1000</MaxKeys><IsTruncated>false</IsTruncated>\r\n");
+        for (int i = 0; i < keys; i++) {
+            sb.append("<Contents><Key>some/long/prefix/of/the/key/").append(i)
+                    .append("\ré</Key>")
+                    .append("<LastModified>2016-01-01T00:00:00.000Z</LastModified>")
+                    .append("<ETag>&quot;0123456789abcdef0123456789abcdef&quot;</ETag>")
+                    .append("<Size>").append(i).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>\r\n");
+        }
+        sb.append("</ListBucketResult>");
+        String document = sb.toString();
+
+        assertEquals(document.replaceAll("\r", "&#013;"), escape(toStream(document)));
+
+        ObjectListing listing = new XmlResponsesSaxParser()
+                .parseListBucketObjectsResponse(toStream(document)).getObjectListing();
+        assertEquals(keys, listing.getObjectSummaries().size());
+        S3ObjectSummary last = listing.getObjectSummaries().get(keys - 1);
+        assertEquals("some/long/prefix/of/the/key/" + (keys - 1) + "\ré", last.getKey());
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.internal.S3Direct;
+import com.amazonaws.services.s3.model.CryptoConfiguration;
+import com.amazonaws.services.s3.model.CryptoMode;
+import com.amazonaws.services.s3.model.EncryptionMaterials;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.StaticEncryptionMaterialsProvider;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.crypto.KeyGenerator;
+
+public class S3CryptoModuleAEParallelUploadTest {
+
+    private static final int PART_SIZE = 64 * 1024;
+
+    private S3Direct s3;
+    private S3CryptoModuleAE module;
+    private File file;
+    private byte[] plaintext;
+    private ObjectMetadata uploadedMetadata;
+    private final Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<Integer, byte[]>();
+    private final List<File> partFiles = new ArrayList<File>();
+
+    @Before
+    public void setUp() throws Exception {
+        CryptoRuntime.enableBouncyCastle();
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        s3 = mock(S3Direct.class);
+        module = new S3CryptoModuleAE(s3,
+                new StaticEncryptionMaterialsProvider(new EncryptionMaterials(
+                        generator.generateKey())),
+                new CryptoConfiguration(CryptoMode.AuthenticatedEncryption)
+                        .withParallelMultipartUploadEnabled(true)
+                        .withStreamingDecryptionWindow(4096));
+
+        plaintext = new byte[3 * PART_SIZE + 100];
+        new Random(7).nextBytes(plaintext);
+        file = File.createTempFile("parallel-upload", "");
+        FileUtils.writeByteArrayToFile(file, plaintext);
+
+        when(s3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenAnswer(
+                new Answer<InitiateMultipartUploadResult>() {
+                    @Override
+                    public InitiateMultipartUploadResult answer(InvocationOnMock invocation) {
+                        uploadedMetadata = ((InitiateMultipartUploadRequest) invocation
+                                .getArguments()[0]).getObjectMetadata();
+                        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+                        result.setUploadId("upload");
+                        return result;
+                    }
+                });
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenAnswer(
+                new Answer<UploadPartResult>() {
+                    @Override
+                    public UploadPartResult answer(InvocationOnMock invocation) throws Exception {
+                        UploadPartRequest req = (UploadPartRequest) invocation.getArguments()[0];
+                        byte[] part = FileUtils.readFileToByteArray(req.getFile());
+                        assertEquals(req.getPartSize(), part.length);
+                        partFiles.add(req.getFile());
+                        uploadedParts.put(req.getPartNumber(), part);
+                        return new UploadPartResult();
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private UploadPartRequest partRequest(int partNumber) {
+        long offset = (partNumber - 1) * (long) PART_SIZE;
+        return new UploadPartRequest()
+                .withBucketName("bucket")
+                .withKey("key")
+                .withUploadId("upload")
+                .withPartNumber(partNumber)
+                .withFile(file)
+                .withFileOffset(offset)
+                .withPartSize(Math.min(PART_SIZE, plaintext.length - offset))
+                .withLastPart(offset + PART_SIZE >= plaintext.length);
+    }
+
+    private byte[] uploadedCiphertext(int parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 1; i <= parts; i++) {
+            out.write(uploadedParts.get(i), 0, uploadedParts.get(i).length);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testPartsUploadedInAnyOrderAreEncryptedInOrder() throws Exception {
+        module.initiateMultipartUploadSecurely(new InitiateMultipartUploadRequest("bucket",
+                "key"));
+
+        // start the parts in reverse order; each waits for the previous one
+        final CountDownLatch done = new CountDownLatch(4);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        for (int partNumber = 4; partNumber >= 1; partNumber--) {
+            final UploadPartRequest req = partRequest(partNumber);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        module.uploadPartSecurely(req);
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        assertEquals(new ArrayList<Throwable>(), failures);
+        for (File partFile : partFiles) {
+            assertFalse(partFile.exists());
+        }
+
+        final byte[] ciphertext = uploadedCiphertext(4);
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(new Answer<S3Object>() {
+            @Override
+            public S3Object answer(InvocationOnMock invocation) {
+                S3Object object = new S3Object();
+                object.setBucketName("bucket");
+                object.setKey("key");
+                object.setObjectMetadata(uploadedMetadata);
+                object.setObjectContent(new ByteArrayInputStream(ciphertext));
+                return object;
+            }
+        });
+        S3Object object = module.getObjectSecurely(new GetObjectRequest("bucket", "key"));
+        assertArrayEquals(plaintext, IOUtils.toByteArray(object.getObjectContent()));
+    }
+
+    @Test
+    public void testPartAlreadyEncryptedIsRejected() throws Exception {
+        module.initiateMultipartUploadSecurely(new InitiateMultipartUploadRequest("bucket",
+                "key"));
+        module.uploadPartSecurely(partRequest(1));
+        try {
+            module.uploadPartSecurely(partRequest(1));
+            fail("the part has already been encrypted");
+        } catch (AmazonClientException expected) {
+        }
+    }
+}
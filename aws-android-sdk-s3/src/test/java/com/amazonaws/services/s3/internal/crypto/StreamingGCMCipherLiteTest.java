@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.internal.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+public class StreamingGCMCipherLiteTest {
+
+    private static final int TAG_LENGTH = 16;
+
+    private SecretKey key;
+    private byte[] iv;
+
+    @Before
+    public void setUp() throws Exception {
+        CryptoRuntime.enableBouncyCastle();
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        key = generator.generateKey();
+        iv = new byte[12];
+        new Random(1).nextBytes(iv);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private byte[] encrypt(byte[] plaintext) throws Exception {
+        CipherLite encrypter = ContentCryptoScheme.AES_GCM.createCipherLite(key, iv,
+                Cipher.ENCRYPT_MODE);
+        return encrypter.doFinal(plaintext);
+    }
+
+    private CipherLite streamingDecrypter(int window) throws Exception {
+        return new StreamingGCMCipherLite(ContentCryptoScheme.AES_GCM.createCipherLite(key, iv,
+                Cipher.DECRYPT_MODE), window);
+    }
+
+    private byte[] decrypt(byte[] ciphertext, int window) throws Exception {
+        return IOUtils.toByteArray(new CipherLiteInputStream(
+                new ByteArrayInputStream(ciphertext), streamingDecrypter(window), 512));
+    }
+
+    @Test
+    public void testDecryptsLikeGcm() throws Exception {
+        for (int size : new int[] {
+                0, 1, 15, 16, 17, 511, 512, 513, 100 * 1024 + 7
+        }) {
+            byte[] plaintext = randomBytes(size);
+            byte[] ciphertext = encrypt(plaintext);
+            assertArrayEquals("size " + size, plaintext, decrypt(ciphertext, 64));
+            assertArrayEquals("size " + size, plaintext, decrypt(ciphertext, 1024 * 1024));
+        }
+    }
+
+    @Test
+    public void testPlaintextIsReleasedBeforeEndOfStreamBeyondWindow() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(1024 * 1024));
+        CountingInputStream counting = new CountingInputStream(
+                new ByteArrayInputStream(ciphertext));
+        InputStream in = new CipherLiteInputStream(counting, streamingDecrypter(4096), 512);
+
+        assertTrue(in.read() != -1);
+        // no more than the window and a buffer of ciphertext has been consumed
+        assertTrue(counting.count <= 4096 + 512 + TAG_LENGTH);
+    }
+
+    @Test
+    public void testPlaintextWithinWindowIsReleasedOnlyOnceVerified() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(10000));
+        CountingInputStream counting = new CountingInputStream(
+                new ByteArrayInputStream(ciphertext));
+        InputStream in = new CipherLiteInputStream(counting, streamingDecrypter(16384), 512);
+
+        assertTrue(in.read() != -1);
+        assertEquals(ciphertext.length, counting.count);
+    }
+
+    @Test
+    public void testTamperedCiphertextWithinWindowReleasesNothing() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(10000));
+        ciphertext[42] ^= 1;
+        InputStream in = new CipherLiteInputStream(new ByteArrayInputStream(ciphertext),
+                streamingDecrypter(16384), 512);
+        try {
+            in.read();
+            fail("the tag mismatch should be detected");
+        } catch (SecurityException expected) {
+        }
+    }
+
+    @Test
+    public void testTamperedCiphertextIsDetectedAtEndOfStream() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(100 * 1024));
+        ciphertext[ciphertext.length - 1] ^= 1;
+        try {
+            decrypt(ciphertext, 1024);
+            fail("the tag mismatch should be detected");
+        } catch (SecurityException expected) {
+        }
+    }
+
+    @Test
+    public void testTruncatedCiphertextIsDetected() throws Exception {
+        try {
+            decrypt(new byte[TAG_LENGTH - 1], 1024);
+            fail("the missing tag should be detected");
+        } catch (SecurityException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEncryptingCipher() throws Exception {
+        new StreamingGCMCipherLite(ContentCryptoScheme.AES_GCM.createCipherLite(key, iv,
+                Cipher.ENCRYPT_MODE), 1024);
+    }
+
+    private static final class CountingInputStream extends InputStream {
+        private final InputStream in;
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+public class S3ObjectsPrefetchTest {
+
+    private AmazonS3 s3;
+
+    @Before
+    public void setUp() {
+        s3 = mock(AmazonS3.class);
+    }
+
+    private static ObjectListing page(boolean truncated, S3ObjectSummary... summaries) {
+        ObjectListing listing = mock(ObjectListing.class);
+        when(listing.isTruncated()).thenReturn(truncated);
+        when(listing.getObjectSummaries()).thenReturn(Arrays.asList(summaries));
+        return listing;
+    }
+
+    private static S3ObjectSummary summary(String key) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        return summary;
+    }
+
+    private static ListObjectsRequest withPrefix(final String prefix) {
+        return argThat(new ArgumentMatcher<ListObjectsRequest>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument != null
+                        && prefix.equals(((ListObjectsRequest) argument).getPrefix());
+            }
+        });
+    }
+
+    @Test
+    public void testFetchesNextPageWhileCurrentIsIterated() throws Exception {
+        S3ObjectSummary first = summary("a");
+        S3ObjectSummary second = summary("b");
+        ObjectListing firstPage = page(true, first);
+        ObjectListing secondPage = page(false, second);
+        when(s3.listObjects(any(ListObjectsRequest.class))).thenReturn(firstPage);
+        when(s3.listNextBatchOfObjects(firstPage)).thenReturn(secondPage);
+
+        Iterator<S3ObjectSummary> iter = S3Objects.withPrefix(s3, "bucket", "photos/")
+                .withPrefetch(1).iterator();
+        assertSame(first, iter.next());
+        // the second page is requested before the first one is done
+        verify(s3, timeout(1000)).listNextBatchOfObjects(firstPage);
+        assertTrue(iter.hasNext());
+        assertSame(second, iter.next());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testBufferedPagesAreBounded() throws Exception {
+        ObjectListing endlessPage = page(true, summary("a"));
+        when(s3.listObjects(any(ListObjectsRequest.class))).thenReturn(endlessPage);
+        when(s3.listNextBatchOfObjects(endlessPage)).thenReturn(endlessPage);
+
+        Iterator<S3ObjectSummary> iter = S3Objects.inBucket(s3, "bucket")
+                .withPrefetch(2).iterator();
+        // the first two pages fill the buffer, the third waits for room
+        verify(s3, timeout(1000).times(2)).listNextBatchOfObjects(endlessPage);
+        Thread.sleep(200);
+        verify(s3, times(2)).listNextBatchOfObjects(endlessPage);
+
+        iter.next();
+        verify(s3, timeout(1000).times(3)).listNextBatchOfObjects(endlessPage);
+    }
+
+    @Test
+    public void testListsPrefixesInParallel() throws Exception {
+        ObjectListing photosFirstPage = page(true, summary("photos/1"));
+        ObjectListing photosSecondPage = page(false, summary("photos/2"));
+        ObjectListing videosPage = page(false, summary("videos/1"), summary("videos/2"));
+        when(s3.listObjects(withPrefix("photos/"))).thenReturn(photosFirstPage);
+        when(s3.listNextBatchOfObjects(photosFirstPage)).thenReturn(photosSecondPage);
+        when(s3.listObjects(withPrefix("videos/"))).thenReturn(videosPage);
+
+        S3Objects objects = S3Objects.withPrefixes(s3, "bucket",
+                Arrays.asList("photos/", "videos/"));
+        assertEquals(Arrays.asList("photos/", "videos/"), objects.getPrefixes());
+
+        Set<String> keys = new HashSet<String>();
+        for (S3ObjectSummary summary : objects) {
+            assertTrue(keys.add(summary.getKey()));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("photos/1", "photos/2", "videos/1",
+                "videos/2")), keys);
+    }
+
+    @Test
+    public void testListingFailureIsThrownByIterator() throws Exception {
+        ObjectListing firstPage = page(true, summary("a"));
+        when(s3.listObjects(any(ListObjectsRequest.class))).thenReturn(firstPage);
+        when(s3.listNextBatchOfObjects(firstPage)).thenThrow(
+                new AmazonServiceException("listing failed"));
+
+        Iterator<S3ObjectSummary> iter = S3Objects.inBucket(s3, "bucket")
+                .withPrefetch(1).iterator();
+        iter.next();
+        try {
+            iter.hasNext();
+            fail("the listing failure should be thrown");
+        } catch (AmazonServiceException e) {
+            assertEquals("listing failed", e.getErrorMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoPrefixes() {
+        S3Objects.withPrefixes(s3, "bucket", new HashSet<String>());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.services.s3.iterable;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListVersionsRequest;
+import com.amazonaws.services.s3.model.S3VersionSummary;
+import com.amazonaws.services.s3.model.VersionListing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class S3VersionsPrefetchTest {
+
+    private AmazonS3 s3;
+
+    @Before
+    public void setUp() {
+        s3 = mock(AmazonS3.class);
+    }
+
+    private static VersionListing page(boolean truncated, S3VersionSummary... summaries) {
+        VersionListing listing = mock(VersionListing.class);
+        when(listing.isTruncated()).thenReturn(truncated);
+        when(listing.getVersionSummaries()).thenReturn(Arrays.asList(summaries));
+        return listing;
+    }
+
+    private static S3VersionSummary summary(String key, String versionId) {
+        S3VersionSummary summary = new S3VersionSummary();
+        summary.setKey(key);
+        summary.setVersionId(versionId);
+        return summary;
+    }
+
+    private static List<String> versionIds(Iterable<S3VersionSummary> versions) {
+        List<String> versionIds = new ArrayList<String>();
+        for (S3VersionSummary summary : versions) {
+            versionIds.add(summary.getVersionId());
+        }
+        return versionIds;
+    }
+
+    @Test
+    public void testPrefetchesPages() throws Exception {
+        VersionListing firstPage = page(true, summary("a", "1"), summary("b", "2"));
+        VersionListing secondPage = page(false, summary("c", "3"));
+        when(s3.listVersions(any(ListVersionsRequest.class))).thenReturn(firstPage);
+        when(s3.listNextBatchOfVersions(firstPage)).thenReturn(secondPage);
+
+        assertEquals(Arrays.asList("1", "2", "3"),
+                versionIds(S3Versions.inBucket(s3, "bucket").withPrefetch(2)));
+    }
+
+    @Test
+    public void testForKeyStopsAtOtherKey() throws Exception {
+        VersionListing firstPage = page(true, summary("key", "1"), summary("key", "2"));
+        VersionListing secondPage = page(true, summary("key", "3"), summary("key2", "4"));
+        when(s3.listVersions(any(ListVersionsRequest.class))).thenReturn(firstPage);
+        when(s3.listNextBatchOfVersions(firstPage)).thenReturn(secondPage);
+
+        assertEquals(Arrays.asList("1", "2", "3"),
+                versionIds(S3Versions.forKey(s3, "bucket", "key").withPrefetch(1)));
+        // no page is listed after the key
+        verify(s3, never()).listNextBatchOfVersions(secondPage);
+    }
+
+    @Test
+    public void testListsPrefixesInParallel() throws Exception {
+        VersionListing photosPage = page(false, summary("photos/1", "1"));
+        VersionListing videosPage = page(false, summary("videos/1", "2"));
+        when(s3.listVersions(any(ListVersionsRequest.class)))
+                .thenReturn(photosPage)
+                .thenReturn(videosPage);
+
+        List<String> versionIds = versionIds(S3Versions.withPrefixes(s3, "bucket",
+                Arrays.asList("photos/", "videos/")));
+        assertEquals(new HashSet<String>(Arrays.asList("1", "2")),
+                new HashSet<String>(versionIds));
+        assertEquals(2, versionIds.size());
+    }
+}